@@ -0,0 +1,88 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs;
+
+/**
+ * How well one region of the hibernate second-level cache is doing. The counts are since statistics
+ * were last enabled.
+ * 
+ * @see org.openmrs.api.AdministrationService#getCacheStatistics()
+ */
+public class CacheStatistic {
+	
+	private String region;
+	
+	private long elementCount;
+	
+	private long hitCount;
+	
+	private long missCount;
+	
+	private long putCount;
+	
+	public CacheStatistic(String region, long elementCount, long hitCount, long missCount, long putCount) {
+		this.region = region;
+		this.elementCount = elementCount;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.putCount = putCount;
+	}
+	
+	/**
+	 * @return the name of the region, usually the class or collection role cached in it
+	 */
+	public String getRegion() {
+		return region;
+	}
+	
+	/**
+	 * @return the number of objects in the region now
+	 */
+	public long getElementCount() {
+		return elementCount;
+	}
+	
+	/**
+	 * @return the number of lookups answered from the region
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * @return the number of lookups that had to go to the database
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * @return the number of objects put into the region
+	 */
+	public long getPutCount() {
+		return putCount;
+	}
+	
+	/**
+	 * @return the percentage of lookups answered from the region, to one decimal place
+	 */
+	public double getHitRatio() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 0 : Math.round(hitCount * 1000.0 / lookups) / 10.0;
+	}
+	
+	public String toString() {
+		return region + ": " + hitCount + " hits, " + missCount + " misses";
+	}
+}
@@ -17,7 +17,6 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -27,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.ReportService;
 import org.openmrs.cohort.CohortDefinition;
 import org.openmrs.report.EvaluationContext;
+import org.openmrs.util.IntegerBitmap;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
@@ -36,7 +36,11 @@ import org.simpleframework.xml.Root;
  * This class represents a list of patientIds. If it is generated from a CohortDefinition via
  * {@link ReportService#evaluate(org.openmrs.report.ReportSchema, Cohort, EvaluationContext)} then
  * it will contain a link back to the CohortDefinition it came from and the EvalutionContext that
- * definition was evaluated in.
+ * definition was evaluated in.<br/>
+ * <br/>
+ * Unless they are loaded from the database, member ids are held in a compressed
+ * {@link IntegerBitmap}, which {@link #union(Cohort, Cohort)}, {@link #intersect(Cohort, Cohort)} and
+ * {@link #subtract(Cohort, Cohort)} combine without copying ids into boxed hash sets.
  * 
  * @see org.openmrs.cohort.CohortDefinition
  */
@@ -76,7 +80,7 @@ public class Cohort implements Serializable {
 	private EvaluationContext evaluationContext;
 	
 	public Cohort() {
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 	}
 	
 	/**
@@ -86,7 +90,7 @@ public class Cohort implements Serializable {
 	 * @param cohortId the internal identifier for this cohort
 	 */
 	public Cohort(Integer cohortId) {
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 		this.cohortId = cohortId;
 	}
 	
@@ -101,7 +105,7 @@ public class Cohort implements Serializable {
 	public Cohort(String name, String description, Integer[] ids) {
 		this.name = name;
 		this.description = description;
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 		if (ids != null)
 			memberIds.addAll(Arrays.asList(ids));
 	}
@@ -117,7 +121,7 @@ public class Cohort implements Serializable {
 	public Cohort(String name, String description, Patient[] patients) {
 		this.name = name;
 		this.description = description;
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 		if (patients != null)
 			for (Patient p : patients)
 				memberIds.add(p.getPatientId());
@@ -148,7 +152,7 @@ public class Cohort implements Serializable {
 	public Cohort(String name, String description, Collection patientsOrIds) {
 		this.name = name;
 		this.description = description;
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 		if (patientsOrIds != null) {
 			for (Object o : patientsOrIds) {
 				if (o instanceof Patient)
@@ -169,7 +173,7 @@ public class Cohort implements Serializable {
 	 * @param commaSeparatedIds
 	 */
 	public Cohort(String commaSeparatedIds) {
-		memberIds = new HashSet<Integer>();
+		memberIds = new IntegerBitmap();
 		for (StringTokenizer st = new StringTokenizer(commaSeparatedIds, ","); st.hasMoreTokens();) {
 			String id = st.nextToken();
 			memberIds.add(new Integer(id.trim()));
@@ -259,9 +263,11 @@ public class Cohort implements Serializable {
 	public static Cohort union(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		ret.setName("(" + a.getName() + " + " + b.getName() + ")");
-		if (a != null)
+		if (a != null && b != null)
+			ret.setMemberIds(IntegerBitmap.or(a.getMemberBitmap(), b.getMemberBitmap()));
+		else if (a != null)
 			ret.getMemberIds().addAll(a.getMemberIds());
-		if (b != null)
+		else if (b != null)
 			ret.getMemberIds().addAll(b.getMemberIds());
 		return ret;
 	}
@@ -276,10 +282,8 @@ public class Cohort implements Serializable {
 	public static Cohort intersect(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		ret.setName("(" + a.getName() + " * " + b.getName() + ")");
-		if (a != null && b != null) {
-			ret.getMemberIds().addAll(a.getMemberIds());
-			ret.getMemberIds().retainAll(b.getMemberIds());
-		}
+		if (a != null && b != null)
+			ret.setMemberIds(IntegerBitmap.and(a.getMemberBitmap(), b.getMemberBitmap()));
 		return ret;
 	}
 	
@@ -294,13 +298,27 @@ public class Cohort implements Serializable {
 		Cohort ret = new Cohort();
 		ret.setName("(" + a.getName() + " - " + b.getName() + ")");
 		if (a != null) {
-			ret.getMemberIds().addAll(a.getMemberIds());
 			if (b != null)
-				ret.getMemberIds().removeAll(b.getMemberIds());
+				ret.setMemberIds(IntegerBitmap.andNot(a.getMemberBitmap(), b.getMemberBitmap()));
+			else
+				ret.getMemberIds().addAll(a.getMemberIds());
 		}
 		return ret;
 	}
 	
+	/**
+	 * @return the member ids as a bitmap, converting them if they are held in another kind of set
+	 *         (e.g. when this cohort was loaded from the database)
+	 */
+	private IntegerBitmap getMemberBitmap() {
+		if (getMemberIds() instanceof IntegerBitmap)
+			return (IntegerBitmap) getMemberIds();
+		else if (getMemberIds() == null)
+			return new IntegerBitmap();
+		else
+			return new IntegerBitmap(getMemberIds());
+	}
+	
 	// getters and setters
 	
 	@Attribute(required = false)
@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs;
+
+import java.util.Date;
+
+/**
+ * One encounter found by an encounter search: just the parts of the encounter that a list of
+ * encounters shows, so that the encounters can be listed without loading them, their patients or
+ * their providers.
+ * 
+ * @see org.openmrs.api.EncounterService#getEncountersForListing(String)
+ */
+public class EncounterSearchResult {
+	
+	private Integer encounterId;
+	
+	private Date encounterDatetime;
+	
+	private String encounterType;
+	
+	private String location;
+	
+	private String form;
+	
+	private PersonName patientName;
+	
+	private PersonName providerName;
+	
+	public EncounterSearchResult(Integer encounterId) {
+		this.encounterId = encounterId;
+	}
+	
+	public Integer getEncounterId() {
+		return encounterId;
+	}
+	
+	public void setEncounterId(Integer encounterId) {
+		this.encounterId = encounterId;
+	}
+	
+	public Date getEncounterDatetime() {
+		return encounterDatetime;
+	}
+	
+	public void setEncounterDatetime(Date encounterDatetime) {
+		this.encounterDatetime = encounterDatetime;
+	}
+	
+	/**
+	 * @return the name of the encounter type
+	 */
+	public String getEncounterType() {
+		return encounterType;
+	}
+	
+	public void setEncounterType(String encounterType) {
+		this.encounterType = encounterType;
+	}
+	
+	/**
+	 * @return the name of the location, or null if the encounter has none
+	 */
+	public String getLocation() {
+		return location;
+	}
+	
+	public void setLocation(String location) {
+		this.location = location;
+	}
+	
+	/**
+	 * @return the name of the form, or null if the encounter has none
+	 */
+	public String getForm() {
+		return form;
+	}
+	
+	public void setForm(String form) {
+		this.form = form;
+	}
+	
+	/**
+	 * @return the patient's preferred name
+	 */
+	public PersonName getPatientName() {
+		return patientName;
+	}
+	
+	public void setPatientName(PersonName patientName) {
+		this.patientName = patientName;
+	}
+	
+	/**
+	 * @return the provider's preferred name, or null if the encounter has no provider
+	 */
+	public PersonName getProviderName() {
+		return providerName;
+	}
+	
+	public void setProviderName(PersonName providerName) {
+		this.providerName = providerName;
+	}
+}
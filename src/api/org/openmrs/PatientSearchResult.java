@@ -0,0 +1,240 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One patient found by a patient search: just the parts of the patient that a list of search
+ * results shows, so that the results can be listed without loading each patient and all of their
+ * names, addresses and attributes.
+ * 
+ * @see org.openmrs.api.PatientService#getPatientSearchResults(String)
+ */
+public class PatientSearchResult {
+	
+	private Integer patientId;
+	
+	private String givenName;
+	
+	private String middleName;
+	
+	private String familyName;
+	
+	private List<String> otherNames = new ArrayList<String>();
+	
+	private String identifier;
+	
+	private Boolean identifierCheckDigit = false;
+	
+	private List<String> otherIdentifiers = new ArrayList<String>();
+	
+	private String gender;
+	
+	private Date birthdate;
+	
+	private Boolean birthdateEstimated = false;
+	
+	private String tribe;
+	
+	private Map<String, String> attributes = new HashMap<String, String>();
+	
+	private int score;
+	
+	private boolean closeMatch = false;
+	
+	public PatientSearchResult(Integer patientId) {
+		this.patientId = patientId;
+	}
+	
+	/**
+	 * Copies the listed parts of an already loaded patient
+	 * 
+	 * @param patient
+	 */
+	public PatientSearchResult(Patient patient) {
+		this(patient.getPatientId());
+		
+		for (PersonName name : patient.getNames()) {
+			if (name.isVoided())
+				continue;
+			if (givenName == null && familyName == null) {
+				givenName = name.getGivenName();
+				middleName = name.getMiddleName();
+				familyName = name.getFamilyName();
+			} else {
+				otherNames.add(name.getGivenName() + " " + name.getMiddleName() + " " + name.getFamilyName());
+			}
+		}
+		
+		for (PatientIdentifier pi : patient.getIdentifiers()) {
+			if (pi.isVoided())
+				continue;
+			if (identifier == null) {
+				identifier = pi.getIdentifier();
+				identifierCheckDigit = pi.getIdentifierType().hasCheckDigit();
+			} else {
+				otherIdentifiers.add(pi.getIdentifier());
+			}
+		}
+		
+		gender = patient.getGender();
+		birthdate = patient.getBirthdate();
+		birthdateEstimated = patient.getBirthdateEstimated();
+		if (patient.getTribe() != null)
+			tribe = patient.getTribe().getName();
+	}
+	
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * @return the given name of the preferred name
+	 */
+	public String getGivenName() {
+		return givenName;
+	}
+	
+	public void setGivenName(String givenName) {
+		this.givenName = givenName;
+	}
+	
+	/**
+	 * @return the middle name of the preferred name
+	 */
+	public String getMiddleName() {
+		return middleName;
+	}
+	
+	public void setMiddleName(String middleName) {
+		this.middleName = middleName;
+	}
+	
+	/**
+	 * @return the family name of the preferred name
+	 */
+	public String getFamilyName() {
+		return familyName;
+	}
+	
+	public void setFamilyName(String familyName) {
+		this.familyName = familyName;
+	}
+	
+	/**
+	 * @return the patient's other names, each as "given middle family"
+	 */
+	public List<String> getOtherNames() {
+		return otherNames;
+	}
+	
+	/**
+	 * @return the preferred identifier
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+	
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+	
+	/**
+	 * @return true if the type of the preferred identifier has a check digit
+	 */
+	public Boolean getIdentifierCheckDigit() {
+		return identifierCheckDigit;
+	}
+	
+	public void setIdentifierCheckDigit(Boolean identifierCheckDigit) {
+		this.identifierCheckDigit = identifierCheckDigit;
+	}
+	
+	/**
+	 * @return the patient's other identifiers
+	 */
+	public List<String> getOtherIdentifiers() {
+		return otherIdentifiers;
+	}
+	
+	public String getGender() {
+		return gender;
+	}
+	
+	public void setGender(String gender) {
+		this.gender = gender;
+	}
+	
+	public Date getBirthdate() {
+		return birthdate;
+	}
+	
+	public void setBirthdate(Date birthdate) {
+		this.birthdate = birthdate;
+	}
+	
+	public Boolean getBirthdateEstimated() {
+		return birthdateEstimated;
+	}
+	
+	public void setBirthdateEstimated(Boolean birthdateEstimated) {
+		this.birthdateEstimated = birthdateEstimated;
+	}
+	
+	/**
+	 * @return the name of the patient's tribe
+	 */
+	public String getTribe() {
+		return tribe;
+	}
+	
+	public void setTribe(String tribe) {
+		this.tribe = tribe;
+	}
+	
+	/**
+	 * @return the values of the patient's listing attributes, keyed on attribute type name
+	 */
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+	
+	/**
+	 * @return how well the patient matched the search; higher is better
+	 */
+	public int getScore() {
+		return score;
+	}
+	
+	public void setScore(int score) {
+		this.score = score;
+	}
+	
+	/**
+	 * @return true if the patient was only found by a looser search (e.g. a name that sounds like
+	 *         one of the words searched for) rather than by the words themselves
+	 */
+	public boolean isCloseMatch() {
+		return closeMatch;
+	}
+	
+	public void setCloseMatch(boolean closeMatch) {
+		this.closeMatch = closeMatch;
+	}
+}
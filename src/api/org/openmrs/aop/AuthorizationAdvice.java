@@ -14,7 +14,10 @@
 package org.openmrs.aop;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +38,12 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 	 */
 	protected static final Log log = LogFactory.getLog(AuthorizationAdvice.class);
 	
+	/**
+	 * The authorization attributes of each method seen so far. These never change, so they are only
+	 * read off the annotations once
+	 */
+	private static final Map<Method, MethodPrivileges> methodPrivileges = new ConcurrentHashMap<Method, MethodPrivileges>();
+	
 	/**
 	 * Allows us to check whether a user is authorized to access a particular method.
 	 * 
@@ -43,9 +52,14 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 	 * @param target
 	 * @throws Throwable
 	 */
-	@SuppressWarnings( { "unchecked" })
 	public void before(Method method, Object[] args, Object target) throws Throwable {
 		
+		MethodPrivileges attributes = getMethodPrivileges(method);
+		
+		// nothing to check
+		if (!attributes.annotated)
+			return;
+		
 		if (log.isDebugEnabled())
 			log.debug("Calling authorization advice before " + method.getName());
 		
@@ -57,15 +71,11 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 				log.debug("has roles " + user.getAllRoles());
 		}
 		
-		AuthorizedAnnotationAttributes attributes = new AuthorizedAnnotationAttributes();
-		Collection<String> attrs = attributes.getAttributes(method);
-		boolean requireAll = attributes.getRequireAll(method);
-		
 		// Only execute if the "secure" method has authorization attributes
 		// Iterate through required privileges and return only if the user has
 		// one of them
-		if (attrs.size() > 0) {
-			for (String privilege : attrs) {
+		if (attributes.privileges.length > 0) {
+			for (String privilege : attributes.privileges) {
 				
 				// skip null privileges
 				if (privilege == null || privilege.length() < 1)
@@ -75,26 +85,26 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 					log.debug("User has privilege " + privilege + "? " + Context.hasPrivilege(privilege));
 				
 				if (Context.hasPrivilege(privilege)) {
-					if (requireAll == false) {
+					if (attributes.requireAll == false) {
 						// if not all required, the first one that they have
 						// causes them to "pass"
 						return;
 					}
-				} else if (requireAll == true) {
+				} else if (attributes.requireAll == true) {
 					// if all are required, the first miss causes them
 					// to "fail"
 					throwUnauthorized(user, method, privilege);
 				}
 			}
 			
-			if (requireAll == false) {
+			if (attributes.requireAll == false) {
 				// If there's no match, then we know there are privileges and
 				// that the user didn't have any of them. The user is not
 				// authorized to access the method
-				throwUnauthorized(user, method, attrs);
+				throwUnauthorized(user, method, Arrays.asList(attributes.privileges));
 			}
 			
-		} else if (attributes.hasAuthorizedAnnotation(method)) {
+		} else {
 			// if there are no privileges defined, just require that 
 			// the user be authenticated
 			if (Context.isAuthenticated() == false)
@@ -102,6 +112,25 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 		}
 	}
 	
+	/**
+	 * Gets the authorization attributes of a method, reading them off its annotations the first
+	 * time it is called
+	 * 
+	 * @param method
+	 * @return the attributes
+	 */
+	@SuppressWarnings("unchecked")
+	private static MethodPrivileges getMethodPrivileges(Method method) {
+		MethodPrivileges privileges = methodPrivileges.get(method);
+		if (privileges == null) {
+			AuthorizedAnnotationAttributes attributes = new AuthorizedAnnotationAttributes();
+			privileges = new MethodPrivileges(attributes.hasAuthorizedAnnotation(method), attributes
+			        .getRequireAll(method), (Collection<String>) attributes.getAttributes(method));
+			methodPrivileges.put(method, privileges);
+		}
+		return privileges;
+	}
+	
 	/**
 	 * Throws an APIAuthorization exception stating why the user failed
 	 * 
@@ -139,4 +168,22 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 			log.debug("User " + user + " is not authorized to access " + method.getName());
 		throw new APIAuthenticationException("Basic authentication required");
 	}
+	
+	/**
+	 * The @Authorized attributes of one method
+	 */
+	private static class MethodPrivileges {
+		
+		private final boolean annotated;
+		
+		private final boolean requireAll;
+		
+		private final String[] privileges;
+		
+		public MethodPrivileges(boolean annotated, boolean requireAll, Collection<String> privileges) {
+			this.annotated = annotated;
+			this.requireAll = requireAll;
+			this.privileges = privileges.toArray(new String[privileges.size()]);
+		}
+	}
 }
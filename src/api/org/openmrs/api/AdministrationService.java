@@ -20,6 +20,7 @@ import java.util.Locale;
 import java.util.Set;
 import java.util.SortedMap;
 
+import org.openmrs.CacheStatistic;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
 import org.openmrs.ConceptDatatype;
@@ -452,6 +453,31 @@ public interface AdministrationService extends OpenmrsService {
 	@Transactional(readOnly = true)
 	public String getGlobalProperty(String propertyName, String defaultValue) throws APIException;
 	
+	/**
+	 * Gets the value of a global property converted to the type of <code>defaultValue</code>,
+	 * which may be a String, Integer, Long, Double or Boolean. The converted value is cached until
+	 * the property changes, so callers on hot paths do not need to parse it themselves. This method
+	 * should not have any authorization check
+	 * 
+	 * @param propertyName property key to look for
+	 * @param defaultValue value to return if the property is not set or cannot be converted
+	 * @return the value of the property, or defaultValue
+	 * @throws APIException if defaultValue is of a type that properties cannot be converted to
+	 * @should return default value if property name does not exist
+	 * @should return default value if property value cannot be converted
+	 * @should convert property value to the type of the default value
+	 */
+	@Transactional(readOnly = true)
+	public <T> T getGlobalPropertyValue(String propertyName, T defaultValue) throws APIException;
+	
+	/**
+	 * Drops the cached values of all global properties, so that they are read from the database
+	 * again. Only needed after global properties have been changed without going through this
+	 * service, e.g. by sql
+	 */
+	@Authorized(OpenmrsConstants.PRIV_MANAGE_GLOBAL_PROPERTIES)
+	public void refreshGlobalPropertyCache();
+	
 	/**
 	 * Gets the global property that has the given <code>propertyName</code>
 	 * 
@@ -597,6 +623,38 @@ public interface AdministrationService extends OpenmrsService {
 	// TODO Authorization?!?
 	public List<List<Object>> executeSQL(String sql, boolean selectOnly) throws APIException;
 	
+	/**
+	 * Gets the hit and miss counts of each region of the hibernate second-level cache. The counts
+	 * are only kept while {@link #isCacheStatisticsEnabled()}
+	 * 
+	 * @return a statistic for each cache region, sorted by region name
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(OpenmrsConstants.PRIV_VIEW_ADMIN_FUNCTIONS)
+	public List<CacheStatistic> getCacheStatistics() throws APIException;
+	
+	/**
+	 * @return true if hibernate is counting cache hits and misses
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(OpenmrsConstants.PRIV_VIEW_ADMIN_FUNCTIONS)
+	public boolean isCacheStatisticsEnabled() throws APIException;
+	
+	/**
+	 * Turns the counting of cache hits and misses on or off. Turning it on resets the counts
+	 * 
+	 * @param enabled
+	 */
+	@Authorized(OpenmrsConstants.PRIV_VIEW_ADMIN_FUNCTIONS)
+	public void setCacheStatisticsEnabled(boolean enabled) throws APIException;
+	
+	/**
+	 * Empties the hibernate second-level cache, so that everything is read from the database again.
+	 * Only needed after the database has been changed without going through the API
+	 */
+	@Authorized(OpenmrsConstants.PRIV_VIEW_ADMIN_FUNCTIONS)
+	public void clearCache() throws APIException;
+	
 	/**
 	 * Get the implementation id stored for this server Returns null if no implementation id has
 	 * been successfully set yet
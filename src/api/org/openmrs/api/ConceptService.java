@@ -13,6 +13,7 @@
  */
 package org.openmrs.api;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -215,6 +216,19 @@ public interface ConceptService extends OpenmrsService {
 	@Authorized(OpenmrsConstants.PRIV_VIEW_CONCEPTS)
 	public Concept getConcept(Integer conceptId) throws APIException;
 	
+	/**
+	 * Gets the concepts with the given ids for showing in a list. Their names (with tags),
+	 * descriptions and numeric ranges are loaded in two queries for all of the concepts, rather
+	 * than several queries for each concept as they are looked at.
+	 * 
+	 * @param conceptIds
+	 * @return the concepts found, in the same order as the ids
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(OpenmrsConstants.PRIV_VIEW_CONCEPTS)
+	public List<Concept> getConceptsForListing(Collection<Integer> conceptIds) throws APIException;
+	
 	/**
 	 * Gets the concept-name with the given id
 	 * 
@@ -915,17 +929,21 @@ public interface ConceptService extends OpenmrsService {
 	
 	/**
 	 * Iterates over the words in names and synonyms (for each locale) and updates the concept_word
-	 * table
+	 * table. Only the words that were added or removed since the last update are written
 	 * 
 	 * @param Concept concept
+	 * @should replace the words of a renamed name
 	 * @throws APIException
 	 */
 	@Authorized( { OpenmrsConstants.PRIV_MANAGE_CONCEPTS })
 	public void updateConceptWord(Concept concept) throws APIException;
 	
 	/**
-	 * Iterates over all concepts and calls upddateConceptWords(Concept concept)
+	 * Schedules the task that brings the words of every concept up to date, if it isn't already
+	 * running. The task works through the dictionary in ranges of concept ids on several threads,
+	 * and if it is stopped part way the next run picks up where it left off
 	 * 
+	 * @see org.openmrs.scheduler.tasks.ConceptWordUpdateTask
 	 * @throws APIException
 	 */
 	@Authorized( { OpenmrsConstants.PRIV_MANAGE_CONCEPTS })
@@ -933,8 +951,10 @@ public interface ConceptService extends OpenmrsService {
 	
 	/**
 	 * Iterates over all concepts with conceptIds between <code>conceptIdStart</code> and
-	 * <code>conceptIdEnd</code> (inclusive) and calls updateConceptWord(concept)
+	 * <code>conceptIdEnd</code> (inclusive) and updates their words like
+	 * {@link #updateConceptWord(Concept)}, a page of concepts at a time
 	 * 
+	 * @should update the words of the concepts in the range
 	 * @param conceptIdStart starts update with this concept_id
 	 * @param conceptIdEnd ends update with this concept_id
 	 * @throws APIException
@@ -942,6 +962,21 @@ public interface ConceptService extends OpenmrsService {
 	@Authorized( { OpenmrsConstants.PRIV_MANAGE_CONCEPTS })
 	public void updateConceptWords(Integer conceptIdStart, Integer conceptIdEnd) throws APIException;
 	
+	/**
+	 * Loads the words of every concept into an in-memory index that is used instead of the
+	 * concept_word table by {@link #getConceptWords(String, List, boolean, List, List, List, List, Concept, Integer, Integer)}.
+	 * Once built, the index is kept current by {@link #updateConceptWord(Concept)}. Calling this
+	 * again replaces the index with a fresh copy. <br/>
+	 * <br/>
+	 * This is called at startup if the
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED} global property is true
+	 * 
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized( { OpenmrsConstants.PRIV_MANAGE_CONCEPTS })
+	public void rebuildConceptWordIndex() throws APIException;
+	
 	/**
 	 * Gets the {@link ConceptNameTag} with the given tag
 	 * 
@@ -18,6 +18,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
@@ -97,6 +98,20 @@ public interface EncounterService extends OpenmrsService {
 	@Authorized( { OpenmrsConstants.PRIV_VIEW_ENCOUNTERS })
 	public List<Encounter> getEncountersByPatientIdentifier(String identifier) throws APIException;
 	
+	/**
+	 * Get the parts of the encounters (not voided) for a patient identifier that a list of
+	 * encounters shows. This is one query for the encounters and one for the names, and does not
+	 * load the encounters, patients or providers.
+	 * 
+	 * @param identifier
+	 * @return the listed parts of the encounters, newest first
+	 * @throws APIException
+	 * @see #getEncountersByPatientIdentifier(String)
+	 */
+	@Transactional(readOnly = true)
+	@Authorized( { OpenmrsConstants.PRIV_VIEW_ENCOUNTERS })
+	public List<EncounterSearchResult> getEncountersForListing(String identifier) throws APIException;
+	
 	/**
 	 * Get all encounters that match a variety of (nullable) criteria
 	 * 
@@ -15,6 +15,8 @@ package org.openmrs.api;
 
 import java.util.List;
 
+import org.openmrs.util.TransactionUtil;
+
 /**
  * Holds all OpenMRS event listeners
  */
@@ -22,6 +24,8 @@ public class EventListeners {
 	
 	private static List<GlobalPropertyListener> globalPropertyListeners;
 	
+	private static List<ObjectChangeListener> objectChangeListeners;
+	
 	public EventListeners() {
 	}
 	
@@ -33,4 +37,32 @@ public class EventListeners {
 		this.globalPropertyListeners = globalPropertyListeners;
 	}
 	
+	public List<ObjectChangeListener> getObjectChangeListeners() {
+		return objectChangeListeners;
+	}
+	
+	public void setObjectChangeListeners(List<ObjectChangeListener> objectChangeListeners) {
+		this.objectChangeListeners = objectChangeListeners;
+	}
+	
+	/**
+	 * Calls the object change listeners registered for the given type once the current transaction
+	 * is over. They are called after a rollback too, since a listener may have looked up the
+	 * uncommitted objects in the meantime.
+	 * 
+	 * @param type the class of the objects that were saved or removed
+	 */
+	public void notifyObjectsChanged(final Class<?> type) {
+		if (objectChangeListeners == null)
+			return;
+		TransactionUtil.afterCompletion(new Runnable() {
+			
+			public void run() {
+				for (ObjectChangeListener listener : objectChangeListeners)
+					if (listener.supportsType(type))
+						listener.objectsChanged(type);
+			}
+		});
+	}
+	
 }
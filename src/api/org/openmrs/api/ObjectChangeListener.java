@@ -0,0 +1,41 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api;
+
+/**
+ * This interface allows code to be run when objects of a given type have been saved or removed, so
+ * that anything holding on to what it looked up from those objects can drop it. Listeners are only
+ * called once the transaction that made the change is over.
+ * 
+ * @see EventListeners#notifyObjectsChanged(Class)
+ */
+public interface ObjectChangeListener {
+	
+	/**
+	 * Asks this listener whether it wants to be notified about changes to the given type
+	 * 
+	 * @param type the class of the objects that changed
+	 * @return whether this listener wants {@link #objectsChanged(Class)} to be called for the given
+	 *         type
+	 */
+	public boolean supportsType(Class<?> type);
+	
+	/**
+	 * Called after the transaction that saved or removed objects of the given type is over
+	 * 
+	 * @param type the class of the objects that changed
+	 */
+	public void objectsChanged(Class<?> type);
+
+}
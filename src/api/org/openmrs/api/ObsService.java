@@ -367,6 +367,21 @@ public interface ObsService extends OpenmrsService {
 	@Transactional(readOnly = true)
 	public List<Obs> getObservationsByPersonAndConcept(Person who, Concept question) throws APIException;
 	
+	/**
+	 * Get the nonvoided observations matching whichever of the arguments are not null, for showing
+	 * in a list. The concept and coded answer of each obs (with their names), its encounter, form
+	 * and location are loaded with the obs in a couple of queries rather than one by one.
+	 * 
+	 * @param who person to match on (optional)
+	 * @param question question concept to match on (optional)
+	 * @param encounter encounter to match on (optional)
+	 * @return the matching observations, newest first
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(OpenmrsConstants.PRIV_VIEW_OBS)
+	public List<Obs> getObservationsForListing(Person who, Concept question, Encounter encounter) throws APIException;
+	
 	/**
 	 * @deprecated use
 	 *             {@link #getObservations(List, List, List, org.openmrs.api.ObsService.PERSON_TYPE, Location, String, Integer, Integer, Date, Date, boolean)}
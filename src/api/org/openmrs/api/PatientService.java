@@ -23,6 +23,7 @@ import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PatientSearchResult;
 import org.openmrs.Tribe;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.db.PatientDAO;
@@ -453,6 +454,38 @@ public interface PatientService extends OpenmrsService {
 	@Authorized( { OpenmrsConstants.PRIV_VIEW_PATIENTS })
 	public List<Patient> getPatients(String query) throws APIException;
 	
+	/**
+	 * The same search as {@link #getPatients(String)}, but returning only the parts of each patient
+	 * that a list of search results shows, best matches first. If few patients are found for a
+	 * search without numbers, patients whose names sound like or start the same as the words
+	 * searched for are added at the end and marked as {@link PatientSearchResult#isCloseMatch()}. <br/>
+	 * <br/>
+	 * Once {@link #rebuildPatientSearchIndex()} has been called the search is answered from memory
+	 * without loading any patients.
+	 * 
+	 * @param query the names and/or identifiers to search for
+	 * @return the matching patients, with their listing attributes filled in
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized( { OpenmrsConstants.PRIV_VIEW_PATIENTS })
+	public List<PatientSearchResult> getPatientSearchResults(String query) throws APIException;
+	
+	/**
+	 * Loads the names and identifiers of every patient into an in-memory index used by
+	 * {@link #getPatientSearchResults(String)}. Once built, the index is kept current by
+	 * {@link #savePatient(Patient)} and {@link #purgePatient(Patient)}. Calling this again replaces
+	 * the index with a fresh copy. <br/>
+	 * <br/>
+	 * This is called at startup if the
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_PATIENT_SEARCH_INDEX_ENABLED} global property is true
+	 * 
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized( { OpenmrsConstants.PRIV_VIEW_PATIENTS })
+	public void rebuildPatientSearchIndex() throws APIException;
+	
 	/**
 	 * @see #getPatientByExample(Patient)
 	 * @deprecated use #getPatientByExample(Patient)
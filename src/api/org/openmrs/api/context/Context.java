@@ -603,6 +603,18 @@ public class Context {
 		getContextDAO().evictFromSession(obj);
 	}
 	
+	/**
+	 * Loads everything the given object holds lazily, while the session it was loaded in is still
+	 * open: the hibernate proxies and collections reachable from it, and the associations of the
+	 * hibernate objects among them. Those can then be read from a thread that has a session of its
+	 * own without going back to this one
+	 * 
+	 * @param obj The object to load
+	 */
+	public static void initializeLazyProperties(Object obj) {
+		getContextDAO().initializeLazyProperties(obj);
+	}
+	
 	/**
 	 * Starts the OpenMRS System Should be called prior to any kind of activity
 	 * 
@@ -628,6 +640,58 @@ public class Context {
 		// add any privileges/roles that /must/ exist for openmrs to work correctly.
 		// TODO: Should this be one of the first things executed at startup? 
 		checkCoreDataset();
+		
+		// load the in-memory search indexes in the background if they are turned on
+		startIndexBuilder(OpenmrsConstants.GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED,
+		    OpenmrsConstants.PRIV_MANAGE_CONCEPTS, "ConceptWordIndexBuilder", new Runnable() {
+			    
+			    public void run() {
+				    getConceptService().rebuildConceptWordIndex();
+			    }
+		    });
+		startIndexBuilder(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_SEARCH_INDEX_ENABLED,
+		    OpenmrsConstants.PRIV_VIEW_PATIENTS, "PatientSearchIndexBuilder", new Runnable() {
+			    
+			    public void run() {
+				    getPatientService().rebuildPatientSearchIndex();
+			    }
+		    });
+	}
+	
+	/**
+	 * Builds an in-memory search index on its own thread if the given global property is true.
+	 * Searches use the database until the index is ready.
+	 * 
+	 * @param enabledProperty the global property that turns the index on
+	 * @param privilege the privilege needed to build the index
+	 * @param threadName
+	 * @param build the call that builds the index
+	 */
+	private static void startIndexBuilder(String enabledProperty, final String privilege, final String threadName,
+	                                      final Runnable build) {
+		String enabled = getAdministrationService().getGlobalProperty(enabledProperty, "false");
+		if (!Boolean.valueOf(enabled.trim()))
+			return;
+		
+		Thread builder = new Thread(new Runnable() {
+			
+			public void run() {
+				openSession();
+				try {
+					addProxyPrivilege(privilege);
+					build.run();
+				}
+				catch (Throwable t) {
+					log.error("Unable to build the index in " + threadName, t);
+				}
+				finally {
+					removeProxyPrivilege(privilege);
+					closeSession();
+				}
+			}
+		}, threadName);
+		builder.setDaemon(true);
+		builder.start();
 	}
 	
 	/**
@@ -756,6 +820,9 @@ public class Context {
 	 */
 	public static void checkCoreDataset() {
 		getContextDAO().checkCoreDataset();
+		
+		// the core global properties are added with sql
+		getAdministrationService().refreshGlobalPropertyCache();
 	}
 	
 	/**
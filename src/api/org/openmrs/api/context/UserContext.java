@@ -18,14 +18,18 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.Privilege;
 import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.db.ContextDAO;
 import org.openmrs.util.OpenmrsConstants;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Represents an OpenMRS <code>User Context</code> which stores the current user information. Only
@@ -43,6 +47,12 @@ public class UserContext {
 	 */
 	private static final Log log = LogFactory.getLog(UserContext.class);
 	
+	/**
+	 * Incremented whenever a role, privilege or user is saved, so that every UserContext knows to
+	 * work out its privileges again
+	 */
+	private static final AtomicLong privilegesVersion = new AtomicLong();
+	
 	/**
 	 * User object containing details about the authenticated user
 	 */
@@ -68,12 +78,51 @@ public class UserContext {
 	 */
 	private Role anonymousRole = null;
 	
+	/**
+	 * Names of every privilege the user has through their roles, the authenticated role and the
+	 * anonymous role. Proxy privileges are not included
+	 */
+	private Set<String> privileges = null;
+	
+	/**
+	 * Whether the user has the superuser role, and so every privilege
+	 */
+	private boolean superUser = false;
+	
+	/**
+	 * The {@link #privilegesVersion} that {@link #privileges} was worked out for
+	 */
+	private long privilegesComputedFor = -1;
+	
 	/**
 	 * Default public constructor
 	 */
 	public UserContext() {
 	}
 	
+	/**
+	 * Makes a new user context that acts as the same user, for use by another thread. A user
+	 * context is not safe to share between threads, so each thread that works on behalf of the
+	 * current user should get its own copy. The copy starts with the user, locale, proxy privileges
+	 * and privileges this context has now. Changes made to either context afterwards do not affect
+	 * the other
+	 * 
+	 * @return the copy
+	 */
+	public synchronized UserContext copy() {
+		UserContext copy = new UserContext();
+		copy.user = user;
+		copy.proxies.addAll(proxies);
+		copy.locale = locale;
+		copy.authenticatedRole = authenticatedRole;
+		copy.anonymousRole = anonymousRole;
+		if (privileges != null)
+			copy.privileges = new HashSet<String>(privileges);
+		copy.superUser = superUser;
+		copy.privilegesComputedFor = privilegesComputedFor;
+		return copy;
+	}
+	
 	/**
 	 * Authenticate the user to this UserContext.
 	 * 
@@ -89,6 +138,7 @@ public class UserContext {
 			log.debug("Authenticating with username: " + username);
 		
 		this.user = contextDAO.authenticate(username, password);
+		this.privileges = null;
 		
 		if (log.isDebugEnabled())
 			log.debug("Authenticated as: " + this.user);
@@ -125,6 +175,7 @@ public class UserContext {
 			userToBecome.getPrivileges().size();
 		
 		this.user = userToBecome;
+		this.privileges = null;
 		
 		if (log.isDebugEnabled())
 			log.debug("Becoming user: " + user);
@@ -154,6 +205,7 @@ public class UserContext {
 	public void logout() {
 		log.debug("setting user to null on logout");
 		user = null;
+		privileges = null;
 	}
 	
 	/**
@@ -258,16 +310,13 @@ public class UserContext {
 	 */
 	public boolean hasPrivilege(String privilege) {
 		
-		// if a user has logged in, check their privileges
-		if (isAuthenticated()) {
-			
-			// check user's privileges
-			if (getAuthenticatedUser().hasPrivilege(privilege))
-				return true;
-			
-			if (getAuthenticatedRole().hasPrivilege(privilege))
-				return true;
-		}
+		// all authenticated users have the "" (empty) privilege
+		if (isAuthenticated() && (privilege == null || privilege.equals("")))
+			return true;
+		
+		Set<String> privilegeNames = getPrivilegeNames();
+		if (superUser || privilegeNames.contains(privilege))
+			return true;
 		
 		if (log.isDebugEnabled())
 			log.debug("Checking '" + privilege + "' against proxies: " + proxies);
@@ -277,13 +326,83 @@ public class UserContext {
 			if (s.equals(privilege))
 				return true;
 		
-		if (getAnonymousRole().hasPrivilege(privilege))
-			return true;
-		
 		// default return value
 		return false;
 	}
 	
+	/**
+	 * Makes every UserContext work out its privileges again the next time one is checked. This
+	 * should be called whenever roles, privileges or the roles of a user are changed.
+	 */
+	public static void refreshPrivileges() {
+		privilegesVersion.incrementAndGet();
+		
+		// and again once the change is committed, in case another context read the old roles in
+		// the meantime
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					privilegesVersion.incrementAndGet();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Gets the names of all the privileges the (un)authenticated user has through roles, working
+	 * them out again if the user has changed or {@link #refreshPrivileges()} has been called since
+	 * they were last worked out
+	 * 
+	 * @return the privilege names
+	 */
+	private synchronized Set<String> getPrivilegeNames() {
+		long version = privilegesVersion.get();
+		if (privileges != null && privilegesComputedFor == version)
+			return privileges;
+		
+		if (privilegesComputedFor != version) {
+			// the roles may have been changed
+			anonymousRole = null;
+			authenticatedRole = null;
+		}
+		
+		Set<Role> roles = new HashSet<Role>();
+		roles.add(getAnonymousRole());
+		if (isAuthenticated()) {
+			roles.add(getAuthenticatedRole());
+			if (user.getRoles() != null) {
+				for (Role role : user.getRoles()) {
+					// read the role again so that changes made since the user logged in are seen
+					Role current = Context.getUserService().getRole(role.getRole());
+					if (current == null)
+						continue;
+					roles.add(current);
+					roles.addAll(current.getAllParentRoles());
+				}
+			}
+		}
+		
+		Set<String> names = new HashSet<String>();
+		boolean hasAllPrivileges = false;
+		for (Role role : roles) {
+			if (OpenmrsConstants.SUPERUSER_ROLE.equals(role.getRole()))
+				hasAllPrivileges = true;
+			if (role.getPrivileges() != null)
+				for (Privilege privilege : role.getPrivileges())
+					names.add(privilege.getPrivilege());
+		}
+		
+		if (log.isDebugEnabled())
+			log.debug("Privileges of " + user + " through roles " + roles + ": " + names);
+		
+		superUser = hasAllPrivileges;
+		privileges = names;
+		privilegesComputedFor = version;
+		return privileges;
+	}
+	
 	/**
 	 * Convenience method to get the Role in the system designed to be given to all users
 	 * 
@@ -17,6 +17,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import org.openmrs.CacheStatistic;
 import org.openmrs.DataEntryStatistic;
 import org.openmrs.GlobalProperty;
 import org.openmrs.ImplementationId;
@@ -168,6 +169,26 @@ public interface AdministrationDAO {
 	 */
 	public List<List<Object>> executeSQL(String sql, boolean selectOnly) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.AdministrationService#getCacheStatistics()
+	 */
+	public List<CacheStatistic> getCacheStatistics() throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#isCacheStatisticsEnabled()
+	 */
+	public boolean isCacheStatisticsEnabled() throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#setCacheStatisticsEnabled(boolean)
+	 */
+	public void setCacheStatisticsEnabled(boolean enabled) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#clearCache()
+	 */
+	public void clearCache() throws DAOException;
+	
 	/**
 	 * @see org.openmrs.api.AdministrationService#getImplementation()
 	 */
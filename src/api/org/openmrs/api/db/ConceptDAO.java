@@ -13,6 +13,7 @@
  */
 package org.openmrs.api.db;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -65,6 +66,11 @@ public interface ConceptDAO {
 	 */
 	public Concept getConcept(Integer conceptId) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#getConceptsForListing(java.util.Collection)
+	 */
+	public List<Concept> getConceptsForListing(Collection<Integer> conceptIds) throws DAOException;
+	
 	/**
 	 * @see org.openmrs.api.ConceptService#getConceptName(java.lang.Integer)
 	 * @param conceptNameId
@@ -255,6 +261,16 @@ public interface ConceptDAO {
 	 */
 	public void updateConceptWord(Concept concept) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#updateConceptWords(java.lang.Integer, java.lang.Integer)
+	 */
+	public void updateConceptWords(Integer conceptIdStart, Integer conceptIdEnd) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.ConceptService#rebuildConceptWordIndex()
+	 */
+	public void rebuildConceptWordIndex() throws DAOException;
+	
 	public ConceptNameTag saveConceptNameTag(ConceptNameTag nameTag);
 	
 	public ConceptNameTag getConceptNameTag(Integer i);
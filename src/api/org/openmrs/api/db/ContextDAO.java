@@ -78,6 +78,15 @@ public interface ContextDAO {
 	 */
 	public void evictFromSession(Object obj);
 	
+	/**
+	 * Loads the hibernate proxies and lazy collections reachable from the given object, along with
+	 * the associations of the hibernate objects among them
+	 * 
+	 * @param obj the object to load
+	 * @see Context.initializeLazyProperties(Object)
+	 */
+	public void initializeLazyProperties(Object obj);
+	
 	/**
 	 * Starts the OpenMRS System Should be called prior to any kind of activity
 	 * 
@@ -18,6 +18,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
@@ -60,6 +61,11 @@ public interface EncounterDAO {
 	 */
 	public List<Encounter> getEncountersByPatientId(Integer patientId) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.EncounterService#getEncountersForListing(java.lang.String)
+	 */
+	public List<EncounterSearchResult> getEncountersForListing(String identifier) throws DAOException;
+	
 	/**
 	 * Get all encounters that match a variety of (nullable) criteria
 	 * 
@@ -79,6 +79,12 @@ public interface ObsDAO {
 	                                 List<String> sort, Integer mostRecentN, Integer obsGroupId, Date fromDate, Date toDate,
 	                                 boolean includeVoidedObs) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.ObsService#getObservationsForListing(org.openmrs.Person,
+	 *      org.openmrs.Concept, org.openmrs.Encounter)
+	 */
+	public List<Obs> getObservationsForListing(Person who, Concept question, Encounter encounter) throws DAOException;
+	
 	/**
 	 * Auto generated method comment
 	 * 
@@ -19,6 +19,8 @@ import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PatientSearchResult;
+import org.openmrs.PersonAttributeType;
 import org.openmrs.Tribe;
 
 /**
@@ -136,4 +138,28 @@ public interface PatientDAO {
 	 */
     public boolean isIdentifierInUseByAnotherPatient(PatientIdentifier patientIdentifier);
 	
+	/**
+	 * Searches the in-memory patient search index. Must only be called once
+	 * {@link #isPatientSearchIndexBuilt()} is true.
+	 * 
+	 * @param query the names and/or identifiers to search for
+	 * @param attributeTypes the person attributes to fill in on each result
+	 * @param maxResults the most results to return
+	 * @return the best matches, best first
+	 * @see org.openmrs.api.PatientService#getPatientSearchResults(String)
+	 */
+	public List<PatientSearchResult> getPatientSearchResults(String query, List<PersonAttributeType> attributeTypes,
+	                                                         int maxResults) throws DAOException;
+	
+	/**
+	 * @return true if patient searches can be answered by
+	 *         {@link #getPatientSearchResults(String, List, int)}
+	 */
+	public boolean isPatientSearchIndexBuilt();
+	
+	/**
+	 * @see org.openmrs.api.PatientService#rebuildPatientSearchIndex()
+	 */
+	public void rebuildPatientSearchIndex() throws DAOException;
+	
 }
@@ -0,0 +1,302 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.engine.TypedValue;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * An "in" restriction on an integer property (usually a patient or person id) that is split into
+ * chunks of at most {@link #getChunkSize()} ids. This keeps cohort-scoped queries from building
+ * statements with hundreds of thousands of parameters. <br/>
+ * <br/>
+ * The criteria is run once per chunk. Every id is in exactly one chunk, so rows for the same
+ * patient always come back together and in the order requested. The ids are chunked in ascending
+ * order, so a query ordered by ascending patient id first keeps its order when the chunks are put
+ * together. Any other order across patients is only kept within a chunk, and callers that need it
+ * should {@link #merge(List, List, Comparator)} the chunks. Typical use:
+ * 
+ * <pre>
+ * ChunkedInExpression patientIds = new ChunkedInExpression(&quot;person.personId&quot;, cohort.getMemberIds());
+ * criteria.add(patientIds);
+ * do {
+ * 	for (Obs obs : (List&lt;Obs&gt;) criteria.list())
+ * 		...
+ * } while (patientIds.nextChunk());
+ * </pre>
+ * 
+ * Each chunk's rows can be handled as they come back instead of holding all of them at once. When
+ * that is not needed, {@link #list(Criteria, String, Collection)} does the loop.
+ * 
+ * @see OpenmrsConstants#GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE
+ */
+public class ChunkedInExpression implements Criterion {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static Log log = LogFactory.getLog(ChunkedInExpression.class);
+	
+	/**
+	 * Number of ids per chunk used if the global property is not set or is invalid
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	
+	private String propertyName;
+	
+	private List<List<Integer>> chunks;
+	
+	private int currentChunk = 0;
+	
+	/**
+	 * Restricts the given property to the given ids, using the configured chunk size
+	 * 
+	 * @param propertyName the property to restrict
+	 * @param ids the allowed values
+	 */
+	public ChunkedInExpression(String propertyName, Collection<Integer> ids) {
+		this(propertyName, ids, getChunkSize());
+	}
+	
+	/**
+	 * Restricts the given property to the given ids
+	 * 
+	 * @param propertyName the property to restrict
+	 * @param ids the allowed values
+	 * @param chunkSize maximum number of ids per query
+	 */
+	public ChunkedInExpression(String propertyName, Collection<Integer> ids, int chunkSize) {
+		this.propertyName = propertyName;
+		this.chunks = split(ids, chunkSize);
+	}
+	
+	/**
+	 * Moves to the next chunk of ids. The criteria this expression was added to should be listed
+	 * again afterwards
+	 * 
+	 * @return false if there are no more chunks
+	 */
+	public boolean nextChunk() {
+		if (currentChunk + 1 >= chunks.size())
+			return false;
+		currentChunk++;
+		return true;
+	}
+	
+	/**
+	 * @return the ids in the chunk that the next query will be restricted to
+	 */
+	public List<Integer> getCurrentChunk() {
+		return chunks.get(currentChunk);
+	}
+	
+	/**
+	 * @see org.hibernate.criterion.Criterion#toSqlString(org.hibernate.Criteria,
+	 *      org.hibernate.criterion.CriteriaQuery)
+	 */
+	public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		List<Integer> chunk = getCurrentChunk();
+		
+		// "in ()" is not valid sql
+		if (chunk.isEmpty())
+			return "1=0";
+		
+		String column = criteriaQuery.getColumnsUsingProjection(criteria, propertyName)[0];
+		StringBuilder sql = new StringBuilder(column.length() + 6 + chunk.size() * 3);
+		sql.append(column).append(" in (");
+		for (int i = 0; i < chunk.size(); i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append("?");
+		}
+		return sql.append(")").toString();
+	}
+	
+	/**
+	 * @see org.hibernate.criterion.Criterion#getTypedValues(org.hibernate.Criteria,
+	 *      org.hibernate.criterion.CriteriaQuery)
+	 */
+	public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) throws HibernateException {
+		List<Integer> chunk = getCurrentChunk();
+		TypedValue[] values = new TypedValue[chunk.size()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = criteriaQuery.getTypedValue(criteria, propertyName, chunk.get(i));
+		return values;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return propertyName + " in (chunk " + (currentChunk + 1) + " of " + chunks.size() + ", " + getCurrentChunk().size()
+		        + " ids)";
+	}
+	
+	/**
+	 * Adds a chunked restriction on the given property to the criteria, lists it once per chunk and
+	 * returns all of the rows together
+	 * 
+	 * @param criteria the criteria to run
+	 * @param propertyName the property to restrict
+	 * @param ids the allowed values
+	 * @return the rows for every chunk
+	 */
+	public static <T> List<T> list(Criteria criteria, String propertyName, Collection<Integer> ids) {
+		return list(criteria, propertyName, ids, null);
+	}
+	
+	/**
+	 * Adds a chunked restriction on the given property to the criteria, lists it once per chunk and
+	 * merges the rows of the chunks in the given order. Use this when the criteria is ordered by
+	 * something other than ascending patient id first
+	 * 
+	 * @param criteria the criteria to run
+	 * @param propertyName the property to restrict
+	 * @param ids the allowed values
+	 * @param order the order the criteria sorts its rows in, or null to just append the chunks
+	 * @return the rows for every chunk, in order
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> list(Criteria criteria, String propertyName, Collection<Integer> ids,
+	                               Comparator<? super T> order) {
+		ChunkedInExpression expression = new ChunkedInExpression(propertyName, ids);
+		criteria.add(expression);
+		List<T> ret = new ArrayList<T>();
+		do {
+			ret = merge(ret, criteria.list(), order);
+		} while (expression.nextChunk());
+		return ret;
+	}
+	
+	/**
+	 * Runs an hql query once per chunk of ids, setting the chunk as the given parameter list each
+	 * time, and returns all of the rows together
+	 * 
+	 * @param query the query to run
+	 * @param parameterName name of the parameter list holding the ids in the query
+	 * @param ids the ids to bind
+	 * @return the rows for every chunk
+	 */
+	public static <T> List<T> list(Query query, String parameterName, Collection<Integer> ids) {
+		return list(query, parameterName, ids, null);
+	}
+	
+	/**
+	 * Runs an hql query once per chunk of ids, setting the chunk as the given parameter list each
+	 * time, and merges the rows of the chunks in the given order
+	 * 
+	 * @param query the query to run
+	 * @param parameterName name of the parameter list holding the ids in the query
+	 * @param ids the ids to bind
+	 * @param order the order the query sorts its rows in, or null to just append the chunks
+	 * @return the rows for every chunk, in order
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> list(Query query, String parameterName, Collection<Integer> ids,
+	                               Comparator<? super T> order) {
+		List<T> ret = new ArrayList<T>();
+		for (List<Integer> chunk : split(ids, getChunkSize())) {
+			if (chunk.isEmpty())
+				continue;
+			query.setParameterList(parameterName, chunk);
+			ret = merge(ret, query.list(), order);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Merges the sorted rows of one chunk into the sorted rows of the chunks before it. Rows that
+	 * are equal keep the order they came back in, earlier chunks first
+	 * 
+	 * @param rows the rows so far, sorted by order
+	 * @param chunkRows the rows of the next chunk, sorted by order
+	 * @param order the order both lists are sorted in, or null to append chunkRows to rows
+	 * @return a list with the rows of both, sorted by order
+	 */
+	public static <T> List<T> merge(List<T> rows, List<T> chunkRows, Comparator<? super T> order) {
+		if (order == null || rows.isEmpty() || chunkRows.isEmpty()) {
+			rows.addAll(chunkRows);
+			return rows;
+		}
+		
+		List<T> ret = new ArrayList<T>(rows.size() + chunkRows.size());
+		int i = 0;
+		int j = 0;
+		while (i < rows.size() && j < chunkRows.size()) {
+			if (order.compare(chunkRows.get(j), rows.get(i)) < 0)
+				ret.add(chunkRows.get(j++));
+			else
+				ret.add(rows.get(i++));
+		}
+		ret.addAll(rows.subList(i, rows.size()));
+		ret.addAll(chunkRows.subList(j, chunkRows.size()));
+		return ret;
+	}
+	
+	/**
+	 * Splits ids into ascending lists of at most chunkSize elements. There is always at least one
+	 * (possibly empty) chunk
+	 * 
+	 * @param ids
+	 * @param chunkSize
+	 * @return the chunks
+	 */
+	public static List<List<Integer>> split(Collection<Integer> ids, int chunkSize) {
+		if (chunkSize < 1)
+			chunkSize = DEFAULT_CHUNK_SIZE;
+		
+		SortedSet<Integer> sortedIds = new TreeSet<Integer>(ids);
+		
+		List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+		List<Integer> chunk = new ArrayList<Integer>(Math.min(chunkSize, sortedIds.size()));
+		for (Integer id : sortedIds) {
+			if (chunk.size() == chunkSize) {
+				chunks.add(chunk);
+				chunk = new ArrayList<Integer>(chunkSize);
+			}
+			chunk.add(id);
+		}
+		chunks.add(chunk);
+		return chunks;
+	}
+	
+	/**
+	 * @return the maximum number of ids per query, from the
+	 *         {@link OpenmrsConstants#GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE} global property
+	 */
+	public static int getChunkSize() {
+		int chunkSize = Context.getAdministrationService().getGlobalPropertyValue(
+		    OpenmrsConstants.GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+		if (chunkSize > 0)
+			return chunkSize;
+		log.warn("The global property " + OpenmrsConstants.GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE
+		        + " should be a positive integer. Using the default " + DEFAULT_CHUNK_SIZE);
+		return DEFAULT_CHUNK_SIZE;
+	}
+}
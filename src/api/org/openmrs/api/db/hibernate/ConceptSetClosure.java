@@ -0,0 +1,223 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The concept_set table as a graph, used to work out what the concept_set_derived table should
+ * hold: a row for every concept that is in a set directly, or in a set that is in that set, and so
+ * on to any depth. <br/>
+ * <br/>
+ * Each derived row takes the sort weight the concept has in the set it is directly in. When a
+ * concept can be reached by several paths, the shortest one wins, so a concept that is also a
+ * direct member keeps its own sort weight. A set that contains itself, through any number of other
+ * sets, is recorded in {@link #getCyclicSets()} and is not made a member of itself.
+ * 
+ * @see HibernateConceptDAO#updateConceptSetDerived()
+ */
+public class ConceptSetClosure {
+	
+	private Map<Integer, List<Member>> members = new HashMap<Integer, List<Member>>();
+	
+	private Map<Integer, List<Integer>> parents = new HashMap<Integer, List<Integer>>();
+	
+	private Set<Integer> cyclicSets = new TreeSet<Integer>();
+	
+	/**
+	 * Adds a row of the concept_set table. Members of a set should be added in sort order
+	 * 
+	 * @param conceptSetId the set
+	 * @param conceptId the member
+	 * @param sortWeight the position of the member in the set
+	 */
+	public void addMember(Integer conceptSetId, Integer conceptId, Double sortWeight) {
+		List<Member> setMembers = members.get(conceptSetId);
+		if (setMembers == null) {
+			setMembers = new ArrayList<Member>();
+			members.put(conceptSetId, setMembers);
+		}
+		setMembers.add(new Member(conceptId, sortWeight));
+		
+		List<Integer> conceptParents = parents.get(conceptId);
+		if (conceptParents == null) {
+			conceptParents = new ArrayList<Integer>(1);
+			parents.put(conceptId, conceptParents);
+		}
+		conceptParents.add(conceptSetId);
+	}
+	
+	/**
+	 * @return the ids of all concepts that have members
+	 */
+	public Set<Integer> getSetIds() {
+		return members.keySet();
+	}
+	
+	/**
+	 * Gets every concept in the given set, at any depth, with the sort weight its derived row should
+	 * have. The set is walked breadth first without recursion.
+	 * 
+	 * @param conceptSetId
+	 * @return concept id to sort weight, nearest members first
+	 */
+	public Map<Integer, Double> getDescendants(Integer conceptSetId) {
+		Map<Integer, Double> descendants = new LinkedHashMap<Integer, Double>();
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		queue.add(conceptSetId);
+		while (!queue.isEmpty()) {
+			List<Member> setMembers = members.get(queue.removeFirst());
+			if (setMembers == null)
+				continue;
+			for (Member member : setMembers) {
+				if (member.conceptId.equals(conceptSetId)) {
+					cyclicSets.add(conceptSetId);
+				} else if (!descendants.containsKey(member.conceptId)) {
+					descendants.put(member.conceptId, member.sortWeight);
+					queue.add(member.conceptId);
+				}
+			}
+		}
+		return descendants;
+	}
+	
+	/**
+	 * Gets every set that contains the given concept, at any depth
+	 * 
+	 * @param conceptId
+	 * @return the set ids, not including conceptId itself
+	 */
+	public Set<Integer> getAncestors(Integer conceptId) {
+		Set<Integer> ancestors = new HashSet<Integer>();
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		queue.add(conceptId);
+		while (!queue.isEmpty()) {
+			List<Integer> conceptParents = parents.get(queue.removeFirst());
+			if (conceptParents == null)
+				continue;
+			for (Integer parent : conceptParents) {
+				if (!parent.equals(conceptId) && ancestors.add(parent))
+					queue.add(parent);
+			}
+		}
+		return ancestors;
+	}
+	
+	/**
+	 * @return the sets found, so far, to contain themselves
+	 */
+	public Set<Integer> getCyclicSets() {
+		return cyclicSets;
+	}
+	
+	/**
+	 * Works out the changes needed to bring the derived rows of one set up to date
+	 * 
+	 * @param conceptSetId the set
+	 * @param existing the concept ids and sort weights currently in concept_set_derived for the set
+	 * @return the rows to insert, update and delete
+	 */
+	public Delta getDelta(Integer conceptSetId, Map<Integer, Double> existing) {
+		Delta delta = new Delta(conceptSetId);
+		Map<Integer, Double> descendants = getDescendants(conceptSetId);
+		for (Map.Entry<Integer, Double> descendant : descendants.entrySet()) {
+			if (!existing.containsKey(descendant.getKey()))
+				delta.inserts.put(descendant.getKey(), descendant.getValue());
+			else if (!equal(existing.get(descendant.getKey()), descendant.getValue()))
+				delta.updates.put(descendant.getKey(), descendant.getValue());
+		}
+		for (Integer conceptId : existing.keySet()) {
+			if (!descendants.containsKey(conceptId))
+				delta.deletes.add(conceptId);
+		}
+		return delta;
+	}
+	
+	private static boolean equal(Double a, Double b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+	/**
+	 * A member of a set, as in the concept_set table
+	 */
+	private static class Member {
+		
+		private Integer conceptId;
+		
+		private Double sortWeight;
+		
+		public Member(Integer conceptId, Double sortWeight) {
+			this.conceptId = conceptId;
+			this.sortWeight = sortWeight;
+		}
+	}
+	
+	/**
+	 * The changes to make to the concept_set_derived rows of one set
+	 */
+	public static class Delta {
+		
+		private Integer conceptSetId;
+		
+		private Map<Integer, Double> inserts = new LinkedHashMap<Integer, Double>();
+		
+		private Map<Integer, Double> updates = new LinkedHashMap<Integer, Double>();
+		
+		private List<Integer> deletes = new ArrayList<Integer>();
+		
+		public Delta(Integer conceptSetId) {
+			this.conceptSetId = conceptSetId;
+		}
+		
+		public Integer getConceptSetId() {
+			return conceptSetId;
+		}
+		
+		/**
+		 * @return concept id to sort weight of the rows to add
+		 */
+		public Map<Integer, Double> getInserts() {
+			return inserts;
+		}
+		
+		/**
+		 * @return concept id to new sort weight of the rows whose sort weight changed
+		 */
+		public Map<Integer, Double> getUpdates() {
+			return updates;
+		}
+		
+		/**
+		 * @return concept ids of the rows to remove
+		 */
+		public List<Integer> getDeletes() {
+			return deletes;
+		}
+		
+		/**
+		 * @return true if nothing needs to change
+		 */
+		public boolean isEmpty() {
+			return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+		}
+	}
+}
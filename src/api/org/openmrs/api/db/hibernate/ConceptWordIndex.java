@@ -0,0 +1,475 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptWord;
+
+/**
+ * An in-memory copy of the concept_word table that answers the same prefix searches as
+ * {@link HibernateConceptDAO#getConceptWords(String, List, boolean, List, List, List, List, Concept, Integer, Integer)}
+ * without going to the database. <br/>
+ * <br/>
+ * Words are kept in a sorted term dictionary, each term pointing at the concept names it occurs in,
+ * so a prefix search is a range scan over the dictionary. The class, datatype and retired flag of
+ * every concept are kept alongside so that the usual filters can be applied in memory too. Matches
+ * come back ordered by word and then by concept id, which makes paging through them stable. <br/>
+ * <br/>
+ * The index is safe to search from many threads while it is being updated. Changes are worked out
+ * with {@link #changeOf(Concept)} while the concept can still be read, so that they can be applied
+ * once the transaction that saved the concept has committed.
+ * 
+ * @see org.openmrs.util.OpenmrsConstants#GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED
+ */
+public class ConceptWordIndex {
+	
+	/**
+	 * word -> every indexed occurrence of that word
+	 */
+	private SortedMap<String, List<IndexedWord>> terms = new TreeMap<String, List<IndexedWord>>();
+	
+	/**
+	 * concept id -> every indexed word of that concept
+	 */
+	private Map<Integer, List<IndexedWord>> conceptWords = new HashMap<Integer, List<IndexedWord>>();
+	
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Builds an index of all of the given concepts
+	 * 
+	 * @param concepts the concepts to index (usually from {@link HibernateConceptDAO#conceptIterator()})
+	 */
+	public ConceptWordIndex(Iterator<Concept> concepts) {
+		while (concepts.hasNext())
+			updateConcept(concepts.next());
+	}
+	
+	/**
+	 * Replaces the indexed words for the given concept with the words currently in its names. This
+	 * mirrors what {@link HibernateConceptDAO#updateConceptWord(Concept)} does to the concept_word
+	 * table.
+	 * 
+	 * @param concept the concept that was saved
+	 */
+	public void updateConcept(Concept concept) {
+		apply(changeOf(concept));
+	}
+	
+	/**
+	 * Drops every indexed word for the given concept
+	 * 
+	 * @param conceptId the concept that was purged
+	 */
+	public void removeConcept(Integer conceptId) {
+		apply(removalOf(conceptId));
+	}
+	
+	/**
+	 * Works out the words the given concept should have in the index, without changing the index
+	 * 
+	 * @param concept the concept that was saved
+	 * @return the change to {@link #apply(Change)}, or null if the concept has not been saved yet
+	 */
+	public static Change changeOf(Concept concept) {
+		if (concept == null || concept.getConceptId() == null)
+			return null;
+		
+		IndexedConcept indexedConcept = new IndexedConcept(concept);
+		List<IndexedWord> words = new ArrayList<IndexedWord>();
+		for (ConceptWord word : ConceptWord.makeConceptWords(concept))
+			words.add(new IndexedWord(indexedConcept, word));
+		return new Change(concept.getConceptId(), words);
+	}
+	
+	/**
+	 * @param conceptId the concept that was purged
+	 * @return the change that drops every word of the concept from the index
+	 */
+	public static Change removalOf(Integer conceptId) {
+		return new Change(conceptId, null);
+	}
+	
+	/**
+	 * Replaces the indexed words of a concept with the words in the given change. Applying the same
+	 * change twice leaves the index as it was after the first time
+	 * 
+	 * @param change the change from {@link #changeOf(Concept)} or {@link #removalOf(Integer)}
+	 */
+	public void apply(Change change) {
+		if (change == null)
+			return;
+		
+		lock.writeLock().lock();
+		try {
+			removeWords(change.conceptId);
+			if (change.words == null)
+				return;
+			conceptWords.put(change.conceptId, change.words);
+			for (IndexedWord word : change.words) {
+				List<IndexedWord> postings = terms.get(word.word);
+				if (postings == null) {
+					postings = new ArrayList<IndexedWord>(2);
+					terms.put(word.word, postings);
+				}
+				
+				// keep postings in concept id order
+				int i = postings.size();
+				while (i > 0 && postings.get(i - 1).concept.conceptId > word.concept.conceptId)
+					i--;
+				postings.add(i, word);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Must be called while holding the write lock
+	 */
+	private void removeWords(Integer conceptId) {
+		List<IndexedWord> words = conceptWords.remove(conceptId);
+		if (words == null)
+			return;
+		for (IndexedWord word : words) {
+			List<IndexedWord> postings = terms.get(word.word);
+			if (postings == null)
+				continue;
+			for (Iterator<IndexedWord> i = postings.iterator(); i.hasNext();) {
+				if (i.next() == word)
+					i.remove();
+			}
+			if (postings.isEmpty())
+				terms.remove(word.word);
+		}
+	}
+	
+	/**
+	 * Finds the words of concepts that have a word starting with each of the given words. Just like
+	 * the database search, the occurrences of the first word are returned and the other words only
+	 * have to appear somewhere in the same concept in one of the given locales. If no words are
+	 * given, all words of the answer concepts are returned.
+	 * 
+	 * @param words the uppercased words to search on (see {@link ConceptWord#getUniqueWords(String)})
+	 * @param locales only words in these locales are matched
+	 * @param includeRetired whether words of retired concepts are returned
+	 * @param requireClasses if not empty, the concept must be in one of these classes
+	 * @param excludeClasses the concept must not be in one of these classes
+	 * @param requireDatatypes if not empty, the concept must have one of these datatypes
+	 * @param excludeDatatypes the concept must not have one of these datatypes
+	 * @param answers if not empty, the concept must be one of these
+	 * @param start the number of matches to skip, or null to start at the first one
+	 * @param size the maximum number of matches to return, or null to return all of them
+	 * @return the matching words in word and then concept id order
+	 */
+	public List<IndexedWord> search(List<String> words, Collection<Locale> locales, boolean includeRetired,
+	                                Collection<ConceptClass> requireClasses, Collection<ConceptClass> excludeClasses,
+	                                Collection<ConceptDatatype> requireDatatypes,
+	                                Collection<ConceptDatatype> excludeDatatypes, Collection<Concept> answers,
+	                                Integer start, Integer size) {
+		Filter filter = new Filter(locales, includeRetired, requireClasses, excludeClasses, requireDatatypes,
+		        excludeDatatypes, answers);
+		int toSkip = start == null ? 0 : start;
+		int maxResults = size == null ? Integer.MAX_VALUE : size;
+		List<IndexedWord> ret = new ArrayList<IndexedWord>();
+		
+		lock.readLock().lock();
+		try {
+			// every concept has to have a word matching each of the other search words
+			List<Set<Integer>> otherWords = new ArrayList<Set<Integer>>();
+			for (int i = 1; i < words.size(); i++) {
+				Set<Integer> conceptIds = new HashSet<Integer>();
+				for (List<IndexedWord> postings : prefixRange(words.get(i)).values())
+					for (IndexedWord word : postings)
+						if (filter.locales.contains(word.locale))
+							conceptIds.add(word.concept.conceptId);
+				otherWords.add(conceptIds);
+			}
+			
+			Collection<List<IndexedWord>> candidates;
+			if (words.size() > 0)
+				candidates = prefixRange(words.get(0)).values();
+			else
+				candidates = answerWords(filter.answerIds);
+			
+			for (List<IndexedWord> postings : candidates) {
+				for (IndexedWord word : postings) {
+					if (ret.size() >= maxResults)
+						return ret;
+					if (!filter.matches(word) || !inAll(word.concept.conceptId, otherWords))
+						continue;
+					if (toSkip > 0)
+						toSkip--;
+					else
+						ret.add(word);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * @return the number of indexed words
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			int size = 0;
+			for (List<IndexedWord> words : conceptWords.values())
+				size += words.size();
+			return size;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of distinct words in the term dictionary
+	 */
+	public int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return terms.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Must be called while holding the read lock
+	 */
+	private SortedMap<String, List<IndexedWord>> prefixRange(String prefix) {
+		return terms.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+	
+	/**
+	 * Must be called while holding the read lock
+	 */
+	private Collection<List<IndexedWord>> answerWords(Set<Integer> answerIds) {
+		// answers are ordered by concept id here, as there is no search word to order by
+		SortedMap<Integer, List<IndexedWord>> ret = new TreeMap<Integer, List<IndexedWord>>();
+		if (answerIds != null)
+			for (Integer answerId : answerIds)
+				if (conceptWords.containsKey(answerId))
+					ret.put(answerId, conceptWords.get(answerId));
+		return ret.values();
+	}
+	
+	private static boolean inAll(Integer conceptId, List<Set<Integer>> conceptIdSets) {
+		for (Set<Integer> conceptIds : conceptIdSets)
+			if (!conceptIds.contains(conceptId))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * The words one concept has in the index after it was saved or purged
+	 */
+	public static class Change {
+		
+		private Integer conceptId;
+		
+		/**
+		 * null if the concept was purged
+		 */
+		private List<IndexedWord> words;
+		
+		private Change(Integer conceptId, List<IndexedWord> words) {
+			this.conceptId = conceptId;
+			this.words = words;
+		}
+		
+		/**
+		 * @return the id of the changed concept
+		 */
+		public Integer getConceptId() {
+			return conceptId;
+		}
+	}
+	
+	/**
+	 * One occurrence of a word in a concept name
+	 */
+	public static class IndexedWord {
+		
+		private IndexedConcept concept;
+		
+		private Integer conceptNameId;
+		
+		private String word;
+		
+		private Locale locale;
+		
+		private IndexedWord(IndexedConcept concept, ConceptWord word) {
+			this.concept = concept;
+			this.conceptNameId = word.getConceptName().getConceptNameId();
+			this.word = word.getWord();
+			this.locale = word.getLocale();
+		}
+		
+		/**
+		 * @return the id of the concept the word is in
+		 */
+		public Integer getConceptId() {
+			return concept.conceptId;
+		}
+		
+		/**
+		 * @return the id of the concept name the word is in
+		 */
+		public Integer getConceptNameId() {
+			return conceptNameId;
+		}
+		
+		/**
+		 * @return the uppercased word
+		 */
+		public String getWord() {
+			return word;
+		}
+		
+		/**
+		 * @return the locale of the concept name the word is in
+		 */
+		public Locale getLocale() {
+			return locale;
+		}
+		
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return concept.conceptId + "|" + word + "|" + locale;
+		}
+	}
+	
+	/**
+	 * The properties of a concept that searches can filter on
+	 */
+	private static class IndexedConcept {
+		
+		private Integer conceptId;
+		
+		private Integer conceptClassId;
+		
+		private Integer datatypeId;
+		
+		private boolean retired;
+		
+		IndexedConcept(Concept concept) {
+			conceptId = concept.getConceptId();
+			if (concept.getConceptClass() != null)
+				conceptClassId = concept.getConceptClass().getConceptClassId();
+			if (concept.getDatatype() != null)
+				datatypeId = concept.getDatatype().getConceptDatatypeId();
+			retired = Boolean.TRUE.equals(concept.isRetired());
+		}
+	}
+	
+	/**
+	 * The restrictions of one search, turned into ids
+	 */
+	private static class Filter {
+		
+		private Collection<Locale> locales;
+		
+		private boolean includeRetired;
+		
+		private Set<Integer> requireClassIds;
+		
+		private Set<Integer> excludeClassIds;
+		
+		private Set<Integer> requireDatatypeIds;
+		
+		private Set<Integer> excludeDatatypeIds;
+		
+		private Set<Integer> answerIds;
+		
+		Filter(Collection<Locale> locales, boolean includeRetired, Collection<ConceptClass> requireClasses,
+		    Collection<ConceptClass> excludeClasses, Collection<ConceptDatatype> requireDatatypes,
+		    Collection<ConceptDatatype> excludeDatatypes, Collection<Concept> answers) {
+			this.locales = new HashSet<Locale>(locales);
+			this.includeRetired = includeRetired;
+			
+			if (requireClasses != null && requireClasses.size() > 0) {
+				requireClassIds = new HashSet<Integer>();
+				for (ConceptClass cc : requireClasses)
+					requireClassIds.add(cc.getConceptClassId());
+			}
+			if (excludeClasses != null && excludeClasses.size() > 0) {
+				excludeClassIds = new HashSet<Integer>();
+				for (ConceptClass cc : excludeClasses)
+					excludeClassIds.add(cc.getConceptClassId());
+			}
+			if (requireDatatypes != null && requireDatatypes.size() > 0) {
+				requireDatatypeIds = new HashSet<Integer>();
+				for (ConceptDatatype dt : requireDatatypes)
+					requireDatatypeIds.add(dt.getConceptDatatypeId());
+			}
+			if (excludeDatatypes != null && excludeDatatypes.size() > 0) {
+				excludeDatatypeIds = new HashSet<Integer>();
+				for (ConceptDatatype dt : excludeDatatypes)
+					excludeDatatypeIds.add(dt.getConceptDatatypeId());
+			}
+			if (answers != null && answers.size() > 0) {
+				answerIds = new HashSet<Integer>();
+				for (Concept answer : answers)
+					answerIds.add(answer.getConceptId());
+			}
+		}
+		
+		boolean matches(IndexedWord word) {
+			IndexedConcept c = word.concept;
+			if (!locales.contains(word.locale))
+				return false;
+			if (!includeRetired && c.retired)
+				return false;
+			if (answerIds != null && !answerIds.contains(c.conceptId))
+				return false;
+			if (requireClassIds != null && !requireClassIds.contains(c.conceptClassId))
+				return false;
+			if (excludeClassIds != null && excludeClassIds.contains(c.conceptClassId))
+				return false;
+			if (requireDatatypeIds != null && !requireDatatypeIds.contains(c.datatypeId))
+				return false;
+			if (excludeDatatypeIds != null && excludeDatatypeIds.contains(c.datatypeId))
+				return false;
+			return true;
+		}
+	}
+}
@@ -19,6 +19,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -30,6 +31,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.metadata.CollectionMetadata;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.openmrs.CacheStatistic;
 import org.openmrs.DataEntryStatistic;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
@@ -459,6 +465,9 @@ public class HibernateAdministrationDAO implements AdministrationDAO {
 				List<Object> row = new Vector<Object>();
 				row.add(i);
 				results.add(row);
+				
+				// there's no telling what was changed
+				clearCache();
 			} else {
 				ResultSet resultSet = ps.executeQuery();
 				
@@ -482,6 +491,54 @@ public class HibernateAdministrationDAO implements AdministrationDAO {
 		return results;
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.AdministrationDAO#getCacheStatistics()
+	 */
+	public List<CacheStatistic> getCacheStatistics() throws DAOException {
+		Statistics statistics = sessionFactory.getStatistics();
+		String[] regions = statistics.getSecondLevelCacheRegionNames();
+		Arrays.sort(regions);
+		
+		List<CacheStatistic> cacheStatistics = new ArrayList<CacheStatistic>(regions.length);
+		for (String region : regions) {
+			SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+			cacheStatistics.add(new CacheStatistic(region, regionStatistics.getElementCountInMemory(), regionStatistics
+			        .getHitCount(), regionStatistics.getMissCount(), regionStatistics.getPutCount()));
+		}
+		return cacheStatistics;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.AdministrationDAO#isCacheStatisticsEnabled()
+	 */
+	public boolean isCacheStatisticsEnabled() throws DAOException {
+		return sessionFactory.getStatistics().isStatisticsEnabled();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.AdministrationDAO#setCacheStatisticsEnabled(boolean)
+	 */
+	public void setCacheStatisticsEnabled(boolean enabled) throws DAOException {
+		Statistics statistics = sessionFactory.getStatistics();
+		if (enabled && !statistics.isStatisticsEnabled())
+			statistics.clear();
+		statistics.setStatisticsEnabled(enabled);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.AdministrationDAO#clearCache()
+	 */
+	@SuppressWarnings("unchecked")
+	public void clearCache() throws DAOException {
+		Map<String, ClassMetadata> classes = sessionFactory.getAllClassMetadata();
+		for (String entityName : classes.keySet())
+			sessionFactory.evictEntity(entityName);
+		Map<String, CollectionMetadata> collections = sessionFactory.getAllCollectionMetadata();
+		for (String role : collections.keySet())
+			sessionFactory.evictCollection(role);
+		sessionFactory.evictQueries();
+	}
+	
 	/**
 	 * @see org.openmrs.api.db.AdministrationDAO#getImplementationId()
 	 */
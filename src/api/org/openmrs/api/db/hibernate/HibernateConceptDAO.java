@@ -15,20 +15,25 @@ package org.openmrs.api.db.hibernate;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
-import org.hibernate.NonUniqueObjectException;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.DetachedCriteria;
@@ -50,7 +55,6 @@ import org.openmrs.ConceptNameTag;
 import org.openmrs.ConceptNumeric;
 import org.openmrs.ConceptProposal;
 import org.openmrs.ConceptSet;
-import org.openmrs.ConceptSetDerived;
 import org.openmrs.ConceptSource;
 import org.openmrs.ConceptWord;
 import org.openmrs.Drug;
@@ -58,6 +62,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.api.db.ConceptDAO;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.TransactionUtil;
 
 /**
  * The Hibernate class for Concepts, Drugs, and related classes
@@ -70,6 +75,23 @@ public class HibernateConceptDAO implements ConceptDAO {
 	
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * In-memory copy of the concept_word table. Null until {@link #rebuildConceptWordIndex()} has
+	 * been called, in which case searches go to the database
+	 */
+	private volatile ConceptWordIndex conceptWordIndex = null;
+	
+	/**
+	 * Guards changes to {@link #conceptWordIndex} and {@link #conceptWordIndexChanges}
+	 */
+	private final Object conceptWordIndexLock = new Object();
+	
+	/**
+	 * Changes committed while {@link #rebuildConceptWordIndex()} is building a new index, to be
+	 * applied to the new index before it replaces the old one. Null when no rebuild is running
+	 */
+	private List<ConceptWordIndex.Change> conceptWordIndexChanges = null;
+	
 	/**
 	 * Sets the session factory
 	 * 
@@ -147,6 +169,8 @@ public class HibernateConceptDAO implements ConceptDAO {
 		sessionFactory.getCurrentSession().createQuery("delete from ConceptWord where concept_id = :c").setInteger("c",
 		    concept.getConceptId()).executeUpdate();
 		
+		updateConceptWordIndex(ConceptWordIndex.removalOf(concept.getConceptId()));
+		
 		// now we can safely delete the concept
 		sessionFactory.getCurrentSession().delete(concept);
 	}
@@ -158,6 +182,42 @@ public class HibernateConceptDAO implements ConceptDAO {
 		return (Concept) sessionFactory.getCurrentSession().get(Concept.class, conceptId);
 	}
 	
+	/**
+	 * The concepts are fetched 500 at a time, each batch with one query for the names and their
+	 * tags and one for the descriptions. Numeric concepts come back as ConceptNumerics. The concepts
+	 * stay in the session, so later lookups of them by id (and lazy proxies to them) do not go back
+	 * to the database.
+	 * 
+	 * @see org.openmrs.api.db.ConceptDAO#getConceptsForListing(java.util.Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Concept> getConceptsForListing(Collection<Integer> conceptIds) throws DAOException {
+		Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+		List<Integer> ids = new Vector<Integer>(new HashSet<Integer>(conceptIds));
+		for (int start = 0; start < ids.size(); start += 500) {
+			List<Integer> batch = ids.subList(start, Math.min(start + 500, ids.size()));
+			Query query = sessionFactory.getCurrentSession().createQuery(
+			    "select distinct c from Concept c left join fetch c.names n left join fetch n.tags "
+			            + "where c.conceptId in (:ids)");
+			query.setParameterList("ids", batch);
+			for (Concept concept : (List<Concept>) query.list())
+				concepts.put(concept.getConceptId(), concept);
+			
+			query = sessionFactory.getCurrentSession().createQuery(
+			    "select distinct c from Concept c left join fetch c.descriptions where c.conceptId in (:ids)");
+			query.setParameterList("ids", batch);
+			query.list();
+		}
+		
+		List<Concept> ret = new Vector<Concept>(concepts.size());
+		for (Integer conceptId : conceptIds) {
+			Concept concept = concepts.remove(conceptId);
+			if (concept != null)
+				ret.add(concept);
+		}
+		return ret;
+	}
+	
 	/**
 	 * @see org.openmrs.api.db.ConceptDAO#getConceptName(java.lang.Integer)
 	 */
@@ -289,6 +349,7 @@ public class HibernateConceptDAO implements ConceptDAO {
 		if (includeRetired == false)
 			crit.add(Expression.eq("retired", false));
 		
+		crit.setCacheable(true);
 		return crit.list();
 	}
 	
@@ -324,6 +385,7 @@ public class HibernateConceptDAO implements ConceptDAO {
 		if (includeRetired == false)
 			crit.add(Expression.eq("retired", false));
 		
+		crit.setCacheable(true);
 		return crit.list();
 	}
 	
@@ -445,6 +507,29 @@ public class HibernateConceptDAO implements ConceptDAO {
 		
 		List<ConceptWord> conceptWords = new Vector<ConceptWord>();
 		
+		// answer from memory if the word index has been built
+		ConceptWordIndex index = conceptWordIndex;
+		if (index != null) {
+			if (words.size() > 0 || !answers.isEmpty()) {
+				List<ConceptWordIndex.IndexedWord> found = index.search(words, locales, includeRetired, requireClasses,
+				    excludeClasses, requireDatatypes, excludeDatatypes, answers, start, size);
+				
+				// fetch the concepts of the whole page at once
+				List<Integer> conceptIds = new Vector<Integer>(found.size());
+				for (ConceptWordIndex.IndexedWord word : found)
+					conceptIds.add(word.getConceptId());
+				getConceptsForListing(conceptIds);
+				
+				for (ConceptWordIndex.IndexedWord word : found)
+					conceptWords.add(toConceptWord(word));
+			}
+			
+			if (log.isDebugEnabled())
+				log.debug("ConceptWords found in index: " + conceptWords.size());
+			
+			return conceptWords;
+		}
+		
 		if (words.size() > 0 || !answers.isEmpty()) {
 			
 			Criteria searchCriteria = sessionFactory.getCurrentSession().createCriteria(ConceptWord.class, "cw1");
@@ -491,12 +576,13 @@ public class HibernateConceptDAO implements ConceptDAO {
 			
 			conceptWords = searchCriteria.list();
 			
-			// trim down the list 
+			// trim down the list the same way the word index does, so the results don't depend on
+			// whether it is enabled
 			// TODO: put this in the criteria object?
-			if (start != null && size != null) {
-				List<ConceptWord> subList = conceptWords.subList(start, start + size);
-				return subList;
-			}
+			int from = start == null ? 0 : Math.min(start, conceptWords.size());
+			int to = size == null ? conceptWords.size() : Math.min(from + size, conceptWords.size());
+			if (from > 0 || to < conceptWords.size())
+				return conceptWords.subList(from, to);
 		}
 		
 		if (log.isDebugEnabled())
@@ -505,6 +591,25 @@ public class HibernateConceptDAO implements ConceptDAO {
 		return conceptWords;
 	}
 	
+	/**
+	 * Turns a word found in the {@link ConceptWordIndex} back into a ConceptWord. Only the concept
+	 * is fetched, and only the page of results being returned is ever turned back
+	 * 
+	 * @param word the indexed word
+	 * @return the equivalent ConceptWord
+	 */
+	private ConceptWord toConceptWord(ConceptWordIndex.IndexedWord word) {
+		Concept concept = getConcept(word.getConceptId());
+		ConceptName conceptName = null;
+		for (ConceptName name : concept.getNames()) {
+			if (word.getConceptNameId() != null && word.getConceptNameId().equals(name.getConceptNameId())) {
+				conceptName = name;
+				break;
+			}
+		}
+		return new ConceptWord(word.getWord(), concept, conceptName, word.getLocale());
+	}
+	
 	/**
 	 * gets questions for the given answer concept
 	 * 
@@ -573,51 +678,281 @@ public class HibernateConceptDAO implements ConceptDAO {
 	public void updateConceptWord(Concept concept) throws DAOException {
 		log.debug("updateConceptWord(" + concept + ")");
 		if (concept != null) {
-			// remove all old words
-			if (concept.getConceptId() != null && concept.getConceptId() > 0)
-				
-				deleteConceptWord(concept);
+			// names removed from the concept are deleted by the flush, so their words have to go
+			// first. New names need their ids before words can point at them
+			deleteConceptWordsOfRemovedNames(concept);
+			sessionFactory.getCurrentSession().flush();
 			
-			// add all new words
-			Collection<ConceptWord> words = ConceptWord.makeConceptWords(concept);
-			log.debug("words: " + words);
-			for (ConceptWord word : words) {
-				try {
-					sessionFactory.getCurrentSession().save(word);
-				}
-				catch (NonUniqueObjectException e) {
-					ConceptWord tmp = (ConceptWord) sessionFactory.getCurrentSession().merge(word);
-					sessionFactory.getCurrentSession().evict(tmp);
-					sessionFactory.getCurrentSession().save(word);
-				}
+			List<Concept> concepts = new Vector<Concept>();
+			concepts.add(concept);
+			writeConceptWords(concepts);
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#updateConceptWords(java.lang.Integer, java.lang.Integer)
+	 */
+	public void updateConceptWords(Integer conceptIdStart, Integer conceptIdEnd) throws DAOException {
+		sessionFactory.getCurrentSession().flush();
+		
+		// the words are written a page at a time, before the iterator evicts the page
+		List<Concept> page = new Vector<Concept>();
+		Iterator<Concept> concepts = new ConceptIterator(conceptIdStart, conceptIdEnd, ConceptIterator.PAGE_SIZE);
+		while (concepts.hasNext()) {
+			page.add(concepts.next());
+			if (page.size() == ConceptIterator.PAGE_SIZE) {
+				writeConceptWords(page);
+				page.clear();
+			}
+		}
+		writeConceptWords(page);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#rebuildConceptWordIndex()
+	 */
+	public synchronized void rebuildConceptWordIndex() throws DAOException {
+		long startTime = System.currentTimeMillis();
+		
+		// searches keep using the old index (or the database) until the new one is complete. The
+		// concepts saved in the meantime may have been read before they changed, so their changes
+		// are applied to the new index again before it is swapped in
+		synchronized (conceptWordIndexLock) {
+			conceptWordIndexChanges = new Vector<ConceptWordIndex.Change>();
+		}
+		ConceptWordIndex index;
+		try {
+			index = new ConceptWordIndex(conceptIterator());
+			synchronized (conceptWordIndexLock) {
+				for (ConceptWordIndex.Change change : conceptWordIndexChanges)
+					index.apply(change);
+				conceptWordIndex = index;
 			}
 		}
+		finally {
+			synchronized (conceptWordIndexLock) {
+				conceptWordIndexChanges = null;
+			}
+		}
+		
+		log.info("Built the concept word index with " + index.size() + " words (" + index.getTermCount()
+		        + " distinct) in " + (System.currentTimeMillis() - startTime) + "ms");
 	}
 	
 	/**
-	 * Deletes all concept words for a concept. Called by {@link #updateConceptWord(Concept)}
+	 * Deletes the concept_word rows of the names that are no longer in the given concept, before
+	 * the flush deletes the names themselves
 	 * 
-	 * @param concept
+	 * @param concept the concept being saved
 	 * @throws DAOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void deleteConceptWord(Concept concept) throws DAOException {
-		log.debug("deletConceptWord(" + concept + ")");
-		if (concept != null) {
-			if (log.isDebugEnabled()) {
-				Criteria crit = sessionFactory.getCurrentSession().createCriteria(ConceptWord.class);
-				crit.add(Expression.eq("concept", concept));
-				
-				List<ConceptWord> words = crit.list();
-				
-				Integer authUserId = null;
-				if (Context.isAuthenticated())
-					authUserId = Context.getAuthenticatedUser().getUserId();
+	private void deleteConceptWordsOfRemovedNames(Concept concept) throws DAOException {
+		if (concept.getConceptId() == null)
+			return;
+		
+		List<Integer> nameIds = new Vector<Integer>();
+		for (ConceptName name : concept.getNames(true)) {
+			if (name.getConceptNameId() != null)
+				nameIds.add(name.getConceptNameId());
+		}
+		
+		StringBuilder sql = new StringBuilder("delete from concept_word where concept_id = ?");
+		if (!nameIds.isEmpty()) {
+			sql.append(" and concept_name_id not in (");
+			for (int i = 0; i < nameIds.size(); i++)
+				sql.append(i == 0 ? "?" : ", ?");
+			sql.append(")");
+		}
+		
+		PreparedStatement ps = null;
+		try {
+			ps = sessionFactory.getCurrentSession().connection().prepareStatement(sql.toString());
+			ps.setInt(1, concept.getConceptId());
+			for (int i = 0; i < nameIds.size(); i++)
+				ps.setInt(i + 2, nameIds.get(i));
+			ps.executeUpdate();
+		}
+		catch (SQLException e) {
+			throw new DAOException(e);
+		}
+		finally {
+			close(ps);
+		}
+	}
+	
+	/**
+	 * Brings the concept_word rows of the given concepts in line with their current names. The
+	 * existing rows are read with one query, and only the rows that changed are deleted or
+	 * inserted, in jdbc batches. A concept whose names didn't change costs the one select
+	 * 
+	 * @param concepts the concepts, which must already have been flushed
+	 * @throws DAOException
+	 */
+	private void writeConceptWords(List<Concept> concepts) throws DAOException {
+		List<Integer> conceptIds = new Vector<Integer>(concepts.size());
+		Set<ConceptWordRow> wanted = new HashSet<ConceptWordRow>();
+		for (Concept concept : concepts) {
+			if (concept.getConceptId() == null)
+				continue;
+			conceptIds.add(concept.getConceptId());
+			for (ConceptWord word : ConceptWord.makeConceptWords(concept))
+				wanted.add(new ConceptWordRow(concept.getConceptId(), word.getWord(), word.getLocale().toString(), word
+				        .getConceptName().getConceptNameId()));
+		}
+		if (conceptIds.isEmpty())
+			return;
+		
+		Set<ConceptWordRow> existing = getConceptWordRows(conceptIds);
+		Set<ConceptWordRow> deletes = new HashSet<ConceptWordRow>(existing);
+		deletes.removeAll(wanted);
+		Set<ConceptWordRow> inserts = new HashSet<ConceptWordRow>(wanted);
+		inserts.removeAll(existing);
+		
+		if (!deletes.isEmpty() || !inserts.isEmpty()) {
+			Connection connection = sessionFactory.getCurrentSession().connection();
+			PreparedStatement insert = null;
+			PreparedStatement delete = null;
+			int count = 0;
+			try {
+				// deletes go first, a word that only changed case is the same key to mysql
+				delete = connection
+				        .prepareStatement("delete from concept_word where concept_name_id = ? and word = ? and locale = ?");
+				for (ConceptWordRow row : deletes) {
+					delete.setInt(1, row.conceptNameId);
+					delete.setString(2, row.word);
+					delete.setString(3, row.locale);
+					delete.addBatch();
+					if (++count % 1000 == 0)
+						delete.executeBatch();
+				}
+				delete.executeBatch();
 				
-				log.debug(authUserId + "|ConceptWord|" + words);
+				insert = connection
+				        .prepareStatement("insert into concept_word (concept_id, word, locale, concept_name_id) values (?, ?, ?, ?)");
+				count = 0;
+				for (ConceptWordRow row : inserts) {
+					insert.setInt(1, row.conceptId);
+					insert.setString(2, row.word);
+					insert.setString(3, row.locale);
+					insert.setInt(4, row.conceptNameId);
+					insert.addBatch();
+					if (++count % 1000 == 0)
+						insert.executeBatch();
+				}
+				insert.executeBatch();
+			}
+			catch (SQLException e) {
+				throw new DAOException(e);
+			}
+			finally {
+				close(insert);
+				close(delete);
 			}
-			sessionFactory.getCurrentSession().createQuery("delete from ConceptWord where concept_id = :c").setInteger("c",
-			    concept.getConceptId()).executeUpdate();
+		}
+		
+		if (log.isDebugEnabled())
+			log.debug("concept_word for " + conceptIds.size() + " concepts: " + inserts.size() + " rows inserted, "
+			        + deletes.size() + " deleted");
+		
+		// a rebuild may start before the transaction commits, so this is done even if there is no
+		// index yet
+		for (Concept concept : concepts)
+			updateConceptWordIndex(ConceptWordIndex.changeOf(concept));
+	}
+	
+	/**
+	 * Applies the given change to the concept word index once the current transaction commits, so
+	 * that the index never has words that were rolled back
+	 * 
+	 * @param change the change to apply
+	 */
+	private void updateConceptWordIndex(final ConceptWordIndex.Change change) {
+		if (change == null)
+			return;
+		
+		TransactionUtil.afterCommit(new Runnable() {
+			
+			public void run() {
+				synchronized (conceptWordIndexLock) {
+					if (conceptWordIndex != null)
+						conceptWordIndex.apply(change);
+					if (conceptWordIndexChanges != null)
+						conceptWordIndexChanges.add(change);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Gets the concept_word rows of the given concepts
+	 * 
+	 * @param conceptIds
+	 * @return the rows
+	 * @throws DAOException
+	 */
+	private Set<ConceptWordRow> getConceptWordRows(List<Integer> conceptIds) throws DAOException {
+		StringBuilder sql = new StringBuilder(
+		        "select concept_id, word, locale, concept_name_id from concept_word where concept_id in (");
+		for (int i = 0; i < conceptIds.size(); i++)
+			sql.append(i == 0 ? "?" : ", ?");
+		sql.append(")");
+		
+		Set<ConceptWordRow> rows = new HashSet<ConceptWordRow>();
+		PreparedStatement ps = null;
+		try {
+			ps = sessionFactory.getCurrentSession().connection().prepareStatement(sql.toString());
+			for (int i = 0; i < conceptIds.size(); i++)
+				ps.setInt(i + 1, conceptIds.get(i));
+			ResultSet rs = ps.executeQuery();
+			while (rs.next())
+				rows.add(new ConceptWordRow(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4)));
+			rs.close();
+		}
+		catch (SQLException e) {
+			throw new DAOException(e);
+		}
+		finally {
+			close(ps);
+		}
+		return rows;
+	}
+	
+	/**
+	 * One row of the concept_word table
+	 */
+	private static class ConceptWordRow {
+		
+		private final int conceptId;
+		
+		private final String word;
+		
+		private final String locale;
+		
+		private final int conceptNameId;
+		
+		public ConceptWordRow(int conceptId, String word, String locale, int conceptNameId) {
+			this.conceptId = conceptId;
+			this.word = word;
+			this.locale = locale;
+			this.conceptNameId = conceptNameId;
+		}
+		
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ConceptWordRow))
+				return false;
+			ConceptWordRow other = (ConceptWordRow) obj;
+			return conceptId == other.conceptId && conceptNameId == other.conceptNameId && word.equals(other.word)
+			        && locale.equals(other.locale);
+		}
+		
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return 37 * (37 * (37 * conceptId + conceptNameId) + word.hashCode()) + locale.hashCode();
 		}
 	}
 	
@@ -701,151 +1036,210 @@ public class HibernateConceptDAO implements ConceptDAO {
 		        .list();
 	}
 	
-	//TODO:  eventually, this method should probably just run updateConceptSetDerived(Concept) inside an iteration of all concepts... (or something else less transactionally-intense)
 	/**
+	 * Rebuilds the whole concept_set_derived table. Only the rows that are missing, wrong or no
+	 * longer needed are changed.
+	 * 
 	 * @see org.openmrs.api.db.ConceptDAO#updateConceptSetDerived()
 	 */
 	public void updateConceptSetDerived() throws DAOException {
-		sessionFactory.getCurrentSession().createQuery("delete from ConceptSetDerived").executeUpdate();
-		try {
-			// remake the derived table by copying over the basic concept_set table
-			sessionFactory
-			        .getCurrentSession()
-			        .connection()
-			        .prepareStatement(
-			            "insert into concept_set_derived (concept_id, concept_set, sort_weight) select cs.concept_id, cs.concept_set, cs.sort_weight from concept_set cs where not exists (select concept_id from concept_set_derived csd where csd.concept_id = cs.concept_id and csd.concept_set = cs.concept_set)")
-			        .execute();
-			
-			// burst the concept sets -- make grandchildren direct children of grandparents
-			sessionFactory
-			        .getCurrentSession()
-			        .connection()
-			        .prepareStatement(
-			            "insert into concept_set_derived (concept_id, concept_set, sort_weight) select cs1.concept_id, cs2.concept_set, cs1.sort_weight from concept_set cs1 join concept_set cs2 where cs2.concept_id = cs1.concept_set and not exists (select concept_id from concept_set_derived csd where csd.concept_id = cs1.concept_id and csd.concept_set = cs2.concept_set)")
-			        .execute();
-			
-			// burst the concept sets -- make greatgrandchildren direct child of greatgrandparents
-			sessionFactory
-			        .getCurrentSession()
-			        .connection()
-			        .prepareStatement(
-			            "insert into concept_set_derived (concept_id, concept_set, sort_weight) select cs1.concept_id, cs3.concept_set, cs1.sort_weight from concept_set cs1 join concept_set cs2 join concept_set cs3 where cs1.concept_set = cs2.concept_id and cs2.concept_set = cs3.concept_id and not exists (select concept_id from concept_set_derived csd where csd.concept_id = cs1.concept_id and csd.concept_set = cs3.concept_set)")
-			        .execute();
-			
-			// TODO This 'algorithm' only solves three layers of children.  Options for correction:
-			//	1) Add a few more join statements to cover 5 layers (conceivable upper limit of layers)
-			//	2) Find the deepest layer and programmatically create the sql statements
-			//	3) Run the joins on 
-		}
-		catch (SQLException e) {
-			throw new DAOException(e);
-		}
-	}
-	
-	/**
-	 * utility method used in updateConceptSetDerived(...)
-	 * 
-	 * @param List of parent Concept objects
-	 * @param Concept current
-	 * @return Set of ConceptSetDerived
-	 */
-	private Set<ConceptSetDerived> deriveChildren(List<Concept> parents, Concept current) {
-		Set<ConceptSetDerived> updates = new HashSet<ConceptSetDerived>();
-		
-		ConceptSetDerived derivedSet = null;
-		// make each child a direct child of each parent/grandparent
-		for (ConceptSet childSet : current.getConceptSets()) {
-			Concept child = childSet.getConcept();
-			log.debug("Deriving child: " + child.getConceptId());
-			Double sort_weight = childSet.getSortWeight();
-			for (Concept parent : parents) {
-				log.debug("Matching child: " + child.getConceptId() + " with parent: " + parent.getConceptId());
-				derivedSet = new ConceptSetDerived(parent, child, sort_weight++);
-				updates.add(derivedSet);
-			}
-			
-			//recurse if this child is a set as well
-			if (child.isSet()) {
-				log.debug("Concept id: " + child.getConceptId() + " is a set");
-				List<Concept> new_parents = new Vector<Concept>();
-				new_parents.addAll(parents);
-				new_parents.add(child);
-				updates.addAll(deriveChildren(new_parents, child));
-			}
-		}
+		ConceptSetClosure closure = getConceptSetClosure();
+		Map<Integer, Map<Integer, Double>> existing = getConceptSetDerivedRows(null);
 		
-		return updates;
+		Set<Integer> conceptSetIds = new HashSet<Integer>(closure.getSetIds());
+		conceptSetIds.addAll(existing.keySet());
+		applyConceptSetDerived(closure, conceptSetIds, existing);
 	}
 	
 	/**
+	 * Brings the concept_set_derived rows up to date for the given concept and every set that
+	 * contains it, at any depth.
+	 * 
 	 * @see org.openmrs.api.db.ConceptDAO#updateConceptSetDerived(org.openmrs.Concept)
 	 */
 	public void updateConceptSetDerived(Concept concept) throws DAOException {
 		log.debug("Updating concept set derivisions for #" + concept.getConceptId().toString());
 		
-		// deletes current concept's sets and matching parent's sets
-		
-		//recursively get all parents
-		List<Concept> parents = getParents(concept);
+		ConceptSetClosure closure = getConceptSetClosure();
+		Set<Integer> conceptSetIds = closure.getAncestors(concept.getConceptId());
+		conceptSetIds.add(concept.getConceptId());
+		applyConceptSetDerived(closure, conceptSetIds, getConceptSetDerivedRows(conceptSetIds));
+	}
+	
+	/**
+	 * Reads the whole concept_set table into memory, flushing first so that unsaved changes to
+	 * sets are included
+	 * 
+	 * @return the graph of sets and their members
+	 * @throws DAOException
+	 */
+	private ConceptSetClosure getConceptSetClosure() throws DAOException {
+		sessionFactory.getCurrentSession().flush();
 		
-		// delete this concept's children and their bursted parents
-		for (Concept parent : parents) {
-			sessionFactory
-			        .getCurrentSession()
-			        .createQuery(
-			            "delete from ConceptSetDerived csd where csd.concept in (select cs.concept from ConceptSet cs where cs.conceptSet = :c) and csd.conceptSet = :parent)")
-			        .setParameter("c", concept).setParameter("parent", parent).executeUpdate();
+		ConceptSetClosure closure = new ConceptSetClosure();
+		PreparedStatement ps = null;
+		try {
+			ps = sessionFactory.getCurrentSession().connection().prepareStatement(
+			    "select concept_set, concept_id, sort_weight from concept_set order by concept_set, sort_weight, concept_id");
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				double sortWeight = rs.getDouble(3);
+				closure.addMember(rs.getInt(1), rs.getInt(2), rs.wasNull() ? null : sortWeight);
+			}
+			rs.close();
+		}
+		catch (SQLException e) {
+			throw new DAOException(e);
 		}
+		finally {
+			close(ps);
+		}
+		return closure;
+	}
+	
+	/**
+	 * Reads the concept_set_derived rows of the given sets
+	 * 
+	 * @param conceptSetIds the sets to read, or null for all of them
+	 * @return concept set id to (concept id to sort weight)
+	 * @throws DAOException
+	 */
+	private Map<Integer, Map<Integer, Double>> getConceptSetDerivedRows(Collection<Integer> conceptSetIds)
+	                                                                                                      throws DAOException {
+		Map<Integer, Map<Integer, Double>> rows = new HashMap<Integer, Map<Integer, Double>>();
+		String sql = "select concept_set, concept_id, sort_weight from concept_set_derived";
+		List<List<Integer>> chunks = new Vector<List<Integer>>();
+		if (conceptSetIds == null)
+			chunks.add(null);
+		else
+			chunks.addAll(ChunkedInExpression.split(conceptSetIds, ChunkedInExpression.getChunkSize()));
 		
-		//set of updates to be passed to the server (unique list)
-		Set<ConceptSetDerived> updates = new HashSet<ConceptSetDerived>();
-		
-		//add parents as sets of parents below
-		ConceptSetDerived csd;
-		for (Integer a = 0; a < parents.size() - 1; a++) {
-			Concept set = parents.get(a);
-			for (Integer b = a + 1; b < parents.size(); b++) {
-				Concept conc = parents.get(b);
-				csd = new ConceptSetDerived(set, conc, Double.valueOf(b.doubleValue()));
-				updates.add(csd);
+		try {
+			for (List<Integer> chunk : chunks) {
+				if (chunk != null && chunk.isEmpty())
+					continue;
+				PreparedStatement ps = null;
+				try {
+					String where = "";
+					if (chunk != null) {
+						StringBuilder ids = new StringBuilder();
+						for (Integer id : chunk)
+							ids.append(ids.length() == 0 ? "" : ",").append(id.intValue());
+						where = " where concept_set in (" + ids + ")";
+					}
+					ps = sessionFactory.getCurrentSession().connection().prepareStatement(sql + where);
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						Integer conceptSetId = rs.getInt(1);
+						Map<Integer, Double> setRows = rows.get(conceptSetId);
+						if (setRows == null) {
+							setRows = new HashMap<Integer, Double>();
+							rows.put(conceptSetId, setRows);
+						}
+						double sortWeight = rs.getDouble(3);
+						setRows.put(rs.getInt(2), rs.wasNull() ? null : sortWeight);
+					}
+					rs.close();
+				}
+				finally {
+					close(ps);
+				}
 			}
 		}
-		
-		//recursively add parents to children
-		updates.addAll(deriveChildren(parents, concept));
-		
-		for (ConceptSetDerived c : updates) {
-			sessionFactory.getCurrentSession().saveOrUpdate(c);
+		catch (SQLException e) {
+			throw new DAOException(e);
 		}
-		
+		return rows;
 	}
 	
 	/**
-	 * y * returns a list of n-generations of parents of a concept in a concept set
+	 * Writes the difference between the closure and the existing rows of the given sets to
+	 * concept_set_derived, in jdbc batches
 	 * 
-	 * @param Concept current
-	 * @return List<Concept>
+	 * @param closure
+	 * @param conceptSetIds the sets to bring up to date
+	 * @param existing the current rows of at least those sets
 	 * @throws DAOException
 	 */
-	@SuppressWarnings("unchecked")
-	private List<Concept> getParents(Concept current) throws DAOException {
-		List<Concept> parents = new Vector<Concept>();
-		if (current != null) {
-			Query query = sessionFactory.getCurrentSession().createQuery(
-			    "from Concept c join c.conceptSets sets where sets.concept = ?").setEntity(0, current);
-			List<Concept> immed_parents = query.list();
-			for (Concept c : immed_parents) {
-				parents.addAll(getParents(c));
-			}
-			parents.add(current);
-			if (log.isDebugEnabled()) {
-				log.debug("parents found: ");
-				for (Concept c : parents) {
-					log.debug("id: " + c.getConceptId());
+	private void applyConceptSetDerived(ConceptSetClosure closure, Collection<Integer> conceptSetIds,
+	                                    Map<Integer, Map<Integer, Double>> existing) throws DAOException {
+		Connection connection = sessionFactory.getCurrentSession().connection();
+		PreparedStatement insert = null;
+		PreparedStatement update = null;
+		PreparedStatement delete = null;
+		int inserted = 0, updated = 0, deleted = 0;
+		try {
+			insert = connection
+			        .prepareStatement("insert into concept_set_derived (concept_id, concept_set, sort_weight) values (?, ?, ?)");
+			update = connection
+			        .prepareStatement("update concept_set_derived set sort_weight = ? where concept_id = ? and concept_set = ?");
+			delete = connection.prepareStatement("delete from concept_set_derived where concept_id = ? and concept_set = ?");
+			
+			for (Integer conceptSetId : conceptSetIds) {
+				Map<Integer, Double> rows = existing.get(conceptSetId);
+				ConceptSetClosure.Delta delta = closure.getDelta(conceptSetId, rows == null ? new HashMap<Integer, Double>()
+				        : rows);
+				
+				for (Map.Entry<Integer, Double> row : delta.getInserts().entrySet()) {
+					insert.setInt(1, row.getKey());
+					insert.setInt(2, conceptSetId);
+					setSortWeight(insert, 3, row.getValue());
+					insert.addBatch();
+					if (++inserted % 1000 == 0)
+						insert.executeBatch();
+				}
+				for (Map.Entry<Integer, Double> row : delta.getUpdates().entrySet()) {
+					setSortWeight(update, 1, row.getValue());
+					update.setInt(2, row.getKey());
+					update.setInt(3, conceptSetId);
+					update.addBatch();
+					if (++updated % 1000 == 0)
+						update.executeBatch();
+				}
+				for (Integer conceptId : delta.getDeletes()) {
+					delete.setInt(1, conceptId);
+					delete.setInt(2, conceptSetId);
+					delete.addBatch();
+					if (++deleted % 1000 == 0)
+						delete.executeBatch();
 				}
 			}
+			insert.executeBatch();
+			update.executeBatch();
+			delete.executeBatch();
+		}
+		catch (SQLException e) {
+			throw new DAOException(e);
+		}
+		finally {
+			close(insert);
+			close(update);
+			close(delete);
+		}
+		
+		if (!closure.getCyclicSets().isEmpty())
+			log.warn("These concept sets contain themselves, through other sets: " + closure.getCyclicSets());
+		if (log.isDebugEnabled())
+			log.debug("concept_set_derived: " + inserted + " rows inserted, " + updated + " updated, " + deleted
+			        + " deleted");
+	}
+	
+	private void setSortWeight(PreparedStatement ps, int index, Double sortWeight) throws SQLException {
+		if (sortWeight == null)
+			ps.setNull(index, Types.DOUBLE);
+		else
+			ps.setDouble(index, sortWeight);
+	}
+	
+	private void close(PreparedStatement ps) {
+		if (ps != null) {
+			try {
+				ps.close();
+			}
+			catch (SQLException e) {
+				log.debug("Error closing statement", e);
+			}
 		}
-		return parents;
 	}
 	
 	/**
@@ -960,43 +1354,70 @@ public class HibernateConceptDAO implements ConceptDAO {
 	 * @see org.openmrs.api.db.ConceptDAO#conceptIterator()
 	 */
 	public Iterator<Concept> conceptIterator() {
-		return new ConceptIterator();
+		return conceptIterator(ConceptIterator.PAGE_SIZE);
+	}
+	
+	/**
+	 * @param pageSize the number of concepts to load at once
+	 * @return an iterator over all concepts that loads pages of the given size
+	 * @see #conceptIterator()
+	 */
+	Iterator<Concept> conceptIterator(int pageSize) {
+		return new ConceptIterator(null, null, pageSize);
 	}
 	
 	/**
-	 * An iterator that loops over all concepts in the dictionary one at a time
+	 * An iterator that loops over all concepts in the dictionary (or in a range of concept ids), in
+	 * concept id order. Concepts are loaded a page at a time along with their names, descriptions,
+	 * answers, answer concepts, class, datatype, creator and changer, so walking the dictionary
+	 * takes a few queries per page instead of several per concept. The previous page, and the
+	 * answer concepts and users it loaded, are evicted from the session when the next one is
+	 * loaded.
 	 */
 	private class ConceptIterator implements Iterator<Concept> {
 		
-		Concept currentConcept = null;
+		private static final int PAGE_SIZE = 250;
+		
+		private int pageSize;
+		
+		private List<Concept> page = new Vector<Concept>();
+		
+		private Iterator<Concept> pageIterator = page.iterator();
+		
+		private Integer lastConceptId = null;
+		
+		private Integer maxConceptId;
 		
-		Concept nextConcept;
+		private boolean lastPage = false;
 		
-		public ConceptIterator() {
-			final int firstConceptId = getMinConceptId();
-			nextConcept = getConcept(firstConceptId);
+		/**
+		 * @param conceptIdStart the first concept id to include, or null to start at the beginning
+		 * @param conceptIdEnd the last concept id to include, or null to go to the end
+		 * @param pageSize the number of concepts to load at once
+		 */
+		public ConceptIterator(Integer conceptIdStart, Integer conceptIdEnd, int pageSize) {
+			if (conceptIdStart != null)
+				lastConceptId = conceptIdStart - 1;
+			maxConceptId = conceptIdEnd;
+			this.pageSize = pageSize;
 		}
 		
 		/**
 		 * @see java.util.Iterator#hasNext()
 		 */
 		public boolean hasNext() {
-			return (nextConcept != null);
+			if (!pageIterator.hasNext() && !lastPage)
+				nextPage();
+			return pageIterator.hasNext();
 		}
 		
 		/**
 		 * @see java.util.Iterator#next()
 		 */
 		public Concept next() {
-			if (currentConcept != null) {
-				sessionFactory.getCurrentSession().evict(currentConcept);
-			}
-			
-			currentConcept = nextConcept;
-			
-			nextConcept = getNextConcept(currentConcept);
-			
-			return currentConcept;
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return pageIterator.next();
 		}
 		
 		/**
@@ -1006,6 +1427,80 @@ public class HibernateConceptDAO implements ConceptDAO {
 			throw new UnsupportedOperationException();
 		}
 		
+		/**
+		 * Evicts the current page and loads the concepts with the next pageSize concept ids
+		 */
+		@SuppressWarnings("unchecked")
+		private void nextPage() {
+			Session session = sessionFactory.getCurrentSession();
+			for (Concept concept : page)
+				evict(session, concept);
+			
+			String hql = "select c.conceptId from Concept c";
+			if (lastConceptId != null)
+				hql += " where c.conceptId > :lastConceptId";
+			if (maxConceptId != null)
+				hql += (lastConceptId == null ? " where" : " and") + " c.conceptId <= :maxConceptId";
+			Query query = session.createQuery(hql + " order by c.conceptId");
+			if (lastConceptId != null)
+				query.setInteger("lastConceptId", lastConceptId);
+			if (maxConceptId != null)
+				query.setInteger("maxConceptId", maxConceptId);
+			List<Integer> conceptIds = query.setMaxResults(pageSize).list();
+			lastPage = conceptIds.size() < pageSize;
+			
+			page = new Vector<Concept>(conceptIds.size());
+			if (!conceptIds.isEmpty()) {
+				lastConceptId = conceptIds.get(conceptIds.size() - 1);
+				
+				// one query per collection, to avoid a cartesian product. each query fills in the
+				// collection on the concepts loaded by the first one
+				Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+				for (Concept concept : (List<Concept>) session.createQuery(
+				    "select distinct c from Concept c left join fetch c.names left join fetch c.conceptClass "
+				            + "left join fetch c.datatype left join fetch c.creator left join fetch c.changedBy "
+				            + "where c.conceptId in (:conceptIds)").setParameterList(
+				    "conceptIds", conceptIds).list())
+					concepts.put(concept.getConceptId(), concept);
+				session.createQuery(
+				    "select distinct c from Concept c left join fetch c.descriptions where c.conceptId in (:conceptIds)")
+				        .setParameterList("conceptIds", conceptIds).list();
+				session.createQuery(
+				    "select distinct c from Concept c left join fetch c.answers where c.conceptId in (:conceptIds)")
+				        .setParameterList("conceptIds", conceptIds).list();
+				
+				// Concept.getAnswers() looks at every answer concept to leave out the retired ones, so
+				// load them all at once too. The answer proxies then find them in the session
+				Set<Integer> answerConceptIds = new HashSet<Integer>();
+				for (Concept concept : concepts.values())
+					for (ConceptAnswer answer : concept.getAnswers(true))
+						answerConceptIds.add(answer.getAnswerConcept().getConceptId());
+				if (!answerConceptIds.isEmpty())
+					session.createQuery("from Concept c where c.conceptId in (:conceptIds)").setParameterList(
+					    "conceptIds", answerConceptIds).list();
+				
+				for (Integer conceptId : conceptIds)
+					page.add(concepts.get(conceptId));
+			}
+			pageIterator = page.iterator();
+		}
+		
+		/**
+		 * Evicts a concept along with the objects loaded for it that the mappings do not evict
+		 */
+		private void evict(Session session, Concept concept) {
+			session.evict(concept);
+			if (concept.getCreator() != null)
+				session.evict(concept.getCreator());
+			if (concept.getChangedBy() != null)
+				session.evict(concept.getChangedBy());
+			for (ConceptAnswer answer : concept.getAnswers(true)) {
+				session.evict(answer.getAnswerConcept());
+				if (answer.getAnswerDrug() != null)
+					session.evict(answer.getAnswerDrug());
+			}
+		}
+		
 	}
 	
 	/**
@@ -13,24 +13,35 @@
  */
 package org.openmrs.api.db.hibernate;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.EntityMode;
 import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.stat.QueryStatistics;
 import org.hibernate.stat.Statistics;
 import org.openmrs.GlobalProperty;
+import org.openmrs.Privilege;
+import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.context.ContextAuthenticationException;
@@ -262,6 +273,79 @@ public class HibernateContextDAO implements ContextDAO {
 		sessionFactory.getCurrentSession().evict(obj);
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ContextDAO#initializeLazyProperties(java.lang.Object)
+	 */
+	public void initializeLazyProperties(Object obj) {
+		initialize(obj, true, new IdentityHashMap<Object, Boolean>());
+	}
+	
+	/**
+	 * Loads the given value if it is a hibernate proxy or collection, then walks what it holds:
+	 * collections, maps and arrays element by element and openmrs objects field by field. Anything
+	 * else, like the services some objects hold, is left alone. The fields of a hibernate object
+	 * are only walked when <code>walkEntities</code> is true, and are not walked any further, so
+	 * the walk stops at the associations of the first hibernate objects it comes to instead of
+	 * loading everything they lead to
+	 * 
+	 * @param value the value to load
+	 * @param walkEntities whether the properties of a hibernate object should be loaded
+	 * @param walked the values already walked, and whether their properties were
+	 */
+	@SuppressWarnings("unchecked")
+	private void initialize(Object value, boolean walkEntities, Map<Object, Boolean> walked) {
+		if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+		        || value instanceof Character || value instanceof Enum || value instanceof Class || value instanceof Locale
+		        || value instanceof Date)
+			return;
+		
+		Boolean entitiesWalked = walked.get(value);
+		if (entitiesWalked != null && (entitiesWalked || !walkEntities))
+			return;
+		walked.put(value, walkEntities);
+		
+		// loads proxies and persistent collections, and does nothing to anything else
+		Hibernate.initialize(value);
+		if (value instanceof HibernateProxy)
+			value = ((HibernateProxy) value).getHibernateLazyInitializer().getImplementation();
+		
+		if (value.getClass().isArray()) {
+			if (!value.getClass().getComponentType().isPrimitive())
+				for (int i = 0; i < Array.getLength(value); i++)
+					initialize(Array.get(value, i), walkEntities, walked);
+		} else if (value instanceof Collection) {
+			for (Object element : (Collection<Object>) value)
+				initialize(element, walkEntities, walked);
+		} else if (value instanceof Map) {
+			for (Map.Entry<Object, Object> e : ((Map<Object, Object>) value).entrySet()) {
+				initialize(e.getKey(), walkEntities, walked);
+				initialize(e.getValue(), walkEntities, walked);
+			}
+		} else if (value.getClass().getName().startsWith("org.openmrs.")) {
+			ClassMetadata metadata = sessionFactory.getClassMetadata(value.getClass());
+			if (metadata != null) {
+				if (walkEntities)
+					for (Object property : metadata.getPropertyValues(value, EntityMode.POJO))
+						initialize(property, false, walked);
+				return;
+			}
+			
+			for (Class<?> c = value.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive())
+						continue;
+					try {
+						field.setAccessible(true);
+						initialize(field.get(value), walkEntities, walked);
+					}
+					catch (IllegalAccessException e) {
+						log.debug("Unable to read " + field, e);
+					}
+				}
+			}
+		}
+	}
+	
 	/**
 	 * @see org.openmrs.api.context.Context#startup(Properties)
 	 */
@@ -355,6 +439,13 @@ public class HibernateContextDAO implements ContextDAO {
 			log.error("Error while setting core privileges", e);
 		}
 		
+		// the rows above were written around hibernate, so drop any cached copies
+		sessionFactory.evict(Role.class);
+		sessionFactory.evict(Privilege.class);
+		sessionFactory.evictCollection(Role.class.getName() + ".privileges");
+		sessionFactory.evictCollection(Role.class.getName() + ".inheritedRoles");
+		sessionFactory.evictQueries();
+		
 		// setting core global properties
 		try {
 			Connection conn = sessionFactory.getCurrentSession().connection();
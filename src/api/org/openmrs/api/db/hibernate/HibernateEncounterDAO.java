@@ -13,23 +13,33 @@
  */
 package org.openmrs.api.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.PersonName;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.EncounterDAO;
@@ -156,6 +166,7 @@ public class HibernateEncounterDAO implements EncounterDAO {
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(EncounterType.class);
 		crit.add(Expression.eq("retired", false));
 		crit.add(Expression.eq("name", name));
+		crit.setCacheable(true);
 		EncounterType encounterType = (EncounterType) crit.uniqueResult();
 		
 		return encounterType;
@@ -174,6 +185,7 @@ public class HibernateEncounterDAO implements EncounterDAO {
 		if (includeRetired == false)
 			criteria.add(Expression.eq("retired", false));
 		
+		criteria.setCacheable(true);
 		return criteria.list();
 	}
 	
@@ -198,4 +210,65 @@ public class HibernateEncounterDAO implements EncounterDAO {
 		return (Date) sql.uniqueResult();
 	}
 	
+	/**
+	 * The patients are matched on identifier the same way as
+	 * {@link HibernatePatientDAO#getPatients(String, String, List, boolean)} does.
+	 * 
+	 * @see org.openmrs.api.db.EncounterDAO#getEncountersForListing(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<EncounterSearchResult> getEncountersForListing(String identifier) throws DAOException {
+		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
+		crit.createAlias("patient", "patient");
+		crit.createAlias("patient.identifiers", "ids");
+		crit.createAlias("provider", "provider", CriteriaSpecification.LEFT_JOIN);
+		crit.createAlias("encounterType", "type", CriteriaSpecification.LEFT_JOIN);
+		crit.createAlias("location", "location", CriteriaSpecification.LEFT_JOIN);
+		crit.createAlias("form", "form", CriteriaSpecification.LEFT_JOIN);
+		crit.add(Expression.eq("voided", false));
+		crit.add(Expression.eq("patient.voided", false));
+		crit.add(Expression.eq("ids.voided", false));
+		crit.add(HibernatePatientDAO.getIdentifierRestriction(sessionFactory, "ids.identifier", identifier, false));
+		crit.setProjection(Projections.distinct(Projections.projectionList().add(Projections.property("encounterId"))
+		        .add(Projections.property("encounterDatetime")).add(Projections.property("type.name")).add(
+		            Projections.property("location.name")).add(Projections.property("form.name")).add(
+		            Projections.property("patient.personId")).add(Projections.property("provider.personId"))));
+		crit.addOrder(Order.desc("encounterDatetime"));
+		crit.addOrder(Order.desc("encounterId"));
+		List<Object[]> rows = crit.list();
+		
+		// replace the patient and provider ids with their names
+		Set<Integer> personIds = new HashSet<Integer>();
+		for (Object[] row : rows) {
+			personIds.add((Integer) row[5]);
+			if (row[6] != null)
+				personIds.add((Integer) row[6]);
+		}
+		Map<Integer, PersonName> names = new HashMap<Integer, PersonName>();
+		if (!personIds.isEmpty()) {
+			Query query = sessionFactory.getCurrentSession().createQuery(
+			    "from PersonName where person.personId in (:ids) and voided = false order by preferred desc, dateCreated desc");
+			query.setParameterList("ids", personIds);
+			for (PersonName name : (List<PersonName>) query.list()) {
+				Integer personId = name.getPerson().getPersonId();
+				if (!names.containsKey(personId))
+					names.put(personId, name);
+			}
+		}
+		List<EncounterSearchResult> results = new ArrayList<EncounterSearchResult>(rows.size());
+		for (Object[] row : rows) {
+			EncounterSearchResult result = new EncounterSearchResult((Integer) row[0]);
+			result.setEncounterDatetime((Date) row[1]);
+			result.setEncounterType((String) row[2]);
+			result.setLocation((String) row[3]);
+			result.setForm((String) row[4]);
+			result.setPatientName(names.get(row[5]));
+			if (row[6] != null)
+				result.setProviderName(names.get(row[6]));
+			results.add(result);
+		}
+		
+		return results;
+	}
+	
 }
@@ -58,6 +58,7 @@ public class HibernateLocationDAO implements LocationDAO {
 	public Location getLocation(String name) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Location.class).add(
 		    Expression.eq("name", name));
+		criteria.setCacheable(true);
 		
 		List<Location> locations = criteria.list();
 		if (null == locations || locations.isEmpty()) {
@@ -76,6 +77,7 @@ public class HibernateLocationDAO implements LocationDAO {
 			criteria.add(Expression.like("retired", false));
 		}
 		criteria.addOrder(Order.asc("name"));
+		criteria.setCacheable(true);
 		return criteria.list();
 	}
 	
@@ -19,6 +19,7 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Expression;
@@ -214,4 +215,32 @@ public class HibernateObsDAO implements ObsDAO {
 		return criteria;
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#getObservationsForListing(org.openmrs.Person,
+	 *      org.openmrs.Concept, org.openmrs.Encounter)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Obs> getObservationsForListing(Person who, Concept question, Encounter encounter) throws DAOException {
+		StringBuilder hql = new StringBuilder("select o from Obs o join fetch o.concept left join fetch o.valueCoded ");
+		hql.append("left join fetch o.valueCodedName left join fetch o.encounter e left join fetch e.form ");
+		hql.append("left join fetch o.location where o.voided = false");
+		if (who != null)
+			hql.append(" and o.person = :person");
+		if (question != null)
+			hql.append(" and o.concept = :question");
+		if (encounter != null)
+			hql.append(" and o.encounter = :encounter");
+		hql.append(" order by o.obsDatetime desc, o.obsId desc");
+		
+		Query query = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		if (who != null)
+			query.setParameter("person", who);
+		if (question != null)
+			query.setParameter("question", question);
+		if (encounter != null)
+			query.setParameter("encounter", encounter);
+		
+		return query.list();
+	}
+	
 }
@@ -16,9 +16,12 @@ package org.openmrs.api.db.hibernate;
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -29,6 +32,7 @@ import org.hibernate.Hibernate;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.LogicalExpression;
 import org.hibernate.criterion.MatchMode;
@@ -39,7 +43,10 @@ import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PatientSearchResult;
 import org.openmrs.Person;
+import org.openmrs.PersonAttribute;
+import org.openmrs.PersonAttributeType;
 import org.openmrs.PersonName;
 import org.openmrs.Tribe;
 import org.openmrs.api.AdministrationService;
@@ -47,6 +54,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientDAO;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.TransactionUtil;
 
 /**
  * Hibernate specific database methods for the PatientService
@@ -64,6 +72,23 @@ public class HibernatePatientDAO implements PatientDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * In-memory index of patient names and identifiers. Null until
+	 * {@link #rebuildPatientSearchIndex()} has been called
+	 */
+	private volatile PatientSearchIndex patientSearchIndex = null;
+	
+	/**
+	 * Guards changes to {@link #patientSearchIndex} and {@link #patientSearchIndexChanges}
+	 */
+	private final Object patientSearchIndexLock = new Object();
+	
+	/**
+	 * Changes committed while {@link #rebuildPatientSearchIndex()} is reading the patients, to be
+	 * applied to the new index before it replaces the old one. Null when no rebuild is running
+	 */
+	private List<PatientSearchIndex.Change> patientSearchIndexChanges = null;
+	
 	/**
 	 * Set session factory
 	 * 
@@ -89,6 +114,7 @@ public class HibernatePatientDAO implements PatientDAO {
 			// and rows in the person and patient table will be created by 
 			// hibernate
 			sessionFactory.getCurrentSession().saveOrUpdate(patient);
+			updatePatientSearchIndex(PatientSearchIndex.changeOf(patient));
 			return patient;
 		} else {
 			// if we're updating a patient, its possible that a person
@@ -106,6 +132,7 @@ public class HibernatePatientDAO implements PatientDAO {
 			//      cache and claims it is a duplicate of this Patient object.
 			//patient = (Patient) sessionFactory.getCurrentSession().merge(patient);
 			sessionFactory.getCurrentSession().saveOrUpdate(patient);
+			updatePatientSearchIndex(PatientSearchIndex.changeOf(patient));
 			
 			return patient;
 		}
@@ -219,31 +246,8 @@ public class HibernatePatientDAO implements PatientDAO {
 			criteria.add(Expression.eq("ids.voided", false));
 			
 			// do the identifier restriction
-			if (identifier != null) {
-				AdministrationService adminService = Context.getAdministrationService();
-				String regex = adminService.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_REGEX, "");
-				
-				// if the user wants an exact search, match on that.
-				if (matchIdentifierExactly) {
-					criteria.add(Expression.eq("ids.identifier", identifier));
-				}
-				// if the regex is empty, default to a simple "like" search or if 
-				// we're in hsql world, also only do the simple like search (because
-				// hsql doesn't know how to deal with 'regexp'
-				else if (regex.equals("") || HibernateUtil.isHSQLDialect(sessionFactory)) {
-					String prefix = adminService.getGlobalProperty(
-					    OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_PREFIX, "");
-					String suffix = adminService.getGlobalProperty(
-					    OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_SUFFIX, "%");
-					StringBuffer likeString = new StringBuffer(prefix).append(identifier).append(suffix);
-					criteria.add(Expression.like("ids.identifier", likeString.toString()));
-				}
-				// if the regex is present, search on that
-				else {
-					regex = regex.replace("@SEARCH@", identifier);
-					criteria.add(Restrictions.sqlRestriction("identifier regexp ?", regex, Hibernate.STRING));
-				}
-			}
+			if (identifier != null)
+				criteria.add(getIdentifierRestriction(sessionFactory, "ids.identifier", identifier, matchIdentifierExactly));
 			
 			// TODO add a junit test for patientIdentifierType restrictions
 			
@@ -265,6 +269,42 @@ public class HibernatePatientDAO implements PatientDAO {
 		return criteria.list();
 	}
 	
+	/**
+	 * Returns the restriction a patient search puts on identifiers: an exact match, a "like" search
+	 * using the identifier prefix and suffix global properties, or a search with the identifier
+	 * regex global property. Shared with other DAOs that find things by patient identifier.
+	 * 
+	 * @param sessionFactory
+	 * @param identifierProperty the criteria property path of the identifier, e.g. "ids.identifier"
+	 * @param identifier the identifier searched for
+	 * @param matchIdentifierExactly
+	 * @return the restriction to add to the criteria
+	 */
+	static Criterion getIdentifierRestriction(SessionFactory sessionFactory, String identifierProperty,
+	                                          String identifier, boolean matchIdentifierExactly) {
+		AdministrationService adminService = Context.getAdministrationService();
+		String regex = adminService.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_REGEX, "");
+		
+		// if the user wants an exact search, match on that.
+		if (matchIdentifierExactly) {
+			return Expression.eq(identifierProperty, identifier);
+		}
+		// if the regex is empty, default to a simple "like" search or if 
+		// we're in hsql world, also only do the simple like search (because
+		// hsql doesn't know how to deal with 'regexp'
+		else if (regex.equals("") || HibernateUtil.isHSQLDialect(sessionFactory)) {
+			String prefix = adminService.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_PREFIX, "");
+			String suffix = adminService.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_IDENTIFIER_SUFFIX, "%");
+			StringBuffer likeString = new StringBuffer(prefix).append(identifier).append(suffix);
+			return Expression.like(identifierProperty, likeString.toString());
+		}
+		// if the regex is present, search on that
+		else {
+			regex = regex.replace("@SEARCH@", identifier);
+			return Restrictions.sqlRestriction("identifier regexp ?", regex, Hibernate.STRING);
+		}
+	}
+	
 	/**
 	 * Returns a criteria object comparing the given string to each part of the name. <br/>
 	 * <br/>
@@ -363,6 +403,7 @@ public class HibernatePatientDAO implements PatientDAO {
 	 * @see org.openmrs.api.PatientService#deletePatient(org.openmrs.Patient)
 	 */
 	public void deletePatient(Patient patient) throws DAOException {
+		updatePatientSearchIndex(PatientSearchIndex.removalOf(patient.getPatientId()));
 		HibernatePersonDAO.deletePersonAndAttributes(sessionFactory, patient);
 	}
 	
@@ -388,6 +429,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		if (includeRetired == false)
 			criteria.add(Expression.eq("retired", false));
 		
+		criteria.setCacheable(true);
 		return criteria.list();
 	}
 	
@@ -585,16 +627,8 @@ public class HibernatePatientDAO implements PatientDAO {
 	 * @return Integer value for the patient search max results global property
 	 */
 	private Integer getMaximumSearchResults() {
-		try {
-			return Integer.valueOf(Context.getAdministrationService().getGlobalProperty(
-			    OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS, "1000"));
-		}
-		catch (Exception e) {
-			log.warn("Unable to convert the global property " + OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS
-			        + "to a valid integer. Returning the default 1000");
-		}
-		
-		return 1000;
+		return Context.getAdministrationService().getGlobalPropertyValue(
+		    OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS, 1000);
 	}
 	
 	/**
@@ -623,4 +657,159 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 		return !query.uniqueResult().toString().equals("0");
 	}
+	
+	/**
+	 * Applies the given change to the patient search index once the current transaction commits,
+	 * so that the index never has names or identifiers that were rolled back. Also used by
+	 * {@link HibernatePersonDAO} for patients saved or purged as people.
+	 * 
+	 * @param change the change to apply
+	 */
+	void updatePatientSearchIndex(final PatientSearchIndex.Change change) {
+		if (change == null)
+			return;
+		
+		TransactionUtil.afterCommit(new Runnable() {
+			
+			public void run() {
+				synchronized (patientSearchIndexLock) {
+					if (patientSearchIndex != null)
+						patientSearchIndex.apply(change);
+					if (patientSearchIndexChanges != null)
+						patientSearchIndexChanges.add(change);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#isPatientSearchIndexBuilt()
+	 */
+	public boolean isPatientSearchIndexBuilt() {
+		return patientSearchIndex != null;
+	}
+	
+	/**
+	 * Only the listing attributes are loaded from the database, with one query for the whole page
+	 * of results.
+	 * 
+	 * @see org.openmrs.api.db.PatientDAO#getPatientSearchResults(java.lang.String, java.util.List,
+	 *      int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<PatientSearchResult> getPatientSearchResults(String query, List<PersonAttributeType> attributeTypes,
+	                                                         int maxResults) throws DAOException {
+		PatientSearchIndex index = patientSearchIndex;
+		if (index == null)
+			throw new DAOException("The patient search index has not been built");
+		
+		List<PatientSearchResult> results = index.search(query, maxResults);
+		if (results.isEmpty() || attributeTypes == null || attributeTypes.isEmpty())
+			return results;
+		
+		Map<Integer, PatientSearchResult> resultsById = new HashMap<Integer, PatientSearchResult>();
+		for (PatientSearchResult result : results)
+			resultsById.put(result.getPatientId(), result);
+		
+		Query attributeQuery = sessionFactory.getCurrentSession().createQuery(
+		    "from PersonAttribute where person.personId in (:ids) and attributeType in (:types) and voided = false");
+		attributeQuery.setParameterList("ids", resultsById.keySet());
+		attributeQuery.setParameterList("types", attributeTypes);
+		for (PersonAttribute attribute : (List<PersonAttribute>) attributeQuery.list()) {
+			PatientSearchResult result = resultsById.get(attribute.getPerson().getPersonId());
+			result.getAttributes().put(attribute.getAttributeType().getName(), attribute.toString());
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Reads every non-voided patient's names and identifiers with three plain sql queries, without
+	 * loading any patients into the hibernate session.
+	 * 
+	 * @see org.openmrs.api.db.PatientDAO#rebuildPatientSearchIndex()
+	 */
+	public synchronized void rebuildPatientSearchIndex() throws DAOException {
+		long startTime = System.currentTimeMillis();
+		
+		// searches keep using the old index (or the database) until the new one is complete. The
+		// patients saved in the meantime may have been read before they changed, so their changes
+		// are applied to the new index again before it is swapped in
+		synchronized (patientSearchIndexLock) {
+			patientSearchIndexChanges = new Vector<PatientSearchIndex.Change>();
+		}
+		PatientSearchIndex index;
+		try {
+			index = readPatientSearchIndex();
+			synchronized (patientSearchIndexLock) {
+				for (PatientSearchIndex.Change change : patientSearchIndexChanges)
+					index.apply(change);
+				patientSearchIndex = index;
+			}
+		}
+		finally {
+			synchronized (patientSearchIndexLock) {
+				patientSearchIndexChanges = null;
+			}
+		}
+		
+		log.info("Built the patient search index with " + index.size() + " patients in "
+		        + (System.currentTimeMillis() - startTime) + "ms");
+	}
+	
+	/**
+	 * @return a new index of every non-voided patient currently in the database
+	 */
+	private PatientSearchIndex readPatientSearchIndex() throws DAOException {
+		Connection connection = sessionFactory.getCurrentSession().connection();
+		Map<Integer, PatientSearchIndex.IndexedPatient> patients = new HashMap<Integer, PatientSearchIndex.IndexedPatient>();
+		
+		try {
+			PreparedStatement ps = connection.prepareStatement("select pat.patient_id, p.gender, p.birthdate, "
+			        + "p.birthdate_estimated, t.name from patient pat inner join person p on p.person_id = pat.patient_id "
+			        + "left join tribe t on t.tribe_id = pat.tribe where pat.voided = 0 and p.voided = 0");
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				Integer patientId = rs.getInt(1);
+				patients.put(patientId, new PatientSearchIndex.IndexedPatient(patientId, rs.getString(2), rs
+				        .getTimestamp(3), rs.getBoolean(4), rs.getString(5)));
+			}
+			rs.close();
+			ps.close();
+			
+			// in the same order as Person.names, so the first one is the one shown
+			ps = connection.prepareStatement("select person_id, given_name, middle_name, family_name, family_name2 "
+			        + "from person_name where voided = 0 order by person_id, preferred desc, date_created desc");
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				PatientSearchIndex.IndexedPatient patient = patients.get(rs.getInt(1));
+				if (patient != null)
+					patient.addName(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5));
+			}
+			rs.close();
+			ps.close();
+			
+			// in the same order as Patient.identifiers
+			ps = connection.prepareStatement("select pi.patient_id, pi.identifier, pit.check_digit "
+			        + "from patient_identifier pi inner join patient_identifier_type pit "
+			        + "on pit.patient_identifier_type_id = pi.identifier_type where pi.voided = 0 "
+			        + "order by pi.patient_id, pi.preferred desc, pi.identifier_type desc, pi.date_created desc");
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				PatientSearchIndex.IndexedPatient patient = patients.get(rs.getInt(1));
+				if (patient != null)
+					patient.addIdentifier(rs.getString(2), rs.getBoolean(3));
+			}
+			rs.close();
+			ps.close();
+		}
+		catch (SQLException e) {
+			throw new DAOException("Unable to read patient names and identifiers", e);
+		}
+		
+		PatientSearchIndex index = new PatientSearchIndex();
+		for (PatientSearchIndex.IndexedPatient patient : patients.values())
+			index.add(patient);
+		return index;
+	}
 }
@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -101,6 +102,19 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	/**
+	 * The order of {@link #getEncountersByForm(Cohort, List)}, used to merge its chunks
+	 */
+	private static final Comparator<Encounter> LATEST_ENCOUNTER_OF_HIGHEST_PATIENT_FIRST = new Comparator<Encounter>() {
+		
+		public int compare(Encounter left, Encounter right) {
+			int ret = right.getPatientId().compareTo(left.getPatientId());
+			if (ret == 0)
+				ret = right.getEncounterDatetime().compareTo(left.getEncounterDatetime());
+			return ret;
+		}
+	};
+	
 	/**
 	 * Hibernate sessionFactory.getCurrentSession() factory
 	 */
@@ -1066,22 +1080,27 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.add(Restrictions.eq("concept", concept));
 		
 		// only add this where clause if patients were passed in
-		if (patients != null)
-			criteria.add(Restrictions.in("person.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("person.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("obsDatetime"));
 		log.debug("criteria: " + criteria);
-		List<Obs> temp = criteria.list();
-		for (Obs obs : temp) {
-			Integer ptId = obs.getPersonId();
-			List<Obs> forPatient = ret.get(ptId);
-			if (forPatient == null) {
-				forPatient = new ArrayList<Obs>();
-				ret.put(ptId, forPatient);
+		do {
+			List<Obs> temp = criteria.list();
+			for (Obs obs : temp) {
+				Integer ptId = obs.getPersonId();
+				List<Obs> forPatient = ret.get(ptId);
+				if (forPatient == null) {
+					forPatient = new ArrayList<Obs>();
+					ret.put(ptId, forPatient);
+				}
+				forPatient.add(obs);
 			}
-			forPatient.add(obs);
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1152,8 +1171,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setProjection(projections);
 		
 		// only restrict on patient ids if some were passed in
-		if (patients != null)
-			criteria.add(Restrictions.in("obs.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("obs.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Expression.eq("obs.concept", c));
 		criteria.add(Expression.eq("obs.voided", false));
@@ -1163,44 +1185,46 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		log.debug("criteria: " + criteria);
 		
-		List<Object[]> rows = criteria.list();
-		
-		// set up the return map
-		for (Object[] rowArray : rows) {
-			//log.debug("row[0]: " + row[0] + " row[1]: " + row[1] + (row.length > 2 ? " row[2]: " + row[2] : ""));
-			Integer ptId = (Integer)rowArray[0];
+		do {
+			List<Object[]> rows = criteria.list();
 			
-			Boolean tmpConditional = conditional.booleanValue();
-			
-			// get all columns
-			int index = 1;
-			List<Object> row = new Vector<Object>();
-			while (index < rowArray.length) {
-				Object value = rowArray[index++];
-				if (tmpConditional) {
-					if (index == 2 && value != null) // skip null first value if we must
-						row.add(value);
-					else
-						row.add(rowArray[index]);
-					tmpConditional = false;
-					index++; // increment counter for next column.  (Skips over value_concept)
-				} else
-					row.add(value == null ? "" : value);
-			}
-			
-			// if we haven't seen a different row for this patient already:
-			if (!ret.containsKey(ptId)) {
-				List<List<Object>> arr = new Vector<List<Object>>();
-				arr.add(row);
-				ret.put(ptId, arr);
-			}
-			// if we have seen a row for this patient already
-			else {
-				List<List<Object>> oldArr = ret.get(ptId);
-				oldArr.add(row);
-				ret.put(ptId, oldArr);
+			// set up the return map
+			for (Object[] rowArray : rows) {
+				//log.debug("row[0]: " + row[0] + " row[1]: " + row[1] + (row.length > 2 ? " row[2]: " + row[2] : ""));
+				Integer ptId = (Integer)rowArray[0];
+				
+				Boolean tmpConditional = conditional.booleanValue();
+				
+				// get all columns
+				int index = 1;
+				List<Object> row = new Vector<Object>();
+				while (index < rowArray.length) {
+					Object value = rowArray[index++];
+					if (tmpConditional) {
+						if (index == 2 && value != null) // skip null first value if we must
+							row.add(value);
+						else
+							row.add(rowArray[index]);
+						tmpConditional = false;
+						index++; // increment counter for next column.  (Skips over value_concept)
+					} else
+						row.add(value == null ? "" : value);
+				}
+				
+				// if we haven't seen a different row for this patient already:
+				if (!ret.containsKey(ptId)) {
+					List<List<Object>> arr = new Vector<List<Object>>();
+					arr.add(row);
+					ret.put(ptId, arr);
+				}
+				// if we have seen a row for this patient already
+				else {
+					List<List<Object>> oldArr = ret.get(ptId);
+					oldArr.add(row);
+					ret.put(ptId, oldArr);
+				}
 			}
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 		
@@ -1235,8 +1259,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only necessary if patients were passed in
-		if (patients != null && patients.size() > 0)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null && patients.size() > 0) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		
@@ -1246,14 +1273,20 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
-		
-		// set up the return map
-		for (Encounter enc : encounters) {
-			Integer ptId = enc.getPatientId();
-			if (!ret.containsKey(ptId))
-				ret.put(ptId, enc);
-		}
+		do {
+			List<Encounter> encounters = criteria.list();
+			
+			// set up the return map
+			for (Encounter enc : encounters) {
+				Integer ptId = enc.getPatientId();
+				if (!ret.containsKey(ptId))
+					ret.put(ptId, enc);
+				else
+					// only the patient's first encounter is returned, so don't keep the others
+					// in the session while the next chunk is read
+					sessionFactory.getCurrentSession().evict(enc);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1272,8 +1305,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only necessary if patients were passed in
-		if (patients != null && patients.size() > 0)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null && patients.size() > 0) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		
@@ -1283,7 +1319,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		return criteria.list();
+		List<Encounter> ret = new ArrayList<Encounter>();
+		do {
+			ret = ChunkedInExpression.merge(ret, criteria.list(), LATEST_ENCOUNTER_OF_HIGHEST_PATIENT_FIRST);
+		} while (patientIds != null && patientIds.nextChunk());
+		return ret;
 	
 	}	
 	
@@ -1298,8 +1338,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only necessary if patients were specified
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		
@@ -1316,14 +1359,16 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		else
 			criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		List<Object[]> attrs = criteria.list();
-		
-		// set up the return map
-		for (Object[] row : attrs) {
-			Integer ptId = (Integer)row[0];
-			if (!ret.containsKey(ptId))
-				ret.put(ptId, row[1]);
-		}
+		do {
+			List<Object[]> attrs = criteria.list();
+			
+			// set up the return map
+			for (Object[] row : attrs) {
+				Integer ptId = (Integer)row[0];
+				if (!ret.containsKey(ptId))
+					ret.put(ptId, row[1]);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1337,22 +1382,31 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// only include this where clause if patients were passed in
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
-		
-		// set up the return map
-		for (Encounter enc : encounters) {
-			Integer ptId = enc.getPatientId();
-			if (!ret.containsKey(ptId))
-				ret.put(ptId, enc);
-		}
+		do {
+			List<Encounter> encounters = criteria.list();
+			
+			// set up the return map
+			for (Encounter enc : encounters) {
+				Integer ptId = enc.getPatientId();
+				if (!ret.containsKey(ptId))
+					ret.put(ptId, enc);
+				else
+					// only the patient's first encounter is returned, so don't keep the others
+					// in the session while the next chunk is read
+					sessionFactory.getCurrentSession().evict(enc);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1366,8 +1420,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only needed if patients were specified
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		
@@ -1377,14 +1434,20 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
-		
-		// set up the return map
-		for (Encounter enc : encounters) {
-			Integer ptId = enc.getPatientId();
-			if (!ret.containsKey(ptId))
-				ret.put(ptId, enc);
-		}
+		do {
+			List<Encounter> encounters = criteria.list();
+			
+			// set up the return map
+			for (Encounter enc : encounters) {
+				Integer ptId = enc.getPatientId();
+				if (!ret.containsKey(ptId))
+					ret.put(ptId, enc);
+				else
+					// only the patient's first encounter is returned, so don't keep the others
+					// in the session while the next chunk is read
+					sessionFactory.getCurrentSession().evict(enc);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1412,14 +1475,17 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// set up the query
 		ProjectionList projectionList = Projections.projectionList();
+		ChunkedInExpression patientIds = null;
 		
 		// if Person, PersonName, or PersonAddress
 		if (className.contains("Person")) {
 			projectionList.add(Projections.property("person.personId"));
 			projectionList.add(Projections.property(property));
 			
-			if (patients != null)
-				criteria.add(Restrictions.in("person.personId", patients.getMemberIds()));
+			if (patients != null) {
+				patientIds = new ChunkedInExpression("person.personId", patients.getMemberIds());
+				criteria.add(patientIds);
+			}
 			
 			// do not include voided person rows
 			if (className.equals("org.openmrs.Person"))
@@ -1435,8 +1501,10 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			projectionList.add(Projections.property("patient.personId"));
 			projectionList.add(Projections.property(property));
 			
-			if (patients != null)
-				criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			if (patients != null) {
+				patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+				criteria.add(patientIds);
+			}
 			
 			// do not include voided patients
 			criteria.add(Expression.eq("voided", false));
@@ -1459,32 +1527,34 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		}
 		
 		criteria.addOrder(org.hibernate.criterion.Order.desc("dateCreated"));
-		List<Object[]> rows = criteria.list();
-		
-		// set up the return map
-		if (returnAll) {
-			for (Object[] row : rows) {
-				Integer ptId = (Integer)row[0];
-				Object columnValue = row[1];
-				if (!ret.containsKey(ptId)) {
-					Object[] arr = {columnValue};
-					ret.put(ptId, arr);
-				} else {
-					Object[] oldArr = (Object[])ret.get(ptId);
-					Object[] newArr = new Object[oldArr.length + 1];
-					System.arraycopy(oldArr,0,newArr,0,oldArr.length);
-					newArr[oldArr.length] = columnValue;
-					ret.put(ptId, newArr);
+		do {
+			List<Object[]> rows = criteria.list();
+			
+			// set up the return map
+			if (returnAll) {
+				for (Object[] row : rows) {
+					Integer ptId = (Integer)row[0];
+					Object columnValue = row[1];
+					if (!ret.containsKey(ptId)) {
+						Object[] arr = {columnValue};
+						ret.put(ptId, arr);
+					} else {
+						Object[] oldArr = (Object[])ret.get(ptId);
+						Object[] newArr = new Object[oldArr.length + 1];
+						System.arraycopy(oldArr,0,newArr,0,oldArr.length);
+						newArr[oldArr.length] = columnValue;
+						ret.put(ptId, newArr);
+					}
+				}
+			} else {
+				for (Object[] row : rows) {
+					Integer ptId = (Integer)row[0];
+					Object columnValue = row[1];
+					if (!ret.containsKey(ptId))
+						ret.put(ptId, columnValue);
 				}
 			}
-		} else {
-			for (Object[] row : rows) {
-				Integer ptId = (Integer)row[0];
-				Object columnValue = row[1];
-				if (!ret.containsKey(ptId))
-					ret.put(ptId, columnValue);
-			}
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return ret;
 	}
@@ -1523,15 +1593,16 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		Query query = sessionFactory.getCurrentSession().createQuery(queryString.toString());
 		
-		// this where clause is only necessary if patients were passed in
-		if (patients != null)
-			query.setParameterList("ids", patients.getMemberIds());
-		
 		query.setString("typeName", attributeTypeName);
 
 		log.debug("query: " + queryString);
 		
-		List<Object[]> rows = query.list();
+		// this where clause is only necessary if patients were passed in
+		List<Object[]> rows;
+		if (patients != null)
+			rows = ChunkedInExpression.list(query, "ids", patients.getMemberIds());
+		else
+			rows = query.list();
 		
 		// set up the return map
 		if (returnAll) {
@@ -1670,10 +1741,9 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		if (!patientIds.isEmpty()) {
 			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
 			criteria.setCacheMode(CacheMode.IGNORE);
-			criteria.add(Restrictions.in("patientId", patientIds));
 			criteria.add(Restrictions.eq("voided", false));
 			log.debug("criteria: " + criteria);
-			List<Patient> temp = criteria.list();
+			List<Patient> temp = ChunkedInExpression.list(criteria, "patientId", patientIds);
 			for (Patient p : temp) {
 				ret.add(p);
 			}
@@ -1749,8 +1819,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		//criteria.add(Restrictions.in("patientProgram.patient.personId", ids));
 		
 		// only include this where clause if patients were passed in
-		if (ps != null)
-			criteria.createCriteria("patientProgram").add(Restrictions.in("patient.personId", ps.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (ps != null) {
+			patientIds = new ChunkedInExpression("patient.personId", ps.getMemberIds());
+			criteria.createCriteria("patientProgram").add(patientIds);
+		}
 		
 		//criteria.add(Restrictions.eq("state.programWorkflow", wf));
 		criteria.createCriteria("state").add(Restrictions.eq("programWorkflow", wf));
@@ -1758,11 +1831,13 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.add(Restrictions.or(Restrictions.isNull("startDate"), Restrictions.le("startDate", now)));
 		criteria.add(Restrictions.or(Restrictions.isNull("endDate"), Restrictions.ge("endDate", now)));
 		log.debug("criteria: " + criteria);
-		List<PatientState> temp = criteria.list();
-		for (PatientState state : temp) {
-			Integer ptId = state.getPatientProgram().getPatient().getPatientId();
-			ret.put(ptId, state);
-		}
+		do {
+			List<PatientState> temp = criteria.list();
+			for (PatientState state : temp) {
+				Integer ptId = state.getPatientProgram().getPatient().getPatientId();
+				ret.put(ptId, state);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 				
 		return ret;
 	}
@@ -1784,8 +1859,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only necessary if patients were passed in
-		if (ps != null)
-			criteria.add(Restrictions.in("patient.personId", ps.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (ps != null) {
+			patientIds = new ChunkedInExpression("patient.personId", ps.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("program", program));
 		if (!includeVoided)
@@ -1794,11 +1872,13 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		if (!includePast)
 			criteria.add(Restrictions.or(Restrictions.isNull("dateCompleted"), Restrictions.ge("dateCompleted", now)));
 		log.debug("criteria: " + criteria);
-		List<PatientProgram> temp = criteria.list();
-		for (PatientProgram prog : temp) {
-			Integer ptId = prog.getPatient().getPatientId(); 
-			ret.put(ptId, prog);
-		}
+		do {
+			List<PatientProgram> temp = criteria.list();
+			for (PatientProgram prog : temp) {
+				Integer ptId = prog.getPatient().getPatientId(); 
+				ret.put(ptId, prog);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 				
 		return ret;
 	}
@@ -1814,8 +1894,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// this "where clause" is only necessary if patients were passed in
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		//criteria.add(Restrictions.in("encounter.patient.personId", ids));
 		//criteria.createCriteria("encounter").add(Restrictions.in("patient.personId", ids));
@@ -1828,16 +1911,18 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		    "discontinued", true), Restrictions.gt("discontinuedDate", now))));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("startDate"));
 		log.debug("criteria: " + criteria);
-		List<DrugOrder> temp = criteria.list();
-		for (DrugOrder regimen : temp) {
-			Integer ptId = regimen.getPatient().getPatientId();
-			List<DrugOrder> list = ret.get(ptId);
-			if (list == null) {
-				list = new ArrayList<DrugOrder>();
-				ret.put(ptId, list);
+		do {
+			List<DrugOrder> temp = criteria.list();
+			for (DrugOrder regimen : temp) {
+				Integer ptId = regimen.getPatient().getPatientId();
+				List<DrugOrder> list = ret.get(ptId);
+				if (list == null) {
+					list = new ArrayList<DrugOrder>();
+					ret.put(ptId, list);
+				}
+				list.add(regimen);
 			}
-			list.add(regimen);
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		return ret;
 	}
 	
@@ -1851,24 +1936,29 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// only include this where clause if patients were passed in
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		if (drugConcepts != null)
 			criteria.add(Restrictions.in("concept", drugConcepts));
 		criteria.add(Restrictions.eq("voided", false));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("startDate"));
 		log.debug("criteria: " + criteria);
-		List<DrugOrder> temp = criteria.list();
-		for (DrugOrder regimen : temp) {
-			Integer ptId = regimen.getPatient().getPatientId();
-			List<DrugOrder> list = ret.get(ptId);
-			if (list == null) {
-				list = new ArrayList<DrugOrder>();
-				ret.put(ptId, list);
+		do {
+			List<DrugOrder> temp = criteria.list();
+			for (DrugOrder regimen : temp) {
+				Integer ptId = regimen.getPatient().getPatientId();
+				List<DrugOrder> list = ret.get(ptId);
+				if (list == null) {
+					list = new ArrayList<DrugOrder>();
+					ret.put(ptId, list);
+				}
+				list.add(regimen);
 			}
-			list.add(regimen);
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		return ret;
 	}
 	
@@ -1888,25 +1978,29 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Relationship.class);
 		criteria.add(Restrictions.eq("voided", false));
+		ChunkedInExpression patientIds = null;
 		if (patients != null) {
 			if (forwards) {
-				criteria.add(Restrictions.in("personA.personId", patients.getMemberIds()));
+				patientIds = new ChunkedInExpression("personA.personId", patients.getMemberIds());
 			} else {
-				criteria.add(Restrictions.in("personB.personId", patients.getMemberIds()));
+				patientIds = new ChunkedInExpression("personB.personId", patients.getMemberIds());
 			}
+			criteria.add(patientIds);
 		}
 		log.debug("criteria: " + criteria);
-		List<Relationship> rels = (List<Relationship>) criteria.list();
-		for (Relationship rel : rels) {
-			Person fromPerson = forwards ? rel.getPersonA() : rel.getPersonB();
-			Person toPerson = forwards ? rel.getPersonB() : rel.getPersonA();
-			List<Person> holder = (List<Person>) ret.get(fromPerson.getPersonId());
-			if (holder == null) {
-				holder = new ArrayList<Person>();
-				ret.put(fromPerson.getPersonId(), holder);
+		do {
+			List<Relationship> rels = (List<Relationship>) criteria.list();
+			for (Relationship rel : rels) {
+				Person fromPerson = forwards ? rel.getPersonA() : rel.getPersonB();
+				Person toPerson = forwards ? rel.getPersonB() : rel.getPersonA();
+				List<Person> holder = (List<Person>) ret.get(fromPerson.getPersonId());
+				if (holder == null) {
+					holder = new ArrayList<Person>();
+					ret.put(fromPerson.getPersonId(), holder);
+				}
+				holder.add(toPerson);
 			}
-			holder.add(toPerson);
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 
 		return ret;
 	}
@@ -1923,21 +2017,26 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			criteria.add(Restrictions.eq("relationship", relType));
 		
 		// this "where clause" is only useful if patients were passed in
-		if (patients != null)
-			criteria.createCriteria("personB").add(Restrictions.in("personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("personId", patients.getMemberIds());
+			criteria.createCriteria("personB").add(patientIds);
+		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		log.debug("criteria: " + criteria);
-		List<Relationship> temp = criteria.list();
-		for (Relationship rel : temp) {
-			Integer ptId = rel.getPersonB().getPersonId();
-			List<Relationship> rels = ret.get(ptId);
-			if (rels == null) {
-				rels = new ArrayList<Relationship>();
-				ret.put(ptId, rels);
+		do {
+			List<Relationship> temp = criteria.list();
+			for (Relationship rel : temp) {
+				Integer ptId = rel.getPersonB().getPersonId();
+				List<Relationship> rels = ret.get(ptId);
+				if (rels == null) {
+					rels = new ArrayList<Relationship>();
+					ret.put(ptId, rels);
+				}
+				rels.add(rel);
 			}
-			rels.add(rel);
-		}
+		} while (patientIds != null && patientIds.nextChunk());
 		return ret;
 	}
 	
@@ -2068,8 +2167,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
 		// Add patient restriction if necessary
-		if (patients != null)
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+		ChunkedInExpression patientIds = null;
+		if (patients != null) {
+			patientIds = new ChunkedInExpression("patient.personId", patients.getMemberIds());
+			criteria.add(patientIds);
+		}
 		
 		// all identifiers must be non-voided
 		criteria.add(Restrictions.eq("voided", false));
@@ -2081,16 +2183,18 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		// Order by ID
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		
-		List<PatientIdentifier> identifiers = criteria.list();
-		log.info("IDS: " + identifiers);
-		
-		
-		// set up the return map
-		for (PatientIdentifier identifier : identifiers) {
-			Integer patientId = identifier.getPatient().getPatientId();
-			if (!patientIdentifiers.containsKey(patientId))
-				patientIdentifiers.put(patientId, identifier);
-		}
+		do {
+			List<PatientIdentifier> identifiers = criteria.list();
+			log.info("IDS: " + identifiers);
+			
+			
+			// set up the return map
+			for (PatientIdentifier identifier : identifiers) {
+				Integer patientId = identifier.getPatient().getPatientId();
+				if (!patientIdentifiers.containsKey(patientId))
+					patientIdentifiers.put(patientId, identifier);
+			}
+		} while (patientIds != null && patientIds.nextChunk());
 		
 		return patientIdentifiers;
 	}	
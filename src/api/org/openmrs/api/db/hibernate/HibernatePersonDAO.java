@@ -27,6 +27,7 @@ import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.type.StringType;
+import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
@@ -57,6 +58,11 @@ public class HibernatePersonDAO implements PersonDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * Keeps its patient search index current with the patients saved or purged as people
+	 */
+	private HibernatePatientDAO patientDAO;
+	
 	/**
 	 * Set session factory
 	 * 
@@ -66,6 +72,14 @@ public class HibernatePersonDAO implements PersonDAO {
 		this.sessionFactory = sessionFactory;
 	}
 	
+	/**
+	 * @param patientDAO the dao whose patient search index should see changes made to patients
+	 *            through this dao
+	 */
+	public void setPatientDAO(HibernatePatientDAO patientDAO) {
+		this.patientDAO = patientDAO;
+	}
+	
 	/**
 	 * @see org.openmrs.api.PersonService#getSimilarPeople(java.lang.String,java.lang.Integer,java.lang.String)
 	 * @see org.openmrs.api.db.PersonDAO#getSimilarPeople(java.lang.String,java.lang.Integer,java.lang.String)
@@ -321,6 +335,7 @@ public class HibernatePersonDAO implements PersonDAO {
 		}
 		
 		criteria.addOrder(Order.asc("name"));
+		criteria.setCacheable(true);
 		
 		return criteria.list();
 	}
@@ -464,6 +479,8 @@ public class HibernatePersonDAO implements PersonDAO {
 	 * @see org.openmrs.api.db.PersonDAO#deletePerson(org.openmrs.Person)
 	 */
 	public void deletePerson(Person person) throws DAOException {
+		if (patientDAO != null && (person instanceof Patient || person.isPatient()))
+			patientDAO.updatePatientSearchIndex(PatientSearchIndex.removalOf(person.getPersonId()));
 		HibernatePersonDAO.deletePersonAndAttributes(sessionFactory, person);
 	}
 	
@@ -473,6 +490,8 @@ public class HibernatePersonDAO implements PersonDAO {
 	 */
 	public Person savePerson(Person person) throws DAOException {
 		sessionFactory.getCurrentSession().saveOrUpdate(person);
+		if (patientDAO != null)
+			patientDAO.updatePatientSearchIndex(PatientSearchIndex.changeOf(person));
 		return person;
 	}
 	
@@ -88,6 +88,7 @@ public class HibernateProgramWorkflowDAO implements ProgramWorkflowDAO {
 		if (includeRetired == false) {
 			criteria.add(Expression.eq("retired", false));
 		}
+		criteria.setCacheable(true);
 		return criteria.list();
 	}
 	
@@ -185,10 +186,12 @@ public class HibernateProgramWorkflowDAO implements ProgramWorkflowDAO {
 		}
 		hql += " order by patient.patientId, dateEnrolled";
 		Query query = sessionFactory.getCurrentSession().createQuery(hql);
-		if (cohort != null)
-			query.setParameterList("patientIds", cohort.getMemberIds());
 		if (programs != null)
 			query.setParameterList("programs", programs);
+		
+		// the ids are chunked in ascending order, so the concatenated chunks keep the sort
+		if (cohort != null)
+			return ChunkedInExpression.list(query, "patientIds", cohort.getMemberIds());
 		return query.list();
 	}
 	
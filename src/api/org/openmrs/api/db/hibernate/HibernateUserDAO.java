@@ -230,7 +230,8 @@ public class HibernateUserDAO implements UserDAO {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Privilege> getAllPrivileges() throws DAOException {
-		return sessionFactory.getCurrentSession().createQuery("from Privilege p order by p.privilege").list();
+		return sessionFactory.getCurrentSession().createQuery("from Privilege p order by p.privilege").setCacheable(true)
+		        .list();
 	}
 	
 	/**
@@ -245,6 +246,9 @@ public class HibernateUserDAO implements UserDAO {
 	 */
 	public void deletePrivilege(Privilege privilege) throws DAOException {
 		sessionFactory.getCurrentSession().delete(privilege);
+		
+		// cached roles may still list the privilege
+		sessionFactory.evictCollection(Role.class.getName() + ".privileges");
 	}
 	
 	/**
@@ -260,6 +264,9 @@ public class HibernateUserDAO implements UserDAO {
 	 */
 	public void deleteRole(Role role) throws DAOException {
 		sessionFactory.getCurrentSession().delete(role);
+		
+		// cached roles may still inherit from the role
+		sessionFactory.evictCollection(Role.class.getName() + ".inheritedRoles");
 	}
 	
 	/**
@@ -275,7 +282,7 @@ public class HibernateUserDAO implements UserDAO {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Role> getAllRoles() throws DAOException {
-		return sessionFactory.getCurrentSession().createQuery("from Role r order by r.role").list();
+		return sessionFactory.getCurrentSession().createQuery("from Role r order by r.role").setCacheable(true).list();
 	}
 	
 	/**
@@ -0,0 +1,577 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientSearchResult;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * An in-memory index of the names and identifiers of every non-voided patient, answering the
+ * searches typed into the find patient box without going to the database or loading any patients. <br/>
+ * <br/>
+ * Names and identifiers are normalized to upper case letters and digits only, so "O'Brien" is found
+ * by "obrien" and "1234-5" by "12345". Each word searched for must match every patient returned,
+ * either as a whole name part, as the start of a name part or identifier, or (for words of letters
+ * only) by sounding the same. Results are ranked by how well the words matched and then by name;
+ * patients only found by sound are flagged as close matches. <br/>
+ * <br/>
+ * The index is safe to search from many threads while it is being updated. Changes are worked out
+ * with {@link #changeOf(Patient)} or {@link #changeOf(Person)} while the patient can still be read,
+ * so that they can be applied once the transaction that saved the patient has committed.
+ * 
+ * @see org.openmrs.util.OpenmrsConstants#GLOBAL_PROPERTY_PATIENT_SEARCH_INDEX_ENABLED
+ */
+public class PatientSearchIndex {
+	
+	private static final int IDENTIFIER_EXACT = 6;
+	
+	private static final int NAME_EXACT = 5;
+	
+	private static final int PREFIX = 3;
+	
+	private static final int SOUNDS_LIKE = 1;
+	
+	/**
+	 * patient id -> what is indexed for that patient
+	 */
+	private Map<Integer, IndexedPatient> patients = new HashMap<Integer, IndexedPatient>();
+	
+	/**
+	 * normalized name part or identifier -> ids of the patients that have it
+	 */
+	private SortedMap<String, Set<Integer>> terms = new TreeMap<String, Set<Integer>>();
+	
+	/**
+	 * soundex code -> ids of the patients with a name part that sounds like it
+	 */
+	private Map<String, Set<Integer>> sounds = new HashMap<String, Set<Integer>>();
+	
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Adds a patient to the index, replacing whatever was indexed for them before
+	 * 
+	 * @param patient the patient's names and identifiers
+	 */
+	public void add(IndexedPatient patient) {
+		apply(new Change(patient.patientId, patient, false));
+	}
+	
+	/**
+	 * Re-indexes a saved patient, or drops them if they are now voided
+	 * 
+	 * @param patient the patient that was saved
+	 */
+	public void updatePatient(Patient patient) {
+		apply(changeOf(patient));
+	}
+	
+	/**
+	 * Drops a patient from the index
+	 * 
+	 * @param patientId the patient that was purged or voided
+	 */
+	public void remove(Integer patientId) {
+		apply(removalOf(patientId));
+	}
+	
+	/**
+	 * Works out what the given patient should have in the index, without changing the index
+	 * 
+	 * @param patient the patient that was saved
+	 * @return the change to {@link #apply(Change)}, or null if the patient has not been saved yet
+	 */
+	public static Change changeOf(Patient patient) {
+		if (patient == null || patient.getPatientId() == null)
+			return null;
+		if (Boolean.TRUE.equals(patient.isVoided()) || Boolean.TRUE.equals(patient.isPersonVoided()))
+			return removalOf(patient.getPatientId());
+		return new Change(patient.getPatientId(), new IndexedPatient(patient), false);
+	}
+	
+	/**
+	 * Works out the names and demographics a patient saved as a plain person should have in the
+	 * index. Their identifiers and tribe are kept from what is already indexed for them.
+	 * 
+	 * @param person the person that was saved
+	 * @return the change to {@link #apply(Change)}, or null if the person is not a saved patient
+	 */
+	public static Change changeOf(Person person) {
+		if (person instanceof Patient)
+			return changeOf((Patient) person);
+		if (person == null || person.getPersonId() == null || !person.isPatient())
+			return null;
+		if (Boolean.TRUE.equals(person.isPersonVoided()))
+			return removalOf(person.getPersonId());
+		IndexedPatient patient = new IndexedPatient(person.getPersonId(), person.getGender(), person.getBirthdate(),
+		        Boolean.TRUE.equals(person.getBirthdateEstimated()), null);
+		patient.addNames(person);
+		return new Change(person.getPersonId(), patient, true);
+	}
+	
+	/**
+	 * @param patientId the patient that was purged or voided
+	 * @return the change that drops the patient from the index
+	 */
+	public static Change removalOf(Integer patientId) {
+		return new Change(patientId, null, false);
+	}
+	
+	/**
+	 * Replaces what is indexed for a patient with what is in the given change. Applying the same
+	 * change twice leaves the index as it was after the first time
+	 * 
+	 * @param change the change from {@link #changeOf(Patient)}, {@link #changeOf(Person)} or
+	 *            {@link #removalOf(Integer)}
+	 */
+	public void apply(Change change) {
+		if (change == null)
+			return;
+		
+		lock.writeLock().lock();
+		try {
+			IndexedPatient patient = change.patient;
+			if (patient != null && change.personOnly) {
+				// a patient that isn't indexed now is voided, and is only indexed again when it is
+				// saved as a patient
+				IndexedPatient indexed = patients.get(change.patientId);
+				if (indexed == null)
+					return;
+				patient = patient.withIdentifiersOf(indexed);
+			}
+			
+			removePatient(change.patientId);
+			if (patient == null)
+				return;
+			patients.put(patient.patientId, patient);
+			for (String word : patient.nameWords) {
+				post(terms, word, patient.patientId);
+				post(sounds, soundex(word), patient.patientId);
+			}
+			for (String identifier : patient.identifierWords)
+				post(terms, identifier, patient.patientId);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of patients in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return patients.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds the patients matching every word of a search
+	 * 
+	 * @param query the words to search for, separated by spaces or commas
+	 * @param maxResults the most results to return
+	 * @return the best matches, best first
+	 */
+	public List<PatientSearchResult> search(String query, int maxResults) {
+		List<String> words = new ArrayList<String>();
+		for (String word : query.split("[\\s,]+")) {
+			word = normalize(word);
+			if (word.length() > 0)
+				words.add(word);
+		}
+		List<PatientSearchResult> results = new ArrayList<PatientSearchResult>();
+		if (words.isEmpty())
+			return results;
+		
+		lock.readLock().lock();
+		try {
+			for (Integer patientId : getCandidates(words.get(0))) {
+				IndexedPatient patient = patients.get(patientId);
+				int score = 0;
+				boolean closeMatch = false;
+				for (String word : words) {
+					int wordScore = patient.match(word);
+					if (wordScore == 0) {
+						score = 0;
+						break;
+					}
+					score += wordScore;
+					if (wordScore == SOUNDS_LIKE)
+						closeMatch = true;
+				}
+				if (score > 0) {
+					PatientSearchResult result = patient.toResult();
+					result.setScore(score);
+					result.setCloseMatch(closeMatch);
+					results.add(result);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		
+		Collections.sort(results, new Comparator<PatientSearchResult>() {
+			
+			public int compare(PatientSearchResult a, PatientSearchResult b) {
+				int ret = b.getScore() - a.getScore();
+				if (ret == 0)
+					ret = OpenmrsUtil.compareWithNullAsGreatest(a.getFamilyName(), b.getFamilyName());
+				if (ret == 0)
+					ret = OpenmrsUtil.compareWithNullAsGreatest(a.getGivenName(), b.getGivenName());
+				if (ret == 0)
+					ret = a.getPatientId().compareTo(b.getPatientId());
+				return ret;
+			}
+		});
+		if (results.size() > maxResults)
+			results = new ArrayList<PatientSearchResult>(results.subList(0, maxResults));
+		return results;
+	}
+	
+	/**
+	 * Must be called while holding the read lock
+	 * 
+	 * @param word a normalized word
+	 * @return the ids of every patient with a name part or identifier starting with the word, or a
+	 *         name part sounding like it
+	 */
+	private Set<Integer> getCandidates(String word) {
+		Set<Integer> candidates = new HashSet<Integer>();
+		for (Set<Integer> ids : terms.subMap(word, word + Character.MAX_VALUE).values())
+			candidates.addAll(ids);
+		if (isLetters(word)) {
+			Set<Integer> ids = sounds.get(soundex(word));
+			if (ids != null)
+				candidates.addAll(ids);
+		}
+		return candidates;
+	}
+	
+	/**
+	 * Must be called while holding the write lock
+	 */
+	private void removePatient(Integer patientId) {
+		IndexedPatient patient = patients.remove(patientId);
+		if (patient == null)
+			return;
+		for (String word : patient.nameWords) {
+			unpost(terms, word, patientId);
+			unpost(sounds, soundex(word), patientId);
+		}
+		for (String identifier : patient.identifierWords)
+			unpost(terms, identifier, patientId);
+	}
+	
+	private static void post(Map<String, Set<Integer>> map, String key, Integer patientId) {
+		if (key == null)
+			return;
+		Set<Integer> ids = map.get(key);
+		if (ids == null) {
+			ids = new HashSet<Integer>(2);
+			map.put(key, ids);
+		}
+		ids.add(patientId);
+	}
+	
+	private static void unpost(Map<String, Set<Integer>> map, String key, Integer patientId) {
+		if (key == null)
+			return;
+		Set<Integer> ids = map.get(key);
+		if (ids != null) {
+			ids.remove(patientId);
+			if (ids.isEmpty())
+				map.remove(key);
+		}
+	}
+	
+	/**
+	 * @param s
+	 * @return s in upper case with everything but letters and digits taken out
+	 */
+	public static String normalize(String s) {
+		if (s == null)
+			return "";
+		StringBuilder normalized = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (Character.isLetterOrDigit(c))
+				normalized.append(Character.toUpperCase(c));
+		}
+		return normalized.toString();
+	}
+	
+	private static boolean isLetters(String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (!Character.isLetter(word.charAt(i)))
+				return false;
+		}
+		return word.length() > 1;
+	}
+	
+	/**
+	 * American soundex, the same code as the database soundex function gives for ascii names
+	 * 
+	 * @param word a normalized word
+	 * @return the four character code, or null if the word has no letters a to z
+	 */
+	public static String soundex(String word) {
+		final String codes = "01230120022455012623010202";
+		StringBuilder code = new StringBuilder(4);
+		char last = 0;
+		for (int i = 0; i < word.length() && code.length() < 4; i++) {
+			char c = word.charAt(i);
+			if (c < 'A' || c > 'Z')
+				continue;
+			char digit = codes.charAt(c - 'A');
+			if (code.length() == 0) {
+				code.append(c);
+			} else if (digit != '0' && digit != last) {
+				code.append(digit);
+			}
+			// h and w do not separate letters with the same code, vowels do
+			if (c != 'H' && c != 'W')
+				last = digit;
+		}
+		if (code.length() == 0)
+			return null;
+		while (code.length() < 4)
+			code.append('0');
+		return code.toString();
+	}
+	
+	/**
+	 * What one patient has in the index after they were saved, voided or purged
+	 */
+	public static class Change {
+		
+		private Integer patientId;
+		
+		/**
+		 * null if the patient was voided or purged
+		 */
+		private IndexedPatient patient;
+		
+		/**
+		 * true if the patient was saved as a person, so only their names and demographics are known
+		 */
+		private boolean personOnly;
+		
+		private Change(Integer patientId, IndexedPatient patient, boolean personOnly) {
+			this.patientId = patientId;
+			this.patient = patient;
+			this.personOnly = personOnly;
+		}
+		
+		/**
+		 * @return the id of the changed patient
+		 */
+		public Integer getPatientId() {
+			return patientId;
+		}
+	}
+	
+	/**
+	 * What is kept in the index for one patient: the normalized words to match on, and the parts of
+	 * the patient shown in a list of search results
+	 */
+	public static class IndexedPatient {
+		
+		private Integer patientId;
+		
+		private List<String> nameWords = new ArrayList<String>();
+		
+		private List<String> identifierWords = new ArrayList<String>();
+		
+		private String givenName;
+		
+		private String middleName;
+		
+		private String familyName;
+		
+		private List<String> otherNames = new ArrayList<String>(0);
+		
+		private String identifier;
+		
+		private boolean identifierCheckDigit;
+		
+		private List<String> otherIdentifiers = new ArrayList<String>(0);
+		
+		private String gender;
+		
+		private Date birthdate;
+		
+		private boolean birthdateEstimated;
+		
+		private String tribe;
+		
+		/**
+		 * Starts an entry for a patient read straight from the database. Names and identifiers
+		 * should be added preferred first.
+		 */
+		public IndexedPatient(Integer patientId, String gender, Date birthdate, boolean birthdateEstimated, String tribe) {
+			this.patientId = patientId;
+			this.gender = gender;
+			this.birthdate = birthdate;
+			this.birthdateEstimated = birthdateEstimated;
+			this.tribe = tribe;
+		}
+		
+		/**
+		 * Indexes an already loaded patient
+		 * 
+		 * @param patient
+		 */
+		public IndexedPatient(Patient patient) {
+			this(patient.getPatientId(), patient.getGender(), patient.getBirthdate(), Boolean.TRUE.equals(patient
+			        .getBirthdateEstimated()), patient.getTribe() == null ? null : patient.getTribe().getName());
+			addNames(patient);
+			for (PatientIdentifier pi : patient.getIdentifiers()) {
+				if (!pi.isVoided())
+					addIdentifier(pi.getIdentifier(), Boolean.TRUE.equals(pi.getIdentifierType().hasCheckDigit()));
+			}
+		}
+		
+		/**
+		 * Adds every non-voided name of the given person, preferred first
+		 */
+		private void addNames(Person person) {
+			for (PersonName name : person.getNames()) {
+				if (!name.isVoided())
+					addName(name.getGivenName(), name.getMiddleName(), name.getFamilyName(), name.getFamilyName2());
+			}
+		}
+		
+		/**
+		 * @param indexed what was indexed for this patient before
+		 * @return a copy of this entry with the tribe and identifiers of the given one
+		 */
+		private IndexedPatient withIdentifiersOf(IndexedPatient indexed) {
+			IndexedPatient patient = new IndexedPatient(patientId, gender, birthdate, birthdateEstimated, indexed.tribe);
+			patient.nameWords = nameWords;
+			patient.givenName = givenName;
+			patient.middleName = middleName;
+			patient.familyName = familyName;
+			patient.otherNames = otherNames;
+			patient.identifierWords = indexed.identifierWords;
+			patient.identifier = indexed.identifier;
+			patient.identifierCheckDigit = indexed.identifierCheckDigit;
+			patient.otherIdentifiers = indexed.otherIdentifiers;
+			return patient;
+		}
+		
+		/**
+		 * Adds one of the patient's non-voided names
+		 */
+		public void addName(String givenName, String middleName, String familyName, String familyName2) {
+			if (this.givenName == null && this.familyName == null) {
+				this.givenName = givenName;
+				this.middleName = middleName;
+				this.familyName = familyName;
+			} else {
+				otherNames.add(givenName + " " + middleName + " " + familyName);
+			}
+			for (String part : new String[] { givenName, middleName, familyName, familyName2 }) {
+				if (part == null)
+					continue;
+				for (String word : part.split("[\\s,]+")) {
+					word = normalize(word);
+					if (word.length() > 0 && !nameWords.contains(word))
+						nameWords.add(word);
+				}
+			}
+		}
+		
+		/**
+		 * Adds one of the patient's non-voided identifiers
+		 */
+		public void addIdentifier(String identifier, boolean checkDigit) {
+			if (this.identifier == null) {
+				this.identifier = identifier;
+				this.identifierCheckDigit = checkDigit;
+			} else {
+				otherIdentifiers.add(identifier);
+			}
+			String word = normalize(identifier);
+			if (word.length() > 0 && !identifierWords.contains(word))
+				identifierWords.add(word);
+		}
+		
+		/**
+		 * @param word a normalized word searched for
+		 * @return how well the word matches this patient, or 0 if it doesn't
+		 */
+		private int match(String word) {
+			int best = 0;
+			for (String identifierWord : identifierWords) {
+				if (identifierWord.equals(word))
+					return IDENTIFIER_EXACT;
+				if (identifierWord.startsWith(word))
+					best = PREFIX;
+			}
+			for (String nameWord : nameWords) {
+				if (nameWord.equals(word))
+					return NAME_EXACT;
+				if (nameWord.startsWith(word))
+					best = PREFIX;
+			}
+			if (best == 0 && isLetters(word)) {
+				String sound = soundex(word);
+				for (String nameWord : nameWords) {
+					if (sound != null && sound.equals(soundex(nameWord)))
+						return SOUNDS_LIKE;
+				}
+			}
+			return best;
+		}
+		
+		private PatientSearchResult toResult() {
+			PatientSearchResult result = new PatientSearchResult(patientId);
+			result.setGivenName(givenName);
+			result.setMiddleName(middleName);
+			result.setFamilyName(familyName);
+			result.getOtherNames().addAll(otherNames);
+			result.setIdentifier(identifier);
+			result.setIdentifierCheckDigit(identifierCheckDigit);
+			result.getOtherIdentifiers().addAll(otherIdentifiers);
+			result.setGender(gender);
+			result.setBirthdate(birthdate);
+			result.setBirthdateEstimated(birthdateEstimated);
+			result.setTribe(tribe);
+			return result;
+		}
+	}
+}
@@ -27,9 +27,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.CacheStatistic;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
 import org.openmrs.ConceptDatatype;
@@ -58,6 +60,9 @@ import org.openmrs.reporting.AbstractReportObject;
 import org.openmrs.reporting.Report;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 /**
@@ -80,6 +85,42 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 	 */
 	private GlobalLocaleList globalLocaleList;
 	
+	/**
+	 * The value of every global property, read from the database the first time one is asked for
+	 * and kept current by {@link #globalPropertyChanged(GlobalProperty)} and
+	 * {@link #globalPropertyDeleted(String)}. Properties with no value are left out. Null until it
+	 * has been loaded.
+	 */
+	private volatile Map<String, String> globalPropertyValues = null;
+	
+	/**
+	 * Values handed out by {@link #getGlobalPropertyValue(String, Object)}, so that they are only
+	 * parsed once
+	 */
+	private Map<String, ParsedGlobalProperty> parsedGlobalPropertyValues = new ConcurrentHashMap<String, ParsedGlobalProperty>();
+	
+	/**
+	 * A global property value parsed to a type, along with the string it was parsed from. It is
+	 * only used while the property still has that string as its value
+	 */
+	private static class ParsedGlobalProperty {
+		
+		private final String propertyValue;
+		
+		private final Class<?> type;
+		
+		/**
+		 * Null if the string could not be parsed to the type
+		 */
+		private final Object value;
+		
+		public ParsedGlobalProperty(String propertyValue, Class<?> type, Object value) {
+			this.propertyValue = propertyValue;
+			this.type = type;
+			this.value = value;
+		}
+	}
+	
 	/**
 	 * Default empty constructor
 	 */
@@ -588,7 +629,7 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 		if (propertyName == null)
 			return null;
 		
-		return dao.getGlobalProperty(propertyName);
+		return getGlobalPropertyValues().get(propertyName);
 	}
 	
 	/**
@@ -602,6 +643,84 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 		return s;
 	}
 	
+	/**
+	 * @see org.openmrs.api.AdministrationService#getGlobalPropertyValue(java.lang.String,
+	 *      java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getGlobalPropertyValue(String propertyName, T defaultValue) throws APIException {
+		if (defaultValue == null)
+			return (T) getGlobalProperty(propertyName);
+		
+		String value = getGlobalProperty(propertyName);
+		if (value == null)
+			return defaultValue;
+		
+		// the parsed value is only used if it came from the string the property has now, so a value
+		// parsed while the property was being changed is never handed out afterwards
+		ParsedGlobalProperty cached = parsedGlobalPropertyValues.get(propertyName);
+		if (cached != null && cached.type == defaultValue.getClass() && cached.propertyValue.equals(value))
+			return cached.value == null ? defaultValue : (T) cached.value;
+		
+		Object parsed;
+		try {
+			String trimmed = value.trim();
+			if (defaultValue instanceof String)
+				parsed = trimmed;
+			else if (defaultValue instanceof Integer)
+				parsed = Integer.valueOf(trimmed);
+			else if (defaultValue instanceof Long)
+				parsed = Long.valueOf(trimmed);
+			else if (defaultValue instanceof Double)
+				parsed = Double.valueOf(trimmed);
+			else if (defaultValue instanceof Boolean)
+				parsed = Boolean.valueOf(trimmed);
+			else
+				throw new APIException("Global properties cannot be converted to " + defaultValue.getClass().getName());
+		}
+		catch (NumberFormatException e) {
+			// remembered as unparsable so that this is only logged once for each value
+			log.warn("Unable to convert the global property " + propertyName + " to " + defaultValue.getClass().getName()
+			        + ". Using the default " + defaultValue);
+			parsed = null;
+		}
+		
+		parsedGlobalPropertyValues.put(propertyName, new ParsedGlobalProperty(value, defaultValue.getClass(), parsed));
+		return parsed == null ? defaultValue : (T) parsed;
+	}
+	
+	/**
+	 * Gets the cached value of every global property, reading them all from the database if they
+	 * have not been yet
+	 * 
+	 * @return property name to value
+	 */
+	private Map<String, String> getGlobalPropertyValues() {
+		Map<String, String> values = globalPropertyValues;
+		if (values == null) {
+			synchronized (this) {
+				values = globalPropertyValues;
+				if (values == null) {
+					values = new ConcurrentHashMap<String, String>();
+					for (GlobalProperty gp : dao.getAllGlobalProperties()) {
+						if (gp.getPropertyValue() != null)
+							values.put(gp.getProperty(), gp.getPropertyValue());
+					}
+					globalPropertyValues = values;
+				}
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#refreshGlobalPropertyCache()
+	 */
+	public synchronized void refreshGlobalPropertyCache() {
+		globalPropertyValues = null;
+		parsedGlobalPropertyValues.clear();
+	}
+	
 	/**
 	 * @see org.openmrs.api.AdministrationService#getGlobalPropertyObject(java.lang.String)
 	 */
@@ -680,6 +799,7 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 	 */
 	public void purgeGlobalProperty(GlobalProperty globalProperty) throws APIException {
 		dao.deleteGlobalProperty(globalProperty);
+		notifyGlobalPropertyDelete(globalProperty.getProperty());
 	}
 	
 	/**
@@ -738,6 +858,34 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 		return dao.executeSQL(sql, selectOnly);
 	}
 	
+	/**
+	 * @see org.openmrs.api.AdministrationService#getCacheStatistics()
+	 */
+	public List<CacheStatistic> getCacheStatistics() throws APIException {
+		return dao.getCacheStatistics();
+	}
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#isCacheStatisticsEnabled()
+	 */
+	public boolean isCacheStatisticsEnabled() throws APIException {
+		return dao.isCacheStatisticsEnabled();
+	}
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#setCacheStatisticsEnabled(boolean)
+	 */
+	public void setCacheStatisticsEnabled(boolean enabled) throws APIException {
+		dao.setCacheStatisticsEnabled(enabled);
+	}
+	
+	/**
+	 * @see org.openmrs.api.AdministrationService#clearCache()
+	 */
+	public void clearCache() throws APIException {
+		dao.clearCache();
+	}
+	
 	/**
 	 * @see org.openmrs.api.AdministrationService#addGlobalPropertyListener(java.lang.String,
 	 *      org.openmrs.api.GlobalPropertyListener)
@@ -943,21 +1091,55 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 			// reset the calculated locale values
 			presentationLocales = null;
 		}
+		
+		Map<String, String> values = globalPropertyValues;
+		if (values != null) {
+			if (newValue.getPropertyValue() == null)
+				values.remove(newValue.getProperty());
+			else
+				values.put(newValue.getProperty(), newValue.getPropertyValue());
+		}
+		parsedGlobalPropertyValues.remove(newValue.getProperty());
+		clearGlobalPropertyValuesOnRollback();
 	}
 	
 	/**
 	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyDeleted(java.lang.String)
 	 */
 	public void globalPropertyDeleted(String propertyName) {
-		// TODO Auto-generated method stub
+		if (propertyName.equals(OpenmrsConstants.GLOBAL_PROPERTY_LOCALE_ALLOWED_LIST))
+			presentationLocales = null;
 		
+		Map<String, String> values = globalPropertyValues;
+		if (values != null)
+			values.remove(propertyName);
+		parsedGlobalPropertyValues.remove(propertyName);
+		clearGlobalPropertyValuesOnRollback();
+	}
+	
+	/**
+	 * The cached values are changed as soon as a property is saved, so if the transaction saving it
+	 * is rolled back they have to be read again
+	 */
+	private void clearGlobalPropertyValuesOnRollback() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					if (status != TransactionSynchronization.STATUS_COMMITTED)
+						refreshGlobalPropertyCache();
+				}
+			});
+		}
 	}
 	
 	/**
 	 * @see org.openmrs.api.GlobalPropertyListener#supportsPropertyName(java.lang.String)
 	 */
 	public boolean supportsPropertyName(String propertyName) {
-		return propertyName.equals(OpenmrsConstants.GLOBAL_PROPERTY_LOCALE_ALLOWED_LIST);
+		// every property is cached
+		return true;
 	}
 	
 }
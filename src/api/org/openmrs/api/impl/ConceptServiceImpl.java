@@ -47,6 +47,7 @@ import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.ConceptsLockedException;
+import org.openmrs.api.EventListeners;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.ConceptDAO;
 import org.openmrs.scheduler.SchedulerException;
@@ -67,6 +68,8 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	
 	private ConceptDAO dao;
 	
+	private EventListeners eventListeners;
+	
 	/*
 	 * Name of the concept word update task. A constant, because we only
 	 * manage a single task with this name. 
@@ -85,6 +88,22 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		this.dao = dao;
 	}
 	
+	/**
+	 * @param eventListeners the listeners to tell when concepts and concept sources are saved or removed
+	 */
+	public void setEventListeners(EventListeners eventListeners) {
+		this.eventListeners = eventListeners;
+	}
+	
+	/**
+	 * Tells the listeners that care, such as the hl7 resolution cache, that concepts or concept sources were saved or
+	 * removed, once the current transaction is over
+	 */
+	private void notifyObjectsChanged(Class<?> type) {
+		if (eventListeners != null)
+			eventListeners.notifyObjectsChanged(type);
+	}
+	
 	/**
 	 * @deprecated use {@link #saveConcept(Concept)}
 	 */
@@ -157,6 +176,9 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		// add/remove entries in the concept_word table (used for searching)
 		this.updateConceptWord(conceptToReturn);
 		
+		// the concept's mappings may have changed
+		notifyObjectsChanged(Concept.class);
+		
 		return conceptToReturn;
 	}
 	
@@ -180,6 +202,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	public void purgeConcept(Concept concept) throws APIException {
 		checkIfLocked();
 		dao.purgeConcept(concept);
+		notifyObjectsChanged(Concept.class);
 	}
 	
 	/**
@@ -233,6 +256,13 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		return dao.getConcept(conceptId);
 	}
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#getConceptsForListing(java.util.Collection)
+	 */
+	public List<Concept> getConceptsForListing(Collection<Integer> conceptIds) throws APIException {
+		return dao.getConceptsForListing(conceptIds);
+	}
+	
 	/**
 	 * @see org.openmrs.api.ConceptService#getConceptName(java.lang.Integer)
 	 */
@@ -1093,11 +1123,14 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	public void updateConceptWords(Integer conceptIdStart, Integer conceptIdEnd) throws APIException {
 		checkIfLocked();
-		Integer i = conceptIdStart;
-		ConceptService cs = Context.getConceptService();
-		while (i++ <= conceptIdEnd) {
-			updateConceptWord(cs.getConcept(i));
-		}
+		dao.updateConceptWords(conceptIdStart, conceptIdEnd);
+	}
+	
+	/**
+	 * @see org.openmrs.api.ConceptService#rebuildConceptWordIndex()
+	 */
+	public void rebuildConceptWordIndex() throws APIException {
+		dao.rebuildConceptWordIndex();
 	}
 	
 	/**
@@ -1344,6 +1377,9 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	public ConceptSource purgeConceptSource(ConceptSource cs) throws APIException {
 		
+		// mappings are looked up by source name
+		notifyObjectsChanged(ConceptSource.class);
+		
 		return dao.deleteConceptSource(cs);
 	}
 	
@@ -1355,6 +1391,9 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		conceptSource.setCreator(Context.getAuthenticatedUser());
 		conceptSource.setDateCreated(new Date());
 		
+		// mappings are looked up by source name
+		notifyObjectsChanged(ConceptSource.class);
+		
 		return dao.saveConceptSource(conceptSource);
 	}
 	
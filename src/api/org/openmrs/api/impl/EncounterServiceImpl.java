@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Vector;
 
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
@@ -141,6 +142,9 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		// do the actual saving to the database
 		dao.saveEncounter(encounter);
 		
+		// cached logic results for this patient may depend on the encounter or its obs
+		invalidateLogicCache(encounter);
+		
 		return encounter;
 	}
 	
@@ -183,6 +187,16 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		return encs;
 	}
 	
+	/**
+	 * @see org.openmrs.api.EncounterService#getEncountersForListing(java.lang.String)
+	 */
+	public List<EncounterSearchResult> getEncountersForListing(String identifier) throws APIException {
+		if (identifier == null)
+			throw new IllegalArgumentException("The 'identifier' parameter is requred and cannot be null");
+		
+		return dao.getEncountersForListing(identifier);
+	}
+	
 	/**
 	 * @see org.openmrs.api.EncounterService#getEncounters(org.openmrs.Patient,
 	 *      org.openmrs.Location, java.util.Date, java.util.Date, java.util.Collection,
@@ -256,6 +270,19 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	 */
 	public void purgeEncounter(Encounter encounter) throws APIException {
 		dao.deleteEncounter(encounter);
+		invalidateLogicCache(encounter);
+	}
+	
+	/**
+	 * Drops any cached logic results for the patient of the given encounter once the transaction
+	 * is over
+	 * 
+	 * @param encounter the encounter that is being changed
+	 */
+	private void invalidateLogicCache(Encounter encounter) {
+		if (encounter.getPatient() != null)
+			Context.getLogicService().getLogicCache().invalidatePatientAfterTransaction(
+			    encounter.getPatient().getPatientId());
 	}
 	
 	/**
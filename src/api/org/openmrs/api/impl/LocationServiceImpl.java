@@ -20,6 +20,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Location;
 import org.openmrs.api.APIException;
+import org.openmrs.api.EventListeners;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.LocationDAO;
@@ -38,6 +39,8 @@ public class LocationServiceImpl extends BaseOpenmrsService implements LocationS
 	
 	private LocationDAO dao;
 	
+	private EventListeners eventListeners;
+	
 	/**
 	 * @see org.openmrs.api.LocationService#setLocationDAO(org.openmrs.api.db.LocationDAO)
 	 */
@@ -45,6 +48,22 @@ public class LocationServiceImpl extends BaseOpenmrsService implements LocationS
 		this.dao = dao;
 	}
 	
+	/**
+	 * @param eventListeners the listeners to tell when locations are saved or removed
+	 */
+	public void setEventListeners(EventListeners eventListeners) {
+		this.eventListeners = eventListeners;
+	}
+	
+	/**
+	 * Tells the listeners that care, such as the hl7 resolution cache, that locations were saved or
+	 * removed, once the current transaction is over
+	 */
+	private void notifyObjectsChanged(Class<?> type) {
+		if (eventListeners != null)
+			eventListeners.notifyObjectsChanged(type);
+	}
+	
 	/**
 	 * @see org.openmrs.api.LocationService#saveLocation(org.openmrs.Location)
 	 */
@@ -58,6 +77,10 @@ public class LocationServiceImpl extends BaseOpenmrsService implements LocationS
 		if (location.getCreator() == null) {
 			location.setCreator(Context.getAuthenticatedUser());
 		}
+		
+		// hl7 messages refer to locations by name
+		notifyObjectsChanged(Location.class);
+		
 		return dao.saveLocation(location);
 	}
 	
@@ -168,6 +191,7 @@ public class LocationServiceImpl extends BaseOpenmrsService implements LocationS
 	 */
 	public void purgeLocation(Location location) throws APIException {
 		dao.deleteLocation(location);
+		notifyObjectsChanged(Location.class);
 	}
 	
 }
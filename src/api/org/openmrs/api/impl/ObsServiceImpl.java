@@ -67,7 +67,9 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		if (obs.getObsId() == null) {
 			Context.requirePrivilege(OpenmrsConstants.PRIV_ADD_OBS);
 			obs.setRequiredProperties(Context.getAuthenticatedUser(), new Date());
-			return dao.saveObs(obs);
+			Obs saved = dao.saveObs(obs);
+			invalidateLogicCache(saved);
+			return saved;
 		} else {
 			Context.requirePrivilege(OpenmrsConstants.PRIV_EDIT_OBS);
 			
@@ -94,6 +96,7 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 			// save the new row to the database with the changes that
 			// have been made to it
 			dao.saveObs(newObs);
+			invalidateLogicCache(newObs);
 			
 			// void out the original observation to keep it around for
 			// historical purposes
@@ -167,6 +170,7 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 			}
 		}
 		
+		invalidateLogicCache(obs);
 		return dao.saveObs(obs);
 	}
 	
@@ -216,6 +220,7 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 				o.setDateVoided(null);
 			}
 		}
+		invalidateLogicCache(obs);
 		return dao.saveObs(obs);
 	}
 	
@@ -231,6 +236,18 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		}
 		
 		dao.deleteObs(obs);
+		invalidateLogicCache(obs);
+	}
+	
+	/**
+	 * Drops any cached logic results for the person the given obs belongs to once the transaction
+	 * is over, so that rules are re-evaluated against the changed data
+	 * 
+	 * @param obs the obs that is being changed
+	 */
+	private void invalidateLogicCache(Obs obs) {
+		if (obs.getPerson() != null)
+			Context.getLogicService().getLogicCache().invalidatePatientAfterTransaction(obs.getPerson().getPersonId());
 	}
 	
 	/**
@@ -546,6 +563,25 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		return getObservations(whom, null, questions, null, null, null, null, null, null, null, null, false);
 	}
 	
+	/**
+	 * @see org.openmrs.api.ObsService#getObservationsForListing(org.openmrs.Person,
+	 *      org.openmrs.Concept, org.openmrs.Encounter)
+	 */
+	public List<Obs> getObservationsForListing(Person who, Concept question, Encounter encounter) throws APIException {
+		List<Obs> obs = dao.getObservationsForListing(who, question, encounter);
+		
+		// load the names of all of the questions and answers at once
+		Set<Integer> conceptIds = new HashSet<Integer>();
+		for (Obs o : obs) {
+			conceptIds.add(o.getConcept().getConceptId());
+			if (o.getValueCoded() != null)
+				conceptIds.add(o.getValueCoded().getConceptId());
+		}
+		Context.getConceptService().getConceptsForListing(conceptIds);
+		
+		return obs;
+	}
+	
 	/**
 	 * @see org.openmrs.api.ObsService#getLastNObservations(java.lang.Integer, org.openmrs.Person,
 	 *      org.openmrs.Concept, boolean includeVoided)
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,8 +35,10 @@ import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.PatientProgram;
+import org.openmrs.PatientSearchResult;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
+import org.openmrs.PersonAttributeType;
 import org.openmrs.PersonName;
 import org.openmrs.Relationship;
 import org.openmrs.Tribe;
@@ -58,6 +61,7 @@ import org.openmrs.order.OrderUtil;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.patient.impl.LuhnIdentifierValidator;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
 import org.openmrs.validator.PatientIdentifierValidator;
 
 /**
@@ -119,7 +123,18 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 			patient.setDateChanged(now);
 		}
 		
-		return dao.savePatient(patient);
+		Patient saved = dao.savePatient(patient);
+		invalidateLogicCache(saved.getPatientId());
+		return saved;
+	}
+	
+	/**
+	 * Drops any cached logic results for the patient once the transaction is over
+	 * 
+	 * @param patientId the patient being changed
+	 */
+	private void invalidateLogicCache(Integer patientId) {
+		Context.getLogicService().getLogicCache().invalidatePatientAfterTransaction(patientId);
 	}
 	
 	/**
@@ -392,7 +407,9 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 	 * @see org.openmrs.api.PatientService#purgePatient(org.openmrs.Patient)
 	 */
 	public void purgePatient(Patient patient) throws APIException {
+		Integer patientId = patient.getPatientId();
 		dao.deletePatient(patient);
+		invalidateLogicCache(patientId);
 	}
 	
 	// patient identifier section
@@ -654,6 +671,89 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		}
 	}
 	
+	/**
+	 * @see org.openmrs.api.PatientService#getPatientSearchResults(java.lang.String)
+	 */
+	public List<PatientSearchResult> getPatientSearchResults(String query) throws APIException {
+		List<PatientSearchResult> results = new ArrayList<PatientSearchResult>();
+		
+		//query must be more than 2 characters
+		if (query == null || query.length() < 3)
+			return results;
+		
+		List<PersonAttributeType> attributeTypes = Context.getPersonService().getPersonAttributeTypes(
+		    PERSON_TYPE.PATIENT, PersonService.ATTR_VIEW_TYPE.LISTING);
+		results.addAll(searchPatients(query, attributeTypes));
+		
+		// if only 2 results found and a number was not in the
+		// search, then do a decapitated search: trim each word
+		// down to the first four characters and search again
+		if (results.size() < 3 && !query.matches(".*\\d+.*")) {
+			String newSearch = "";
+			for (String name : query.split(" ")) {
+				if (name.length() > 3)
+					name = name.substring(0, 4);
+				newSearch += " " + name;
+			}
+			newSearch = newSearch.trim();
+			
+			Set<Integer> found = new HashSet<Integer>();
+			for (PatientSearchResult result : results)
+				found.add(result.getPatientId());
+			if (newSearch.length() >= 3 && !newSearch.equals(query)) {
+				for (PatientSearchResult result : searchPatients(newSearch, attributeTypes)) {
+					if (found.add(result.getPatientId())) {
+						result.setCloseMatch(true);
+						results.add(result);
+					}
+				}
+			}
+		}
+		
+		// close matches always go after the exact ones
+		List<PatientSearchResult> closeMatches = new ArrayList<PatientSearchResult>();
+		for (PatientSearchResult result : results) {
+			if (result.isCloseMatch())
+				closeMatches.add(result);
+		}
+		results.removeAll(closeMatches);
+		results.addAll(closeMatches);
+		
+		return results;
+	}
+	
+	/**
+	 * Searches the patient search index if there is one, or else the database
+	 * 
+	 * @param query
+	 * @param attributeTypes the listing attributes to fill in
+	 * @return the matching patients
+	 */
+	private List<PatientSearchResult> searchPatients(String query, List<PersonAttributeType> attributeTypes) {
+		if (dao.isPatientSearchIndexBuilt())
+			return dao.getPatientSearchResults(query, attributeTypes, Context.getAdministrationService()
+			        .getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS, 1000));
+		
+		List<PatientSearchResult> results = new ArrayList<PatientSearchResult>();
+		for (Patient patient : getPatients(query)) {
+			PatientSearchResult result = new PatientSearchResult(patient);
+			for (PersonAttributeType type : attributeTypes) {
+				PersonAttribute attribute = patient.getAttribute(type);
+				if (attribute != null)
+					result.getAttributes().put(type.getName(), attribute.toString());
+			}
+			results.add(result);
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#rebuildPatientSearchIndex()
+	 */
+	public void rebuildPatientSearchIndex() throws APIException {
+		dao.rebuildPatientSearchIndex();
+	}
+	
 	/**
 	 * @see org.openmrs.api.PatientService#findPatient(org.openmrs.Patient)
 	 * @see #getPatientByExample(Patient)
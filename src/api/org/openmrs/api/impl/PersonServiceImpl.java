@@ -326,14 +326,28 @@ public class PersonServiceImpl implements PersonService {
 	 * @see org.openmrs.api.PersonService#purgePerson(org.openmrs.Person)
 	 */
 	public void purgePerson(Person person) throws APIException {
+		Integer personId = person.getPersonId();
 		dao.deletePerson(person);
+		invalidateLogicCache(personId);
 	}
 	
 	/**
 	 * @see org.openmrs.api.PersonService#savePerson(org.openmrs.Person)
 	 */
 	public Person savePerson(Person person) throws APIException {
-		return dao.savePerson(person);
+		Person saved = dao.savePerson(person);
+		invalidateLogicCache(saved.getPersonId());
+		return saved;
+	}
+	
+	/**
+	 * Drops any cached logic results for the person once the transaction is over, since the
+	 * person data source reads their gender, birthdate and death
+	 * 
+	 * @param personId the person being changed
+	 */
+	private void invalidateLogicCache(Integer personId) {
+		Context.getLogicService().getLogicCache().invalidatePatientAfterTransaction(personId);
 	}
 	
 	/**
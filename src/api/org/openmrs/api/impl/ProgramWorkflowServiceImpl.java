@@ -316,7 +316,19 @@ public class ProgramWorkflowServiceImpl extends BaseOpenmrsService implements Pr
 				state.setDateVoided(null);
 			}
 		}
-		return dao.savePatientProgram(patientProgram);
+		PatientProgram saved = dao.savePatientProgram(patientProgram);
+		invalidateLogicCache(saved.getPatient().getPatientId());
+		return saved;
+	}
+	
+	/**
+	 * Drops any cached logic results for the patient once the transaction is over, since the
+	 * program data source reads their enrollments and states
+	 * 
+	 * @param patientId the patient whose program is being changed
+	 */
+	private void invalidateLogicCache(Integer patientId) {
+		Context.getLogicService().getLogicCache().invalidatePatientAfterTransaction(patientId);
 	}
 	
 	/**
@@ -365,6 +377,7 @@ public class ProgramWorkflowServiceImpl extends BaseOpenmrsService implements Pr
 			throw new APIException("Cascade purging of PatientPrograms is not implemented yet");
 		}
 		dao.deletePatientProgram(patientProgram);
+		invalidateLogicCache(patientProgram.getPatient().getPatientId());
 	}
 	
 	/**
@@ -25,8 +25,10 @@ import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.APIException;
+import org.openmrs.api.EventListeners;
 import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.UserDAO;
 import org.openmrs.patient.impl.LuhnIdentifierValidator;
@@ -45,6 +47,8 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 	
 	protected UserDAO dao;
 	
+	private EventListeners eventListeners;
+	
 	public UserServiceImpl() {
 	}
 	
@@ -52,6 +56,22 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		this.dao = dao;
 	}
 	
+	/**
+	 * @param eventListeners the listeners to tell when users are saved or removed
+	 */
+	public void setEventListeners(EventListeners eventListeners) {
+		this.eventListeners = eventListeners;
+	}
+	
+	/**
+	 * Tells the listeners that care, such as the hl7 resolution cache, that users were saved or
+	 * removed, once the current transaction is over
+	 */
+	private void notifyObjectsChanged(Class<?> type) {
+		if (eventListeners != null)
+			eventListeners.notifyObjectsChanged(type);
+	}
+	
 	/**
 	 * @see org.openmrs.api.UserService#createUser(org.openmrs.User, java.lang.String)
 	 * @deprecated
@@ -99,7 +119,15 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 			user.setDateChanged(now);
 		}
 		
-		return dao.saveUser(user, password);
+		// hl7 messages refer to users by username
+		notifyObjectsChanged(User.class);
+		
+		User savedUser = dao.saveUser(user, password);
+		
+		// the user's roles may have changed
+		UserContext.refreshPrivileges();
+		
+		return savedUser;
 	}
 	
 	/**
@@ -234,13 +262,16 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 			throw new APIException("Cannot delete a core privilege");
 		
 		dao.deletePrivilege(privilege);
+		UserContext.refreshPrivileges();
 	}
 	
 	/**
 	 * @see org.openmrs.api.UserService#savePrivilege(org.openmrs.Privilege)
 	 */
 	public Privilege savePrivilege(Privilege privilege) throws APIException {
-		return dao.savePrivilege(privilege);
+		Privilege savedPrivilege = dao.savePrivilege(privilege);
+		UserContext.refreshPrivileges();
+		return savedPrivilege;
 	}
 	
 	/**
@@ -288,6 +319,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 			throw new APIException("Cannot delete a core role");
 		
 		dao.deleteRole(role);
+		UserContext.refreshPrivileges();
 	}
 	
 	/**
@@ -302,7 +334,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		
 		checkPrivileges(role);
 		
-		return dao.saveRole(role);
+		Role savedRole = dao.saveRole(role);
+		UserContext.refreshPrivileges();
+		return savedRole;
 	}
 	
 	/**
@@ -525,6 +559,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 	 */
 	public void purgeUser(User user) throws APIException {
 		dao.deleteUser(user);
+		notifyObjectsChanged(User.class);
 	}
 	
 	/**
@@ -536,6 +571,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 		
 		dao.deleteUser(user);
+		notifyObjectsChanged(User.class);
 	}
 	
 	/**
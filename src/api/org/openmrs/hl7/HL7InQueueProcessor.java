@@ -13,9 +13,24 @@
  */
 package org.openmrs.hl7;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.util.OpenmrsConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 import ca.uhn.hl7v2.HL7Exception;
@@ -24,7 +39,17 @@ import ca.uhn.hl7v2.HL7Exception;
  * Processes message in the HL7 inbound queue. Messages are moved into either the archive or error
  * table depending on success or failure of the processing. You may, however, set a global property
  * that causes the processor to ignore messages regarding unknown patients from a non-local HL7
- * source. (i.e. those messages neither go to the archive or the error table.)
+ * source. (i.e. those messages neither go to the archive or the error table.) <br/>
+ * <br/>
+ * If the {@link OpenmrsConstants#GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS} global property is
+ * more than one, the queue is read in batches and each batch is split up by patient (PID-3) among
+ * that many threads, each with its own session. Messages for the same patient always go to the
+ * same thread in queue order, and a batch is finished before the next one is read, so the order
+ * of messages for a patient is the same as with a single thread. <br/>
+ * <br/>
+ * If the {@link OpenmrsConstants#GLOBAL_PROPERTY_HL7_PROCESSOR_TRANSACTION_SIZE} global property is
+ * more than one, each thread processes its messages that many at a time in one transaction using
+ * {@link HL7Service#processHL7InQueueBatch(List)}.
  * 
  * @version 1.0
  */
@@ -39,6 +64,25 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	
 	// processor per JVM
 	
+	private static Map<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+	
+	/**
+	 * Number of messages a worker thread processes before clearing its session
+	 */
+	private static final int WORKER_CLEAR_SESSION_INTERVAL = 20;
+	
+	/**
+	 * Receivers used by the worker threads. The hapi parser and router are not shared between
+	 * threads
+	 */
+	private final ThreadLocal<HL7Receiver> workerReceiver = new ThreadLocal<HL7Receiver>() {
+		
+		@Override
+		protected HL7Receiver initialValue() {
+			return new HL7Receiver();
+		}
+	};
+	
 	/**
 	 * Empty constructor (requires context to be set using <code>setContext(Context)</code> method
 	 * before any other calls are made)
@@ -52,11 +96,34 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	 * @param hl7InQueue queue entry to be processed
 	 */
 	public void processHL7InQueue(HL7InQueue hl7InQueue) {
+		processHL7InQueue(hl7InQueue, receiver);
+		
+		// clean up memory after processing each queue entry (otherwise, the
+		// memory-intensive process may crash or eat up all our memory)
+		try {
+			Context.getHL7Service().garbageCollect();
+		}
+		catch (Exception e) {
+			log.error("Exception while performing garbagecollect in hl7 inbound processor", e);
+		}
+	}
+	
+	/**
+	 * Process a single queue entry with the given receiver, without cleaning up the session
+	 * afterwards
+	 * 
+	 * @param hl7InQueue queue entry to be processed
+	 * @param receiver the receiver to hand the message to
+	 */
+	private void processHL7InQueue(HL7InQueue hl7InQueue, HL7Receiver receiver) {
 		
 		if (log.isDebugEnabled())
 			log.debug("Processing HL7 inbound queue (id=" + hl7InQueue.getHL7InQueueId() + ",key="
 			        + hl7InQueue.getHL7SourceKey() + ")");
 		
+		Statistics stats = getStatistics(hl7InQueue.getHL7Source());
+		long start = System.currentTimeMillis();
+		
 		// Parse the HL7 into an HL7Message or abort with failure
 		String hl7Message = hl7InQueue.getHL7Data();
 		try {
@@ -76,37 +143,47 @@ public class HL7InQueueProcessor /* implements Runnable */{
 			Context.getHL7Service().deleteHL7InQueue(hl7InQueue);
 		}
 		catch (HL7Exception e) {
-			boolean skipError = false;
-			log.error("Unable to process hl7inqueue: " + hl7InQueue.getHL7InQueueId(), e);
-			log.error("Hl7inqueue source: " + hl7InQueue.getHL7Source());
-			log.error("hl7_processor.ignore_missing_patient_non_local? "
-			        + Context.getAdministrationService().getGlobalProperty("hl7_processor.ignore_missing_patient_non_local",
-			            "false"));
-			if (e.getCause() != null
-			        && e.getCause().getMessage().equals("Could not resolve patient")
-			        && !hl7InQueue.getHL7Source().getName().equals("local")
-			        && Context.getAdministrationService().getGlobalProperty(
-			            "hl7_processor.ignore_missing_patient_non_local", "false").equals("true")) {
-				skipError = true;
-			}
-			if (!skipError)
+			if (!isSkippable(hl7InQueue, e)) {
 				setFatalError(hl7InQueue, "Trouble parsing HL7 message (" + hl7InQueue.getHL7SourceKey() + ")", e);
+				stats.recordError(System.currentTimeMillis() - start);
+			} else
+				stats.recordSkipped(System.currentTimeMillis() - start);
 			return;
 		}
 		catch (Exception e) {
 			setFatalError(hl7InQueue, "Exception while attempting to process HL7 In Queue (" + hl7InQueue.getHL7SourceKey()
 			        + ")", e);
+			stats.recordError(System.currentTimeMillis() - start);
+			return;
 		}
+		stats.recordProcessed(System.currentTimeMillis() - start);
+	}
+	
+	/**
+	 * Decides whether a queue entry that could not be processed should be left in the queue instead
+	 * of being moved to the error table. This is the case for messages about unknown patients from a
+	 * non-local source when the hl7_processor.ignore_missing_patient_non_local global property is
+	 * true
+	 * 
+	 * @param hl7InQueue the entry that failed
+	 * @param e the reason it failed
+	 * @return true if the entry should stay in the queue
+	 */
+	public static boolean isSkippable(HL7InQueue hl7InQueue, HL7Exception e) {
+		String ignoreMissingPatient = Context.getAdministrationService().getGlobalPropertyValue(
+		    "hl7_processor.ignore_missing_patient_non_local", "false");
+		Log log = LogFactory.getLog(HL7InQueueProcessor.class);
+		log.error("Unable to process hl7inqueue: " + hl7InQueue.getHL7InQueueId(), e);
+		log.error("Hl7inqueue source: " + hl7InQueue.getHL7Source());
+		log.error("hl7_processor.ignore_missing_patient_non_local? " + ignoreMissingPatient);
+		if (hl7InQueue.getHL7Source().getName().equals("local") || !ignoreMissingPatient.equals("true"))
+			return false;
 		
-		// clean up memory after processing each queue entry (otherwise, the
-		// memory-intensive process may crash or eat up all our memory)
-		try {
-			Context.getHL7Service().garbageCollect();
-		}
-		catch (Exception e) {
-			log.error("Exception while performing garbagecollect in hl7 inbound processor", e);
-		}
-		
+		// the handler's exception reaches here wrapped by the router and the receiver
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+			if ("Could not resolve patient".equals(cause.getMessage()))
+				return true;
+		return false;
 	}
 	
 	/**
@@ -160,8 +237,17 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		}
 		try {
 			log.debug("Start processing hl7 in queue");
-			while (processNextHL7InQueue()) {
-				// loop until queue is empty
+			AdministrationService as = Context.getAdministrationService();
+			int workerThreads = as.getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS, 1);
+			int transactionSize = as.getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_TRANSACTION_SIZE, 1);
+			if (workerThreads > 1 || transactionSize > 1) {
+				// a zero or negative setting means one
+				int batchSize = as.getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_BATCH_SIZE, 100);
+				processInBatches(Math.max(workerThreads, 1), Math.max(batchSize, 1), Math.max(transactionSize, 1));
+			} else {
+				while (processNextHL7InQueue()) {
+					// loop until queue is empty
+				}
 			}
 			log.debug("Done processing hl7 in queue");
 		}
@@ -170,6 +256,266 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		}
 	}
 	
+	/**
+	 * Works through the queue a batch at a time, splitting each batch by patient among the given
+	 * number of threads. Entries that are skipped (and so left in the queue) are not read again
+	 * until the next run
+	 * 
+	 * @param workerThreads the number of threads to process a batch with
+	 * @param batchSize the number of queue entries to read at a time
+	 * @param transactionSize the number of queue entries each thread processes per transaction
+	 */
+	private void processInBatches(int workerThreads, int batchSize, int transactionSize) {
+		HL7Service hl7Service = Context.getHL7Service();
+		UserContext userContext = Context.getUserContext();
+		ExecutorService executor = Executors.newFixedThreadPool(workerThreads);
+		try {
+			Integer lastHL7InQueueId = null;
+			List<HL7InQueue> batch;
+			while (!(batch = hl7Service.getHL7InQueueBatch(lastHL7InQueueId, batchSize)).isEmpty()) {
+				lastHL7InQueueId = batch.get(batch.size() - 1).getHL7InQueueId();
+				
+				List<List<Integer>> partitions = new ArrayList<List<Integer>>(workerThreads);
+				for (int i = 0; i < workerThreads; i++)
+					partitions.add(new ArrayList<Integer>());
+				for (HL7InQueue hl7InQueue : batch) {
+					int partition = (getPatientKey(hl7InQueue.getHL7Data()).hashCode() & Integer.MAX_VALUE) % workerThreads;
+					partitions.get(partition).add(hl7InQueue.getHL7InQueueId());
+				}
+				
+				// the workers load their entries in their own sessions
+				Context.clearSession();
+				
+				// each worker acts as the calling user in a user context of its own
+				List<Future<?>> futures = new ArrayList<Future<?>>(workerThreads);
+				for (List<Integer> partition : partitions) {
+					if (!partition.isEmpty())
+						futures.add(executor.submit(new PartitionWorker(partition, transactionSize, userContext.copy())));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					}
+					catch (ExecutionException e) {
+						log.error("Error while processing part of the hl7 inbound queue", e.getCause());
+					}
+					catch (InterruptedException e) {
+						log.warn("Interrupted while waiting for hl7 processor threads", e);
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Processes one partition of a batch, in queue order, in a session of its own
+	 */
+	private class PartitionWorker implements Runnable {
+		
+		private List<Integer> hl7InQueueIds;
+		
+		private int transactionSize;
+		
+		/**
+		 * Used by this worker only
+		 */
+		private UserContext userContext;
+		
+		public PartitionWorker(List<Integer> hl7InQueueIds, int transactionSize, UserContext userContext) {
+			this.hl7InQueueIds = hl7InQueueIds;
+			this.transactionSize = transactionSize;
+			this.userContext = userContext;
+		}
+		
+		public void run() {
+			Context.openSession();
+			Context.setUserContext(userContext);
+			try {
+				if (transactionSize > 1) {
+					for (int i = 0; i < hl7InQueueIds.size(); i += transactionSize) {
+						List<Integer> ids = hl7InQueueIds.subList(i, Math.min(i + transactionSize, hl7InQueueIds.size()));
+						try {
+							Context.getHL7Service().processHL7InQueueBatch(ids);
+						}
+						catch (Exception e) {
+							// nothing in the batch was saved
+							log.warn("Processing " + ids.size() + " hl7 queue entries one at a time after their batch failed",
+							    e);
+							Context.clearSession();
+							processOneAtATime(ids);
+						}
+						Context.clearSession();
+					}
+				} else {
+					processOneAtATime(hl7InQueueIds);
+				}
+			}
+			finally {
+				Context.clearUserContext();
+				Context.closeSession();
+			}
+		}
+		
+		/**
+		 * Processes each of the given entries in transactions of its own
+		 */
+		private void processOneAtATime(List<Integer> ids) {
+			HL7Service hl7Service = Context.getHL7Service();
+			int count = 0;
+			for (Integer hl7InQueueId : ids) {
+				HL7InQueue hl7InQueue = hl7Service.getHL7InQueue(hl7InQueueId);
+				if (hl7InQueue == null)
+					continue; // removed since the batch was read
+				processHL7InQueue(hl7InQueue, workerReceiver.get());
+				if (++count % WORKER_CLEAR_SESSION_INTERVAL == 0)
+					Context.clearSession();
+			}
+		}
+	}
+	
+	/**
+	 * Pulls the patient identifier (first component of the first repetition of PID-3) out of a raw
+	 * HL7 message without parsing the whole message
+	 * 
+	 * @param hl7Data the message
+	 * @return the identifier, or an empty string if there isn't one
+	 */
+	static String getPatientKey(String hl7Data) {
+		if (hl7Data == null || hl7Data.length() < 4)
+			return "";
+		
+		String fieldSeparator = "|";
+		if (hl7Data.startsWith("MSH"))
+			fieldSeparator = hl7Data.substring(3, 4);
+		
+		for (String segment : hl7Data.split("[\\r\\n]+")) {
+			if (segment.startsWith("PID" + fieldSeparator)) {
+				String[] fields = segment.split(Pattern.quote(fieldSeparator), 5);
+				if (fields.length < 4)
+					return "";
+				return fields[3].split("~", 2)[0].split("\\^", 2)[0].trim();
+			}
+		}
+		return "";
+	}
+	
+	/**
+	 * @param source
+	 * @return the statistics for the given source, created if needed
+	 */
+	public static Statistics getStatistics(HL7Source source) {
+		String name = source == null ? "" : source.getName();
+		Statistics stats = statistics.get(name);
+		if (stats == null) {
+			synchronized (statistics) {
+				stats = statistics.get(name);
+				if (stats == null) {
+					stats = new Statistics();
+					statistics.put(name, stats);
+				}
+			}
+		}
+		return stats;
+	}
+	
+	/**
+	 * Gets the processing totals for each source since startup. The number of entries still waiting
+	 * for each source is available from {@link HL7Service#getHL7InQueueSizeBySource()}
+	 * 
+	 * @return the statistics keyed on {@link HL7Source#getName()}
+	 */
+	public static Map<String, Statistics> getStatistics() {
+		return new HashMap<String, Statistics>(statistics);
+	}
+	
+	/**
+	 * Running totals of the queue entries processed for one {@link HL7Source}
+	 */
+	public static class Statistics {
+		
+		private final AtomicLong processed = new AtomicLong();
+		
+		private final AtomicLong errors = new AtomicLong();
+		
+		private final AtomicLong skipped = new AtomicLong();
+		
+		private final AtomicLong busyMillis = new AtomicLong();
+		
+		/**
+		 * Counts an entry that was moved to the archive
+		 * 
+		 * @param millis the time it took to process
+		 */
+		public void recordProcessed(long millis) {
+			processed.incrementAndGet();
+			busyMillis.addAndGet(millis);
+		}
+		
+		/**
+		 * Counts an entry that was moved to the error table
+		 * 
+		 * @param millis the time spent on it
+		 */
+		public void recordError(long millis) {
+			errors.incrementAndGet();
+			busyMillis.addAndGet(millis);
+		}
+		
+		/**
+		 * Counts an entry that was left in the queue
+		 * 
+		 * @param millis the time spent on it
+		 */
+		public void recordSkipped(long millis) {
+			skipped.incrementAndGet();
+			busyMillis.addAndGet(millis);
+		}
+		
+		/**
+		 * @return the number of entries moved to the archive
+		 */
+		public long getProcessed() {
+			return processed.get();
+		}
+		
+		/**
+		 * @return the number of entries moved to the error table
+		 */
+		public long getErrors() {
+			return errors.get();
+		}
+		
+		/**
+		 * @return the number of entries left in the queue because of an unknown patient
+		 */
+		public long getSkipped() {
+			return skipped.get();
+		}
+		
+		/**
+		 * @return the total time spent processing entries, summed across threads
+		 */
+		public long getBusyMillis() {
+			return busyMillis.get();
+		}
+		
+		/**
+		 * @return the number of entries handled per second of processing time by one thread, to one
+		 *         decimal place
+		 */
+		public double getMessagesPerSecond() {
+			long millis = busyMillis.get();
+			if (millis == 0)
+				return 0;
+			return Math.round((processed.get() + errors.get() + skipped.get()) * 10000.0 / millis) / 10.0;
+		}
+	}
+	
 	/*
 	 * private static Hashtable<Context, Thread> threadCache = new Hashtable<Context,
 	 * Thread>();
@@ -0,0 +1,234 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptSource;
+import org.openmrs.Location;
+import org.openmrs.User;
+import org.openmrs.api.ObjectChangeListener;
+
+/**
+ * Remembers what the codes in incoming HL7 messages resolved to, so that a batch of messages using
+ * the same handful of concepts, providers and locations does not look each of them up again for
+ * every segment. Only ids are kept, never hibernate objects, so the cache can be shared between the
+ * sessions of the HL7 processor threads. <br/>
+ * <br/>
+ * Each kind of lookup is a separate {@link Region} holding at most {@link #getMaxEntries()} entries;
+ * the least recently used entry is dropped first. The concept, user and location regions are
+ * cleared once a transaction that saved or removed one of those objects is over.
+ * 
+ * @see HL7Service#getResolutionCache()
+ */
+public class HL7ResolutionCache implements ObjectChangeListener {
+	
+	private int maxEntries = 1000;
+	
+	private final Region concepts = new Region();
+	
+	private final Region users = new Region();
+	
+	private final Region locations = new Region();
+	
+	/**
+	 * @return the maximum number of entries kept for each kind of lookup
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	
+	/**
+	 * @param maxEntries the maximum number of entries kept for each kind of lookup
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+	
+	/**
+	 * @return concept ids keyed on code and coding system
+	 * @see #getKey(String...)
+	 */
+	public Region getConcepts() {
+		return concepts;
+	}
+	
+	/**
+	 * @return user ids keyed on the id number and names in an XCN
+	 */
+	public Region getUsers() {
+		return users;
+	}
+	
+	/**
+	 * @return location ids keyed on the point of care and facility in a PL
+	 */
+	public Region getLocations() {
+		return locations;
+	}
+	
+	/**
+	 * Empties every region
+	 */
+	public void clear() {
+		concepts.clear();
+		users.clear();
+		locations.clear();
+	}
+	
+	/**
+	 * Builds a cache key out of the components of an hl7 field
+	 * 
+	 * @param components the values, any of which may be null
+	 * @return the key
+	 */
+	public static String getKey(String... components) {
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < components.length; i++) {
+			if (i > 0)
+				key.append('^');
+			if (components[i] != null)
+				key.append(components[i]);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * @see org.openmrs.api.ObjectChangeListener#supportsType(java.lang.Class)
+	 */
+	public boolean supportsType(Class<?> type) {
+		return Concept.class.isAssignableFrom(type) || ConceptSource.class.equals(type)
+		        || User.class.isAssignableFrom(type) || Location.class.equals(type);
+	}
+	
+	/**
+	 * Concept mappings are looked up by source name, users by username and locations by name, so
+	 * any change to those may change what a code resolves to
+	 * 
+	 * @see org.openmrs.api.ObjectChangeListener#objectsChanged(java.lang.Class)
+	 */
+	public void objectsChanged(Class<?> type) {
+		if (Concept.class.isAssignableFrom(type) || ConceptSource.class.equals(type))
+			concepts.clear();
+		else if (User.class.isAssignableFrom(type))
+			users.clear();
+		else if (Location.class.equals(type))
+			locations.clear();
+	}
+	
+	/**
+	 * One bounded, least recently used map of lookups, with counters for how well it is doing
+	 */
+	public class Region {
+		
+		private final Map<String, Object> entries = new LinkedHashMap<String, Object>(16, 0.75f, true);
+		
+		private long hits = 0;
+		
+		private long misses = 0;
+		
+		private long evictions = 0;
+		
+		private long invalidations = 0;
+		
+		/**
+		 * @param key
+		 * @return the cached value, or null if there isn't one
+		 */
+		public synchronized Object get(String key) {
+			Object value = entries.get(key);
+			if (value == null)
+				misses++;
+			else
+				hits++;
+			return value;
+		}
+		
+		/**
+		 * Caches a value, dropping the least recently used entry if the region is full
+		 * 
+		 * @param key
+		 * @param value must not be null
+		 */
+		public synchronized void put(String key, Object value) {
+			entries.put(key, value);
+			while (entries.size() > maxEntries) {
+				entries.remove(entries.keySet().iterator().next());
+				evictions++;
+			}
+		}
+		
+		/**
+		 * @param key the entry to drop
+		 */
+		public synchronized void remove(String key) {
+			if (entries.remove(key) != null)
+				invalidations++;
+		}
+		
+		/**
+		 * Drops every entry
+		 */
+		public synchronized void clear() {
+			if (!entries.isEmpty())
+				invalidations++;
+			entries.clear();
+		}
+		
+		/**
+		 * @return the number of entries in the region
+		 */
+		public synchronized int getSize() {
+			return entries.size();
+		}
+		
+		/**
+		 * @return the number of lookups answered from the cache
+		 */
+		public synchronized long getHits() {
+			return hits;
+		}
+		
+		/**
+		 * @return the number of lookups that had to go to the database
+		 */
+		public synchronized long getMisses() {
+			return misses;
+		}
+		
+		/**
+		 * @return the number of entries dropped to make room for others
+		 */
+		public synchronized long getEvictions() {
+			return evictions;
+		}
+		
+		/**
+		 * @return the number of times entries were removed because the underlying data changed
+		 */
+		public synchronized long getInvalidations() {
+			return invalidations;
+		}
+		
+		/**
+		 * @return the percentage of lookups answered from the cache, to one decimal place
+		 */
+		public synchronized double getHitRatio() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : Math.round(hits * 1000.0 / lookups) / 10.0;
+		}
+	}
+}
@@ -15,6 +15,7 @@ package org.openmrs.hl7;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Encounter;
 import org.openmrs.annotation.Authorized;
@@ -182,6 +183,29 @@ public interface HL7Service extends OpenmrsService {
 	@Authorized(HL7Constants.PRIV_VIEW_HL7_IN_QUEUE)
 	public HL7InQueue getNextHL7InQueue() throws APIException;
 	
+	/**
+	 * Get the queue items that come after the given one, oldest first
+	 * 
+	 * @param afterHL7InQueueId only items with a greater id are returned. If null, start with the
+	 *            first item in the queue
+	 * @param maxResults the maximum number of items to return
+	 * @return up to maxResults queue items in id order
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(HL7Constants.PRIV_VIEW_HL7_IN_QUEUE)
+	public List<HL7InQueue> getHL7InQueueBatch(Integer afterHL7InQueueId, int maxResults) throws APIException;
+	
+	/**
+	 * Counts the items waiting in the queue for each source
+	 * 
+	 * @return the number of queue items by source. Sources without queue items are left out
+	 * @throws APIException
+	 */
+	@Transactional(readOnly = true)
+	@Authorized(HL7Constants.PRIV_VIEW_HL7_IN_QUEUE)
+	public Map<HL7Source, Integer> getHL7InQueueSizeBySource() throws APIException;
+	
 	/**
 	 * Completely delete the hl7 in queue item from the database.
 	 * 
@@ -351,6 +375,33 @@ public interface HL7Service extends OpenmrsService {
 	 */
 	public void garbageCollect();
 	
+	/**
+	 * Get the cache of concepts, users, locations and global properties that incoming messages
+	 * have been resolved to. Its hit, miss and eviction counters show how effective it is
+	 * 
+	 * @return the shared resolution cache
+	 */
+	public HL7ResolutionCache getResolutionCache();
+	
+	/**
+	 * Processes the given queue entries, in order, in one transaction. A savepoint is set before
+	 * each entry, so an entry that fails is rolled back on its own and moved to the error table
+	 * without undoing the others. The entries that succeed are moved to the archive together at the
+	 * end of the batch. <br/>
+	 * <br/>
+	 * An entry that fails inside another service call leaves the transaction marked as rollback
+	 * only. An APIException is thrown then and nothing in the batch is saved, so the caller should
+	 * process the entries one at a time instead
+	 * 
+	 * @param hl7InQueueIds ids of the queue entries to process
+	 * @return the ids of the entries that were moved to the archive
+	 * @throws APIException
+	 * @see HL7InQueueProcessor
+	 */
+	@Authorized(value = { HL7Constants.PRIV_DELETE_HL7_IN_QUEUE, HL7Constants.PRIV_ADD_HL7_IN_ARCHIVE,
+	        HL7Constants.PRIV_ADD_HL7_IN_EXCEPTION }, requireAll = true)
+	public List<Integer> processHL7InQueueBatch(List<Integer> hl7InQueueIds) throws APIException;
+	
 	/**
 	 * This method is called after an encounter and its obs are created. This method can be removed
 	 * once we have obs groups being created correctly
@@ -13,7 +13,11 @@
  */
 package org.openmrs.hl7.db;
 
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.api.db.DAOException;
 import org.openmrs.hl7.HL7InArchive;
@@ -78,11 +82,31 @@ public interface HL7DAO {
 	 */
 	public HL7InQueue getNextHL7InQueue() throws DAOException;
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#getHL7InQueueBatch(Integer, int)
+	 */
+	public List<HL7InQueue> getHL7InQueueBatch(Integer afterHL7InQueueId, int maxResults) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#getHL7InQueueSizeBySource()
+	 */
+	public Map<HL7Source, Integer> getHL7InQueueSizeBySource() throws DAOException;
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 */
 	public void deleteHL7InQueue(HL7InQueue hl7InQueue) throws DAOException;
 	
+	/**
+	 * Copies the given queue entries into the archive table and deletes them from the queue, with
+	 * one statement for each rather than one per entry
+	 * 
+	 * @param hl7InQueueIds ids of the queue entries to archive
+	 * @param dateCreated the date the archive entries are created on
+	 * @throws DAOException
+	 */
+	public void archiveHL7InQueues(Collection<Integer> hl7InQueueIds, Date dateCreated) throws DAOException;
+	
 	/* HL7InArchive */
 
 	/**
@@ -131,4 +155,30 @@ public interface HL7DAO {
 	 * @see org.openmrs.hl7.HL7Service#garbageCollect()
 	 */
 	public void garbageCollect();
+	
+	/**
+	 * Flushes the current session and sets a savepoint in the current transaction
+	 * 
+	 * @return the new savepoint
+	 * @throws DAOException
+	 */
+	public Savepoint setSavepoint() throws DAOException;
+	
+	/**
+	 * Undoes everything done in the current transaction since the given savepoint. The session is
+	 * cleared, because it may hold objects that no longer match the database
+	 * 
+	 * @param savepoint a savepoint from {@link #setSavepoint()}
+	 * @throws DAOException
+	 */
+	public void rollbackToSavepoint(Savepoint savepoint) throws DAOException;
+	
+	/**
+	 * Flushes the current session and releases a savepoint that is no longer needed. If the flush
+	 * fails, the savepoint is kept so that it can still be rolled back to
+	 * 
+	 * @param savepoint a savepoint from {@link #setSavepoint()}
+	 * @throws DAOException
+	 */
+	public void releaseSavepoint(Savepoint savepoint) throws DAOException;
 }
@@ -13,13 +13,21 @@
  */
 package org.openmrs.hl7.db.hibernate;
 
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
@@ -130,6 +138,32 @@ public class HibernateHL7DAO implements HL7DAO {
 		return (HL7InQueue) query.uniqueResult();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#getHL7InQueueBatch(java.lang.Integer, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<HL7InQueue> getHL7InQueueBatch(Integer afterHL7InQueueId, int maxResults) throws DAOException {
+		Criteria crit = sessionFactory.getCurrentSession().createCriteria(HL7InQueue.class);
+		if (afterHL7InQueueId != null)
+			crit.add(Restrictions.gt("HL7InQueueId", afterHL7InQueueId));
+		crit.addOrder(Order.asc("HL7InQueueId"));
+		crit.setMaxResults(maxResults);
+		return crit.list();
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#getHL7InQueueSizeBySource()
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<HL7Source, Integer> getHL7InQueueSizeBySource() throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select hiq.HL7Source, count(*) from HL7InQueue hiq group by hiq.HL7Source");
+		Map<HL7Source, Integer> ret = new HashMap<HL7Source, Integer>();
+		for (Object[] row : (List<Object[]>) query.list())
+			ret.put((HL7Source) row[0], ((Number) row[1]).intValue());
+		return ret;
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.db.HL7DAO#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 */
@@ -137,6 +171,26 @@ public class HibernateHL7DAO implements HL7DAO {
 		sessionFactory.getCurrentSession().delete(hl7InQueue);
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#archiveHL7InQueues(java.util.Collection, java.util.Date)
+	 */
+	public void archiveHL7InQueues(Collection<Integer> hl7InQueueIds, Date dateCreated) throws DAOException {
+		if (hl7InQueueIds.isEmpty())
+			return;
+		
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		
+		// the archive mapping uses its id column as the discriminator, which hql inserts don't handle
+		session.createSQLQuery(
+		    "insert into hl7_in_archive (hl7_source, hl7_source_key, hl7_data, date_created) "
+		            + "select hl7_source, hl7_source_key, hl7_data, :dateCreated from hl7_in_queue "
+		            + "where hl7_in_queue_id in (:ids)").setTimestamp("dateCreated", dateCreated).setParameterList("ids",
+		    hl7InQueueIds).executeUpdate();
+		session.createQuery("delete from HL7InQueue where HL7InQueueId in (:ids)").setParameterList("ids", hl7InQueueIds)
+		        .executeUpdate();
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.db.HL7DAO#saveHL7InArchive(org.openmrs.hl7.HL7InArchive)
 	 */
@@ -205,4 +259,52 @@ public class HibernateHL7DAO implements HL7DAO {
 		Context.clearSession();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#setSavepoint()
+	 */
+	public Savepoint setSavepoint() throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		try {
+			return session.connection().setSavepoint();
+		}
+		catch (SQLException e) {
+			throw new DAOException("Unable to set a savepoint", e);
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#rollbackToSavepoint(java.sql.Savepoint)
+	 */
+	public void rollbackToSavepoint(Savepoint savepoint) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		try {
+			session.connection().rollback(savepoint);
+		}
+		catch (SQLException e) {
+			throw new DAOException("Unable to roll back to a savepoint", e);
+		}
+		
+		// the session still holds the rolled back objects as if they were saved
+		session.clear();
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#releaseSavepoint(java.sql.Savepoint)
+	 */
+	public void releaseSavepoint(Savepoint savepoint) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		
+		// anything that fails to be written has to fail now, while it can still be rolled back to
+		// the savepoint
+		session.flush();
+		try {
+			session.connection().releaseSavepoint(savepoint);
+		}
+		catch (SQLException e) {
+			// not all drivers support releasing savepoints; they go away at commit anyway
+			log.debug("Unable to release savepoint", e);
+		}
+	}
+	
 }
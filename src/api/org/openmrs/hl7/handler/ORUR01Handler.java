@@ -33,9 +33,11 @@ import org.openmrs.Patient;
 import org.openmrs.PersonAttribute;
 import org.openmrs.PersonAttributeType;
 import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.hl7.HL7InError;
 import org.openmrs.hl7.HL7InQueueProcessor;
+import org.openmrs.hl7.HL7ResolutionCache;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.util.FormConstants;
 import org.openmrs.util.OpenmrsConstants;
@@ -190,14 +192,14 @@ public class ORUR01Handler implements Application {
 		// create obs_groups for them
 		List<Concept> ignoredConcepts = new ArrayList<Concept>();
 		
-		String ignoreOBRConceptId = Context.getAdministrationService().getGlobalProperty(
+		AdministrationService adminService = Context.getAdministrationService();
+		String ignoreOBRConceptId = adminService.getGlobalPropertyValue(
 		    OpenmrsConstants.GLOBAL_PROPERTY_MEDICAL_RECORD_OBSERVATIONS, "1238");
 		if (ignoreOBRConceptId.length() > 0)
 			ignoredConcepts.add(new Concept(Integer.valueOf(ignoreOBRConceptId)));
 		
 		// we also ignore all PROBLEM_LIST that are OBRs
-		ignoreOBRConceptId = Context.getAdministrationService().getGlobalProperty(
-		    OpenmrsConstants.GLOBAL_PROPERTY_PROBLEM_LIST, "1284");
+		ignoreOBRConceptId = adminService.getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_PROBLEM_LIST, "1284");
 		if (ignoreOBRConceptId.length() > 0)
 			ignoredConcepts.add(new Concept(Integer.valueOf(ignoreOBRConceptId)));
 		
@@ -693,9 +695,17 @@ public class ORUR01Handler implements Application {
 			}
 		} else {
 			// the concept is not local, look it up in our mapping
+			HL7ResolutionCache.Region cachedConcepts = Context.getHL7Service().getResolutionCache().getConcepts();
+			String key = HL7ResolutionCache.getKey(hl7ConceptId, codingSystem);
+			Integer conceptId = (Integer) cachedConcepts.get(key);
+			if (conceptId != null)
+				return new Concept(conceptId);
+			
 			Concept concept = Context.getConceptService().getConceptByMapping(hl7ConceptId, codingSystem);
 			if (concept == null)
 				log.error("Unable to find concept with code: " + hl7ConceptId + " and mapping: " + codingSystem + " in hl7 message with uid: " + uid);
+			else
+				cachedConcepts.put(key, concept.getConceptId());
 			return concept;
 		}
 	}
@@ -13,9 +13,12 @@
  */
 package org.openmrs.hl7.impl;
 
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,9 +33,13 @@ import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.hl7.HL7InArchive;
 import org.openmrs.hl7.HL7InError;
 import org.openmrs.hl7.HL7InQueue;
+import org.openmrs.hl7.HL7InQueueProcessor;
+import org.openmrs.hl7.HL7Receiver;
+import org.openmrs.hl7.HL7ResolutionCache;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.hl7.HL7Source;
 import org.openmrs.hl7.db.HL7DAO;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.v25.datatype.CX;
@@ -52,6 +59,25 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	
 	protected HL7DAO dao;
 	
+	private HL7ResolutionCache resolutionCache = new HL7ResolutionCache();
+	
+	/**
+	 * Number of entries processed by {@link #processHL7InQueueBatch(List)} between clearing the
+	 * session
+	 */
+	private static final int BATCH_CLEAR_SESSION_INTERVAL = 20;
+	
+	/**
+	 * The hapi parser and router are not shared between threads
+	 */
+	private final ThreadLocal<HL7Receiver> batchReceiver = new ThreadLocal<HL7Receiver>() {
+		
+		@Override
+		protected HL7Receiver initialValue() {
+			return new HL7Receiver();
+		}
+	};
+	
 	/**
 	 * Default constructor
 	 */
@@ -65,6 +91,20 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		this.dao = dao;
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#getResolutionCache()
+	 */
+	public HL7ResolutionCache getResolutionCache() {
+		return resolutionCache;
+	}
+	
+	/**
+	 * @param resolutionCache the cache to use for resolving users, locations and concepts
+	 */
+	public void setResolutionCache(HL7ResolutionCache resolutionCache) {
+		this.resolutionCache = resolutionCache;
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#saveHL7Source(org.openmrs.hl7.HL7Source)
 	 */
@@ -206,6 +246,20 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		return dao.getNextHL7InQueue();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#getHL7InQueueBatch(java.lang.Integer, int)
+	 */
+	public List<HL7InQueue> getHL7InQueueBatch(Integer afterHL7InQueueId, int maxResults) {
+		return dao.getHL7InQueueBatch(afterHL7InQueueId, maxResults);
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#getHL7InQueueSizeBySource()
+	 */
+	public Map<HL7Source, Integer> getHL7InQueueSizeBySource() {
+		return dao.getHL7InQueueSizeBySource();
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 * @deprecated
@@ -361,6 +415,25 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		 * ("null".equals(givenName)) givenName = null; if
 		 * ("null".equals(assigningAuthority)) assigningAuthority = null;
 		 */
+		String key = HL7ResolutionCache.getKey(idNumber, familyName, givenName);
+		Integer userId = (Integer) resolutionCache.getUsers().get(key);
+		if (userId == null) {
+			userId = resolveUserId(idNumber, familyName, givenName);
+			if (userId != null)
+				resolutionCache.getUsers().put(key, userId);
+		}
+		return userId;
+	}
+	
+	/**
+	 * Looks up a user by id if there is one, otherwise by "family given" as the username
+	 * 
+	 * @param idNumber
+	 * @param familyName
+	 * @param givenName
+	 * @return the user id, or null if the user is not found
+	 */
+	private Integer resolveUserId(String idNumber, String familyName, String givenName) {
 		if (idNumber != null && idNumber.length() > 0) {
 			// log.debug("searching for user by id " + idNumber);
 			try {
@@ -408,6 +481,26 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		String pointOfCare = pl.getPointOfCare().getValue();
 		String facility = pl.getFacility().getUniversalID().getValue();
 		
+		String key = HL7ResolutionCache.getKey(pointOfCare, facility);
+		Integer locationId = (Integer) resolutionCache.getLocations().get(key);
+		if (locationId == null) {
+			locationId = resolveLocationId(pointOfCare, facility);
+			if (locationId != null)
+				resolutionCache.getLocations().put(key, locationId);
+		}
+		return locationId;
+	}
+	
+	/**
+	 * Looks up a location by treating the point of care as a location id, or failing that the
+	 * facility as a location name
+	 * 
+	 * @param pointOfCare
+	 * @param facility
+	 * @return the location id, or null if it is not found
+	 * @throws HL7Exception if there is no facility to fall back on
+	 */
+	private Integer resolveLocationId(String pointOfCare, String facility) throws HL7Exception {
 		// HACK: try to treat the first component (which should be "Point of
 		// Care" as an internal openmrs location_id
 		try {
@@ -524,6 +617,67 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		dao.garbageCollect();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#processHL7InQueueBatch(java.util.List)
+	 */
+	public List<Integer> processHL7InQueueBatch(List<Integer> hl7InQueueIds) throws APIException {
+		HL7Receiver receiver = batchReceiver.get();
+		List<Integer> archived = new ArrayList<Integer>(hl7InQueueIds.size());
+		
+		int count = 0;
+		for (Integer hl7InQueueId : hl7InQueueIds) {
+			Savepoint savepoint = dao.setSavepoint();
+			
+			// everything before the savepoint has been flushed, so the session can be emptied
+			if (++count % BATCH_CLEAR_SESSION_INTERVAL == 0)
+				dao.garbageCollect();
+			
+			HL7InQueue hl7InQueue = dao.getHL7InQueue(hl7InQueueId);
+			if (hl7InQueue == null) {
+				dao.releaseSavepoint(savepoint);
+				continue;
+			}
+			
+			HL7InQueueProcessor.Statistics stats = HL7InQueueProcessor.getStatistics(hl7InQueue.getHL7Source());
+			long start = System.currentTimeMillis();
+			try {
+				receiver.processMessage(hl7InQueue.getHL7Data());
+				
+				// this writes the entry's changes, so a constraint violation fails this entry
+				dao.releaseSavepoint(savepoint);
+				archived.add(hl7InQueueId);
+				stats.recordProcessed(System.currentTimeMillis() - start);
+			}
+			catch (Exception e) {
+				dao.rollbackToSavepoint(savepoint);
+				
+				// a service call that failed while processing the entry has marked the whole
+				// transaction as rollback only, so none of the batch can be committed
+				if (TransactionAspectSupport.currentTransactionStatus().isRollbackOnly())
+					throw new APIException("HL7 queue entry " + hl7InQueueId
+					        + " failed in a service call. The batch has to be processed one entry at a time", e);
+				
+				hl7InQueue = dao.getHL7InQueue(hl7InQueueId);
+				if (e instanceof HL7Exception && HL7InQueueProcessor.isSkippable(hl7InQueue, (HL7Exception) e)) {
+					stats.recordSkipped(System.currentTimeMillis() - start);
+					continue;
+				}
+				
+				String error = "Exception while attempting to process HL7 In Queue (" + hl7InQueue.getHL7SourceKey() + ")";
+				log.error(error, e);
+				HL7InError hl7InError = new HL7InError(hl7InQueue);
+				hl7InError.setError(error);
+				hl7InError.setErrorDetails(e.getMessage() == null ? "" : e.getMessage());
+				saveHL7InError(hl7InError);
+				dao.deleteHL7InQueue(hl7InQueue);
+				stats.recordError(System.currentTimeMillis() - start);
+			}
+		}
+		
+		dao.archiveHL7InQueues(archived, new Date());
+		return archived;
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#encounterCreated(org.openmrs.Encounter)
 	 */
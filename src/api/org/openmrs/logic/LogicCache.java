@@ -14,85 +14,333 @@
 package org.openmrs.logic;
 
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.Patient;
+import org.openmrs.Cohort;
 import org.openmrs.logic.datasource.LogicDataSource;
+import org.openmrs.logic.result.CohortResult;
+import org.openmrs.logic.result.FrozenResultMap;
 import org.openmrs.logic.result.Result;
+import org.openmrs.util.TransactionUtil;
 
 /**
- * A caching mechanism used by LogicContext to avoid recalculating a re-fetching the same results
- * more than once during a single request of the logic service.
+ * A caching mechanism shared by all LogicContexts to avoid recalculating and re-fetching the same
+ * results for the same patients. The cache is bounded: once more than {@link #getMaxEntries()}
+ * entries are stored, the least recently used entry is evicted. Every entry expires after the TTL
+ * (in seconds) given by the rule or data source it came from; entries with a TTL of zero or less are
+ * never stored here. Entries are also dropped as soon as data for any of the patients they cover
+ * changes (see {@link #invalidatePatientAfterTransaction(Integer)}).<br/>
+ * <br/>
+ * An entry holds the results for every patient in the cohort it was evaluated for. A lookup for a
+ * patient outside that cohort is treated as a miss. Results are stored as read-only copies that
+ * refer to concepts and other objects by id (see {@link FrozenResultMap} and {@link CohortResult}),
+ * so every lookup gets a new Result with objects from its own session. All methods are safe to
+ * call from multiple threads.
+ * 
+ * @see LogicService#getLogicCache()
  */
 public class LogicCache {
 	
 	private static Log log = LogFactory.getLog(LogicCache.class);
 	
-	// TODO: implement the cache -- currently no caching is performed
+	/**
+	 * The number of entries kept when no other size is configured
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 500;
+	
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	
+	private Map<LogicCacheEntryKey, CacheEntry> cache;
+	
+	private long hits = 0;
 	
-	private Map<LogicCacheEntryKey, Map<Integer, Result>> cache;
+	private long misses = 0;
 	
-	public Result get(Patient patient, LogicCriteria criteria, Map<String, Object> parameters) {
-		LogicCacheEntryKey key = new LogicCacheEntryKey(criteria, parameters, 0);
-		return get(key, patient.getPatientId());
+	private long evictions = 0;
+	
+	private long expirations = 0;
+	
+	private long invalidations = 0;
+	
+	public LogicCache() {
+		// access ordered so that the eldest entry is the least recently used one
+		cache = new LinkedHashMap<LogicCacheEntryKey, CacheEntry>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<LogicCacheEntryKey, CacheEntry> eldest) {
+				if (size() > maxEntries) {
+					evictions++;
+					if (log.isDebugEnabled())
+						log.debug("Evicting from logic cache: " + eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
 	}
 	
-	public Result get(Patient patient, LogicDataSource dataSource, LogicCriteria criteria) {
-		LogicCacheEntryKey key = new LogicCacheEntryKey(dataSource, criteria);
-		Result r = get(key, patient.getPatientId());
-		log.debug("Searching cache for " + key.toString() + " - " + (r == null ? "NOT" : "") + " found");
-		logCacheContents();
-		return r;
+	/**
+	 * Look up the result of a rule evaluation
+	 * 
+	 * @param patientId the patient to get the result for
+	 * @param criteria criteria the rule was evaluated with
+	 * @param parameters parameters the rule was evaluated with
+	 * @param indexDate the index date of the evaluating context, or null if it is "now"
+	 * @return the cached result or null if there is none
+	 */
+	public Result get(Integer patientId, LogicCriteria criteria, Map<String, Object> parameters, Date indexDate) {
+		return get(new LogicCacheEntryKey(criteria, parameters, indexDate), patientId);
 	}
 	
-	public void put(LogicDataSource dataSource, LogicCriteria criteria, Map<Integer, Result> resultMap) {
-		LogicCacheEntryKey key = new LogicCacheEntryKey(dataSource, criteria);
-		put(key, resultMap);
+	/**
+	 * Look up the result of a data source read
+	 * 
+	 * @param patientId the patient to get the result for
+	 * @param dataSource the data source that was read
+	 * @param criteria criteria the data source was read with
+	 * @param indexDate the index date of the evaluating context, or null if it is "now"
+	 * @return the cached result or null if there is none
+	 */
+	public Result get(Integer patientId, LogicDataSource dataSource, LogicCriteria criteria, Date indexDate) {
+		return get(new LogicCacheEntryKey(dataSource, criteria, indexDate), patientId);
 	}
 	
-	public void put(LogicCriteria criteria, Map<String, Object> parameters, int ttl, Map<Integer, Result> resultMap) {
-		LogicCacheEntryKey key = new LogicCacheEntryKey(criteria, parameters, ttl);
-		put(key, resultMap);
+	/**
+	 * Store the results of a rule evaluation
+	 * 
+	 * @param criteria criteria the rule was evaluated with
+	 * @param parameters parameters the rule was evaluated with
+	 * @param indexDate the index date of the evaluating context, or null if it is "now"
+	 * @param ttl the number of seconds these results stay valid (see {@link Rule#getTTL()})
+	 * @param patients the patients the rule was evaluated for
+	 * @param resultMap results by patient id
+	 */
+	public void put(LogicCriteria criteria, Map<String, Object> parameters, Date indexDate, int ttl,
+	                Cohort patients, Map<Integer, Result> resultMap) {
+		put(new LogicCacheEntryKey(criteria, parameters, indexDate), ttl, patients, resultMap);
+	}
+	
+	/**
+	 * Store the results of a data source read. The TTL is taken from
+	 * {@link LogicDataSource#getDefaultTTL()}
+	 * 
+	 * @param dataSource the data source that was read
+	 * @param criteria criteria the data source was read with
+	 * @param indexDate the index date of the evaluating context, or null if it is "now"
+	 * @param patients the patients the data source was read for
+	 * @param resultMap results by patient id
+	 */
+	public void put(LogicDataSource dataSource, LogicCriteria criteria, Date indexDate, Cohort patients,
+	                Map<Integer, Result> resultMap) {
+		put(new LogicCacheEntryKey(dataSource, criteria, indexDate), dataSource.getDefaultTTL(), patients, resultMap);
 	}
 	
-	private Result get(LogicCacheEntryKey key, Integer patientId) {
-		Map<Integer, Result> entry = getCache().get(key);
-		log.debug("Logic cache: " + (entry == null ? "NOT FOUND" : "FOUND"));
-		if (entry == null)
+	private synchronized Result get(LogicCacheEntryKey key, Integer patientId) {
+		CacheEntry entry = cache.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			cache.remove(key);
+			expirations++;
+			entry = null;
+		}
+		
+		if (entry == null || !entry.patients.contains(patientId)) {
+			misses++;
+			log.debug("Logic cache: NOT FOUND " + key);
 			return null;
-		Result r = entry.get(patientId);
+		}
+		
+		hits++;
+		Result r = entry.results.get(patientId);
 		if (r == null)
 			r = Result.emptyResult();
 		return r;
 	}
 	
-	private void put(LogicCacheEntryKey key, Map<Integer, Result> value) {
-		log.debug("Adding to logic cache: " + key.toString());
-		getCache().put(key, value);
+	private void put(LogicCacheEntryKey key, int ttl, Cohort patients, Map<Integer, Result> value) {
+		if (ttl <= 0)
+			return;
+		
+		// copied outside the lock, in the session the results were read in
+		Map<Integer, Result> frozen;
+		if (value instanceof CohortResult)
+			frozen = ((CohortResult) value).freeze();
+		else
+			frozen = new FrozenResultMap(value);
+		
+		synchronized (this) {
+			if (log.isDebugEnabled())
+				log.debug("Adding to logic cache: " + key.toString());
+			cache.put(key, new CacheEntry(patients, frozen, System.currentTimeMillis() + ttl * 1000L));
+		}
+	}
+	
+	/**
+	 * Drops every entry that holds results for the given patient. This should be called whenever
+	 * data that rules or data sources might read for this patient is created, changed or voided.
+	 * 
+	 * @param patientId the patient whose data changed
+	 */
+	public synchronized void invalidatePatient(Integer patientId) {
+		if (patientId == null)
+			return;
+		for (Iterator<CacheEntry> i = cache.values().iterator(); i.hasNext();) {
+			if (i.next().patients.contains(patientId)) {
+				i.remove();
+				invalidations++;
+			}
+		}
+	}
+	
+	/**
+	 * Drops every entry that holds results for the given patient once the current transaction
+	 * commits or rolls back. Dropping them before the commit would let a concurrent evaluation
+	 * cache the old data again. The services call this when they save, void or purge data that
+	 * rules or data sources might read for the patient.
+	 * 
+	 * @param patientId the patient whose data is being changed
+	 */
+	public void invalidatePatientAfterTransaction(final Integer patientId) {
+		if (patientId == null)
+			return;
+		TransactionUtil.afterCompletion(new Runnable() {
+			
+			public void run() {
+				invalidatePatient(patientId);
+			}
+		});
 	}
 	
-	private Map<LogicCacheEntryKey, Map<Integer, Result>> getCache() {
-		if (cache == null)
-			cache = new Hashtable<LogicCacheEntryKey, Map<Integer, Result>>();
-		return cache;
+	/**
+	 * Removes every entry from the cache (e.g. after a rule definition has changed)
+	 */
+	public synchronized void clear() {
+		cache.clear();
 	}
 	
 	/**
 	 * Clean out expired values from the cache
 	 */
-	public void clean() {
-		long now = new Date().getTime();
-		for (LogicCacheEntryKey key : getCache().keySet())
-			if (key.getExpires() < now)
-				getCache().remove(key);
+	public synchronized void clean() {
+		long now = System.currentTimeMillis();
+		for (Iterator<CacheEntry> i = cache.values().iterator(); i.hasNext();) {
+			if (i.next().isExpired(now)) {
+				i.remove();
+				expirations++;
+			}
+		}
 	}
 	
-	private void logCacheContents() {
-		log.debug("Logic Cache - " + getCache().size() + " entries");
-		for (LogicCacheEntryKey key : getCache().keySet())
-			log.debug("  " + key.toString() + " - " + getCache().get(key));
+	/**
+	 * Resets the hit/miss/eviction counters to zero
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		expirations = 0;
+		invalidations = 0;
+	}
+	
+	/**
+	 * @return the maximum number of entries held before the least recently used ones are evicted
+	 */
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+	
+	/**
+	 * @param maxEntries the maximum number of entries to hold. Must be greater than zero
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("The logic cache must be able to hold at least one entry");
+		this.maxEntries = maxEntries;
+		
+		// trim down to the new size, least recently used first
+		for (Iterator<LogicCacheEntryKey> i = cache.keySet().iterator(); i.hasNext() && cache.size() > maxEntries;) {
+			i.next();
+			i.remove();
+			evictions++;
+		}
+	}
+	
+	/**
+	 * @return the number of entries currently in the cache
+	 */
+	public synchronized int getSize() {
+		return cache.size();
+	}
+	
+	/**
+	 * @return the number of lookups that found a result
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of lookups that did not find a result
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return the number of entries removed to keep the cache under {@link #getMaxEntries()}
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * @return the number of entries removed because their TTL ran out
+	 */
+	public synchronized long getExpirations() {
+		return expirations;
+	}
+	
+	/**
+	 * @return the number of entries removed because patient data changed
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "LogicCache[size=" + cache.size() + "/" + maxEntries + ", hits=" + hits + ", misses=" + misses
+		        + ", evictions=" + evictions + ", expirations=" + expirations + ", invalidations=" + invalidations + "]";
+	}
+	
+	/**
+	 * The results of one rule evaluation or data source read, along with the cohort they were
+	 * computed for and the time at which they stop being valid
+	 */
+	private static class CacheEntry {
+		
+		private Cohort patients;
+		
+		private Map<Integer, Result> results;
+		
+		private long expires;
+		
+		CacheEntry(Cohort patients, Map<Integer, Result> results, long expires) {
+			this.patients = patients;
+			this.results = results;
+			this.expires = expires;
+		}
+		
+		boolean isExpired(long now) {
+			return expires < now;
+		}
 	}
 }
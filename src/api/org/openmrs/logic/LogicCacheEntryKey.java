@@ -21,8 +21,8 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.logic.datasource.LogicDataSource;
 
 /**
- * Logic cache composite key. Keys can be created for rules or data elements. Keys contain
- * information about when the entry was last updated and when the entry expires.
+ * Logic cache composite key. Keys can be created for rules or data elements. Keys hold only what
+ * identifies an evaluation; expiration is tracked by the cache entry itself.
  */
 class LogicCacheEntryKey {
 	
@@ -36,7 +36,7 @@ class LogicCacheEntryKey {
 	
 	private LogicCriteria criteria;
 	
-	private long expires;
+	private Date indexDate; //null when evaluated as of "now"
 	
 	private LogicDataSource dataSource; //specific to DATA_ELEMENT type
 	
@@ -47,14 +47,13 @@ class LogicCacheEntryKey {
 	 * 
 	 * @param criteria
 	 * @param parameters
-	 * @param ttl
+	 * @param indexDate
 	 */
-	LogicCacheEntryKey(LogicCriteria criteria, Map<String, Object> parameters, int ttl) {
+	LogicCacheEntryKey(LogicCriteria criteria, Map<String, Object> parameters, Date indexDate) {
 		this.type = LogicCacheEntryType.RULE;
-		long modified = new Date().getTime();
-		this.expires = modified + ttl;
 		this.criteria = criteria;
 		this.parameters = parameters;
+		this.indexDate = indexDate;
 	}
 	
 	/**
@@ -62,13 +61,13 @@ class LogicCacheEntryKey {
 	 * 
 	 * @param dataSource
 	 * @param critera
+	 * @param indexDate
 	 */
-	LogicCacheEntryKey(LogicDataSource dataSource, LogicCriteria critera) {
+	LogicCacheEntryKey(LogicDataSource dataSource, LogicCriteria critera, Date indexDate) {
 		this.type = LogicCacheEntryType.DATA_ELEMENT;
-		long modified = new Date().getTime();
-		this.expires = modified + dataSource.getDefaultTTL();
 		this.dataSource = dataSource;
 		this.criteria = critera;
+		this.indexDate = indexDate;
 	}
 	
 	@Override
@@ -82,6 +81,9 @@ class LogicCacheEntryKey {
 		//make sure the logic criteria is the same
 		if (!safeEquals(cek.criteria, criteria))
 			return false;
+		//make sure it was evaluated as of the same date
+		if (!safeEquals(cek.indexDate, indexDate))
+			return false;
 		if (type == LogicCacheEntryType.RULE) {
 			if (!safeEquals(cek.parameters, parameters))
 				return false;
@@ -103,6 +105,7 @@ class LogicCacheEntryKey {
 		int result = 1;
 		result = prime * result + ((criteria == null) ? 0 : criteria.hashCode());
 		result = prime * result + ((dataSource == null) ? 0 : dataSource.hashCode());
+		result = prime * result + ((indexDate == null) ? 0 : indexDate.hashCode());
 		result = prime * result + ((parameters == null) ? 0 : parameters.hashCode());
 		result = prime * result + ((type == null) ? 0 : type.hashCode());
 		return result;
@@ -116,13 +119,9 @@ class LogicCacheEntryKey {
 		return a.equals(b);
 	}
 	
-	public long getExpires() {
-		return expires;
-	}
-	
 	public String toString() {
 		
-		return String.valueOf("[" + type + "," + parameters + "," + criteria.getRootToken() + "," + dataSource + "]@"
+		return String.valueOf("[" + type + "," + parameters + "," + criteria.getRootToken() + "," + dataSource + "," + indexDate + "]@"
 		        + hashCode());
 	}
 }
@@ -47,6 +47,13 @@ public class LogicContext {
 	 */
 	private Date indexDate;
 	
+	/**
+	 * Whether the index date was set explicitly (as opposed to defaulting to "now"). Results
+	 * evaluated as of "now" are shared with every other context through the logic cache; results
+	 * for an explicit index date are only shared with contexts using that same date
+	 */
+	private boolean indexDateSet = false;
+	
 	/**
 	 * Globally available parameters within this logic context. Global parameters are available to
 	 * all evaluations performed within this context
@@ -65,11 +72,10 @@ public class LogicContext {
 	private Cohort patients;
 	
 	/**
-	 * Cache used by this log context
-	 * 
-	 * @see org.openmrs.logic.LogicCache
+	 * Results already calculated within this logic context, kept for the lifetime of the context
+	 * regardless of their TTL so that a cohort is only evaluated once per criteria
 	 */
-	private LogicCache cache;
+	private Map<LogicCacheEntryKey, Map<Integer, Result>> localResults = new HashMap<LogicCacheEntryKey, Map<Integer, Result>>();
 	
 	/**
 	 * Constructs a logic context applied to a single patient
@@ -80,7 +86,7 @@ public class LogicContext {
 		this.patients = new Cohort();
 		this.globalParameters = new HashMap<String, Object>();
 		patients.addMember(patient.getPatientId());
-		setIndexDate(new Date());
+		this.indexDate = new Date();
 	}
 	
 	/**
@@ -91,7 +97,7 @@ public class LogicContext {
 	public LogicContext(Cohort patients) {
 		this.patients = patients;
 		this.globalParameters = new HashMap<String, Object>();
-		setIndexDate(new Date());
+		this.indexDate = new Date();
 	}
 	
 	/**
@@ -132,7 +138,10 @@ public class LogicContext {
 	 * @see {@link org.openmrs.logic.LogicService#eval(Patient, LogicCriteria, Map)}
 	 */
 	public Result eval(Patient patient, LogicCriteria criteria, Map<String, Object> parameters) throws LogicException {
-		Result result = getCache().get(patient, criteria, parameters);
+		LogicCacheEntryKey key = new LogicCacheEntryKey(criteria, parameters, getCacheIndexDate());
+		Result result = getLocalResult(key, patient.getPatientId());
+		if (result == null)
+			result = getCache().get(patient.getPatientId(), criteria, parameters, getCacheIndexDate());
 		PatientService patientService = Context.getPatientService();
 		
 		if (result == null) {
@@ -154,7 +163,8 @@ public class LogicContext {
 				if (pid.equals(targetPatientId))
 					result = resultMap.get(pid);
 			}
-			getCache().put(criteria, parameters, rule.getTTL(), resultMap);
+			localResults.put(key, resultMap);
+			getCache().put(criteria, parameters, getCacheIndexDate(), rule.getTTL(), patients, resultMap);
 		}
 		
 		return result;
@@ -235,13 +245,17 @@ public class LogicContext {
 	 * @throws LogicException
 	 */
 	public Result read(Patient patient, LogicDataSource dataSource, LogicCriteria criteria) throws LogicException {
-		Result result = getCache().get(patient, dataSource, criteria);
+		LogicCacheEntryKey key = new LogicCacheEntryKey(dataSource, criteria, getCacheIndexDate());
+		Result result = getLocalResult(key, patient.getPatientId());
+		if (result == null)
+			result = getCache().get(patient.getPatientId(), dataSource, criteria, getCacheIndexDate());
 		log
 		        .debug("Reading from data source: " + criteria.getRootToken() + " (" + (result == null ? "NOT" : "")
 		                + " cached)");
 		if (result == null) {
 			Map<Integer, Result> resultMap = dataSource.read(this, patients, criteria);
-			getCache().put(dataSource, criteria, resultMap);
+			localResults.put(key, resultMap);
+			getCache().put(dataSource, criteria, getCacheIndexDate(), patients, resultMap);
 			result = resultMap.get(patient.getPatientId());
 		}
 		if (result == null)
@@ -256,6 +270,7 @@ public class LogicContext {
 	 */
 	public void setIndexDate(Date indexDate) {
 		this.indexDate = indexDate;
+		this.indexDateSet = true;
 	}
 	
 	/**
@@ -302,12 +317,35 @@ public class LogicContext {
 	}
 	
 	/**
-	 * @return the cache for this logic context
+	 * Looks up a result already calculated within this context
+	 * 
+	 * @param key
+	 * @param patientId
+	 * @return the result for the given patient, or null if the key has not been calculated yet
 	 */
-	private LogicCache getCache() {
-		if (cache == null)
-			cache = new LogicCache();
-		return cache;
+	private Result getLocalResult(LogicCacheEntryKey key, Integer patientId) {
+		Map<Integer, Result> resultMap = localResults.get(key);
+		if (resultMap == null || !patients.contains(patientId))
+			return null;
+		Result r = resultMap.get(patientId);
+		if (r == null)
+			r = Result.emptyResult();
+		return r;
 	}
 	
+	/**
+	 * @return the index date to key cached results by, or null if this context evaluates as of
+	 *         "now"
+	 */
+	private Date getCacheIndexDate() {
+		return indexDateSet ? indexDate : null;
+	}
+	
+	/**
+	 * @return the logic cache shared between logic contexts
+	 */
+	private LogicCache getCache() {
+		return Context.getLogicService().getLogicCache();
+	}
+
 }
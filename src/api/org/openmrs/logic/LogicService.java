@@ -325,6 +325,21 @@ public interface LogicService {
 	
 	public void loadRule(String tokenName, String ruleClassName) throws Exception;
 	
-	public LogicCriteria parseString(String inStr);
+	/**
+	 * Get the cache of rule and data source results shared by all logic evaluations. Its hit, miss
+	 * and eviction counters show how effective it is
+	 * 
+	 * @return the shared logic cache
+	 */
+	public LogicCache getLogicCache();
+	
+	/**
+	 * Replaces the shared logic cache (e.g. to configure its size)
+	 * 
+	 * @param logicCache
+	 */
+	public void setLogicCache(LogicCache logicCache);
 	
+	public LogicCriteria parseString(String inStr);
+
 }
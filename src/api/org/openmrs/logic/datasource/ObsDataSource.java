@@ -15,18 +15,14 @@ package org.openmrs.logic.datasource;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.openmrs.Cohort;
-import org.openmrs.Obs;
 import org.openmrs.logic.LogicContext;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicException;
 import org.openmrs.logic.db.LogicObsDAO;
 import org.openmrs.logic.result.Result;
-import org.openmrs.logic.util.Util;
 
 /**
  * Provides access to clinical observations. The keys for this data source are the primary names of
@@ -53,28 +49,8 @@ public class ObsDataSource implements LogicDataSource {
 	 *      org.openmrs.Cohort, org.openmrs.logic.LogicCriteria)
 	 */
 	public Map<Integer, Result> read(LogicContext context, Cohort patients, LogicCriteria criteria) throws LogicException {
-		
-		Map<Integer, Result> finalResult = new HashMap<Integer, Result>();
-		// TODO: make the obs service method more efficient (so we don't have to re-organize
-		// into groupings by patient...or it can be done most expeditiously
-		List<Obs> obs = getLogicObsDAO().getObservations(patients, criteria);
-		
-		// group the received observations by patient and convert them to
-		// Results
-		for (Obs ob : obs) {
-			int personId = ob.getPerson().getPersonId();
-			Result result = finalResult.get(personId);
-			if (result == null) {
-				result = new Result();
-				finalResult.put(personId, result);
-			}
-			
-			result.add(new Result(ob));
-		}
-		
-		Util.applyAggregators(finalResult, criteria, patients);
-		
-		return finalResult;
+		// the dao applies the transforms in the query and keeps the results by column
+		return getLogicObsDAO().getResults(patients, criteria);
 	}
 	
 	/**
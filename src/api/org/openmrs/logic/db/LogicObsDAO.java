@@ -19,6 +19,7 @@ import org.openmrs.Cohort;
 import org.openmrs.Obs;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicException;
+import org.openmrs.logic.result.CohortResult;
 
 /**
  *
@@ -31,4 +32,16 @@ public interface LogicObsDAO {
 	 */
 	public List<Obs> getObservations(Cohort who, LogicCriteria logicCriteria) throws LogicException;
 	
+	/**
+	 * Gets the results of the logic criteria for each patient in the cohort, with any FIRST, LAST,
+	 * COUNT, AVERAGE or EXISTS transform already applied. Patients without a result are left out,
+	 * except that COUNT and AVERAGE give them 0.
+	 * 
+	 * @param who the patients to get results for
+	 * @param logicCriteria the criteria on the obs
+	 * @return map from patient id to that patient's result
+	 * @throws LogicException
+	 */
+	public CohortResult getResults(Cohort who, LogicCriteria logicCriteria) throws LogicException;
+	
 }
@@ -30,6 +30,7 @@ import org.openmrs.Cohort;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.db.hibernate.ChunkedInExpression;
 import org.openmrs.logic.Duration;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicExpression;
@@ -239,8 +240,7 @@ public class HibernateLogicEncounterDAO implements LogicEncounterDAO {
 		List<Encounter> results = new ArrayList<Encounter>();
 		
 		criteria.add(Restrictions.eq("voided", false));
-		criteria.add(Restrictions.in("person.personId", who.getMemberIds()));
-		results.addAll(criteria.list());
+		results.addAll(ChunkedInExpression.<Encounter> list(criteria, "person.personId", who.getMemberIds()));
 		
 		//return a single result per patient for these operators
 		//I don't see an easy way to do this in hibernate so I am
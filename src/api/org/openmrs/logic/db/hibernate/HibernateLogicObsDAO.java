@@ -17,21 +17,28 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.openmrs.Cohort;
 import org.openmrs.Concept;
+import org.openmrs.ConceptDatatype;
 import org.openmrs.Encounter;
 import org.openmrs.Obs;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.db.hibernate.ChunkedInExpression;
 import org.openmrs.logic.Duration;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicException;
@@ -40,6 +47,10 @@ import org.openmrs.logic.LogicExpressionBinary;
 import org.openmrs.logic.LogicTransform;
 import org.openmrs.logic.db.LogicObsDAO;
 import org.openmrs.logic.op.Operator;
+import org.openmrs.logic.result.CohortResult;
+import org.openmrs.logic.result.Result;
+import org.openmrs.logic.result.Result.Datatype;
+import org.openmrs.logic.util.Util;
 
 /**
  *
@@ -271,74 +282,76 @@ public class HibernateLogicObsDAO implements LogicObsDAO {
 		return c;
 	}
 	
-	// Helper function, converts logic service's criteria into Hibernate's
-	// criteria
-	private List<Obs> logicToHibernate(LogicExpression expression, Cohort who) throws LogicException {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class);
-		
-		Date indexDate = Calendar.getInstance().getTime();
-		Operator transformOperator = null;
-		LogicTransform transform = expression.getTransform();
-		Integer numResults = null;
-		
-		if (transform != null) {
-			transformOperator = transform.getTransformOperator();
-			numResults = transform.getNumResults();
-		}
-		
-		if (numResults == null) {
-			numResults = 1;
-		}
-		
-		// set the transform and evaluate the right criteria
-		// if there is any
-		if (transformOperator == Operator.LAST) {
-			criteria.addOrder(Order.desc("obsDatetime")).addOrder(Order.desc("dateCreated")).addOrder(Order.desc("obsId"));
-		} else if (transformOperator == Operator.FIRST) {
-			criteria.addOrder(Order.asc("obsDatetime")).addOrder(Order.asc("dateCreated")).addOrder(Order.asc("obsId"));
-		} else if (transformOperator == Operator.DISTINCT) {
-			criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
-		}
+	/**
+	 * Converts the logic criteria into a criteria on non-voided obs, aliased "obs". For FIRST and
+	 * LAST transforms the criteria is also restricted to each patient's first or last n obs (more
+	 * if several share the cutoff datetime). If ordered, each patient's rows come together, and for
+	 * FIRST/LAST the ones to keep come first.
+	 * 
+	 * @param expression the logic expression to convert
+	 * @param ordered whether the rows need ordering, i.e. they are not aggregated
+	 * @return the criteria, without any restriction on patients yet
+	 */
+	private Criteria logicToHibernate(LogicExpression expression, boolean ordered) throws LogicException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs");
 		
-		Criterion c = this.getCriterion(expression, indexDate);
+		Criterion c = this.getCriterion(expression, Calendar.getInstance().getTime());
 		if (c != null) {
 			criteria.add(c);
 		}
-		
-		List<Obs> results = new ArrayList<Obs>();
-		
 		criteria.add(Restrictions.eq("voided", false));
-		criteria.add(Restrictions.in("person.personId", who.getMemberIds()));
-		results.addAll(criteria.list());
+		if (ordered) {
+			criteria.addOrder(Order.asc("person.personId"));
+		}
 		
-		//return a single result per patient for these operators
-		//I don't see an easy way to do this in hibernate so I am
-		//doing some postprocessing
+		Operator transformOperator = getTransformOperator(expression);
 		if (transformOperator == Operator.FIRST || transformOperator == Operator.LAST) {
-			HashMap<Integer, ArrayList<Obs>> nResultMap = new HashMap<Integer, ArrayList<Obs>>();
+			boolean last = transformOperator == Operator.LAST;
 			
-			for (Obs currResult : results) {
-				Integer currPersonId = currResult.getPersonId();
-				ArrayList<Obs> prevResults = nResultMap.get(currPersonId);
-				if (prevResults == null) {
-					prevResults = new ArrayList<Obs>();
-					nResultMap.put(currPersonId, prevResults);
-				}
-				
-				if (prevResults.size() < numResults) {
-					prevResults.add(currResult);
-				}
+			// the same patient's matching obs, so the patient's first/last n can be found in sql
+			DetachedCriteria others = DetachedCriteria.forClass(Obs.class, "other");
+			others.add(Restrictions.eqProperty("other.person.personId", "obs.person.personId"));
+			if (c != null) {
+				others.add(c);
 			}
+			others.add(Restrictions.eq("other.voided", false));
 			
-			if (nResultMap.values().size() > 0) {
-				results.clear();
-				
-				for (ArrayList<Obs> currPatientObs : nResultMap.values()) {
-					results.addAll(currPatientObs);
+			int numResults = getNumResults(expression);
+			if (numResults == 1) {
+				others.setProjection(last ? Projections.max("other.obsDatetime") : Projections.min("other.obsDatetime"));
+				criteria.add(Subqueries.propertyEq("obsDatetime", others));
+			} else {
+				// fewer than n of the patient's obs are later (or earlier) than this one
+				others.add(last ? Restrictions.gtProperty("other.obsDatetime", "obs.obsDatetime") : Restrictions.ltProperty(
+				    "other.obsDatetime", "obs.obsDatetime"));
+				others.setProjection(Projections.rowCount());
+				criteria.add(Subqueries.gt(numResults, others));
+			}
+			
+			if (ordered) {
+				if (last) {
+					criteria.addOrder(Order.desc("obsDatetime")).addOrder(Order.desc("dateCreated")).addOrder(
+					    Order.desc("obsId"));
+				} else {
+					criteria.addOrder(Order.asc("obsDatetime")).addOrder(Order.asc("dateCreated")).addOrder(
+					    Order.asc("obsId"));
 				}
 			}
 		}
-		return results;
+		
+		return criteria;
+	}
+	
+	private Operator getTransformOperator(LogicExpression expression) {
+		LogicTransform transform = expression.getTransform();
+		return transform == null ? null : transform.getTransformOperator();
+	}
+	
+	private int getNumResults(LogicExpression expression) {
+		LogicTransform transform = expression.getTransform();
+		if (transform == null || transform.getNumResults() == null)
+			return 1;
+		return transform.getNumResults();
 	}
 	
 	/**
@@ -346,10 +359,141 @@ public class HibernateLogicObsDAO implements LogicObsDAO {
 	 * @see org.openmrs.api.db.ObsDAO#getObservations(org.openmrs.Person,
 	 *      org.openmrs.logic.LogicCriteria)
 	 */
-	@SuppressWarnings("unchecked")
 	public List<Obs> getObservations(Cohort who, LogicCriteria logicCriteria) throws LogicException {
 		log.debug("*** Reading observations ***");
-		return logicToHibernate(logicCriteria.getExpression(), who);
+		LogicExpression expression = logicCriteria.getExpression();
+		Operator transformOperator = getTransformOperator(expression);
+		
+		Criteria criteria = logicToHibernate(expression, true);
+		List<Obs> results = ChunkedInExpression.<Obs> list(criteria, "person.personId", who.getMemberIds());
+		
+		// obs sharing a patient's cutoff datetime all match, so only keep the first n of them
+		if (transformOperator == Operator.FIRST || transformOperator == Operator.LAST) {
+			int numResults = getNumResults(expression);
+			Map<Integer, Integer> kept = new HashMap<Integer, Integer>();
+			for (Iterator<Obs> i = results.iterator(); i.hasNext();) {
+				Integer personId = i.next().getPersonId();
+				Integer count = kept.get(personId);
+				count = count == null ? 1 : count + 1;
+				kept.put(personId, count);
+				if (count > numResults)
+					i.remove();
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Reads the matching obs straight into columns, without loading the obs themselves. COUNT,
+	 * AVERAGE (of numeric concepts) and EXISTS are worked out in the database as one row per
+	 * patient, and FIRST/LAST only bring back each patient's first or last n obs.
+	 * 
+	 * @see org.openmrs.logic.db.LogicObsDAO#getResults(org.openmrs.Cohort,
+	 *      org.openmrs.logic.LogicCriteria)
+	 */
+	public CohortResult getResults(Cohort who, LogicCriteria logicCriteria) throws LogicException {
+		LogicExpression expression = logicCriteria.getExpression();
+		Operator transformOperator = getTransformOperator(expression);
+		
+		if (transformOperator == Operator.COUNT) {
+			Criteria criteria = logicToHibernate(expression, false);
+			criteria.setProjection(Projections.projectionList().add(Projections.groupProperty("person.personId")).add(
+			    Projections.rowCount()));
+			CohortResult results = new CohortResult(true);
+			for (Object[] row : ChunkedInExpression.<Object[]> list(criteria, "person.personId", who.getMemberIds()))
+				results.add((Integer) row[0], null, null, null, null, null, ((Number) row[1]).doubleValue(), null, null);
+			results.addMissing(who.getMemberIds(), 0);
+			return results;
+		} else if (transformOperator == Operator.AVERAGE && isNumeric(expression.getRootToken())) {
+			Criteria criteria = logicToHibernate(expression, false);
+			criteria.setProjection(Projections.projectionList().add(Projections.groupProperty("person.personId")).add(
+			    Projections.sum("valueNumeric")).add(Projections.rowCount()));
+			CohortResult results = new CohortResult(true);
+			for (Object[] row : ChunkedInExpression.<Object[]> list(criteria, "person.personId", who.getMemberIds())) {
+				// obs without a value count as 0, and a sum that is not positive averages to 0, as in
+				// Util.applyAggregators
+				double sum = row[1] == null ? 0 : ((Number) row[1]).doubleValue();
+				int count = ((Number) row[2]).intValue();
+				results.add((Integer) row[0], null, null, null, null, null, count > 0 && sum > 0 ? sum / count : 0, null,
+				    null);
+			}
+			results.addMissing(who.getMemberIds(), 0);
+			return results;
+		} else if (transformOperator == Operator.EXISTS) {
+			Criteria criteria = logicToHibernate(expression, false);
+			criteria.setProjection(Projections.projectionList().add(Projections.groupProperty("person.personId")).add(
+			    Projections.max("obsDatetime")));
+			CohortResult results = new CohortResult(true);
+			for (Object[] row : ChunkedInExpression.<Object[]> list(criteria, "person.personId", who.getMemberIds()))
+				results.add((Integer) row[0], (Date) row[1], Datatype.BOOLEAN, Boolean.TRUE, null, null, null, null, null);
+			return results;
+		}
+		
+		Criteria criteria = logicToHibernate(expression, true);
+		criteria.setProjection(Projections.projectionList().add(Projections.property("person.personId")).add(
+		    Projections.property("obsId")).add(Projections.property("obsDatetime")).add(
+		    Projections.property("concept.conceptId")).add(Projections.property("valueNumeric")).add(
+		    Projections.property("valueCoded.conceptId")).add(Projections.property("valueDatetime")).add(
+		    Projections.property("valueText")));
+		
+		int numResults = Integer.MAX_VALUE;
+		if (transformOperator == Operator.FIRST || transformOperator == Operator.LAST)
+			numResults = getNumResults(expression);
+		
+		CohortResult results = new CohortResult(false);
+		Map<Integer, Datatype> datatypes = new HashMap<Integer, Datatype>();
+		Integer previousPersonId = null;
+		int patientRows = 0;
+		for (Object[] row : ChunkedInExpression.<Object[]> list(criteria, "person.personId", who.getMemberIds())) {
+			Integer personId = (Integer) row[0];
+			patientRows = personId.equals(previousPersonId) ? patientRows + 1 : 1;
+			previousPersonId = personId;
+			// another obs at the patient's cutoff datetime
+			if (patientRows > numResults)
+				continue;
+			
+			Double valueNumeric = (Double) row[4];
+			Boolean valueBoolean = valueNumeric == null ? null : valueNumeric != 0;
+			results.add(personId, (Date) row[2], getDatatype((Integer) row[3], datatypes), valueBoolean,
+			    (Integer) row[5], (Date) row[6], valueNumeric, (String) row[7], (Integer) row[1]);
+		}
+		
+		if (transformOperator == Operator.AVERAGE)
+			return Util.applyAggregators(results, logicCriteria, who);
+		return results;
+	}
+	
+	private boolean isNumeric(String rootToken) {
+		Concept concept = Context.getConceptService().getConcept(rootToken);
+		return concept != null && concept.getDatatype() != null && concept.getDatatype().isNumeric();
+	}
+	
+	/**
+	 * @return the result datatype for obs of the given concept, as in {@link Result#Result(Obs)}
+	 */
+	private Datatype getDatatype(Integer conceptId, Map<Integer, Datatype> datatypes) {
+		if (datatypes.containsKey(conceptId))
+			return datatypes.get(conceptId);
+		Datatype datatype = getDatatype(Context.getConceptService().getConcept(conceptId));
+		datatypes.put(conceptId, datatype);
+		return datatype;
+	}
+	
+	private Datatype getDatatype(Concept concept) {
+		ConceptDatatype conceptDatatype = concept == null ? null : concept.getDatatype();
+		if (conceptDatatype == null)
+			return null;
+		if (conceptDatatype.isCoded())
+			return Datatype.CODED;
+		else if (conceptDatatype.isNumeric())
+			return Datatype.NUMERIC;
+		else if (conceptDatatype.isDate())
+			return Datatype.DATETIME;
+		else if (conceptDatatype.isText())
+			return Datatype.TEXT;
+		else if (conceptDatatype.isBoolean())
+			return Datatype.BOOLEAN;
+		return null;
 	}
 	
 }
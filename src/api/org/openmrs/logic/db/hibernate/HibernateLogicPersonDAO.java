@@ -27,6 +27,7 @@ import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Person;
+import org.openmrs.api.db.hibernate.ChunkedInExpression;
 import org.openmrs.logic.Duration;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicExpression;
@@ -211,8 +212,7 @@ public class HibernateLogicPersonDAO implements LogicPersonDAO {
 		}
 		List<Person> results = new ArrayList<Person>();
 		
-		criteria.add(Restrictions.in("personId", personIds));
-		results.addAll(criteria.list());
+		results.addAll(ChunkedInExpression.<Person> list(criteria, "personId", personIds));
 		
 		//return a single result per patient for these operators
 		//I don't see an easy way to do this in hibernate so I am
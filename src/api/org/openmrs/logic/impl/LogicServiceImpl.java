@@ -25,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
 import org.openmrs.Patient;
+import org.openmrs.logic.LogicCache;
 import org.openmrs.logic.LogicContext;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicException;
@@ -59,6 +60,8 @@ public class LogicServiceImpl implements LogicService {
 	
 	private static Map<String, LogicDataSource> dataSources;
 	
+	private LogicCache logicCache = new LogicCache();
+	
 	/**
 	 * Default constructor. Creates a new RuleFactory (and populates it)
 	 */
@@ -99,6 +102,8 @@ public class LogicServiceImpl implements LogicService {
 	 */
 	public void updateRule(String token, Rule rule) throws LogicException {
 		ruleFactory.updateRule(token, rule);
+		// results from the old rule definition may be cached under this token or under rules that use it
+		logicCache.clear();
 	}
 	
 	/**
@@ -106,6 +111,7 @@ public class LogicServiceImpl implements LogicService {
 	 */
 	public void removeRule(String token) throws LogicException {
 		ruleFactory.removeRule(token);
+		logicCache.clear();
 	}
 	
 	/**
@@ -285,6 +291,20 @@ public class LogicServiceImpl implements LogicService {
 		dataSources.remove(name);
 	}
 	
+	/**
+	 * @see org.openmrs.logic.LogicService#getLogicCache()
+	 */
+	public LogicCache getLogicCache() {
+		return logicCache;
+	}
+	
+	/**
+	 * @see org.openmrs.logic.LogicService#setLogicCache(org.openmrs.logic.LogicCache)
+	 */
+	public void setLogicCache(LogicCache logicCache) {
+		this.logicCache = logicCache;
+	}
+	
 	/**
 	 * @see org.openmrs.logic.LogicService#loadRule(java.lang.String, java.lang.String)
 	 */
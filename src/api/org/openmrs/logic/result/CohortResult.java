@@ -0,0 +1,506 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.result;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.logic.result.Result.Datatype;
+
+/**
+ * The results of evaluating a criteria for a whole cohort, held column by column in primitive
+ * arrays instead of as one {@link Result} (and one boxed value of each type) per value. Each row
+ * is one value for one patient. Either every patient has a list of values, or (for aggregated
+ * results like counts) every patient has a single value. <br/>
+ * <br/>
+ * This is a read-only map from patient id to Result. A patient's Result is built each time it is
+ * asked for and is not kept, so holding a CohortResult (e.g. in the {@link org.openmrs.logic.LogicCache})
+ * costs about 40 bytes a value. Results read from obs only refer to their obs by id; it is loaded
+ * if {@link Result#getResultObject()} is called. <br/>
+ * <br/>
+ * Rows can be added in any order, though adding each patient's rows together and in ascending
+ * patient order saves a sort. Rows must be added from one thread. Once {@link #freeze()} has been
+ * called no more rows can be added, and the result can be read from many threads at once.
+ */
+public class CohortResult extends AbstractMap<Integer, Result> {
+	
+	private static final long NULL_DATE = Long.MIN_VALUE;
+	
+	private static final byte NULL_BYTE = -1;
+	
+	private static final Datatype[] DATATYPES = Datatype.values();
+	
+	private boolean singleValued;
+	
+	private int rowCount = 0;
+	
+	private int[] patientIds;
+	
+	private long[] resultDates;
+	
+	private byte[] datatypes;
+	
+	private byte[] valueBooleans;
+	
+	private int[] valueCodedIds;
+	
+	private long[] valueDatetimes;
+	
+	private double[] valueNumerics;
+	
+	/**
+	 * only allocated once a row has a text value
+	 */
+	private String[] valueTexts;
+	
+	private int[] obsIds;
+	
+	/**
+	 * whether rows were added since the patient index was built
+	 */
+	private boolean indexed = false;
+	
+	/**
+	 * the distinct patient ids, in ascending order
+	 */
+	private int[] indexPatientIds;
+	
+	/**
+	 * the first row of each patient in indexPatientIds, plus the row count at the end
+	 */
+	private int[] indexStarts;
+	
+	/**
+	 * whether {@link #freeze()} was called
+	 */
+	private boolean frozen = false;
+	
+	/**
+	 * @param singleValued true if each patient has one value (e.g. a count) rather than a list of
+	 *            values
+	 */
+	public CohortResult(boolean singleValued) {
+		this.singleValued = singleValued;
+		setCapacity(16);
+	}
+	
+	/**
+	 * Adds one value for a patient. The arguments are those of
+	 * {@link Result#Result(Date, Datatype, Boolean, org.openmrs.Concept, Date, Double, String, Object)},
+	 * except that the coded value and the result object are given by id
+	 * 
+	 * @param patientId the patient the value is for
+	 * @param resultDate
+	 * @param datatype
+	 * @param valueBoolean
+	 * @param valueCodedId id of the coded value concept
+	 * @param valueDatetime
+	 * @param valueNumeric
+	 * @param valueText
+	 * @param obsId id of the obs the value was read from, if any
+	 */
+	public void add(int patientId, Date resultDate, Datatype datatype, Boolean valueBoolean, Integer valueCodedId,
+	                Date valueDatetime, Double valueNumeric, String valueText, Integer obsId) {
+		if (frozen)
+			throw new UnsupportedOperationException("No rows can be added once the result is frozen");
+		if (rowCount == patientIds.length)
+			setCapacity(rowCount * 2);
+		
+		int row = rowCount++;
+		patientIds[row] = patientId;
+		resultDates[row] = resultDate == null ? NULL_DATE : resultDate.getTime();
+		datatypes[row] = datatype == null ? NULL_BYTE : (byte) datatype.ordinal();
+		valueBooleans[row] = valueBoolean == null ? NULL_BYTE : (byte) (valueBoolean ? 1 : 0);
+		valueCodedIds[row] = valueCodedId == null ? 0 : valueCodedId;
+		valueDatetimes[row] = valueDatetime == null ? NULL_DATE : valueDatetime.getTime();
+		valueNumerics[row] = valueNumeric == null ? Double.NaN : valueNumeric;
+		if (valueText != null) {
+			if (valueTexts == null)
+				valueTexts = new String[patientIds.length];
+			valueTexts[row] = valueText;
+		}
+		obsIds[row] = obsId == null ? 0 : obsId;
+		indexed = false;
+	}
+	
+	/**
+	 * Gives each of the patients that has no values yet a single numeric value
+	 * 
+	 * @param patientIds the patients that should all have a value
+	 * @param valueNumeric the value to give the ones that do not
+	 */
+	public void addMissing(Collection<Integer> patientIds, double valueNumeric) {
+		index();
+		int[] missing = new int[patientIds.size()];
+		int missingCount = 0;
+		for (Integer patientId : patientIds) {
+			if (Arrays.binarySearch(indexPatientIds, patientId) < 0)
+				missing[missingCount++] = patientId;
+		}
+		for (int i = 0; i < missingCount; i++)
+			add(missing[i], null, null, null, null, null, valueNumeric, null, null);
+	}
+	
+	/**
+	 * Builds the patient index now and stops any more rows being added, so that reading the result
+	 * no longer changes it. Call this before handing the result to other threads, e.g. through the
+	 * {@link org.openmrs.logic.LogicCache}
+	 * 
+	 * @return this result
+	 */
+	public CohortResult freeze() {
+		index();
+		frozen = true;
+		return this;
+	}
+	
+	/**
+	 * @return whether {@link #freeze()} was called
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * @return the number of values held, for all patients together
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	/**
+	 * @return true if each patient has a single value rather than a list of values
+	 */
+	public boolean isSingleValued() {
+		return singleValued;
+	}
+	
+	/**
+	 * Counts the values of each patient, as {@link org.openmrs.logic.util.Util#applyAggregators}
+	 * does for COUNT
+	 * 
+	 * @param patientIds the patients to count for; ones without values get a count of 0
+	 * @return a single valued result holding the counts
+	 */
+	public CohortResult count(Collection<Integer> patientIds) {
+		index();
+		CohortResult counts = new CohortResult(true);
+		for (Integer patientId : patientIds) {
+			int patient = Arrays.binarySearch(indexPatientIds, patientId);
+			int count = patient < 0 ? 0 : indexStarts[patient + 1] - indexStarts[patient];
+			counts.add(patientId, null, null, null, null, null, (double) count, null, null);
+		}
+		return counts;
+	}
+	
+	/**
+	 * Averages the values of each patient, as {@link org.openmrs.logic.util.Util#applyAggregators}
+	 * does for AVERAGE: values count as {@link Result#toNumber()} and an average with a sum that
+	 * is not positive is 0
+	 * 
+	 * @param patientIds the patients to average for; ones without values get an average of 0
+	 * @return a single valued result holding the averages
+	 */
+	public CohortResult average(Collection<Integer> patientIds) {
+		index();
+		CohortResult averages = new CohortResult(true);
+		for (Integer patientId : patientIds) {
+			int patient = Arrays.binarySearch(indexPatientIds, patientId);
+			int count = 0;
+			double sum = 0;
+			if (patient >= 0) {
+				for (int row = indexStarts[patient]; row < indexStarts[patient + 1]; row++) {
+					count++;
+					sum += toNumber(row);
+				}
+			}
+			averages.add(patientId, null, null, null, null, null, count > 0 && sum > 0 ? sum / count : 0, null, null);
+		}
+		return averages;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public Result get(Object key) {
+		int patient = indexOf(key);
+		if (patient < 0)
+			return null;
+		if (singleValued)
+			return toResult(indexStarts[patient]);
+		
+		Result result = new Result();
+		for (int row = indexStarts[patient]; row < indexStarts[patient + 1]; row++)
+			result.add(toResult(row));
+		return result;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		index();
+		return indexPatientIds.length;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<Integer, Result>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Result>>() {
+			
+			@Override
+			public int size() {
+				return CohortResult.this.size();
+			}
+			
+			@Override
+			public Iterator<Map.Entry<Integer, Result>> iterator() {
+				index();
+				return new Iterator<Map.Entry<Integer, Result>>() {
+					
+					private int patient = 0;
+					
+					public boolean hasNext() {
+						return patient < indexPatientIds.length;
+					}
+					
+					public Map.Entry<Integer, Result> next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						return new Entry(indexPatientIds[patient++]);
+					}
+					
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * A patient's entry, whose result is only built when it is asked for
+	 */
+	private class Entry implements Map.Entry<Integer, Result> {
+		
+		private Integer patientId;
+		
+		Entry(Integer patientId) {
+			this.patientId = patientId;
+		}
+		
+		public Integer getKey() {
+			return patientId;
+		}
+		
+		public Result getValue() {
+			return get(patientId);
+		}
+		
+		public Result setValue(Result value) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			return patientId.equals(other.getKey()) && getValue().equals(other.getValue());
+		}
+		
+		@Override
+		public int hashCode() {
+			return patientId.hashCode() ^ getValue().hashCode();
+		}
+	}
+	
+	/**
+	 * @return the position of the patient in the index, or a negative number if the patient has no
+	 *         values
+	 */
+	private int indexOf(Object key) {
+		if (!(key instanceof Integer))
+			return -1;
+		index();
+		return Arrays.binarySearch(indexPatientIds, (Integer) key);
+	}
+	
+	/**
+	 * Sorts the rows by patient (keeping each patient's rows in the order they were added) and lists
+	 * where each patient's rows start, if rows were added since this was last done
+	 */
+	private void index() {
+		if (indexed)
+			return;
+		
+		for (int row = 1; row < rowCount; row++) {
+			if (patientIds[row - 1] > patientIds[row]) {
+				sortByPatient();
+				break;
+			}
+		}
+		
+		int patientCount = 0;
+		for (int row = 0; row < rowCount; row++) {
+			if (row == 0 || patientIds[row] != patientIds[row - 1])
+				patientCount++;
+		}
+		indexPatientIds = new int[patientCount];
+		indexStarts = new int[patientCount + 1];
+		int patient = 0;
+		for (int row = 0; row < rowCount; row++) {
+			if (row == 0 || patientIds[row] != patientIds[row - 1]) {
+				indexPatientIds[patient] = patientIds[row];
+				indexStarts[patient++] = row;
+			}
+		}
+		indexStarts[patientCount] = rowCount;
+		indexed = true;
+	}
+	
+	private void sortByPatient() {
+		// the row number in the low bits keeps the sort stable
+		long[] keys = new long[rowCount];
+		for (int row = 0; row < rowCount; row++)
+			keys[row] = ((long) patientIds[row] << 32) | row;
+		Arrays.sort(keys);
+		int[] order = new int[rowCount];
+		for (int i = 0; i < rowCount; i++)
+			order[i] = (int) keys[i];
+		
+		int[] newPatientIds = new int[patientIds.length];
+		long[] newResultDates = new long[patientIds.length];
+		byte[] newDatatypes = new byte[patientIds.length];
+		byte[] newValueBooleans = new byte[patientIds.length];
+		int[] newValueCodedIds = new int[patientIds.length];
+		long[] newValueDatetimes = new long[patientIds.length];
+		double[] newValueNumerics = new double[patientIds.length];
+		String[] newValueTexts = valueTexts == null ? null : new String[patientIds.length];
+		int[] newObsIds = new int[patientIds.length];
+		for (int i = 0; i < rowCount; i++) {
+			int row = order[i];
+			newPatientIds[i] = patientIds[row];
+			newResultDates[i] = resultDates[row];
+			newDatatypes[i] = datatypes[row];
+			newValueBooleans[i] = valueBooleans[row];
+			newValueCodedIds[i] = valueCodedIds[row];
+			newValueDatetimes[i] = valueDatetimes[row];
+			newValueNumerics[i] = valueNumerics[row];
+			if (newValueTexts != null)
+				newValueTexts[i] = valueTexts[row];
+			newObsIds[i] = obsIds[row];
+		}
+		patientIds = newPatientIds;
+		resultDates = newResultDates;
+		datatypes = newDatatypes;
+		valueBooleans = newValueBooleans;
+		valueCodedIds = newValueCodedIds;
+		valueDatetimes = newValueDatetimes;
+		valueNumerics = newValueNumerics;
+		valueTexts = newValueTexts;
+		obsIds = newObsIds;
+	}
+	
+	private void setCapacity(int capacity) {
+		int[] newPatientIds = new int[capacity];
+		long[] newResultDates = new long[capacity];
+		byte[] newDatatypes = new byte[capacity];
+		byte[] newValueBooleans = new byte[capacity];
+		int[] newValueCodedIds = new int[capacity];
+		long[] newValueDatetimes = new long[capacity];
+		double[] newValueNumerics = new double[capacity];
+		String[] newValueTexts = valueTexts == null ? null : new String[capacity];
+		int[] newObsIds = new int[capacity];
+		if (rowCount > 0) {
+			System.arraycopy(patientIds, 0, newPatientIds, 0, rowCount);
+			System.arraycopy(resultDates, 0, newResultDates, 0, rowCount);
+			System.arraycopy(datatypes, 0, newDatatypes, 0, rowCount);
+			System.arraycopy(valueBooleans, 0, newValueBooleans, 0, rowCount);
+			System.arraycopy(valueCodedIds, 0, newValueCodedIds, 0, rowCount);
+			System.arraycopy(valueDatetimes, 0, newValueDatetimes, 0, rowCount);
+			System.arraycopy(valueNumerics, 0, newValueNumerics, 0, rowCount);
+			if (newValueTexts != null)
+				System.arraycopy(valueTexts, 0, newValueTexts, 0, rowCount);
+			System.arraycopy(obsIds, 0, newObsIds, 0, rowCount);
+		}
+		patientIds = newPatientIds;
+		resultDates = newResultDates;
+		datatypes = newDatatypes;
+		valueBooleans = newValueBooleans;
+		valueCodedIds = newValueCodedIds;
+		valueDatetimes = newValueDatetimes;
+		valueNumerics = newValueNumerics;
+		valueTexts = newValueTexts;
+		obsIds = newObsIds;
+	}
+	
+	/**
+	 * @return the row's value as a number, as {@link Result#toNumber()} gives it (null counting as 0)
+	 */
+	private double toNumber(int row) {
+		double valueNumeric = Double.isNaN(valueNumerics[row]) ? 0 : valueNumerics[row];
+		if (datatypes[row] == NULL_BYTE)
+			return valueNumeric;
+		switch (DATATYPES[datatypes[row]]) {
+			case BOOLEAN:
+				return valueBooleans[row] == 1 ? 1 : 0;
+			case CODED:
+				return 0;
+			case DATETIME:
+				return valueDatetimes[row] == NULL_DATE ? 0 : valueDatetimes[row];
+			case TEXT:
+				try {
+					return Double.parseDouble(valueTexts[row]);
+				}
+				catch (Exception e) {
+					return 0;
+				}
+			default:
+				return valueNumeric;
+		}
+	}
+	
+	private Result toResult(int row) {
+		Result result = new Result(resultDates[row] == NULL_DATE ? null : new Date(resultDates[row]),
+		        datatypes[row] == NULL_BYTE ? null : DATATYPES[datatypes[row]], valueBooleans[row] == NULL_BYTE ? null
+		                : valueBooleans[row] == 1, valueCodedIds[row] == 0 ? null : Context.getConceptService()
+		                .getConcept(valueCodedIds[row]), valueDatetimes[row] == NULL_DATE ? null : new Date(
+		                valueDatetimes[row]), Double.isNaN(valueNumerics[row]) ? null : valueNumerics[row],
+		        valueTexts == null ? null : valueTexts[row], null);
+		if (obsIds[row] != 0)
+			result.setResultObsId(obsIds[row]);
+		return result;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.result;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only copy of the results of a rule or data source, by patient id, that can be shared
+ * between threads and sessions (e.g. in the {@link org.openmrs.logic.LogicCache}). Each result is
+ * held as an immutable snapshot that refers to its concepts and objects by id. Like
+ * {@link CohortResult}, a patient's Result is built each time it is asked for, so callers can't
+ * change the copy and never get an object from another session.
+ */
+public class FrozenResultMap extends AbstractMap<Integer, Result> {
+	
+	private Map<Integer, Result.Snapshot> snapshots;
+	
+	/**
+	 * Copies the given results. This must be called in the session they were read in, since the
+	 * ids of their concepts and objects are read from them
+	 * 
+	 * @param resultMap results by patient id
+	 */
+	public FrozenResultMap(Map<Integer, Result> resultMap) {
+		snapshots = new HashMap<Integer, Result.Snapshot>(resultMap.size() * 4 / 3 + 1);
+		for (Map.Entry<Integer, Result> e : resultMap.entrySet())
+			snapshots.put(e.getKey(), e.getValue() == null ? null : new Result.Snapshot(e.getValue()));
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public Result get(Object key) {
+		Result.Snapshot snapshot = snapshots.get(key);
+		return snapshot == null ? null : snapshot.toResult();
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return snapshots.containsKey(key);
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return snapshots.size();
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<Integer, Result>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Result>>() {
+			
+			@Override
+			public int size() {
+				return snapshots.size();
+			}
+			
+			@Override
+			public Iterator<Map.Entry<Integer, Result>> iterator() {
+				final Iterator<Integer> patientIds = snapshots.keySet().iterator();
+				return new Iterator<Map.Entry<Integer, Result>>() {
+					
+					public boolean hasNext() {
+						return patientIds.hasNext();
+					}
+					
+					public Map.Entry<Integer, Result> next() {
+						return new Entry(patientIds.next());
+					}
+					
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * A patient's entry, whose result is only built when it is asked for
+	 */
+	private class Entry implements Map.Entry<Integer, Result> {
+		
+		private Integer patientId;
+		
+		Entry(Integer patientId) {
+			this.patientId = patientId;
+		}
+		
+		public Integer getKey() {
+			return patientId;
+		}
+		
+		public Result getValue() {
+			return get(patientId);
+		}
+		
+		public Result setValue(Result value) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			Result value = getValue();
+			return patientId.equals(other.getKey())
+			        && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+		
+		@Override
+		public int hashCode() {
+			Result value = getValue();
+			return patientId.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+	}
+}
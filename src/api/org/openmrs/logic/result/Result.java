@@ -20,7 +20,11 @@ import java.util.List;
 
 import org.openmrs.Concept;
 import org.openmrs.ConceptDatatype;
+import org.openmrs.Encounter;
 import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
+import org.openmrs.Person;
 import org.openmrs.api.context.Context;
 
 /**
@@ -64,6 +68,14 @@ public class Result extends ArrayList<Result> {
 	
 	private Object resultObject;
 	
+	/**
+	 * type and id of the object the result was made from, when the object itself is only loaded
+	 * on request
+	 */
+	private Class<?> resultObjectType;
+	
+	private Integer resultObjectId;
+	
 	private static final Result emptyResult = new EmptyResult();
 	
 	public Result() {
@@ -391,12 +403,84 @@ public class Result extends ArrayList<Result> {
 		return this.get(0).getResultDate();
 	}
 	
+	/**
+	 * @return the object the result was made from. For results read by column (see
+	 *         {@link CohortResult}) or taken from the {@link org.openmrs.logic.LogicCache} this
+	 *         gets the object from the current session each time it is asked for, so that a cached
+	 *         result never holds on to an object from another session.
+	 */
 	public Object getResultObject() {
+		if (this.resultObjectId != null)
+			return loadResultObject(resultObjectType, resultObjectId);
 		return this.resultObject;
 	}
 	
 	public void setResultObject(Object object) {
 		this.resultObject = object;
+		this.resultObjectType = null;
+		this.resultObjectId = null;
+	}
+	
+	/**
+	 * @param obsId the obs for {@link #getResultObject()} to load when asked
+	 */
+	void setResultObsId(Integer obsId) {
+		setResultObjectId(Obs.class, obsId);
+	}
+	
+	/**
+	 * @param type the type of object for {@link #getResultObject()} to load when asked, one of
+	 *            those {@link #getResultObjectType(Object)} returns
+	 * @param id the id of the object
+	 */
+	void setResultObjectId(Class<?> type, Integer id) {
+		this.resultObject = null;
+		this.resultObjectType = type;
+		this.resultObjectId = id;
+	}
+	
+	/**
+	 * @param object the object a result was made from
+	 * @return the type to refer to the object by when it can be loaded by id, or null if it can't
+	 */
+	private static Class<?> getResultObjectType(Object object) {
+		if (object instanceof Obs)
+			return Obs.class;
+		else if (object instanceof Encounter)
+			return Encounter.class;
+		else if (object instanceof Patient)
+			return Patient.class;
+		else if (object instanceof Person)
+			return Person.class;
+		else if (object instanceof PatientProgram)
+			return PatientProgram.class;
+		return null;
+	}
+	
+	private static Integer getResultObjectId(Object object) {
+		if (object instanceof Obs)
+			return ((Obs) object).getObsId();
+		else if (object instanceof Encounter)
+			return ((Encounter) object).getEncounterId();
+		else if (object instanceof Person)
+			return ((Person) object).getPersonId();
+		else if (object instanceof PatientProgram)
+			return ((PatientProgram) object).getPatientProgramId();
+		return null;
+	}
+	
+	private static Object loadResultObject(Class<?> type, Integer id) {
+		if (Obs.class.equals(type))
+			return Context.getObsService().getObs(id);
+		else if (Encounter.class.equals(type))
+			return Context.getEncounterService().getEncounter(id);
+		else if (Patient.class.equals(type))
+			return Context.getPatientService().getPatient(id);
+		else if (Person.class.equals(type))
+			return Context.getPersonService().getPerson(id);
+		else if (PatientProgram.class.equals(type))
+			return Context.getProgramWorkflowService().getPatientProgram(id);
+		throw new IllegalArgumentException("Cannot load a result object of type " + type);
 	}
 	
 	/**
@@ -822,4 +906,87 @@ public class Result extends ArrayList<Result> {
 		return (this.size() < 1);
 	}
 	
+	/**
+	 * An immutable copy of a result, and of the results in it, that refers to its coded value and
+	 * to the object it was made from by id. It can be shared between threads, and each call to
+	 * {@link #toResult()} builds a new result with its concept and object from the current
+	 * session. Objects that can't be loaded by id (see {@link Result#getResultObjectType(Object)})
+	 * are held as they are.
+	 * 
+	 * @see FrozenResultMap
+	 */
+	static final class Snapshot {
+		
+		private final boolean empty;
+		
+		private final Datatype datatype;
+		
+		private final Long resultDatetime;
+		
+		private final Boolean valueBoolean;
+		
+		private final Integer valueCodedId;
+		
+		private final Long valueDatetime;
+		
+		private final Double valueNumeric;
+		
+		private final String valueText;
+		
+		private final Object resultObject;
+		
+		private final Class<?> resultObjectType;
+		
+		private final Integer resultObjectId;
+		
+		private final Snapshot[] members;
+		
+		Snapshot(Result result) {
+			empty = result instanceof EmptyResult;
+			datatype = result.datatype;
+			resultDatetime = result.resultDatetime == null ? null : result.resultDatetime.getTime();
+			valueBoolean = result.valueBoolean;
+			valueCodedId = result.valueCoded == null ? null : result.valueCoded.getConceptId();
+			valueDatetime = result.valueDatetime == null ? null : result.valueDatetime.getTime();
+			valueNumeric = result.valueNumeric;
+			valueText = result.valueText;
+			
+			Class<?> objectType = result.resultObjectType;
+			Integer objectId = result.resultObjectId;
+			Object object = null;
+			if (objectId == null && result.resultObject != null) {
+				objectType = getResultObjectType(result.resultObject);
+				objectId = objectType == null ? null : getResultObjectId(result.resultObject);
+				if (objectId == null)
+					object = result.resultObject;
+			}
+			resultObject = object;
+			resultObjectType = objectType;
+			resultObjectId = objectId;
+			
+			members = new Snapshot[empty ? 0 : result.size()];
+			int i = 0;
+			if (!empty) {
+				for (Result member : result)
+					members[i++] = member == null ? null : new Snapshot(member);
+			}
+		}
+		
+		/**
+		 * @return a new result with the values of this one
+		 */
+		Result toResult() {
+			if (empty)
+				return emptyResult();
+			
+			Result result = new Result(resultDatetime == null ? null : new Date(resultDatetime), datatype, valueBoolean,
+			        valueCodedId == null ? null : Context.getConceptService().getConcept(valueCodedId),
+			        valueDatetime == null ? null : new Date(valueDatetime), valueNumeric, valueText, resultObject);
+			if (resultObjectId != null)
+				result.setResultObjectId(resultObjectType, resultObjectId);
+			for (Snapshot member : members)
+				result.add(member == null ? null : member.toResult());
+			return result;
+		}
+	}
 }
@@ -20,6 +20,7 @@ import org.openmrs.Cohort;
 import org.openmrs.logic.LogicCriteria;
 import org.openmrs.logic.LogicTransform;
 import org.openmrs.logic.op.Operator;
+import org.openmrs.logic.result.CohortResult;
 import org.openmrs.logic.result.EmptyResult;
 import org.openmrs.logic.result.Result;
 
@@ -81,4 +82,23 @@ public class Util {
 			}
 		}
 	}
+	
+	/**
+	 * Applies COUNT and AVERAGE to results held by column, without building a Result for each
+	 * value. Unlike {@link #applyAggregators(Map, LogicCriteria, Cohort)}, every patient in the
+	 * cohort gets a count or average, 0 if they had no results.
+	 * 
+	 * @param results the results to aggregate
+	 * @param criteria provides type of transform
+	 * @param patients the patients to give a count or average
+	 * @return the counts or averages, or the given results if there is nothing to aggregate
+	 */
+	public static CohortResult applyAggregators(CohortResult results, LogicCriteria criteria, Cohort patients) {
+		LogicTransform transform = criteria.getExpression().getTransform();
+		if (transform != null && transform.getTransformOperator() == Operator.COUNT)
+			return results.count(patients.getMemberIds());
+		if (transform != null && transform.getTransformOperator() == Operator.AVERAGE)
+			return results.average(patients.getMemberIds());
+		return results;
+	}
 }
@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -39,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -52,6 +55,11 @@ public class ModuleClassLoader extends URLClassLoader {
 	
 	static Log log = LogFactory.getLog(ModuleClassLoader.class);
 	
+	/**
+	 * True if the jvm lets this class load classes for more than one thread at a time (java 7+)
+	 */
+	private static final boolean parallelCapable = registerParallelCapable();
+	
 	private final Module module;
 	
 	private Module[] requiredModules;
@@ -60,6 +68,18 @@ public class ModuleClassLoader extends URLClassLoader {
 	
 	private boolean probeParentLoaderLast = true;
 	
+	/**
+	 * The packages (as resource directories) that this loader's jars have entries in, or null if
+	 * the jars couldn't be scanned
+	 */
+	private volatile Set<String> packages;
+	
+	/**
+	 * One lock per class name being loaded, used when the loader is parallel capable. Each lock is
+	 * dropped once its class has been loaded (or not found)
+	 */
+	private final ConcurrentMap<String, Object> loadingLocks = new ConcurrentHashMap<String, Object>();
+	
 	/**
 	 * @param module Module
 	 * @param urls resources "managed" by this class loader
@@ -79,6 +99,7 @@ public class ModuleClassLoader extends URLClassLoader {
 		collectRequiredModuleImports();
 		collectFilters();
 		libraryCache = new WeakHashMap<URL, File>();
+		packages = ModuleClassLoaderIndex.scan(getURLs());
 	}
 	
 	/**
@@ -112,6 +133,24 @@ public class ModuleClassLoader extends URLClassLoader {
 		this(module, getUrls(module), parent);
 	}
 	
+	/**
+	 * Registers this class with the jvm as able to load classes in parallel. The method only exists
+	 * as of java 7, so it is called reflectively
+	 * 
+	 * @return true if the registration succeeded
+	 */
+	private static boolean registerParallelCapable() {
+		try {
+			Method register = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+			register.setAccessible(true);
+			return Boolean.TRUE.equals(register.invoke(null));
+		}
+		catch (Exception e) {
+			// older jvm, loads stay serialized on the loader
+			return false;
+		}
+	}
+	
 	/**
 	 * @return returns this classloader's module
 	 */
@@ -119,6 +158,46 @@ public class ModuleClassLoader extends URLClassLoader {
 		return module;
 	}
 	
+	/**
+	 * @return the packages (as resource directories like "org/openmrs/module/foo") that this
+	 *         loader's jars have entries in, or null if they are not known
+	 * @see ModuleClassLoaderIndex
+	 */
+	public Set<String> getPackageNames() {
+		return packages;
+	}
+	
+	/**
+	 * Whether this loader's own jars might have the given resource. Directory names (ending in
+	 * '/') are always looked for
+	 * 
+	 * @param name resource name, like "org/openmrs/module/foo/Bar.class"
+	 * @return false if the resource is definitely not in this module's jars
+	 */
+	protected boolean mightContain(String name) {
+		Set<String> packages = this.packages;
+		if (packages == null || name.length() == 0 || name.endsWith("/"))
+			return true;
+		
+		return packages.contains(ModuleClassLoaderIndex.getPackageName(name));
+	}
+	
+	/**
+	 * Gets the object to synchronize on while loading the given class. This is a lock per class
+	 * name if the jvm allows parallel loading, otherwise it is this loader
+	 * 
+	 * @param name the class being loaded
+	 * @return the lock object
+	 */
+	protected Object getLoadingLock(String name) {
+		if (!parallelCapable)
+			return this;
+		
+		Object lock = new Object();
+		Object existing = loadingLocks.putIfAbsent(name, lock);
+		return existing == null ? lock : existing;
+	}
+	
 	/**
 	 * Get the base class url of the given <code>cls</code>. Used for checking against system class
 	 * loads vs classloader loads
@@ -301,6 +380,9 @@ public class ModuleClassLoader extends URLClassLoader {
 		for (URL u : newUrls) {
 			addURL(u);
 		}
+		packages = ModuleClassLoaderIndex.scan(getURLs());
+		if (ModuleFactory.getModuleClassLoaderMap().containsValue(this))
+			ModuleFactory.getModuleClassLoaderIndex().add(this);
 		
 		if (log.isDebugEnabled()) {
 			StringBuffer buf = new StringBuffer();
@@ -428,45 +510,53 @@ public class ModuleClassLoader extends URLClassLoader {
 		// the class ultimately returned (if found)
 		Class<?> result = null;
 		
-		synchronized (this) {
-			result = findLoadedClass(name);
-			
-			if (result != null) {
-				checkClassVisibility(result, requestor);
+		Object lock = getLoadingLock(name);
+		try {
+			synchronized (lock) {
+				result = findLoadedClass(name);
 				
-				/*if (resolve) {
-					resolveClass(result);
-				}*/
+				if (result != null) {
+					checkClassVisibility(result, requestor);
+					
+					/*if (resolve) {
+						resolveClass(result);
+					}*/
 
-				// found an already loaded class in this moduleclassloader
-				return result;
-			}
-			
-			// we didn't find a loaded class and this isn't a class 
-			// from another module
-			try {
-				synchronized (getClass()) {
-					result = findClass(name);
+					// found an already loaded class in this moduleclassloader
+					return result;
 				}
-			}
-			catch (LinkageError le) {
-				throw le;
-			}
-			catch (ClassNotFoundException cnfe) {
-				// ignore
-			}
-			
-			// we were able to "find" a class
-			if (result != null) {
-				checkClassVisibility(result, requestor);
 				
-				if (resolve) {
-					resolveClass(result);
+				// we didn't find a loaded class and this isn't a class 
+				// from another module. Skip the jars if the package isn't in them
+				try {
+					if (mightContain(name.replace('.', '/') + ".class"))
+						result = findClass(name);
+				}
+				catch (LinkageError le) {
+					throw le;
+				}
+				catch (ClassNotFoundException cnfe) {
+					// ignore
 				}
 				
-				return result; // found class in this module
+				// we were able to "find" a class
+				if (result != null) {
+					checkClassVisibility(result, requestor);
+					
+					if (resolve) {
+						resolveClass(result);
+					}
+					
+					return result; // found class in this module
+				}
 			}
 		}
+		finally {
+			// once the class is defined findLoadedClass finds it under any lock, so the lock is
+			// only needed while it is being loaded
+			if (lock != this)
+				loadingLocks.remove(name, lock);
+		}
 		
 		// initialize the array if need be
 		if (seenModules == null)
@@ -732,7 +822,7 @@ public class ModuleClassLoader extends URLClassLoader {
 		if ((seenModules != null) && seenModules.contains(getModule().getModuleId()))
 			return null;
 		
-		URL result = super.findResource(name);
+		URL result = mightContain(name) ? super.findResource(name) : null;
 		if (result != null) { // found resource in this module class path
 			if (isResourceVisible(name, result, requestor)) {
 				return result;
@@ -791,10 +881,12 @@ public class ModuleClassLoader extends URLClassLoader {
 		if ((seenModules != null) && seenModules.contains(getModule().getModuleId())) {
 			return;
 		}
-		for (Enumeration<URL> enm = super.findResources(name); enm.hasMoreElements();) {
-			URL url = enm.nextElement();
-			if (isResourceVisible(name, url, requestor)) {
-				result.add(url);
+		if (mightContain(name)) {
+			for (Enumeration<URL> enm = super.findResources(name); enm.hasMoreElements();) {
+				URL url = enm.nextElement();
+				if (isResourceVisible(name, url, requestor)) {
+					result.add(url);
+				}
 			}
 		}
 		//		if (resourceLoader != null) {
@@ -0,0 +1,274 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Knows which {@link ModuleClassLoader}s can hold a given class or resource, so that the
+ * {@link org.openmrs.util.OpenmrsClassLoader} only asks the module loaders whose jars have
+ * something in that package instead of every loader in turn. Each loader's jars are scanned once
+ * when its module is started (see {@link #scan(URL[])}), and the index is kept up to date by the
+ * {@link ModuleFactory} as modules are started and stopped. <br/>
+ * <br/>
+ * The index also remembers the names of classes that neither the modules nor the parent
+ * classloader could load, since the same missing names (BeanInfo and Editor classes, optional
+ * dependencies, etc) are asked for over and over. That list is thrown away whenever the set of
+ * modules changes. A lookup that started before the modules changed might have missed a class
+ * that is now there, so the index counts its changes as a generation (see {@link #getGeneration()})
+ * and only remembers the names whose lookup started in the current generation.
+ */
+public class ModuleClassLoaderIndex {
+	
+	private static Log log = LogFactory.getLog(ModuleClassLoaderIndex.class);
+	
+	/**
+	 * The most class names that are remembered as missing
+	 */
+	private static final int MAX_MISSING_CLASSES = 10000;
+	
+	/**
+	 * The loaders in the order they were added
+	 */
+	private List<ModuleClassLoader> classLoaders = new ArrayList<ModuleClassLoader>();
+	
+	/**
+	 * Package (as a resource directory, like "org/openmrs/module/foo") to the loaders that have
+	 * entries directly in it. This is replaced, never modified, so lookups don't have to lock
+	 */
+	private volatile Map<String, List<ModuleClassLoader>> packageOwners = Collections.emptyMap();
+	
+	/**
+	 * The loaders whose jars could not be scanned. These are asked about everything
+	 */
+	private volatile List<ModuleClassLoader> unindexedClassLoaders = Collections.emptyList();
+	
+	/**
+	 * How many times the index has changed. Only changed while holding the lock on
+	 * {@link #missingClasses}
+	 */
+	private volatile int generation = 0;
+	
+	private final Map<String, Boolean> missingClasses = new LinkedHashMap<String, Boolean>() {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_MISSING_CLASSES;
+		}
+	};
+	
+	/**
+	 * Adds the given loader to the index, replacing what was there for it before
+	 * 
+	 * @param classLoader the loader of a module that is being started
+	 */
+	public synchronized void add(ModuleClassLoader classLoader) {
+		classLoaders.remove(classLoader);
+		classLoaders.add(classLoader);
+		rebuild();
+	}
+	
+	/**
+	 * Takes the given loader out of the index
+	 * 
+	 * @param classLoader the loader of a module that is being stopped
+	 */
+	public synchronized void remove(ModuleClassLoader classLoader) {
+		if (classLoaders.remove(classLoader))
+			rebuild();
+	}
+	
+	/**
+	 * Takes all loaders out of the index
+	 */
+	public synchronized void clear() {
+		classLoaders.clear();
+		rebuild();
+	}
+	
+	/**
+	 * Recomputes the package map from the current loaders and forgets the classes that were
+	 * missing, since the class might be in a module that was just started
+	 */
+	private void rebuild() {
+		Map<String, List<ModuleClassLoader>> owners = new HashMap<String, List<ModuleClassLoader>>();
+		List<ModuleClassLoader> unindexed = new ArrayList<ModuleClassLoader>();
+		for (ModuleClassLoader classLoader : classLoaders) {
+			Set<String> packages = classLoader.getPackageNames();
+			if (packages == null) {
+				unindexed.add(classLoader);
+				continue;
+			}
+			for (String packageName : packages) {
+				List<ModuleClassLoader> loaders = owners.get(packageName);
+				if (loaders == null) {
+					loaders = new ArrayList<ModuleClassLoader>(1);
+					owners.put(packageName, loaders);
+				}
+				loaders.add(classLoader);
+			}
+		}
+		
+		packageOwners = owners;
+		unindexedClassLoaders = unindexed;
+		synchronized (missingClasses) {
+			generation++;
+			missingClasses.clear();
+		}
+	}
+	
+	/**
+	 * Gets the number of times the loaders in the index have changed. Read this before looking a
+	 * class up, and pass it to {@link #addMissingClass(String, int)} if the class isn't found
+	 * 
+	 * @return the current generation of the index
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Gets the loaders that might be able to load the given class
+	 * 
+	 * @param className the fully qualified name of the class
+	 * @return the loaders, in the order their modules were started. Never null
+	 */
+	public List<ModuleClassLoader> getClassLoadersForClass(String className) {
+		return getClassLoaders(getPackageName(className.replace('.', '/')));
+	}
+	
+	/**
+	 * Gets the loaders that might have the given resource. Directory names (ending in '/') are
+	 * asked of every loader, since a directory can span any number of packages
+	 * 
+	 * @param name the resource name, like "org/openmrs/module/foo/messages.properties"
+	 * @return the loaders, in the order their modules were started. Never null
+	 */
+	public List<ModuleClassLoader> getClassLoadersForResource(String name) {
+		if (name.length() == 0 || name.endsWith("/")) {
+			synchronized (this) {
+				return new ArrayList<ModuleClassLoader>(classLoaders);
+			}
+		}
+		
+		return getClassLoaders(getPackageName(name));
+	}
+	
+	private List<ModuleClassLoader> getClassLoaders(String packageName) {
+		List<ModuleClassLoader> owners = packageOwners.get(packageName);
+		List<ModuleClassLoader> unindexed = unindexedClassLoaders;
+		if (unindexed.isEmpty())
+			return owners == null ? Collections.<ModuleClassLoader> emptyList() : owners;
+		
+		List<ModuleClassLoader> loaders = new ArrayList<ModuleClassLoader>(unindexed);
+		if (owners != null)
+			loaders.addAll(owners);
+		return loaders;
+	}
+	
+	/**
+	 * @param className the fully qualified name of a class
+	 * @return true if the class was marked missing with {@link #addMissingClass(String, int)} since the
+	 *         modules last changed
+	 */
+	public boolean isMissingClass(String className) {
+		synchronized (missingClasses) {
+			return missingClasses.containsKey(className);
+		}
+	}
+	
+	/**
+	 * Remembers that the given class could not be loaded by the modules or the parent classloader,
+	 * unless the modules changed while it was being looked for
+	 * 
+	 * @param className the fully qualified name of a class
+	 * @param generation the {@link #getGeneration()} from before the class was looked for
+	 */
+	public void addMissingClass(String className, int generation) {
+		synchronized (missingClasses) {
+			if (generation == this.generation)
+				missingClasses.put(className, Boolean.TRUE);
+		}
+	}
+	
+	/**
+	 * Gets the directory part of a resource name
+	 * 
+	 * @param name the resource name, like "org/openmrs/Patient.class"
+	 * @return the directory, like "org/openmrs", or an empty string for resources at the root
+	 */
+	public static String getPackageName(String name) {
+		int slash = name.lastIndexOf('/');
+		return slash < 0 ? "" : name.substring(0, slash);
+	}
+	
+	/**
+	 * Lists the packages that the given jars have entries in
+	 * 
+	 * @param urls the classpath of a module
+	 * @return the packages, as resource directories, or null if one of the urls isn't a jar file
+	 *         that could be read
+	 */
+	public static Set<String> scan(URL[] urls) {
+		Set<String> packages = new HashSet<String>();
+		for (URL url : urls) {
+			File file = OpenmrsUtil.url2file(url);
+			if (file == null || !file.isFile())
+				return null;
+			
+			ZipFile jar = null;
+			try {
+				jar = new ZipFile(file);
+				for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries.hasMoreElements();) {
+					ZipEntry entry = entries.nextElement();
+					if (!entry.isDirectory())
+						packages.add(getPackageName(entry.getName()));
+				}
+			}
+			catch (IOException e) {
+				log.debug("Unable to index the entries in " + url, e);
+				return null;
+			}
+			finally {
+				if (jar != null) {
+					try {
+						jar.close();
+					}
+					catch (IOException e) { /* pass */}
+				}
+			}
+		}
+		
+		return packages;
+	}
+}
@@ -23,8 +23,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.Vector;
 import java.util.WeakHashMap;
@@ -56,9 +58,15 @@ public class ModuleFactory {
 	
 	private static Map<String, List<Extension>> extensionMap = new HashMap<String, List<Extension>>();
 	
+	// read-only lists built from the extension map, keyed on point id and on point id|media type
+	private static volatile Map<String, List<Extension>> extensionRegistry = Collections.emptyMap();
+	
 	// maps to keep track of the memory and objects to free/close
 	private static Map<Module, ModuleClassLoader> moduleClassLoaders = new WeakHashMap<Module, ModuleClassLoader>();
 	
+	// which module classloaders own which packages
+	private static ModuleClassLoaderIndex moduleClassLoaderIndex = new ModuleClassLoaderIndex();
+	
 	/**
 	 * Add a module (in the form of a jar file) to the list of openmrs modules Returns null if an
 	 * error occurred and/or module was not successfully loaded
@@ -367,6 +375,8 @@ public class ModuleFactory {
 		
 		if (module != null) {
 			
+			long startTime = System.currentTimeMillis();
+			
 			try {
 				
 				// check to be sure this module can run with our current version
@@ -396,6 +406,7 @@ public class ModuleFactory {
 				// fire up the classloader for this module
 				ModuleClassLoader moduleClassLoader = new ModuleClassLoader(module, ModuleFactory.class.getClassLoader());
 				getModuleClassLoaderMap().put(module, moduleClassLoader);
+				getModuleClassLoaderIndex().add(moduleClassLoader);
 				
 				// don't load the advice objects into the Context
 				// At startup, the spring context isn't refreshed until all modules
@@ -407,18 +418,7 @@ public class ModuleFactory {
 				// loadAdvice(module);
 				
 				// add all of this module's extensions to the extension map
-				for (Extension ext : module.getExtensions()) {
-					
-					String extId = ext.getExtensionId();
-					List<Extension> tmpExtensions = getExtensions(extId);
-					if (tmpExtensions == null)
-						tmpExtensions = new Vector<Extension>();
-					
-					log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
-					
-					tmpExtensions.add(ext);
-					getExtensionMap().put(extId, tmpExtensions);
-				}
+				addExtensions(module);
 				
 				// run the module's sql update script
 				// This and the property updates are the only things that can't
@@ -497,6 +497,10 @@ public class ModuleFactory {
 				// erase any previous startup error
 				module.clearStartupError();
 				
+				if (log.isDebugEnabled())
+					log.debug("Started module " + module.getModuleId() + " in "
+					        + (System.currentTimeMillis() - startTime) + " ms");
+				
 			}
 			catch (Exception e) {
 				log.warn("Error while trying to start module: " + module.getModuleId(), e);
@@ -697,25 +701,7 @@ public class ModuleFactory {
 				}
 				
 				// remove all extensions by this module
-				try {
-					for (Extension ext : mod.getExtensions()) {
-						String extId = ext.getExtensionId();
-						try {
-							List<Extension> tmpExtensions = getExtensions(extId);
-							if (tmpExtensions == null)
-								tmpExtensions = new Vector<Extension>();
-							
-							tmpExtensions.remove(ext);
-							getExtensionMap().put(extId, tmpExtensions);
-						}
-						catch (Exception exterror) {
-							log.warn("Error while getting extension: " + ext, exterror);
-						}
-					}
-				}
-				catch (Throwable t) {
-					log.warn("Error while getting extensions from module: " + moduleId, t);
-				}
+				removeExtensions(mod);
 			}
 			
 			try {
@@ -751,7 +737,11 @@ public class ModuleFactory {
 		if (!moduleClassLoaders.containsKey(mod))
 			log.warn("Module: " + mod.getModuleId() + " does not exist");
 		
-		return moduleClassLoaders.remove(mod);
+		ModuleClassLoader classLoader = moduleClassLoaders.remove(mod);
+		if (classLoader != null)
+			getModuleClassLoaderIndex().remove(classLoader);
+		
+		return classLoader;
 	}
 	
 	/**
@@ -785,44 +775,18 @@ public class ModuleFactory {
 	
 	/**
 	 * Return all of the extensions associated with the given <code>pointId</code> Returns empty
-	 * extension list if no modules extend this pointId
+	 * extension list if no modules extend this pointId. If the pointId doesn't have a media type on
+	 * it, the extensions for that point with any media type are included too
 	 * 
 	 * @param pointId
-	 * @return List of extensions
+	 * @return unmodifiable List of extensions
 	 */
 	public static List<Extension> getExtensions(String pointId) {
-		List<Extension> extensions = null;
-		Map<String, List<Extension>> extensionMap = getExtensionMap();
-		
-		// get all extensions for this exact pointId
-		extensions = extensionMap.get(pointId);
+		List<Extension> extensions = extensionRegistry.get(pointId);
 		if (extensions == null)
-			extensions = new ArrayList<Extension>();
-		
-		// if this pointId doesn't contain the separator character, search
-		// for this point prepended with each MEDIA TYPE
-		if (pointId.contains(Extension.extensionIdSeparator) == false) {
-			for (MEDIA_TYPE mediaType : Extension.MEDIA_TYPE.values()) {
-				
-				// get all extensions for this type and point id
-				List<Extension> tmpExtensions = extensionMap.get(Extension.toExtensionId(pointId, mediaType));
-				
-				// 'extensions' should be a unique list
-				if (tmpExtensions != null)
-					for (Extension ext : tmpExtensions) {
-						if (extensions.contains(ext) == false) {
-							extensions.add(ext);
-						}
-					}
-			}
-		}
+			return Collections.emptyList();
 		
-		if (extensions != null) {
-			log.debug("Getting extensions defined by : " + pointId);
-			return extensions;
-		} else {
-			return new Vector<Extension>();
-		}
+		return extensions;
 	}
 	
 	/**
@@ -831,17 +795,112 @@ public class ModuleFactory {
 	 * 
 	 * @param pointId
 	 * @param Extension.MEDIA_TYPE
-	 * @return List of extensions
+	 * @return unmodifiable List of extensions
 	 */
 	public static List<Extension> getExtensions(String pointId, Extension.MEDIA_TYPE type) {
-		String key = Extension.toExtensionId(pointId, type);
-		List<Extension> extensions = getExtensionMap().get(key);
-		if (extensions != null) {
-			log.debug("Getting extensions defined by : " + key);
-			return extensions;
-		} else {
+		List<Extension> extensions = extensionRegistry.get(Extension.toExtensionId(pointId, type));
+		if (extensions == null)
 			return getExtensions(pointId);
+		
+		return extensions;
+	}
+	
+	/**
+	 * Adds the given module's extensions to the extension map and rebuilds the registry
+	 * 
+	 * @param module the module being started
+	 */
+	static synchronized void addExtensions(Module module) {
+		for (Extension ext : module.getExtensions()) {
+			
+			String extId = ext.getExtensionId();
+			List<Extension> tmpExtensions = getExtensionMap().get(extId);
+			if (tmpExtensions == null)
+				tmpExtensions = new Vector<Extension>();
+			
+			log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
+			
+			tmpExtensions.add(ext);
+			getExtensionMap().put(extId, tmpExtensions);
+		}
+		rebuildExtensionRegistry();
+	}
+	
+	/**
+	 * Takes the given module's extensions out of the extension map and rebuilds the registry. A
+	 * point id or media type left without extensions is dropped from the map
+	 * 
+	 * @param module the module being stopped
+	 */
+	static synchronized void removeExtensions(Module module) {
+		try {
+			for (Extension ext : module.getExtensions()) {
+				String extId = ext.getExtensionId();
+				try {
+					List<Extension> tmpExtensions = getExtensionMap().get(extId);
+					if (tmpExtensions != null) {
+						tmpExtensions.remove(ext);
+						if (tmpExtensions.isEmpty())
+							getExtensionMap().remove(extId);
+					}
+				}
+				catch (Exception exterror) {
+					log.warn("Error while getting extension: " + ext, exterror);
+				}
+			}
+		}
+		catch (Throwable t) {
+			log.warn("Error while getting extensions from module: " + module.getModuleId(), t);
+		}
+		rebuildExtensionRegistry();
+	}
+	
+	/**
+	 * Recomputes the lists handed out by {@link #getExtensions(String)} and
+	 * {@link #getExtensions(String, MEDIA_TYPE)} from the extension map. This is called whenever a
+	 * module's extensions are added or removed, so that rendering an extension point is just a
+	 * lookup. The new registry replaces the old one all at once; lists already handed out are not
+	 * changed
+	 */
+	private static synchronized void rebuildExtensionRegistry() {
+		Map<String, List<Extension>> extensions = getExtensionMap();
+		
+		// every point id that has extensions, with or without a media type
+		Set<String> pointIds = new HashSet<String>();
+		for (String extId : extensions.keySet()) {
+			int separator = extId.indexOf(Extension.extensionIdSeparator);
+			pointIds.add(separator < 0 ? extId : extId.substring(0, separator));
+		}
+		
+		Map<String, List<Extension>> registry = new HashMap<String, List<Extension>>();
+		for (String pointId : pointIds) {
+			// the point with no media type gets its own extensions plus those of every media type
+			List<Extension> all = new ArrayList<Extension>();
+			addUnique(all, extensions.get(pointId));
+			for (MEDIA_TYPE mediaType : Extension.MEDIA_TYPE.values())
+				addUnique(all, extensions.get(Extension.toExtensionId(pointId, mediaType)));
+			registry.put(pointId, Collections.unmodifiableList(all));
+			
+			for (MEDIA_TYPE mediaType : Extension.MEDIA_TYPE.values()) {
+				String extId = Extension.toExtensionId(pointId, mediaType);
+				List<Extension> typed = extensions.get(extId);
+				if (typed != null && !typed.isEmpty())
+					registry.put(extId, Collections.unmodifiableList(new ArrayList<Extension>(typed)));
+			}
 		}
+		
+		extensionRegistry = registry;
+	}
+	
+	/**
+	 * Adds each of the <code>extensions</code> to <code>list</code> that isn't already in it
+	 */
+	private static void addUnique(List<Extension> list, List<Extension> extensions) {
+		if (extensions != null)
+			for (Extension ext : extensions) {
+				if (!list.contains(ext))
+					list.add(ext);
+			}
 	}
 	
 	/**
@@ -949,7 +1008,18 @@ public class ModuleFactory {
 	}
 	
 	/**
-	 * Return the current extension map keyed on extension point id
+	 * Return the index of which module classloaders have classes and resources in which packages
+	 * 
+	 * @return ModuleClassLoaderIndex
+	 */
+	public static ModuleClassLoaderIndex getModuleClassLoaderIndex() {
+		return moduleClassLoaderIndex;
+	}
+	
+	/**
+	 * Return the current extension map keyed on extension point id. This is what the registry
+	 * behind {@link #getExtensions(String)} is built from; it is only rebuilt when modules are
+	 * started or stopped
 	 * 
 	 * @return Map<String, List<Extension>>
 	 */
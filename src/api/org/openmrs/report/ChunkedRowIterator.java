@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.report;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.db.hibernate.ChunkedInExpression;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Produces the rows of a data set while they are being read, fetching the underlying objects for
+ * one chunk of patients at a time. Once all of the rows of a chunk have been built, its objects and
+ * the objects they refer to are removed from the hibernate session (see {@link #evict(Object)}), so
+ * a renderer writing the rows out only ever holds one chunk in memory no matter how big the data
+ * set is. <br/>
+ * <br/>
+ * Patients are visited in ascending id order, in chunks of the size given by the
+ * {@link OpenmrsConstants#GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE} global property. This
+ * implementation is NOT thread-safe.
+ * 
+ * @param <T> the type of object each row is built from
+ */
+public abstract class ChunkedRowIterator<T> implements Iterator<Map<String, Object>> {
+	
+	private Iterator<Integer> patientIds;
+	
+	private int chunkSize;
+	
+	private List<T> chunk = Collections.emptyList();
+	
+	private Iterator<T> current = chunk.iterator();
+	
+	/**
+	 * @param patients the patients to fetch rows for
+	 */
+	public ChunkedRowIterator(Cohort patients) {
+		this.patientIds = new TreeSet<Integer>(patients.getMemberIds()).iterator();
+		this.chunkSize = ChunkedInExpression.getChunkSize();
+	}
+	
+	/**
+	 * Fetches the objects for a chunk of patients, in the order that their rows should be produced
+	 * 
+	 * @param patients at most one chunk of patients
+	 * @return the objects for those patients
+	 */
+	protected abstract List<T> fetch(Cohort patients);
+	
+	/**
+	 * @param object one of the objects returned by {@link #fetch(Cohort)}
+	 * @return the row for the object
+	 */
+	protected abstract Map<String, Object> toRow(T object);
+	
+	/**
+	 * Removes an object from the hibernate session once the rows of its chunk have been built.
+	 * Subclasses should override this to also evict the objects that {@link #toRow(Object)} loaded
+	 * through it, unless the mappings already cascade the eviction
+	 * 
+	 * @param object one of the objects returned by {@link #fetch(Cohort)}
+	 */
+	protected void evict(T object) {
+		Context.evictFromSession(object);
+	}
+	
+	/**
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		while (!current.hasNext() && patientIds.hasNext()) {
+			evictChunk();
+			List<Integer> chunkIds = new ArrayList<Integer>(chunkSize);
+			while (chunkIds.size() < chunkSize && patientIds.hasNext())
+				chunkIds.add(patientIds.next());
+			chunk = fetch(new Cohort(chunkIds));
+			current = chunk.iterator();
+		}
+		if (!current.hasNext())
+			evictChunk();
+		return current.hasNext();
+	}
+	
+	/**
+	 * @see java.util.Iterator#next()
+	 */
+	public Map<String, Object> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return toRow(current.next());
+	}
+	
+	/**
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Rows cannot be removed from a data set");
+	}
+	
+	/**
+	 * Evicts the objects of the chunk whose rows have all been built. The objects of a chunk share
+	 * the patients, encounters and concepts they refer to, so nothing is evicted while rows of the
+	 * chunk are still to come
+	 */
+	private void evictChunk() {
+		for (T object : chunk)
+			evict(object);
+		chunk = Collections.emptyList();
+	}
+}
@@ -15,11 +15,11 @@ package org.openmrs.report;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
-import org.openmrs.api.CohortService;
 import org.openmrs.api.context.Context;
 import org.openmrs.cohort.CohortDefinition;
 
@@ -47,7 +47,8 @@ public class CohortDataSetProvider implements DataSetProvider {
 	 * @see org.openmrs.report.DataSetProvider#evaluate(org.openmrs.report.DataSetDefinition,
 	 *      org.openmrs.Cohort)
 	 */
-	public DataSet evaluate(DataSetDefinition dataSetDefinition, Cohort inputCohort, EvaluationContext evalContext) {
+	public DataSet evaluate(DataSetDefinition dataSetDefinition, final Cohort inputCohort,
+	                        final EvaluationContext evalContext) {
 		CohortDataSetDefinition def = (CohortDataSetDefinition) dataSetDefinition;
 		
 		CohortDataSet data = new CohortDataSet();
@@ -55,15 +56,20 @@ public class CohortDataSetProvider implements DataSetProvider {
 		data.setEvaluationContext(evalContext);
 		data.setName(def.getName());
 		
-		Map<String, Cohort> results = new LinkedHashMap<String, Cohort>();
-		CohortService cs = Context.getCohortService();
+		Map<String, Callable<Cohort>> tasks = new LinkedHashMap<String, Callable<Cohort>>();
 		for (Map.Entry<String, CohortDefinition> e : def.getStrategies().entrySet()) {
-			Cohort temp = cs.evaluate(e.getValue(), evalContext);
-			if (inputCohort != null)
-				temp = Cohort.intersect(temp, inputCohort);
-			results.put(e.getKey(), temp);
+			final CohortDefinition cohortDefinition = e.getValue();
+			tasks.put(e.getKey(), new Callable<Cohort>() {
+				
+				public Cohort call() {
+					Cohort temp = Context.getCohortService().evaluate(cohortDefinition, evalContext);
+					if (inputCohort != null)
+						temp = Cohort.intersect(temp, inputCohort);
+					return temp;
+				}
+			});
 		}
-		data.setCohortData(results);
+		data.setCohortData(EvaluationExecutor.evaluateAll(tasks, def, inputCohort, evalContext));
 		
 		return data;
 	}
@@ -49,7 +49,11 @@ public interface DataSet<T extends Object> extends Iterable<Map<String, T>> {
 	
 	/**
 	 * The keys of the maps that this iterator returns are given by
-	 * this.getDefinition().getColumnKeys()
+	 * this.getDefinition().getColumnKeys() <br/>
+	 * <br/>
+	 * Large data sets may fetch their rows while they are being iterated over, so renderers should
+	 * write each row out as they get it rather than collecting them, and should not expect the
+	 * objects behind a row to still be in the hibernate session afterwards.
 	 * 
 	 * @return an iterator over the rows in this dataset.
 	 */
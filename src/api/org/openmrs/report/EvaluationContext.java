@@ -20,12 +20,18 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.openmrs.Cohort;
 import org.openmrs.Location;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 
 /**
@@ -52,7 +58,9 @@ public class EvaluationContext {
 	
 	private Map<Parameterizable, Map<Parameter, Object>> parameterValues = new HashMap<Parameterizable, Map<Parameter, Object>>();
 	
-	private transient Map<String, Object> cache = new HashMap<String, Object>();
+	private transient Map<String, Object> cache = new ConcurrentHashMap<String, Object>();
+	
+	private transient ConcurrentHashMap<String, Future<?>> pending = new ConcurrentHashMap<String, Future<?>>();
 	
 	public EvaluationContext() {
 	}
@@ -71,12 +79,20 @@ public class EvaluationContext {
 	}
 	
 	/**
-	 * Set the cache property
+	 * Set the cache property. The entries are copied into a map that is safe to share between
+	 * evaluation threads
 	 * 
 	 * @param cache
 	 */
 	public void setCache(Map<String, Object> cache) {
-		this.cache = cache;
+		this.cache = new ConcurrentHashMap<String, Object>();
+		if (cache != null)
+			addAllToCache(cache);
+	}
+	
+	private void addAllToCache(Map<String, Object> values) {
+		for (Map.Entry<String, Object> e : values.entrySet())
+			addToCache(e.getKey(), e.getValue());
 	}
 	
 	/**
@@ -85,7 +101,10 @@ public class EvaluationContext {
 	 * @return Map<String, Object>
 	 */
 	public void addToCache(String key, Object value) {
-		cache.put(key, value);
+		if (value == null)
+			cache.remove(key);
+		else
+			cache.put(key, value);
 	}
 	
 	/**
@@ -106,6 +125,59 @@ public class EvaluationContext {
 		return cache.get(key);
 	}
 	
+	/**
+	 * Retrieve an entry from the cache with the given key, computing and caching it if it is not
+	 * there. If another thread is already computing the same key, this waits for and returns its
+	 * result rather than computing it again.
+	 * 
+	 * @param key
+	 * @param computation how to get the value if it is not cached
+	 * @return the cached or computed value
+	 * @throws APIException if the computation fails
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getFromCache(final String key, final Callable<T> computation) throws APIException {
+		T value = (T) cache.get(key);
+		if (value != null)
+			return value;
+		
+		FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			
+			public T call() throws Exception {
+				// another thread may have finished this key since we last looked
+				T value = (T) cache.get(key);
+				if (value == null) {
+					value = computation.call();
+					addToCache(key, value);
+				}
+				return value;
+			}
+		});
+		Future<T> running = (Future<T>) pending.putIfAbsent(key, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			}
+			finally {
+				pending.remove(key, task);
+			}
+		}
+		
+		try {
+			return running.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while waiting for " + key, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new APIException("Unable to compute " + key, e.getCause());
+		}
+	}
+	
 	/**
 	 * Return true if a cache entry exists with the given key
 	 * 
@@ -382,7 +454,7 @@ public class EvaluationContext {
 		return expression;
 	}
 	
-	public Cohort getBaseCohort() {
+	public synchronized Cohort getBaseCohort() {
 		if (baseCohort == null) {
 			// Save this so we don't have to query the database next time. This doesn't clear the cache
 			baseCohort = Context.getPatientSetService().getAllPatients();
@@ -390,7 +462,7 @@ public class EvaluationContext {
 		return baseCohort;
 	}
 	
-	public void setBaseCohort(Cohort baseCohort) {
+	public synchronized void setBaseCohort(Cohort baseCohort) {
 		clearCache();
 		this.baseCohort = baseCohort;
 	}
@@ -0,0 +1,175 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.report;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Evaluates independent parts of a report (data set definitions, or the cohort definitions of a
+ * {@link CohortDataSetDefinition}) at the same time on a bounded number of threads. Parallel
+ * evaluation is off unless the {@link OpenmrsConstants#GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS}
+ * global property is more than one. <br/>
+ * <br/>
+ * Each worker thread opens its own hibernate session and runs as the user that started the
+ * evaluation, with its own copy of that user's context. The objects the tasks read were loaded in
+ * the calling thread's session, which must not be used from the workers, so whatever they hold
+ * lazily is loaded in the calling thread before any worker starts (see
+ * {@link Context#initializeLazyProperties(Object)}). Work started from inside a worker is run in
+ * that worker rather than on more threads, so nested evaluations never wait on a pool they are part
+ * of. Results computed by one worker are shared with the others through
+ * {@link EvaluationContext#getFromCache(String, Callable)}.
+ */
+public class EvaluationExecutor {
+	
+	private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>();
+	
+	/**
+	 * Runs all of the given tasks, in parallel if that is enabled
+	 * 
+	 * @param tasks the work to do, keyed on what the result should be stored under
+	 * @param inputs the objects loaded in this thread's session that the tasks read, like their
+	 *            definitions, input cohort and evaluation context
+	 * @return the results of the tasks, in the same order as the tasks
+	 * @throws APIException if any of the tasks fails
+	 */
+	public static <K, V> Map<K, V> evaluateAll(Map<K, Callable<V>> tasks, Object... inputs) throws APIException {
+		Map<K, V> results = new LinkedHashMap<K, V>();
+		int threads = Math.min(getThreadCount(), tasks.size());
+		
+		if (threads <= 1 || Boolean.TRUE.equals(isWorker.get())) {
+			for (Map.Entry<K, Callable<V>> task : tasks.entrySet())
+				results.put(task.getKey(), call(task.getValue()));
+			return results;
+		}
+		
+		initialize(inputs);
+		UserContext userContext = Context.getUserContext();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<K> keys = new ArrayList<K>(tasks.size());
+			List<Future<V>> futures = new ArrayList<Future<V>>(tasks.size());
+			for (Map.Entry<K, Callable<V>> task : tasks.entrySet()) {
+				keys.add(task.getKey());
+				futures.add(executor.submit(new Worker<V>(task.getValue(), userContext.copy())));
+			}
+			for (int i = 0; i < keys.size(); i++)
+				results.put(keys.get(i), get(futures.get(i)));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+	
+	/**
+	 * Wraps a task so that, on whatever thread it is run, it gets a hibernate session of its own
+	 * and runs as the current user. Anything it evaluates through {@link #evaluateAll(Map, Object...)}
+	 * is done on that thread.
+	 * 
+	 * @param task the work to do
+	 * @param inputs the objects loaded in this thread's session that the task reads
+	 * @return the task to hand to an executor
+	 */
+	public static <V> Callable<V> asWorker(Callable<V> task, Object... inputs) {
+		initialize(inputs);
+		return new Worker<V>(task, Context.getUserContext().copy());
+	}
+	
+	/**
+	 * @return the number of threads to evaluate with, from the global property
+	 */
+	public static int getThreadCount() {
+		return Context.getAdministrationService().getGlobalPropertyValue(
+		    OpenmrsConstants.GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS, 1);
+	}
+	
+	/**
+	 * Loads what the given objects hold lazily while this thread's session is open, so that the
+	 * workers reading them never go back to it
+	 */
+	private static void initialize(Object[] inputs) {
+		for (Object input : inputs)
+			Context.initializeLazyProperties(input);
+	}
+	
+	private static <V> V call(Callable<V> task) {
+		try {
+			return task.call();
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new APIException("Error while evaluating report", e);
+		}
+	}
+	
+	private static <V> V get(Future<V> future) {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new APIException("Error while evaluating report", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while evaluating report", e);
+		}
+	}
+	
+	/**
+	 * Runs a task in a session of its own as the given user. The user context must not be used by
+	 * any other thread
+	 */
+	private static class Worker<V> implements Callable<V> {
+		
+		private Callable<V> task;
+		
+		private UserContext userContext;
+		
+		public Worker(Callable<V> task, UserContext userContext) {
+			this.task = task;
+			this.userContext = userContext;
+		}
+		
+		public V call() throws Exception {
+			Context.openSession();
+			Context.setUserContext(userContext);
+			isWorker.set(Boolean.TRUE);
+			try {
+				return task.call();
+			}
+			finally {
+				isWorker.remove();
+				Context.clearUserContext();
+				Context.closeSession();
+			}
+		}
+	}
+}
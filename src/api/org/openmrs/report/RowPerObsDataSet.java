@@ -13,12 +13,15 @@
  */
 package org.openmrs.report;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
 import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 
@@ -35,6 +38,8 @@ public class RowPerObsDataSet implements DataSet<Object> {
 	
 	private List<Obs> data;
 	
+	private Cohort patients;
+	
 	public RowPerObsDataSet() {
 	}
 	
@@ -61,21 +66,7 @@ public class RowPerObsDataSet implements DataSet<Object> {
 		 * @see java.util.Iterator#next()
 		 */
 		public Map<String, Object> next() {
-			Locale locale = Context.getLocale();
-			Obs obs = iter.next();
-			Map<String, Object> ret = new HashMap<String, Object>();
-			ret.put("patientId", obs.getPersonId());
-			ret.put("question", obs.getConcept().getName(locale, false));
-			ret.put("questionConceptId", obs.getConcept().getConceptId());
-			ret.put("answer", obs.getValueAsString(locale));
-			if (obs.getValueCoded() != null)
-				ret.put("answerConceptId", obs.getValueCoded());
-			ret.put("obsDatetime", obs.getObsDatetime());
-			if (obs.getEncounter() != null)
-				ret.put("encounterId", obs.getEncounter().getEncounterId());
-			if (obs.getObsGroup() != null)
-				ret.put("obsGroupId", obs.getObsGroup().getObsId());
-			return ret;
+			return toRow(iter.next());
 		}
 		
 		/**
@@ -88,17 +79,78 @@ public class RowPerObsDataSet implements DataSet<Object> {
 	}
 	
 	/**
+	 * Builds the row for one observation
+	 * 
+	 * @param obs
+	 * @return the column values, keyed on column key
+	 */
+	private static Map<String, Object> toRow(Obs obs) {
+		Locale locale = Context.getLocale();
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put("patientId", obs.getPersonId());
+		ret.put("question", obs.getConcept().getName(locale, false));
+		ret.put("questionConceptId", obs.getConcept().getConceptId());
+		ret.put("answer", obs.getValueAsString(locale));
+		if (obs.getValueCoded() != null)
+			ret.put("answerConceptId", obs.getValueCoded());
+		ret.put("obsDatetime", obs.getObsDatetime());
+		if (obs.getEncounter() != null)
+			ret.put("encounterId", obs.getEncounter().getEncounterId());
+		if (obs.getObsGroup() != null)
+			ret.put("obsGroupId", obs.getObsGroup().getObsId());
+		return ret;
+	}
+	
+	/**
+	 * If this data set was given {@link #setPatients(Cohort) patients} rather than data, the
+	 * observations are fetched a chunk of patients at a time as the rows are read
+	 * 
 	 * @see org.openmrs.report.DataSet#iterator()
 	 */
 	public Iterator<Map<String, Object>> iterator() {
+		if (data == null && patients != null) {
+			return new ChunkedRowIterator<Obs>(patients) {
+				
+				protected List<Obs> fetch(Cohort chunk) {
+					return Context.getObsService().getObservations(chunk, getQuestions(), definition.getFromDate(),
+					    definition.getToDate());
+				}
+				
+				protected Map<String, Object> toRow(Obs obs) {
+					return RowPerObsDataSet.toRow(obs);
+				}
+				
+				protected void evict(Obs obs) {
+					super.evict(obs);
+					Context.evictFromSession(obs.getPerson());
+					Context.evictFromSession(obs.getConcept());
+					if (obs.getValueCoded() != null)
+						Context.evictFromSession(obs.getValueCoded());
+					if (obs.getEncounter() != null)
+						Context.evictFromSession(obs.getEncounter());
+					if (obs.getObsGroup() != null)
+						Context.evictFromSession(obs.getObsGroup());
+				}
+			};
+		}
 		Iterator<Map<String, Object>> ret = new HelperIterator(data.iterator());
 		return ret;
 	}
 	
+	private List<Concept> getQuestions() {
+		return new ArrayList<Concept>(definition.getQuestions());
+	}
+	
 	/**
+	 * Gets all of the observations in this data set at once. Prefer {@link #iterator()}, which
+	 * does not hold them all in memory, for large data sets
+	 * 
 	 * @return the data
 	 */
 	public List<Obs> getData() {
+		if (data == null && patients != null)
+			return Context.getObsService().getObservations(patients, getQuestions(), definition.getFromDate(),
+			    definition.getToDate());
 		return data;
 	}
 	
@@ -109,6 +161,20 @@ public class RowPerObsDataSet implements DataSet<Object> {
 		this.data = data;
 	}
 	
+	/**
+	 * @return the patients whose observations are in this data set, if they are fetched lazily
+	 */
+	public Cohort getPatients() {
+		return patients;
+	}
+	
+	/**
+	 * @param patients the patients whose observations should be fetched as the rows are read
+	 */
+	public void setPatients(Cohort patients) {
+		this.patients = patients;
+	}
+	
 	/**
 	 * @return the definition
 	 */
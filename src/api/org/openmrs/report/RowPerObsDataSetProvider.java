@@ -13,14 +13,9 @@
  */
 package org.openmrs.report;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
-import org.openmrs.Concept;
-import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 
 /**
@@ -56,13 +51,15 @@ public class RowPerObsDataSetProvider implements DataSetProvider {
 				patients = Context.getCohortService().evaluate(definition.getFilter(), evalContext);
 		}
 		
+		// the observations are only fetched as the rows are read, so that the whole data set is
+		// never in memory at once
+		if (patients == null)
+			patients = evalContext.getBaseCohort();
+		
 		RowPerObsDataSet ret = new RowPerObsDataSet();
 		ret.setDefinition(definition);
 		ret.setEvaluationContext(evalContext);
-		List<Concept> concepts = new ArrayList<Concept>(definition.getQuestions());
-		List<Obs> list = Context.getObsService().getObservations(patients, concepts, definition.getFromDate(),
-		    definition.getToDate());
-		ret.setData(list);
+		ret.setPatients(patients);
 		return ret;
 	}
 	
@@ -13,13 +13,16 @@
  */
 package org.openmrs.report;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import org.openmrs.Cohort;
 import org.openmrs.PatientProgram;
+import org.openmrs.Program;
 import org.openmrs.api.context.Context;
 
 /**
@@ -33,6 +36,8 @@ public class RowPerProgramEnrollmentDataSet implements DataSet<Object> {
 	
 	private List<PatientProgram> data;
 	
+	private Cohort patients;
+	
 	public RowPerProgramEnrollmentDataSet() {
 	}
 	
@@ -53,16 +58,7 @@ public class RowPerProgramEnrollmentDataSet implements DataSet<Object> {
 		}
 		
 		public Map<String, Object> next() {
-			Locale locale = Context.getLocale();
-			PatientProgram pp = iter.next();
-			Map<String, Object> ret = new HashMap<String, Object>();
-			ret.put("patientId", pp.getPatient().getPatientId());
-			ret.put("programName", pp.getProgram().getConcept().getName(locale, false).getName());
-			ret.put("programId", pp.getProgram().getProgramId());
-			ret.put("enrollmentDate", pp.getDateEnrolled());
-			ret.put("completionDate", pp.getDateCompleted());
-			ret.put("patientProgramId", pp.getPatientProgramId());
-			return ret;
+			return toRow(iter.next());
 		}
 		
 		public void remove() {
@@ -71,22 +67,77 @@ public class RowPerProgramEnrollmentDataSet implements DataSet<Object> {
 		
 	}
 	
+	private static Map<String, Object> toRow(PatientProgram pp) {
+		Locale locale = Context.getLocale();
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put("patientId", pp.getPatient().getPatientId());
+		ret.put("programName", pp.getProgram().getConcept().getName(locale, false).getName());
+		ret.put("programId", pp.getProgram().getProgramId());
+		ret.put("enrollmentDate", pp.getDateEnrolled());
+		ret.put("completionDate", pp.getDateCompleted());
+		ret.put("patientProgramId", pp.getPatientProgramId());
+		return ret;
+	}
+	
 	public DataSetDefinition getDefinition() {
 		return definition;
 	}
 	
+	/**
+	 * If this data set was given {@link #setPatients(Cohort) patients} rather than data, the
+	 * enrollments are fetched a chunk of patients at a time as the rows are read
+	 * 
+	 * @see org.openmrs.report.DataSet#iterator()
+	 */
 	public Iterator<Map<String, Object>> iterator() {
+		if (data == null && patients != null) {
+			return new ChunkedRowIterator<PatientProgram>(patients) {
+				
+				protected List<PatientProgram> fetch(Cohort chunk) {
+					return Context.getProgramWorkflowService().getPatientPrograms(chunk, getPrograms());
+				}
+				
+				protected Map<String, Object> toRow(PatientProgram pp) {
+					return RowPerProgramEnrollmentDataSet.toRow(pp);
+				}
+				
+				protected void evict(PatientProgram pp) {
+					super.evict(pp);
+					Context.evictFromSession(pp.getPatient());
+				}
+			};
+		}
 		return new HelperIterator(data.iterator());
 	}
 	
+	private List<Program> getPrograms() {
+		return new ArrayList<Program>(definition.getPrograms());
+	}
+	
 	public EvaluationContext getEvaluationContext() {
 		return evaluationContext;
 	}
 	
+	/**
+	 * Gets all of the enrollments in this data set at once. Prefer {@link #iterator()}, which does
+	 * not hold them all in memory, for large data sets
+	 * 
+	 * @return the data
+	 */
 	public List<PatientProgram> getData() {
+		if (data == null && patients != null)
+			return Context.getProgramWorkflowService().getPatientPrograms(patients, getPrograms());
 		return data;
 	}
 	
+	public Cohort getPatients() {
+		return patients;
+	}
+	
+	public void setPatients(Cohort patients) {
+		this.patients = patients;
+	}
+	
 	public void setData(List<PatientProgram> data) {
 		this.data = data;
 	}
@@ -13,15 +13,9 @@
  */
 package org.openmrs.report;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
-import org.openmrs.PatientProgram;
-import org.openmrs.Program;
 import org.openmrs.api.context.Context;
 
 /**
@@ -57,12 +51,15 @@ public class RowPerProgramEnrollmentDataSetProvider implements DataSetProvider {
 				patients = Context.getCohortService().evaluate(definition.getFilter(), evalContext);
 		}
 		
+		// the enrollments are only fetched as the rows are read, so that the whole data set is
+		// never in memory at once
+		if (patients == null)
+			patients = evalContext.getBaseCohort();
+		
 		RowPerProgramEnrollmentDataSet ret = new RowPerProgramEnrollmentDataSet();
 		ret.setDefinition(definition);
 		ret.setEvaluationContext(evalContext);
-		List<Program> programs = new ArrayList<Program>(definition.getPrograms());
-		List<PatientProgram> list = Context.getProgramWorkflowService().getPatientPrograms(patients, programs);
-		ret.setData(list);
+		ret.setPatients(patients);
 		return ret;
 	}
 	
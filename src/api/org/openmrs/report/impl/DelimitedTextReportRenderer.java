@@ -13,9 +13,10 @@
  */
 package org.openmrs.report.impl;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
@@ -77,8 +78,9 @@ public abstract class DelimitedTextReportRenderer implements ReportRenderer {
 	 * @see org.openmrs.report.ReportRenderer#render(ReportData, String, OutputStream)
 	 */
 	public void render(ReportData results, String argument, OutputStream out) throws IOException, RenderingException {
-		PrintWriter pw = new PrintWriter(out);
-		render(results, argument, pw);
+		// not a PrintWriter, which would hide a closed connection and keep fetching rows for it
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+		render(results, argument, writer);
 	}
 	
 	/**
@@ -24,17 +24,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
 import org.openmrs.api.APIException;
-import org.openmrs.api.DataSetService;
 import org.openmrs.api.ReportService;
 import org.openmrs.api.context.Context;
 import org.openmrs.report.DataSet;
 import org.openmrs.report.DataSetDefinition;
 import org.openmrs.report.EvaluationContext;
+import org.openmrs.report.EvaluationExecutor;
 import org.openmrs.report.RenderingMode;
 import org.openmrs.report.ReportData;
 import org.openmrs.report.ReportRenderer;
@@ -92,18 +93,26 @@ public class ReportServiceImpl implements ReportService {
 	 * @see org.openmrs.api.ReportService#evaluate(org.openmrs.report.ReportSchema,
 	 *      org.openmrs.Cohort, org.openmrs.report.EvaluationContext)
 	 */
-	public ReportData evaluate(ReportSchema reportSchema, Cohort inputCohort, EvaluationContext evalContext) {
+	public ReportData evaluate(ReportSchema reportSchema, final Cohort inputCohort, final EvaluationContext evalContext) {
 		ReportData ret = new ReportData();
 		Map<String, DataSet> data = new HashMap<String, DataSet>();
 		ret.setDataSets(data);
 		ret.setReportSchema(reportSchema);
 		ret.setEvaluationContext(evalContext);
-		DataSetService dss = Context.getDataSetService();
 		
-		if (reportSchema.getDataSetDefinitions() != null)
-			for (DataSetDefinition dataSetDefinition : reportSchema.getDataSetDefinitions()) {
-				data.put(dataSetDefinition.getName(), dss.evaluate(dataSetDefinition, inputCohort, evalContext));
+		if (reportSchema.getDataSetDefinitions() != null) {
+			// the data sets don't depend on each other, so they may be evaluated at the same time
+			Map<String, Callable<DataSet>> tasks = new LinkedHashMap<String, Callable<DataSet>>();
+			for (final DataSetDefinition dataSetDefinition : reportSchema.getDataSetDefinitions()) {
+				tasks.put(dataSetDefinition.getName(), new Callable<DataSet>() {
+					
+					public DataSet call() {
+						return Context.getDataSetService().evaluate(dataSetDefinition, inputCohort, evalContext);
+					}
+				});
 			}
+			data.putAll(EvaluationExecutor.evaluateAll(tasks, reportSchema, inputCohort, evalContext));
+		}
 		
 		return ret;
 	}
@@ -13,6 +13,8 @@
  */
 package org.openmrs.reporting;
 
+import java.util.concurrent.Callable;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
@@ -41,17 +43,18 @@ public abstract class CachingPatientFilter extends AbstractPatientFilter impleme
 	 */
 	public abstract String getCacheKey();
 	
-	private Cohort getAndMaybeCache(EvaluationContext context) {
+	private Cohort getAndMaybeCache(final EvaluationContext context) {
 		if (context == null) {
 			return filterImpl(null);
 		} else {
-			String key = getCacheKey();
-			Cohort cached = (Cohort) context.getFromCache(key);
-			if (cached == null) {
-				cached = filterImpl(context);
-				context.addToCache(key, cached);
-			}
-			return cached;
+			// filters shared by several parts of a report are only run once, even when those parts
+			// are evaluated at the same time
+			return context.getFromCache(getCacheKey(), new Callable<Cohort>() {
+				
+				public Cohort call() {
+					return filterImpl(context);
+				}
+			});
 		}
 	}
 	
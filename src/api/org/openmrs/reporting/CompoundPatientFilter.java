@@ -13,16 +13,15 @@
  */
 package org.openmrs.reporting;
 
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
 import org.openmrs.api.PatientSetService.BooleanOperator;
 import org.openmrs.report.EvaluationContext;
+import org.openmrs.util.IntegerBitmap;
 
 public class CompoundPatientFilter extends AbstractPatientFilter implements PatientFilter {
 	
@@ -64,7 +63,7 @@ public class CompoundPatientFilter extends AbstractPatientFilter implements Pati
 			}
 			return temp;
 		} else {
-			Set<Integer> ptIds = new HashSet<Integer>();
+			IntegerBitmap ptIds = new IntegerBitmap();
 			for (PatientFilter pf : filters) {
 				ptIds.addAll(pf.filter(input, context).getMemberIds());
 				log.debug("or " + pf.getName() + " (" + pf.toString() + ")");
@@ -78,7 +77,7 @@ public class CompoundPatientFilter extends AbstractPatientFilter implements Pati
 	public Cohort filterInverse(Cohort input, EvaluationContext context) {
 		if (operator == BooleanOperator.AND) {
 			// NOT(AND(x, y)) -> OR(NOT x, NOT y)
-			Set<Integer> ptIds = new HashSet<Integer>();
+			IntegerBitmap ptIds = new IntegerBitmap();
 			for (PatientFilter pf : filters)
 				ptIds.addAll(pf.filterInverse(input, context).getMemberIds());
 			Cohort ret = new Cohort();
@@ -112,5 +111,5 @@ public class CompoundPatientFilter extends AbstractPatientFilter implements Pati
 	public boolean isReadyToRun() {
 		return operator != null && filters != null;
 	}
-	
+
 }
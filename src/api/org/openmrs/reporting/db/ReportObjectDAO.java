@@ -64,4 +64,14 @@ public interface ReportObjectDAO {
 	 * @throws DAOException
 	 */
 	public List<AbstractReportObject> getReportObjectsByType(String reportObjectType) throws DAOException;
+	
+	/**
+	 * Get the first report object (by date created) of the given type with the given name
+	 * 
+	 * @param reportObjectType the type of the report object
+	 * @param name the name of the report object
+	 * @return the report object, or null if there is none
+	 * @throws DAOException
+	 */
+	public AbstractReportObject getReportObjectByName(String reportObjectType, String name) throws DAOException;
 }
@@ -13,8 +13,11 @@
  */
 package org.openmrs.reporting.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.apache.commons.logging.Log;
@@ -23,12 +26,16 @@ import org.hibernate.Query;
 import org.hibernate.SessionFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
+import org.openmrs.api.db.hibernate.ChunkedInExpression;
 import org.openmrs.reporting.AbstractReportObject;
 import org.openmrs.reporting.ReportObjectWrapper;
 import org.openmrs.reporting.db.ReportObjectDAO;
 
 /**
- *
+ * Report objects are stored as xml. Decoding that is slow (every concept, location, etc the object
+ * refers to is looked up again), so the decoded objects are kept in a {@link ReportObjectCache} and
+ * callers are given copies. Only the ids and dates of the rows are queried to find out which objects
+ * are wanted and whether the cached ones are still current.
  */
 public class HibernateReportObjectDAO implements ReportObjectDAO {
 	
@@ -39,6 +46,8 @@ public class HibernateReportObjectDAO implements ReportObjectDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	private ReportObjectCache cache = new ReportObjectCache();
+	
 	public HibernateReportObjectDAO() {
 	}
 	
@@ -54,45 +63,120 @@ public class HibernateReportObjectDAO implements ReportObjectDAO {
 	/**
 	 * @see org.openmrs.reporting.db.ReportObjectDAO#getAllReportObjects()
 	 */
-	@SuppressWarnings("unchecked")
 	public List<AbstractReportObject> getAllReportObjects() {
-		List<AbstractReportObject> reportObjects = new Vector<AbstractReportObject>();
-		//List<ReportObjectWrapper> wrappedObjects = new Vector<ReportObjectWrapper>();
-		//wrappedObjects.addAll((ArrayList<ReportObjectWrapper>)sessionFactory.getCurrentSession().createQuery("from ReportObjectWrapper order by date_created, name").list());
-		List<ReportObjectWrapper> wrappedObjects = sessionFactory.getCurrentSession().createQuery(
-		    "from ReportObjectWrapper order by date_created, name").list();
-		for (ReportObjectWrapper wrappedObject : wrappedObjects) {
-			try {
-				AbstractReportObject reportObject = (AbstractReportObject) wrappedObject.getReportObject();
-				if (reportObject.getReportObjectId() == null) {
-					reportObject.setReportObjectId(wrappedObject.getReportObjectId());
+		return getReportObjects(sessionFactory.getCurrentSession().createQuery(
+		    "select ro.reportObjectId, ro.dateCreated, ro.dateChanged from ReportObjectWrapper ro "
+		            + "order by ro.dateCreated, ro.name"));
+	}
+	
+	/**
+	 * @see org.openmrs.reporting.db.ReportObjectDAO#getReportObject(java.lang.Integer)
+	 */
+	public AbstractReportObject getReportObject(Integer reportObjId) throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select ro.reportObjectId, ro.dateCreated, ro.dateChanged from ReportObjectWrapper ro "
+		            + "where ro.reportObjectId = :id");
+		query.setInteger("id", reportObjId);
+		List<AbstractReportObject> reportObjects = getReportObjects(query);
+		
+		return reportObjects.isEmpty() ? null : reportObjects.get(0);
+	}
+	
+	/**
+	 * @see org.openmrs.reporting.db.ReportObjectDAO#getReportObjectByName(java.lang.String,
+	 *      java.lang.String)
+	 */
+	public AbstractReportObject getReportObjectByName(String reportObjectType, String name) throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select ro.reportObjectId, ro.dateCreated, ro.dateChanged from ReportObjectWrapper ro "
+		            + "where ro.type = :type and ro.name = :name order by ro.dateCreated");
+		query.setString("type", reportObjectType);
+		query.setString("name", name);
+		query.setMaxResults(1);
+		List<AbstractReportObject> reportObjects = getReportObjects(query);
+		
+		return reportObjects.isEmpty() ? null : reportObjects.get(0);
+	}
+	
+	/**
+	 * Gets the report objects whose rows the given query finds, from the cache if the row hasn't
+	 * changed since it was decoded. The rest are loaded in one go and decoded. Objects that can't be
+	 * decoded are logged and left out
+	 * 
+	 * @param versions a query for the report object id, date created and date changed
+	 * @return copies of the report objects, in the order of the query
+	 */
+	@SuppressWarnings("unchecked")
+	private List<AbstractReportObject> getReportObjects(Query versions) {
+		List<Object[]> rows = versions.list();
+		Map<Integer, AbstractReportObject> found = new HashMap<Integer, AbstractReportObject>();
+		List<Integer> missing = new ArrayList<Integer>();
+		for (Object[] row : rows) {
+			Integer reportObjectId = (Integer) row[0];
+			AbstractReportObject reportObject = cache.get(reportObjectId, getVersion((Date) row[1], (Date) row[2]),
+			    sessionFactory.getCurrentSession());
+			if (reportObject != null)
+				found.put(reportObjectId, reportObject);
+			else
+				missing.add(reportObjectId);
+		}
+		
+		if (!missing.isEmpty()) {
+			List<ReportObjectWrapper> wrappedObjects = ChunkedInExpression.list(sessionFactory.getCurrentSession()
+			        .createQuery("from ReportObjectWrapper ro where ro.reportObjectId in (:ids)"), "ids", missing);
+			for (ReportObjectWrapper wrappedObject : wrappedObjects) {
+				try {
+					AbstractReportObject decoded = decode(wrappedObject);
+					if (decoded != null) {
+						Integer reportObjectId = wrappedObject.getReportObjectId();
+						Date version = getVersion(wrappedObject.getDateCreated(), wrappedObject.getDateChanged());
+						
+						// the cached object itself is never handed out. If it can't be copied
+						// the cache drops it again and the decoded object is returned as is
+						cache.put(reportObjectId, version, decoded);
+						AbstractReportObject reportObject = cache.get(reportObjectId, version, sessionFactory
+						        .getCurrentSession());
+						found.put(reportObjectId, reportObject != null ? reportObject : decoded);
+					}
+				}
+				catch (Exception ex) {
+					log.error("Error retrieving report object with id=" + wrappedObject.getReportObjectId(), ex);
 				}
-				reportObjects.add(reportObject);
-			}
-			catch (Exception ex) {
-				log.error("Error retrieving report object with id=" + wrappedObject.getReportObjectId(), ex);
 			}
 		}
+		
+		List<AbstractReportObject> reportObjects = new Vector<AbstractReportObject>();
+		for (Object[] row : rows) {
+			AbstractReportObject reportObject = found.get(row[0]);
+			if (reportObject != null)
+				reportObjects.add(reportObject);
+		}
 		return reportObjects;
 	}
 	
 	/**
-	 * @see org.openmrs.reporting.db.ReportObjectDAO#getReportObject(java.lang.Integer)
+	 * Decodes the report object from its xml
+	 * 
+	 * @param wrappedObject the stored report object
+	 * @return the report object, or null if the xml couldn't be decoded
 	 */
-	public AbstractReportObject getReportObject(Integer reportObjId) throws DAOException {
-		ReportObjectWrapper wrappedReportObject = (ReportObjectWrapper) sessionFactory.getCurrentSession().get(
-		    ReportObjectWrapper.class, reportObjId);
-		
-		if (wrappedReportObject == null)
-			return null;
+	private AbstractReportObject decode(ReportObjectWrapper wrappedObject) {
+		AbstractReportObject reportObject = wrappedObject.getReportObject();
 		
-		AbstractReportObject reportObject = wrappedReportObject.getReportObject();
-		if (reportObject.getReportObjectId() == null)
-			reportObject.setReportObjectId(wrappedReportObject.getReportObjectId());
+		// report object could be null if there's an error with XML serialization/deserialization 
+		if (reportObject != null && reportObject.getReportObjectId() == null)
+			reportObject.setReportObjectId(wrappedObject.getReportObjectId());
 		
 		return reportObject;
 	}
 	
+	/**
+	 * @return the date the row was last changed, or created if it never was
+	 */
+	private Date getVersion(Date dateCreated, Date dateChanged) {
+		return dateChanged == null ? dateCreated : dateChanged;
+	}
+	
 	/**
 	 * @see org.openmrs.reporting.db.ReportObjectDAO#deleteReportObject(org.openmrs.reporting.AbstractReportObject)
 	 */
@@ -103,6 +187,7 @@ public class HibernateReportObjectDAO implements ReportObjectDAO {
 		wrappedReportObject.setCreator(Context.getAuthenticatedUser());
 		wrappedReportObject.setDateCreated(new Date());
 		sessionFactory.getCurrentSession().delete(wrappedReportObject);
+		cache.remove(reportObj.getReportObjectId());
 	}
 	
 	/**
@@ -129,31 +214,18 @@ public class HibernateReportObjectDAO implements ReportObjectDAO {
 		sessionFactory.getCurrentSession().saveOrUpdate(wrappedReportObject);
 		
 		reportObj.setReportObjectId(wrappedReportObject.getReportObjectId());
+		cache.remove(reportObj.getReportObjectId());
 		return reportObj;
 	}
 	
 	/**
 	 * @see org.openmrs.reporting.db.ReportObjectDAO#getReportObjectsByType(java.lang.String)
 	 */
-	@SuppressWarnings("unchecked")
 	public List<AbstractReportObject> getReportObjectsByType(String reportObjectType) throws DAOException {
-		List<AbstractReportObject> reportObjects = new Vector<AbstractReportObject>();
-		
 		Query query = sessionFactory.getCurrentSession().createQuery(
-		    "from ReportObjectWrapper ro where ro.type=:type order by date_created, name");
+		    "select ro.reportObjectId, ro.dateCreated, ro.dateChanged from ReportObjectWrapper ro "
+		            + "where ro.type = :type order by ro.dateCreated, ro.name");
 		query.setString("type", reportObjectType);
-		List<ReportObjectWrapper> wrappedObjects = query.list();
-		for (ReportObjectWrapper wrappedObject : wrappedObjects) {
-			AbstractReportObject reportObject = wrappedObject.getReportObject();
-			
-			// Added a null check - report object could be null if there's an error with XML serialization/deserialization 
-			if (reportObject != null) {
-				if (reportObject.getReportObjectId() == null) {
-					reportObject.setReportObjectId(wrappedObject.getReportObjectId());
-				}
-				reportObjects.add(reportObject);
-			}
-		}
-		return reportObjects;
+		return getReportObjects(query);
 	}
 }
@@ -0,0 +1,227 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.reporting.db.hibernate;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.EntityMode;
+import org.hibernate.Session;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.openmrs.reporting.AbstractReportObject;
+
+/**
+ * Holds the report objects that have been decoded from their xml, keyed on report object id, so
+ * that the xml (and the concepts, locations, etc it refers to) doesn't have to be decoded every time
+ * the cohort builder or data export screens list them. Each entry remembers the date the row was
+ * created or last changed, and is only used while the row still has that date. <br/>
+ * <br/>
+ * The decoded objects are never handed out. {@link #get(Integer, Date, Session)} returns a copy of
+ * the bean properties, the same ones the xml encoder writes, so callers can change what they get
+ * back. Hibernate objects in the copy are replaced with ones from the given session, so they can be
+ * lazy loaded.
+ */
+public class ReportObjectCache {
+	
+	private static Log log = LogFactory.getLog(ReportObjectCache.class);
+	
+	private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+	
+	/**
+	 * A decoded report object and the version of the row it came from
+	 */
+	private static class Entry {
+		
+		private final long version;
+		
+		private final AbstractReportObject reportObject;
+		
+		public Entry(long version, AbstractReportObject reportObject) {
+			this.version = version;
+			this.reportObject = reportObject;
+		}
+	}
+	
+	/**
+	 * Gets a copy of the cached report object
+	 * 
+	 * @param reportObjectId the id of the report object
+	 * @param version the date_changed (or date_created if it was never changed) of the row now
+	 * @param session the session that hibernate objects in the copy should belong to
+	 * @return the copy, or null if the object isn't cached or was cached from an older version
+	 */
+	public AbstractReportObject get(Integer reportObjectId, Date version, Session session) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(reportObjectId);
+		}
+		
+		if (entry == null || version == null || entry.version != version.getTime())
+			return null;
+		
+		try {
+			return (AbstractReportObject) copy(entry.reportObject, session, new IdentityHashMap<Object, Object>());
+		}
+		catch (Exception e) {
+			log.debug("Unable to copy report object " + reportObjectId + ", it will be decoded again", e);
+			remove(reportObjectId);
+			return null;
+		}
+	}
+	
+	/**
+	 * Caches a freshly decoded report object. The object must not be handed out to anyone after
+	 * this
+	 * 
+	 * @param reportObjectId the id of the report object
+	 * @param version the date_changed (or date_created if it was never changed) of the row it was
+	 *            decoded from
+	 * @param reportObject the decoded object
+	 */
+	public void put(Integer reportObjectId, Date version, AbstractReportObject reportObject) {
+		if (reportObjectId == null || version == null || reportObject == null)
+			return;
+		
+		synchronized (entries) {
+			entries.put(reportObjectId, new Entry(version.getTime(), reportObject));
+		}
+	}
+	
+	/**
+	 * Forgets the given report object, because it was saved or deleted
+	 * 
+	 * @param reportObjectId the id of the report object
+	 */
+	public void remove(Integer reportObjectId) {
+		synchronized (entries) {
+			entries.remove(reportObjectId);
+		}
+	}
+	
+	/**
+	 * Forgets all report objects
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of cached report objects
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * Copies the given value the way the xml encoder and decoder would: immutable values are shared,
+	 * hibernate objects are looked up again by id, collections, maps and arrays are copied element
+	 * by element and anything else is copied as a bean through the read/write properties that
+	 * differ from a new instance's
+	 * 
+	 * @param value the value to copy
+	 * @param session where to look up hibernate objects
+	 * @param copies the values already copied, so shared references stay shared
+	 * @return the copy
+	 * @throws Exception if a bean or collection can't be instantiated or a property can't be set
+	 */
+	@SuppressWarnings("unchecked")
+	private Object copy(Object value, Session session, Map<Object, Object> copies) throws Exception {
+		if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+		        || value instanceof Character || value instanceof Enum || value instanceof Class || value instanceof Locale)
+			return value;
+		
+		if (copies.containsKey(value))
+			return copies.get(value);
+		
+		Object copy;
+		if (value instanceof HibernateProxy) {
+			LazyInitializer initializer = ((HibernateProxy) value).getHibernateLazyInitializer();
+			copy = session.load(initializer.getEntityName(), initializer.getIdentifier());
+		} else if (session.getSessionFactory().getClassMetadata(value.getClass()) != null) {
+			ClassMetadata metadata = session.getSessionFactory().getClassMetadata(value.getClass());
+			Serializable id = metadata.getIdentifier(value, EntityMode.POJO);
+			copy = id == null ? value : session.load(metadata.getEntityName(), id);
+		} else if (value instanceof Date) {
+			copy = ((Date) value).clone();
+		} else if (value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			copy = Array.newInstance(value.getClass().getComponentType(), length);
+			copies.put(value, copy);
+			for (int i = 0; i < length; i++)
+				Array.set(copy, i, copy(Array.get(value, i), session, copies));
+		} else if (value instanceof Collection) {
+			Collection<Object> collection;
+			if (value instanceof SortedSet)
+				collection = new TreeSet<Object>(((SortedSet<Object>) value).comparator());
+			else
+				collection = (Collection<Object>) value.getClass().newInstance();
+			copies.put(value, collection);
+			for (Object element : (Collection<Object>) value)
+				collection.add(copy(element, session, copies));
+			copy = collection;
+		} else if (value instanceof Map) {
+			Map<Object, Object> map;
+			if (value instanceof SortedMap)
+				map = new TreeMap<Object, Object>(((SortedMap<Object, Object>) value).comparator());
+			else
+				map = (Map<Object, Object>) value.getClass().newInstance();
+			copies.put(value, map);
+			for (Map.Entry<Object, Object> e : ((Map<Object, Object>) value).entrySet())
+				map.put(copy(e.getKey(), session, copies), copy(e.getValue(), session, copies));
+			copy = map;
+		} else {
+			copy = value.getClass().newInstance();
+			copies.put(value, copy);
+			BeanInfo info = Introspector.getBeanInfo(value.getClass());
+			for (PropertyDescriptor property : info.getPropertyDescriptors()) {
+				if (property.getReadMethod() == null || property.getWriteMethod() == null
+				        || Boolean.TRUE.equals(property.getValue("transient")))
+					continue;
+				
+				// like the encoder, leave alone the properties that the new instance already has
+				// the same value for. Some setters (PatientSearch.setSpecificationString) don't
+				// accept what their getter returns
+				Object propertyValue = property.getReadMethod().invoke(value);
+				Object defaultValue = property.getReadMethod().invoke(copy);
+				if (propertyValue == null ? defaultValue == null : propertyValue.equals(defaultValue))
+					continue;
+				property.getWriteMethod().invoke(copy, copy(propertyValue, session, copies));
+			}
+		}
+		
+		copies.put(value, copy);
+		return copy;
+	}
+}
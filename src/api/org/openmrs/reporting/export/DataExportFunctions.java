@@ -69,8 +69,6 @@ public class DataExportFunctions {
 	
 	protected boolean isAllPatients = false;
 	
-	private Integer patientCounter = 0; // used for garbage collection (Clean up every x patients)
-	
 	protected String separator = "	";
 	
 	protected DateFormat dateFormatLong = null;
@@ -154,6 +152,41 @@ public class DataExportFunctions {
 		dateFormatYmd = new SimpleDateFormat("yyyy-MM-dd", locale);
 	}
 	
+	/**
+	 * Makes new functions of the same class with the same separator, locale, date formats and
+	 * current date as these, but none of their fetched data, so that pages of an export can be
+	 * generated on several threads at once. Subclasses with settings of their own should override
+	 * this to copy them too
+	 * 
+	 * @return the copy
+	 * @see DataExportUtil#generateExport(DataExportReportObject, Cohort, DataExportFunctions,
+	 *      EvaluationContext)
+	 */
+	public DataExportFunctions copy() {
+		DataExportFunctions copy;
+		try {
+			copy = getClass().newInstance();
+		}
+		catch (Exception e) {
+			throw new APIException("Unable to copy " + getClass().getName(), e);
+		}
+		copy.separator = separator;
+		copy.isAllPatients = isAllPatients;
+		copy.locale = locale;
+		copy.currentDate = currentDate;
+		// date formats are not thread safe
+		copy.dateFormatLong = copyOf(dateFormatLong);
+		copy.dateFormatShort = copyOf(dateFormatShort);
+		copy.dateFormatYmd = copyOf(dateFormatYmd);
+		for (Map.Entry<String, DateFormat> format : formats.entrySet())
+			copy.formats.put(format.getKey(), copyOf(format.getValue()));
+		return copy;
+	}
+	
+	private static DateFormat copyOf(DateFormat format) {
+		return format == null ? null : (DateFormat) format.clone();
+	}
+	
 	public void clear() {
 		for (Map map : patientEncounterMap.values())
 			map.clear();
@@ -240,21 +273,28 @@ public class DataExportFunctions {
 				map.remove(this.patientId);
 		}
 		
-		// reclaim some memory
-		garbageCollect();
-		
 		setPatient(null);
 		this.patientId = patientId;
 	}
 	
 	/**
-	 * Call the system garbage collecter. This method only calls every 500 patients
+	 * Drops all of the data fetched for the current patient set so that it can be garbage collected
 	 */
-	protected void garbageCollect() {
-		if (patientCounter++ % 500 == 0) {
-			System.gc();
-			System.gc();
-		}
+	public void clearPatientData() {
+		conceptNameMap.clear();
+		patientEncounterMap.clear();
+		patientIdentifierMap.clear();
+		patientFirstEncounterMap.clear();
+		conceptAttrObsMap.clear();
+		relationshipMap.clear();
+		programMap.clear();
+		drugOrderMap.clear();
+		currentDrugOrderMap.clear();
+		patientAttributeMap.clear();
+		personAttributeMap.clear();
+		cohortMap.clear();
+		setPatient(null);
+		patientId = null;
 	}
 	
 	/**
@@ -265,9 +305,14 @@ public class DataExportFunctions {
 	}
 	
 	/**
+	 * Sets the patients that data is fetched for. The data already fetched for a different set of
+	 * patients is dropped
+	 * 
 	 * @param patientSet The patientSet to set.
 	 */
 	public void setPatientSet(Cohort patientSet) {
+		if (this.patientSet != null && this.patientSet != patientSet)
+			clearPatientData();
 		this.patientSet = patientSet;
 	}
 	
@@ -151,6 +151,16 @@ public class DataExportReportObject extends AbstractReportObject implements Seri
 	 * @return template string to be evaluated
 	 */
 	public String generateTemplate() {
+		return generateHeaderTemplate() + generateRowTemplate();
+	}
+	
+	/**
+	 * Generate the part of the template that prints the column names
+	 * 
+	 * @return template string to be evaluated once per export
+	 * @see #generateTemplate()
+	 */
+	public String generateHeaderTemplate() {
 		StringBuilder sb = new StringBuilder();
 		
 		// print out the columns
@@ -164,6 +174,18 @@ public class DataExportReportObject extends AbstractReportObject implements Seri
 		
 		sb.append("\n");
 		
+		return sb.toString();
+	}
+	
+	/**
+	 * Generate the part of the template that prints a row for every patient in the patientSet
+	 * 
+	 * @return template string that can be evaluated once for each page of patients
+	 * @see #generateTemplate()
+	 */
+	public String generateRowTemplate() {
+		StringBuilder sb = new StringBuilder();
+		
 		// print out the data
 		
 		sb.append("$!{fn.setPatientSet($patientSet)}");
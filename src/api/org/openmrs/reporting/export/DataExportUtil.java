@@ -15,10 +15,20 @@ package org.openmrs.reporting.export;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,6 +41,8 @@ import org.apache.velocity.app.event.MethodExceptionEventHandler;
 import org.openmrs.Cohort;
 import org.openmrs.api.context.Context;
 import org.openmrs.report.EvaluationContext;
+import org.openmrs.report.EvaluationExecutor;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -121,7 +133,14 @@ public class DataExportUtil {
 	}
 	
 	/**
-	 * Auto generated method comment
+	 * Generates the export file. The column names are written first, then the rows are generated
+	 * and written a page of patients at a time: the data for every column is fetched for the whole
+	 * page, the row template is evaluated over the page, and the page is dropped before the next
+	 * one is started. The size of a page is set by the
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_DATA_EXPORT_PAGE_SIZE} global property. If
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_DATA_EXPORT_THREADS} is more than one, that many pages
+	 * are generated at the same time, each with its own {@link DataExportFunctions#copy() copy} of
+	 * the functions.
 	 * 
 	 * @param dataExport
 	 * @param patientSet
@@ -152,14 +171,132 @@ public class DataExportUtil {
 		File file = getGeneratedFile(dataExport);
 		PrintWriter report = new PrintWriter(file);
 		
-		VelocityContext velocityContext = new VelocityContext();
-		
 		// Set up list of patients if one wasn't passed into this method
-		if (patientSet == null) {
+		if (patientSet == null)
 			patientSet = dataExport.generatePatientSet(context);
-			functions.setAllPatients(dataExport.isAllPatients());
+		
+		String rowTemplate = dataExport.generateRowTemplate();
+		
+		if (log.isDebugEnabled())
+			log.debug("Template: " + rowTemplate.substring(0, rowTemplate.length() < 3500 ? rowTemplate.length() : 3500)
+			        + "...");
+		
+		try {
+			velocityEngine.evaluate(createVelocityContext(functions, patientSet), report, DataExportUtil.class.getName(),
+			    dataExport.generateHeaderTemplate());
+			
+			List<Cohort> pages = getPages(patientSet);
+			int threads = Math.min(Context.getAdministrationService().getGlobalPropertyValue(
+			    OpenmrsConstants.GLOBAL_PROPERTY_DATA_EXPORT_THREADS, 1), pages.size());
+			if (threads > 1) {
+				generatePagesInParallel(velocityEngine, rowTemplate, pages, functions, threads, report);
+			} else {
+				for (Cohort page : pages) {
+					generatePage(velocityEngine, rowTemplate, page, functions, report);
+					Context.clearSession();
+				}
+			}
+		}
+		catch (Exception e) {
+			log.error("Error evaluating data export " + dataExport.getReportObjectId(), e);
+			log.error("Template: " + rowTemplate.substring(0, rowTemplate.length() < 3500 ? rowTemplate.length() : 3500)
+			        + "...");
+			report.print("\n\nError: \n" + e.toString() + "\n Stacktrace: \n");
+			e.printStackTrace(report);
+		}
+		finally {
+			report.close();
+			
+			// reset the ParserPool to something else now?
+			// using this to get to RuntimeInstance.init();
+			velocityEngine.init();
+			
+			functions.clear();
+			log.debug("Clearing hibernate session");
+			Context.clearSession();
 		}
 		
+	}
+	
+	/**
+	 * Generates the rows for one page of patients
+	 * 
+	 * @param velocityEngine
+	 * @param rowTemplate
+	 * @param page the patients to generate rows for
+	 * @param functions
+	 * @param out where to write the rows
+	 * @throws Exception
+	 */
+	private static void generatePage(VelocityEngine velocityEngine, String rowTemplate, Cohort page,
+	                                 DataExportFunctions functions, Writer out) throws Exception {
+		// a page is never all of the patients, even if the export is
+		functions.setAllPatients(false);
+		functions.setPatientSet(page);
+		velocityEngine.evaluate(createVelocityContext(functions, page), out, DataExportUtil.class.getName(), rowTemplate);
+	}
+	
+	/**
+	 * Generates pages on several threads at once, writing them out in order. At most two pages per
+	 * thread are held in memory at a time
+	 * 
+	 * @param velocityEngine
+	 * @param rowTemplate
+	 * @param pages
+	 * @param functions copied for each page, on this thread
+	 * @param threads
+	 * @param report
+	 * @throws Exception
+	 */
+	private static void generatePagesInParallel(final VelocityEngine velocityEngine, final String rowTemplate,
+	                                            List<Cohort> pages, final DataExportFunctions functions, int threads,
+	                                            Writer report) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			LinkedList<Future<String>> running = new LinkedList<Future<String>>();
+			for (final Cohort page : pages) {
+				final DataExportFunctions pageFunctions = functions.copy();
+				running.add(executor.submit(EvaluationExecutor.asWorker(new Callable<String>() {
+					
+					public String call() throws Exception {
+						StringWriter out = new StringWriter();
+						generatePage(velocityEngine, rowTemplate, page, pageFunctions, out);
+						pageFunctions.clear();
+						return out.toString();
+					}
+				}, page, pageFunctions)));
+				if (running.size() >= threads * 2)
+					report.write(getPage(running.removeFirst()));
+			}
+			while (!running.isEmpty())
+				report.write(getPage(running.removeFirst()));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static String getPage(Future<String> page) throws Exception {
+		try {
+			return page.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Sets up the velocity context that a template is evaluated in
+	 * 
+	 * @param functions the functions used in the template ( $!{fn:...} )
+	 * @param patientSet the patients the template is evaluated for
+	 * @return the context
+	 */
+	private static VelocityContext createVelocityContext(DataExportFunctions functions, Cohort patientSet) {
+		VelocityContext velocityContext = new VelocityContext();
+		
 		// add the error handler
 		EventCartridge ec = new EventCartridge();
 		ec.addEventHandler(new VelocityExceptionHandler());
@@ -182,45 +319,33 @@ public class DataExportUtil {
 		
 		velocityContext.put("patientSet", patientSet);
 		
-		String template = dataExport.generateTemplate();
-		
-		if (log.isDebugEnabled())
-			log.debug("Template: " + template.substring(0, template.length() < 3500 ? template.length() : 3500) + "...");
+		return velocityContext;
+	}
+	
+	/**
+	 * Splits the patients into pages, in ascending patient id order
+	 * 
+	 * @param patientSet
+	 * @return the pages
+	 */
+	private static List<Cohort> getPages(Cohort patientSet) {
+		int pageSize = Context.getAdministrationService().getGlobalPropertyValue(
+		    OpenmrsConstants.GLOBAL_PROPERTY_DATA_EXPORT_PAGE_SIZE, 1000);
+		if (pageSize < 1)
+			pageSize = 1000;
 		
-		try {
-			velocityEngine.evaluate(velocityContext, report, DataExportUtil.class.getName(), template);
-		}
-		catch (Exception e) {
-			log.error("Error evaluating data export " + dataExport.getReportObjectId(), e);
-			log.error("Template: " + template.substring(0, template.length() < 3500 ? template.length() : 3500) + "...");
-			report.print("\n\nError: \n" + e.toString() + "\n Stacktrace: \n");
-			e.printStackTrace(report);
-		}
-		finally {
-			report.close();
-			velocityContext.remove("fn");
-			velocityContext.remove("patientSet");
-			velocityContext = null;
-			
-			// reset the ParserPool to something else now?
-			// using this to get to RuntimeInstance.init();
-			velocityEngine.init();
-			
-			velocityEngine = null;
-			
-			patientSet = null;
-			functions.clear();
-			functions = null;
-			template = null;
-			dataExport = null;
-			log.debug("Clearing hibernate session");
-			Context.clearSession();
-			
-			// clear out the excess objects
-			System.gc();
-			System.gc();
+		List<Cohort> pages = new ArrayList<Cohort>();
+		List<Integer> page = new ArrayList<Integer>(pageSize);
+		for (Integer patientId : new TreeSet<Integer>(patientSet.getMemberIds())) {
+			page.add(patientId);
+			if (page.size() == pageSize) {
+				pages.add(new Cohort(page));
+				page = new ArrayList<Integer>(pageSize);
+			}
 		}
-		
+		if (!page.isEmpty())
+			pages.add(new Cohort(page));
+		return pages;
 	}
 	
 	/**
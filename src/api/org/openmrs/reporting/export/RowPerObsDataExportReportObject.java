@@ -140,12 +140,10 @@ public class RowPerObsDataExportReportObject extends DataExportReportObject impl
 	}
 	
 	/**
-	 * Generate a template according to this reports columns Assumes there is a patientSet object
-	 * available
-	 * 
-	 * @return template string to be evaluated
+	 * @see org.openmrs.reporting.export.DataExportReportObject#generateHeaderTemplate()
 	 */
-	public String generateTemplate() {
+	@Override
+	public String generateHeaderTemplate() {
 		StringBuilder sb = new StringBuilder();
 		
 		// print out the column headers
@@ -161,6 +159,16 @@ public class RowPerObsDataExportReportObject extends DataExportReportObject impl
 		
 		sb.append("\n");
 		
+		return sb.toString();
+	}
+	
+	/**
+	 * @see org.openmrs.reporting.export.DataExportReportObject#generateRowTemplate()
+	 */
+	@Override
+	public String generateRowTemplate() {
+		StringBuilder sb = new StringBuilder();
+		
 		// print out the data
 		
 		// loop over all the patient ids
@@ -98,13 +98,10 @@ public class ReportObjectServiceImpl extends BaseOpenmrsService implements Repor
 	 * @see org.openmrs.reporting.ReportObjectService#getPatientSearch(java.lang.String)
 	 */
 	public PatientSearch getPatientSearch(String name) throws APIException {
-		List<AbstractReportObject> allMatchingObjects = getReportObjectsByType(OpenmrsConstants.REPORT_OBJECT_TYPE_PATIENTSEARCH);
-		if (allMatchingObjects != null) {
-			for (AbstractReportObject aro : allMatchingObjects) {
-				if (aro.getName().equals(name))
-					return ((PatientSearchReportObject) aro).getPatientSearch();
-			}
-		}
+		AbstractReportObject aro = reportObjectDAO.getReportObjectByName(OpenmrsConstants.REPORT_OBJECT_TYPE_PATIENTSEARCH,
+		    name);
+		if (aro != null)
+			return ((PatientSearchReportObject) aro).getPatientSearch();
 		return null;
 	}
 	
@@ -119,14 +116,8 @@ public class ReportObjectServiceImpl extends BaseOpenmrsService implements Repor
 	 * @see org.openmrs.reporting.ReportObjectService#getPatientFilterByName(java.lang.String)
 	 */
 	public PatientFilter getPatientFilterByName(String filterName) throws APIException {
-		// TODO: push this into the DAO layer
-		for (PatientFilter pf : getAllPatientFilters()) {
-			AbstractReportObject o = (AbstractReportObject) pf;
-			if (filterName.equals(o.getName())) {
-				return pf;
-			}
-		}
-		return null;
+		return (PatientFilter) reportObjectDAO.getReportObjectByName(OpenmrsConstants.REPORT_OBJECT_TYPE_PATIENTFILTER,
+		    filterName);
 	}
 	
 	/**
@@ -0,0 +1,332 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.db.SchedulerDAO;
+import org.openmrs.scheduler.timer.TimerSchedulerMemento;
+import org.openmrs.util.InsertedOrderComparator;
+import org.openmrs.util.OpenmrsMemento;
+import org.springframework.orm.ObjectRetrievalFailureException;
+
+/**
+ * The parts of a {@link SchedulerService} that don't depend on how the tasks are triggered: the
+ * task definitions in the database, starting and stopping all tasks, and the memento. Subclasses
+ * schedule and shut down the tasks themselves, and keep track of which ones are scheduled.
+ * 
+ * @see org.openmrs.scheduler.timer.TimerSchedulerServiceImpl
+ * @see org.openmrs.scheduler.concurrent.ConcurrentSchedulerServiceImpl
+ */
+public abstract class AbstractSchedulerService implements SchedulerService {
+	
+	/**
+	 * Logger
+	 */
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	/**
+	 * Global data access object context
+	 */
+	private SchedulerDAO schedulerDAO;
+	
+	/**
+	 * Gets the scheduler data access object.
+	 * 
+	 * @return
+	 */
+	public SchedulerDAO getSchedulerDAO() {
+		return this.schedulerDAO;
+	}
+	
+	/**
+	 * Sets the scheduler data access object.
+	 */
+	public void setSchedulerDAO(SchedulerDAO dao) {
+		this.schedulerDAO = dao;
+	}
+	
+	/**
+	 * @return the ids of the task definitions that are scheduled right now
+	 */
+	protected abstract Collection<Integer> getScheduledTaskIds();
+	
+	/**
+	 * Start up hook for the scheduler and all of its scheduled tasks.
+	 */
+	public void onStartup() {
+		log.debug("Starting scheduler service ...");
+		
+		// Get all of the tasks in the database
+		Collection<TaskDefinition> taskDefinitions = getSchedulerDAO().getTasks();
+		
+		// Iterate through the tasks and start them if their startOnStartup flag is true
+		if (taskDefinitions != null) {
+			for (TaskDefinition taskDefinition : taskDefinitions) {
+				try {
+					// If the task is configured to start on startup, we schedule it to run
+					// Otherwise it needs to be started manually.
+					if (taskDefinition.getStartOnStartup()) {
+						scheduleTask(taskDefinition);
+					}
+				
+				}
+				catch (Throwable t) {
+					log.error("Failed to schedule task for class " + taskDefinition.getTaskClass(), t);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Shutdown all running tasks.
+	 */
+	public void shutdownAllTasks() {
+		
+		// iterate over this (copied) list of tasks and stop them all
+		for (TaskDefinition task : getScheduledTasks()) {
+			try {
+				
+				shutdownTask(task);
+			
+			}
+			catch (SchedulerException e) {
+				log.error("Failed to stop task " + task.getTaskClass() + " due to Scheduler exception", e);
+			}
+			catch (APIException e) {
+				log.error("Failed to stop task " + task.getTaskClass() + " due to API exception", e);
+			}
+		}
+	}
+	
+	/**
+	 * Loop over all currently started tasks and cycle them. This should be done after the
+	 * classloader has been changed (e.g. during module start/stop)
+	 */
+	public void rescheduleAllTasks() throws SchedulerException {
+		for (TaskDefinition task : getScheduledTasks()) {
+			try {
+				rescheduleTask(task);
+			}
+			catch (SchedulerException e) {
+				log.error("Failed to restart task: " + task.getName(), e);
+			}
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.SchedulerService#rescheduleTask(org.openmrs.scheduler.TaskDefinition)
+	 */
+	public Task rescheduleTask(TaskDefinition taskDefinition) throws SchedulerException {
+		shutdownTask(taskDefinition);
+		return scheduleTask(taskDefinition);
+	}
+	
+	/**
+	 * Get all scheduled tasks.
+	 * 
+	 * @return all scheduled tasks
+	 */
+	public Collection<TaskDefinition> getScheduledTasks() {
+		// The real list of scheduled tasks is kept up-to-date by the subclass
+		List<TaskDefinition> list = new ArrayList<TaskDefinition>();
+		for (Integer id : getScheduledTaskIds()) {
+			TaskDefinition task = getTask(id);
+			if (task != null) {
+				log.debug("Adding scheduled task " + id + " to list (" + task.getRepeatInterval() + ")");
+				list.add(task);
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Get all registered tasks.
+	 * 
+	 * @return all registerd tasks
+	 */
+	public Collection<TaskDefinition> getRegisteredTasks() {
+		return getSchedulerDAO().getTasks();
+	}
+	
+	/**
+	 * Get the task with the given identifier.
+	 * 
+	 * @param id the identifier of the task
+	 */
+	public TaskDefinition getTask(Integer id) {
+		if (log.isDebugEnabled())
+			log.debug("get task " + id);
+		return getSchedulerDAO().getTask(id);
+	}
+	
+	/**
+	 * Get the task with the given name.
+	 * 
+	 * @param name name of the task
+	 */
+	public TaskDefinition getTaskByName(String name) {
+		if (log.isDebugEnabled())
+			log.debug("get task " + name);
+		TaskDefinition foundTask = null;
+		try {
+			foundTask = getSchedulerDAO().getTaskByName(name);
+		}
+		catch (ObjectRetrievalFailureException orfe) {
+			log.warn("getTaskByName(" + name + ") failed, because: " + orfe);
+		}
+		return foundTask;
+	}
+	
+	/**
+	 * Save the given task, creating it if it doesn't have an identifier yet.
+	 * 
+	 * @param task the task to save
+	 */
+	public void saveTask(TaskDefinition task) {
+		if (task.getId() != null) {
+			setChangedMetadata(task);
+			getSchedulerDAO().updateTask(task);
+		} else {
+			setCreatedMetadata(task);
+			getSchedulerDAO().createTask(task);
+		}
+	}
+	
+	/**
+	 * Delete the task with the given identifier.
+	 * 
+	 * @param id the identifier of the task
+	 */
+	public void deleteTask(Integer id) {
+		
+		// try to stop the task (ignore errors)
+		TaskDefinition task = getTask(id);
+		if (task.getStarted()) {
+			try {
+				shutdownTask(task);
+			}
+			catch (SchedulerException e) {
+				log.error("Failed to remove task " + task.getName(), e);
+			}
+		}
+		
+		// delete the task
+		getSchedulerDAO().deleteTask(id);
+	}
+	
+	/**
+	 * Convenience method for setting all metadata fields.
+	 * 
+	 * @param task
+	 */
+	public void setCreatedMetadata(TaskDefinition task) {
+		if (task.getCreatedBy() == null) {
+			task.setCreatedBy(Context.getAuthenticatedUser());
+		}
+		if (task.getDateCreated() == null) {
+			task.setDateCreated(new Date());
+		}
+		setChangedMetadata(task);
+	}
+	
+	/**
+	 * Convenience method for setting the changed by and changed date fields
+	 * 
+	 * @param task
+	 */
+	public void setChangedMetadata(TaskDefinition task) {
+		task.setChangedBy(Context.getAuthenticatedUser());
+		task.setDateChanged(new Date());
+	}
+	
+	/**
+	 * Get system variables.
+	 */
+	public SortedMap<String, String> getSystemVariables() {
+		TreeMap<String, String> systemVariables = new TreeMap<String, String>(new InsertedOrderComparator());
+		// scheduler username and password can be found in the global properties
+		// TODO Look into java.util.concurrent.TimeUnit class.
+		// TODO Remove this from global properties.  This is a constant value that should never change.
+		systemVariables.put("SCHEDULER_MILLIS_PER_SECOND", String.valueOf(SchedulerConstants.SCHEDULER_MILLIS_PER_SECOND));
+		return systemVariables;
+	}
+	
+	/**
+	 * Saves and stops all active tasks
+	 * 
+	 * @returns OpenmrsMemento
+	 */
+	public OpenmrsMemento saveToMemento() {
+		
+		Set<TaskDefinition> tasks = new HashSet<TaskDefinition>();
+		
+		for (TaskDefinition task : getScheduledTasks()) {
+			tasks.add(task);
+			try {
+				shutdownTask(task);
+			}
+			catch (SchedulerException e) {
+				// just swallow exceptions
+				log.debug("Failed to stop task while saving memento " + task.getName(), e);
+			}
+		}
+		
+		TimerSchedulerMemento memento = new TimerSchedulerMemento(tasks);
+		memento.saveErrorTasks();
+		
+		return memento;
+	}
+	
+	/**
+	 * Starts the tasks that were stopped when the memento was saved
+	 * 
+	 * @see org.openmrs.scheduler.SchedulerService#restoreFromMemento(org.openmrs.util.OpenmrsMemento)
+	 */
+	@SuppressWarnings("unchecked")
+	public void restoreFromMemento(OpenmrsMemento memento) {
+		
+		if (memento != null && memento instanceof TimerSchedulerMemento) {
+			TimerSchedulerMemento timerMemento = (TimerSchedulerMemento) memento;
+			
+			Set<TaskDefinition> tasks = (Set<TaskDefinition>) timerMemento.getState();
+			
+			// try to start all of the tasks that were stopped right before this restore
+			for (TaskDefinition task : tasks) {
+				try {
+					scheduleTask(task);
+				}
+				catch (Exception e) {
+					// essentially swallow exceptions
+					log.debug("EXPECTED ERROR IF STOPPING THIS TASK'S MODULE: Unable to start task " + task, e);
+					
+					// save this errored task and try again next time we restore
+					timerMemento.addErrorTask(task);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.concurrent;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openmrs.api.APIException;
+import org.openmrs.scheduler.AbstractSchedulerService;
+import org.openmrs.scheduler.SchedulerConstants;
+import org.openmrs.scheduler.SchedulerException;
+import org.openmrs.scheduler.SchedulerUtil;
+import org.openmrs.scheduler.Task;
+import org.openmrs.scheduler.TaskDefinition;
+import org.openmrs.scheduler.TaskFactory;
+
+/**
+ * Scheduler service that runs tasks on a pool of threads, so that a long running task doesn't hold
+ * up the others the way it does on the single thread of the
+ * {@link org.openmrs.scheduler.timer.TimerSchedulerServiceImpl}. The size of the pool and the
+ * default misfire settings are set in applicationContext-service.xml. <br/>
+ * <br/>
+ * Each task can override these task definition properties:
+ * <ul>
+ * <li>{@link #PROPERTY_MAX_CONCURRENT_RUNS}: how many runs of the task can be going at once
+ * (default 1)</li>
+ * <li>{@link #PROPERTY_MISFIRE_POLICY}: {@link ConcurrentSchedulerTask#MISFIRE_FIRE_NOW} or
+ * {@link ConcurrentSchedulerTask#MISFIRE_SKIP}</li>
+ * <li>{@link #PROPERTY_MISFIRE_THRESHOLD}: how many seconds late a run can start before it
+ * misfires</li>
+ * </ul>
+ * {@link #getStatus(Integer)} reports how many times a task has run, how long its runs took and
+ * how late they started.
+ * 
+ * @see ConcurrentSchedulerTask
+ */
+public class ConcurrentSchedulerServiceImpl extends AbstractSchedulerService {
+	
+	/**
+	 * Task property for the number of runs of the task that can be going at once
+	 */
+	public static final String PROPERTY_MAX_CONCURRENT_RUNS = "scheduler.maxConcurrentRuns";
+	
+	/**
+	 * Task property for the misfire policy of the task
+	 */
+	public static final String PROPERTY_MISFIRE_POLICY = "scheduler.misfirePolicy";
+	
+	/**
+	 * Task property for the seconds a run of the task can start late before it misfires
+	 */
+	public static final String PROPERTY_MISFIRE_THRESHOLD = "scheduler.misfireThreshold";
+	
+	/**
+	 * Scheduled Task Map. Like the pool, this outlives the service bean when the spring context is
+	 * refreshed
+	 */
+	private static Map<Integer, ConcurrentSchedulerTask> scheduledTasks = new ConcurrentHashMap<Integer, ConcurrentSchedulerTask>();
+	
+	/**
+	 * The pool that runs all scheduled tasks. Its threads are daemons, so they don't prolong the
+	 * lifetime of the application. Created when the first task is scheduled
+	 */
+	private static ScheduledThreadPoolExecutor executor;
+	
+	private int poolSize = 5;
+	
+	private String defaultMisfirePolicy = ConcurrentSchedulerTask.MISFIRE_FIRE_NOW;
+	
+	private int defaultMisfireThreshold = 60;
+	
+	/**
+	 * @return the number of threads that run tasks
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+	
+	/**
+	 * @param poolSize the number of threads that run tasks
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = Math.max(1, poolSize);
+		synchronized (ConcurrentSchedulerServiceImpl.class) {
+			if (executor != null)
+				executor.setCorePoolSize(this.poolSize);
+		}
+	}
+	
+	/**
+	 * @return the misfire policy of tasks that don't set {@link #PROPERTY_MISFIRE_POLICY}
+	 */
+	public String getDefaultMisfirePolicy() {
+		return defaultMisfirePolicy;
+	}
+	
+	/**
+	 * @param defaultMisfirePolicy the misfire policy of tasks that don't set
+	 *            {@link #PROPERTY_MISFIRE_POLICY}
+	 */
+	public void setDefaultMisfirePolicy(String defaultMisfirePolicy) {
+		this.defaultMisfirePolicy = defaultMisfirePolicy;
+	}
+	
+	/**
+	 * @return the misfire threshold, in seconds, of tasks that don't set
+	 *         {@link #PROPERTY_MISFIRE_THRESHOLD}
+	 */
+	public int getDefaultMisfireThreshold() {
+		return defaultMisfireThreshold;
+	}
+	
+	/**
+	 * @param defaultMisfireThreshold the misfire threshold, in seconds, of tasks that don't set
+	 *            {@link #PROPERTY_MISFIRE_THRESHOLD}
+	 */
+	public void setDefaultMisfireThreshold(int defaultMisfireThreshold) {
+		this.defaultMisfireThreshold = defaultMisfireThreshold;
+	}
+	
+	private ScheduledThreadPoolExecutor getExecutor() {
+		synchronized (ConcurrentSchedulerServiceImpl.class) {
+			if (executor == null) {
+				executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+					
+					private AtomicInteger count = new AtomicInteger();
+					
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "OpenMRS Scheduler-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			return executor;
+		}
+	}
+	
+	/**
+	 * Shutdown hook for the scheduler and all of its scheduled tasks.
+	 */
+	public void onShutdown() {
+		log.debug("Gracefully shutting down scheduler service ...");
+		try {
+			shutdownAllTasks();
+		}
+		catch (APIException e) {
+			log.error("Failed to stop all tasks due to API exception", e);
+		}
+		finally {
+			scheduledTasks.clear();
+			synchronized (ConcurrentSchedulerServiceImpl.class) {
+				if (executor != null) {
+					executor.shutdownNow();
+					executor = null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.SchedulerService#scheduleTask(org.openmrs.scheduler.TaskDefinition)
+	 */
+	public Task scheduleTask(TaskDefinition taskDefinition) throws SchedulerException {
+		Task clientTask = null;
+		if (taskDefinition != null) {
+			
+			// Cancel any existing firings for the same task definition
+			ConcurrentSchedulerTask schedulerTask = scheduledTasks.get(taskDefinition.getId());
+			if (schedulerTask != null) {
+				log.info("Shutting down the existing instance of this task to avoid conflicts!!");
+				schedulerTask.shutdown();
+			}
+			
+			try {
+				
+				// Create new task from task definition
+				clientTask = TaskFactory.getInstance().createInstance(taskDefinition);
+				
+				// if we were unable to get a class, just quit
+				if (clientTask != null) {
+					
+					// we record the repeat interval in seconds
+					long repeatInterval = 0;
+					if (taskDefinition.getRepeatInterval() != null)
+						repeatInterval = taskDefinition.getRepeatInterval()
+						        * SchedulerConstants.SCHEDULER_MILLIS_PER_SECOND;
+					
+					schedulerTask = new ConcurrentSchedulerTask(clientTask, taskDefinition.getName(), getExecutor(),
+					        repeatInterval, getIntProperty(taskDefinition, PROPERTY_MAX_CONCURRENT_RUNS, 1),
+					        getProperty(taskDefinition, PROPERTY_MISFIRE_POLICY, defaultMisfirePolicy), getIntProperty(
+					            taskDefinition, PROPERTY_MISFIRE_THRESHOLD, defaultMisfireThreshold)
+					                * (long) SchedulerConstants.SCHEDULER_MILLIS_PER_SECOND);
+					
+					taskDefinition.setTaskInstance(clientTask);
+					
+					Date firstTime;
+					if (taskDefinition.getStartTime() != null) {
+						// the start time is most likely in the past, so start at the next time it
+						// would have run
+						firstTime = SchedulerUtil.getNextExecution(taskDefinition);
+						log.info("Starting task ... the task will execute for the first time at " + firstTime);
+					} else if (repeatInterval > 0) {
+						log.info("Delaying start time by " + SchedulerConstants.SCHEDULER_DEFAULT_DELAY + " seconds");
+						firstTime = new Date(System.currentTimeMillis() + SchedulerConstants.SCHEDULER_DEFAULT_DELAY);
+					} else {
+						log.info("Starting one-shot task");
+						firstTime = new Date();
+					}
+					
+					log.debug("Registering task " + taskDefinition.getId());
+					scheduledTasks.put(taskDefinition.getId(), schedulerTask);
+					schedulerTask.start(firstTime);
+					
+					// Update the task status in the database
+					taskDefinition.setStarted(true);
+					saveTask(taskDefinition);
+				}
+			}
+			catch (Exception e) {
+				log.error("Failed to schedule task " + taskDefinition.getName(), e);
+				throw new SchedulerException(e);
+			}
+		}
+		return clientTask;
+	}
+	
+	private String getProperty(TaskDefinition taskDefinition, String name, String defaultValue) {
+		String value = taskDefinition.getProperty(name);
+		return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+	}
+	
+	private int getIntProperty(TaskDefinition taskDefinition, String name, int defaultValue) {
+		String value = getProperty(taskDefinition, name, null);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring the " + name + " property of task " + taskDefinition.getName()
+				        + ", it is not a number: " + value);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.SchedulerService#shutdownTask(org.openmrs.scheduler.TaskDefinition)
+	 */
+	public void shutdownTask(TaskDefinition taskDefinition) throws SchedulerException {
+		if (taskDefinition != null) {
+			
+			// Remove the task from the scheduled tasks and cancel its firings
+			ConcurrentSchedulerTask schedulerTask = scheduledTasks.remove(taskDefinition.getId());
+			if (schedulerTask != null) {
+				schedulerTask.shutdown();
+			}
+			
+			// Update task that has been started
+			taskDefinition.setStarted(false);
+			saveTask(taskDefinition);
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.AbstractSchedulerService#getScheduledTaskIds()
+	 */
+	protected Collection<Integer> getScheduledTaskIds() {
+		return scheduledTasks.keySet();
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.SchedulerService#getSystemVariables()
+	 */
+	@Override
+	public SortedMap<String, String> getSystemVariables() {
+		SortedMap<String, String> systemVariables = super.getSystemVariables();
+		systemVariables.put("SCHEDULER_POOL_SIZE", String.valueOf(poolSize));
+		return systemVariables;
+	}
+	
+	/**
+	 * Reports whether the task is running or when it runs next, how many times it has run (and
+	 * failed or misfired), how long its runs took and how late they started
+	 * 
+	 * @see org.openmrs.scheduler.SchedulerService#getStatus(java.lang.Integer)
+	 * @see ConcurrentSchedulerTask#getStatus()
+	 */
+	public String getStatus(Integer id) {
+		ConcurrentSchedulerTask scheduledTask = scheduledTasks.get(id);
+		if (scheduledTask != null)
+			return scheduledTask.getStatus();
+		return "Not Running";
+	}
+
+}
@@ -0,0 +1,382 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.concurrent;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.scheduler.SchedulerUtil;
+import org.openmrs.scheduler.Task;
+
+/**
+ * Runs a {@link Task} on the thread pool of the {@link ConcurrentSchedulerServiceImpl}, once or at
+ * a fixed rate, and keeps track of how long its runs take and how late they start. <br/>
+ * <br/>
+ * Each firing schedules the next one before it runs the task, so a run that takes longer than the
+ * repeat interval doesn't hold up the next firing. Up to <code>maxConcurrentRuns</code> runs of the
+ * task can be going at once. A firing misfires when that many runs are already going, or when it
+ * starts more than <code>misfireThreshold</code> late because the pool was busy. What happens then
+ * depends on the misfire policy:
+ * <ul>
+ * <li>{@link #MISFIRE_FIRE_NOW}: the task is run anyway, as soon as it can be. A firing that starts
+ * late runs straight away, and any number of misfires while a run is going add up to a single extra
+ * run after it</li>
+ * <li>{@link #MISFIRE_SKIP}: the firing is dropped, and the task waits for its next scheduled
+ * time</li>
+ * </ul>
+ * Either way the misfire is counted in {@link #getMisfireCount()}. Firings that were missed
+ * altogether (e.g. while the server was paused) are never made up one by one, the next firing is
+ * the first scheduled time that is still in the future.
+ */
+public class ConcurrentSchedulerTask {
+	
+	/**
+	 * Misfire policy that runs a misfired task as soon as it can be
+	 */
+	public static final String MISFIRE_FIRE_NOW = "fireNow";
+	
+	/**
+	 * Misfire policy that drops a misfired firing
+	 */
+	public static final String MISFIRE_SKIP = "skip";
+	
+	private static Log log = LogFactory.getLog(ConcurrentSchedulerTask.class);
+	
+	private final Task task;
+	
+	private final String name;
+	
+	private final ScheduledExecutorService executor;
+	
+	private final long repeatInterval;
+	
+	private final int maxConcurrentRuns;
+	
+	private final String misfirePolicy;
+	
+	private final long misfireThreshold;
+	
+	private final Semaphore permits;
+	
+	/**
+	 * Set when a firing misfired under {@link #MISFIRE_FIRE_NOW}, so the task runs again when a
+	 * run finishes
+	 */
+	private final AtomicBoolean pendingRun = new AtomicBoolean(false);
+	
+	private volatile boolean cancelled = false;
+	
+	private ScheduledFuture<?> future;
+	
+	private volatile long nextExecutionTime = 0;
+	
+	private int runCount = 0;
+	
+	private int failureCount = 0;
+	
+	private int misfireCount = 0;
+	
+	private long lastStartTime = 0;
+	
+	private long lastRunTime = 0;
+	
+	private long maxRunTime = 0;
+	
+	private long totalRunTime = 0;
+	
+	private long lastLag = 0;
+	
+	private long maxLag = 0;
+	
+	/**
+	 * @param task the task to run
+	 * @param name the name of the task, for the log
+	 * @param executor the pool to run the task on
+	 * @param repeatInterval milliseconds between firings, or 0 to run the task once
+	 * @param maxConcurrentRuns how many runs of the task can be going at once
+	 * @param misfirePolicy {@link #MISFIRE_FIRE_NOW} or {@link #MISFIRE_SKIP}
+	 * @param misfireThreshold how many milliseconds late a firing can start before it misfires
+	 */
+	public ConcurrentSchedulerTask(Task task, String name, ScheduledExecutorService executor, long repeatInterval,
+	    int maxConcurrentRuns, String misfirePolicy, long misfireThreshold) {
+		this.task = task;
+		this.name = name;
+		this.executor = executor;
+		this.repeatInterval = repeatInterval;
+		this.maxConcurrentRuns = Math.max(1, maxConcurrentRuns);
+		this.misfirePolicy = MISFIRE_SKIP.equals(misfirePolicy) ? MISFIRE_SKIP : MISFIRE_FIRE_NOW;
+		this.misfireThreshold = misfireThreshold;
+		this.permits = new Semaphore(this.maxConcurrentRuns);
+	}
+	
+	/**
+	 * Schedules the first firing of the task
+	 * 
+	 * @param firstTime when the task should first run
+	 */
+	public void start(Date firstTime) {
+		schedule(firstTime.getTime());
+	}
+	
+	/**
+	 * Cancels the firings that haven't started yet and tells the task to shut down. Runs that are
+	 * already going are left to finish
+	 */
+	public synchronized void shutdown() {
+		cancelled = true;
+		nextExecutionTime = 0;
+		if (future != null)
+			future.cancel(false);
+		task.shutdown();
+	}
+	
+	private synchronized void schedule(long time) {
+		if (cancelled)
+			return;
+		nextExecutionTime = time;
+		future = executor.schedule(new Firing(time), Math.max(0, time - System.currentTimeMillis()),
+		    TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * One firing of the task, at the time it was scheduled for
+	 */
+	private class Firing implements Runnable {
+		
+		private long scheduledTime;
+		
+		public Firing(long scheduledTime) {
+			this.scheduledTime = scheduledTime;
+		}
+		
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			long now = System.currentTimeMillis();
+			if (repeatInterval > 0) {
+				// skip over the firings that were missed altogether
+				long next = scheduledTime + repeatInterval;
+				if (next <= now)
+					next += ((now - next) / repeatInterval + 1) * repeatInterval;
+				schedule(next);
+			} else {
+				nextExecutionTime = 0;
+			}
+			
+			if (cancelled)
+				return;
+			
+			long lag = now - scheduledTime;
+			if (!permits.tryAcquire()) {
+				misfire("it is already running " + maxConcurrentRuns + " time(s)");
+				if (MISFIRE_FIRE_NOW.equals(misfirePolicy)) {
+					pendingRun.set(true);
+					// the runs may all have ended since the permit was refused
+					runPendingRuns();
+				}
+				return;
+			}
+			
+			try {
+				if (lag > misfireThreshold) {
+					misfire("it started " + lag + "ms late");
+					if (MISFIRE_SKIP.equals(misfirePolicy))
+						return;
+				}
+				runTask(lag);
+			}
+			finally {
+				permits.release();
+			}
+			
+			runPendingRuns();
+		}
+	}
+	
+	/**
+	 * Runs the task once for the firings that misfired under {@link #MISFIRE_FIRE_NOW} while it
+	 * was running. Both a run that finishes and a firing that was refused a permit call this, and
+	 * the flag is checked again after every release, so a firing refused just before the last run
+	 * ended is never left pending
+	 */
+	private void runPendingRuns() {
+		while (pendingRun.get() && !cancelled && permits.tryAcquire()) {
+			try {
+				if (pendingRun.getAndSet(false) && !cancelled)
+					runTask(0);
+			}
+			finally {
+				permits.release();
+			}
+		}
+	}
+	
+	private void misfire(String reason) {
+		synchronized (this) {
+			misfireCount++;
+		}
+		if (MISFIRE_FIRE_NOW.equals(misfirePolicy))
+			log.debug("Task " + name + " misfired, because " + reason + ". It will run as soon as it can");
+		else
+			log.debug("Skipping a run of task " + name + ", because " + reason);
+	}
+	
+	private void runTask(long lag) {
+		long start = System.currentTimeMillis();
+		boolean failed = false;
+		try {
+			task.execute();
+		}
+		catch (Throwable t) {
+			failed = true;
+			log.error("FATAL ERROR: Task [" + task.getClass() + "] failed due to exception [" + t.getClass().getName()
+			        + "]", t);
+			SchedulerUtil.sendSchedulerError(t);
+		}
+		finally {
+			long runTime = System.currentTimeMillis() - start;
+			synchronized (this) {
+				runCount++;
+				if (failed)
+					failureCount++;
+				lastStartTime = start;
+				lastRunTime = runTime;
+				maxRunTime = Math.max(maxRunTime, runTime);
+				totalRunTime += runTime;
+				lastLag = lag;
+				maxLag = Math.max(maxLag, lag);
+			}
+		}
+	}
+	
+	/**
+	 * @return the task that this runs
+	 */
+	public Task getTask() {
+		return task;
+	}
+	
+	/**
+	 * @return how many runs of the task are going right now
+	 */
+	public int getRunningCount() {
+		return maxConcurrentRuns - permits.availablePermits();
+	}
+	
+	/**
+	 * @return the time of the next firing, or null if there isn't one
+	 */
+	public Date getNextExecutionTime() {
+		long next = nextExecutionTime;
+		return next == 0 ? null : new Date(next);
+	}
+	
+	/**
+	 * @return how many times the task has run (including failed runs)
+	 */
+	public synchronized int getRunCount() {
+		return runCount;
+	}
+	
+	/**
+	 * @return how many runs threw an exception
+	 */
+	public synchronized int getFailureCount() {
+		return failureCount;
+	}
+	
+	/**
+	 * @return how many firings misfired
+	 */
+	public synchronized int getMisfireCount() {
+		return misfireCount;
+	}
+	
+	/**
+	 * @return how many milliseconds the last run took
+	 */
+	public synchronized long getLastRunTime() {
+		return lastRunTime;
+	}
+	
+	/**
+	 * @return how many milliseconds the longest run took
+	 */
+	public synchronized long getMaxRunTime() {
+		return maxRunTime;
+	}
+	
+	/**
+	 * @return the average milliseconds a run took
+	 */
+	public synchronized long getAverageRunTime() {
+		return runCount == 0 ? 0 : totalRunTime / runCount;
+	}
+	
+	/**
+	 * @return how many milliseconds after its scheduled time the last run started
+	 */
+	public synchronized long getLastLag() {
+		return lastLag;
+	}
+	
+	/**
+	 * @return the most milliseconds after its scheduled time that any run started
+	 */
+	public synchronized long getMaxLag() {
+		return maxLag;
+	}
+	
+	/**
+	 * Describes what the task is doing and how its runs have gone, for
+	 * {@link ConcurrentSchedulerServiceImpl#getStatus(Integer)}
+	 * 
+	 * @return the status
+	 */
+	public synchronized String getStatus() {
+		StringBuilder status = new StringBuilder();
+		int running = getRunningCount();
+		Date next = getNextExecutionTime();
+		if (running > 0)
+			status.append("Currently executing").append(running > 1 ? " (" + running + " runs)" : "");
+		else if (next != null)
+			status.append("Scheduled to execute at ").append(next);
+		else
+			status.append("Not Running");
+		
+		if (running > 0 && next != null)
+			status.append(", next scheduled at ").append(next);
+		
+		if (runCount > 0 || misfireCount > 0) {
+			status.append(". Ran ").append(runCount).append(" time(s)");
+			status.append(" (").append(failureCount).append(" failed, ").append(misfireCount).append(" misfired)");
+			if (runCount > 0) {
+				status.append(", last at ").append(new Date(lastStartTime));
+				status.append(" taking ").append(lastRunTime).append("ms");
+				status.append(" (average ").append(getAverageRunTime()).append("ms, longest ").append(maxRunTime).append(
+				    "ms)");
+				status.append(", starting ").append(lastLag).append("ms late");
+				status.append(" (largest ").append(maxLag).append("ms)");
+			}
+		}
+		return status.toString();
+	}
+}
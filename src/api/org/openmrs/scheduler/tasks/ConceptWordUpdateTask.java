@@ -13,117 +13,198 @@
  */
 package org.openmrs.scheduler.tasks;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.Concept;
-import org.openmrs.api.APIException;
-import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.ConceptServiceImpl;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 
 /**
- * A utility class for updating concept words in a scheduled task.
+ * A utility class for updating the words of every concept in a scheduled task. This is only needed
+ * for a full reindex, since saving a concept already updates its words. <br/>
+ * <br/>
+ * The dictionary is split into ranges of {@link #RANGE_SIZE} concept ids, which are updated in
+ * parallel by a few worker threads, each range in its own session and transaction. After each
+ * range (and every one before it) is finished the next concept id is saved in the
+ * {@link #PROPERTY_RESUME_FROM} property of the task definition, so if the task is stopped or
+ * fails the next run starts from there instead of from the beginning. The number of threads can be
+ * set with the {@link #PROPERTY_THREADS} property.
  */
 public class ConceptWordUpdateTask extends AbstractTask {
 	
 	private Log log = LogFactory.getLog(ConceptWordUpdateTask.class);
 	
-	private ConceptWordUpdateThread runner;
+	/**
+	 * The task property holding the concept id to start from on the next run
+	 */
+	public static final String PROPERTY_RESUME_FROM = "resumeFromConceptId";
 	
-	private Thread thread;
+	/**
+	 * The task property holding the number of worker threads to use
+	 */
+	public static final String PROPERTY_THREADS = "threads";
+	
+	/**
+	 * How many concept ids each worker updates in one transaction
+	 */
+	public static final int RANGE_SIZE = 1000;
+	
+	private volatile boolean shouldExecute = false;
 	
 	/**
 	 * No-arg constructor to allow instantiation by {@link Class#newInstance()}.
 	 */
 	public ConceptWordUpdateTask() {
-		runner = new ConceptWordUpdateThread();
-		thread = new Thread(runner);
 	}
 	
 	/**
+	 * Updates the words of every concept, from where the last run stopped, on the scheduler's
+	 * thread
+	 * 
 	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
 	 */
 	public void execute() {
-		thread.start();
+		shouldExecute = true;
+		updateConceptWords();
 	}
 	
 	/**
-	 * @see org.openmrs.scheduler.Task#initialize(org.openmrs.scheduler.TaskDefinition)
+	 * Stops the update after the ranges that are already running. The next run resumes from there
+	 * 
+	 * @see org.openmrs.scheduler.Task#shutdown()
 	 */
-	public void initialize(TaskDefinition config) {
-		;
+	public void shutdown() {
+		shouldExecute = false;
 	}
 	
 	/**
-	 * @see org.openmrs.scheduler.Task#isExecuting()
+	 * Hands the ranges from the resume point to the highest concept id out to the workers, and
+	 * moves the resume point forward as they finish
 	 */
-	public boolean isExecuting() {
-		return thread.isAlive();
+	private void updateConceptWords() {
+		Context.openSession();
+		boolean finished = false;
+		ExecutorService workers = null;
+		try {
+			if (Context.isAuthenticated() == false)
+				authenticate();
+			
+			TaskDefinition taskDef = getTaskDefinition();
+			Integer maxConceptId = Context.getConceptService().getMaxConceptId();
+			int start = getIntProperty(taskDef, PROPERTY_RESUME_FROM, 0);
+			int threads = getIntProperty(taskDef, PROPERTY_THREADS, Math.min(4, Runtime.getRuntime()
+			        .availableProcessors()));
+			log.info("Updating concept words from concept id " + start + " to " + maxConceptId + " on " + threads
+			        + " threads");
+			long startTime = System.currentTimeMillis();
+			
+			workers = Executors.newFixedThreadPool(Math.max(1, threads));
+			List<Future<?>> ranges = new ArrayList<Future<?>>();
+			if (maxConceptId != null) {
+				for (int rangeStart = start; rangeStart <= maxConceptId; rangeStart += RANGE_SIZE)
+					ranges.add(workers.submit(new RangeUpdater(rangeStart, rangeStart + RANGE_SIZE - 1)));
+			}
+			workers.shutdown();
+			
+			// the futures are waited on in order, so everything before the saved id is done
+			for (Future<?> range : ranges) {
+				range.get();
+				if (!shouldExecute)
+					break;
+				start += RANGE_SIZE;
+				taskDef.setProperty(PROPERTY_RESUME_FROM, String.valueOf(start));
+				Context.getSchedulerService().saveTask(taskDef);
+			}
+			
+			finished = shouldExecute;
+			log.info((finished ? "Updated concept words" : "Stopped updating concept words at concept id " + start)
+			        + " after " + (System.currentTimeMillis() - startTime) + "ms");
+		}
+		catch (InterruptedException e) {
+			log.warn("ConceptWordUpdateTask was interrupted", e);
+		}
+		catch (ExecutionException e) {
+			log.error("ConceptWordUpdateTask failed, because:", e.getCause());
+		}
+		catch (RuntimeException e) {
+			log.error("ConceptWordUpdateTask failed, because:", e);
+		}
+		finally {
+			if (workers != null)
+				workers.shutdownNow();
+			shouldExecute = false;
+			try {
+				TaskDefinition taskDef = getTaskDefinition();
+				if (finished)
+					taskDef.getProperties().remove(PROPERTY_RESUME_FROM);
+				taskDef.setStarted(false);
+				Context.getSchedulerService().saveTask(taskDef);
+				log.debug("Task set to stopped.");
+			}
+			finally {
+				Context.closeSession();
+			}
+		}
 	}
 	
-	/**
-	 * @see org.openmrs.scheduler.Task#shutdown()
-	 */
-	public void shutdown() {
-		runner.shouldExecute = false;
+	private TaskDefinition getTaskDefinition() {
+		SchedulerService ss = Context.getSchedulerService();
+		return ss.getTaskByName(ConceptServiceImpl.CONCEPT_WORD_UPDATE_TASK_NAME);
+	}
+	
+	private int getIntProperty(TaskDefinition taskDef, String name, int defaultValue) {
+		String value = taskDef.getProperty(name);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring the " + name + " property of the concept word task, it is not a number: " + value);
+			}
+		}
+		return defaultValue;
 	}
 	
-	private class ConceptWordUpdateThread implements Runnable {
+	/**
+	 * Updates the words of one range of concept ids in its own session
+	 */
+	private class RangeUpdater implements Runnable {
+		
+		private int conceptIdStart;
 		
-		public boolean shouldExecute = true;
+		private int conceptIdEnd;
 		
-		public ConceptWordUpdateThread() {
-			isExecuting = false;
+		public RangeUpdater(int conceptIdStart, int conceptIdEnd) {
+			this.conceptIdStart = conceptIdStart;
+			this.conceptIdEnd = conceptIdEnd;
 		}
 		
 		/**
 		 * @see java.lang.Runnable#run()
 		 */
 		public void run() {
-			if (!isExecuting) {
-				isExecuting = true;
-				shouldExecute = true;
-				
-				Context.openSession();
+			if (!shouldExecute)
+				return;
+			
+			Context.openSession();
+			try {
+				if (Context.isAuthenticated() == false)
+					authenticate();
 				if (log.isDebugEnabled())
-					log.debug("Updating concept words ... ");
-				try {
-					if (Context.isAuthenticated() == false)
-						authenticate();
-					ConceptService cs = Context.getConceptService();
-					Iterator<Concept> conceptIterator = cs.conceptIterator();
-					while (conceptIterator.hasNext() && shouldExecute) {
-						Concept currentConcept = conceptIterator.next();
-						if (log.isDebugEnabled())
-							log.debug("updateConceptWords() : current concept: " + currentConcept);
-						cs.updateConceptWord(currentConcept);
-						
-						// do this to keep memory consumption low at the expense of speed
-						// we can't clear the whole session because the conceptIterator has
-						// already loaded and holds on to the next concept
-						Context.evictFromSession(currentConcept); 
-					}
-				}
-				catch (APIException e) {
-					log.error("ConceptWordUpdateTask failed, because:", e);
-					throw e;
-				}
-				finally {
-					isExecuting = shouldExecute = false;
-					SchedulerService ss = Context.getSchedulerService();
-					TaskDefinition conceptWordUpdateTaskDef = ss
-					        .getTaskByName(ConceptServiceImpl.CONCEPT_WORD_UPDATE_TASK_NAME);
-					conceptWordUpdateTaskDef.setStarted(false);
-					ss.saveTask(conceptWordUpdateTaskDef);
-					Context.closeSession();
-					log.debug("Task set to stopped.");
-				}
+					log.debug("Updating the words of concepts " + conceptIdStart + " to " + conceptIdEnd);
+				Context.getConceptService().updateConceptWords(conceptIdStart, conceptIdEnd);
+			}
+			finally {
+				Context.closeSession();
 			}
 		}
-		
 	}
 }
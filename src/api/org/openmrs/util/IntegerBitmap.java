@@ -0,0 +1,707 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of integers, used to hold large groups of ids (e.g. the members of a
+ * {@link org.openmrs.Cohort}) without boxing every one of them. <br/>
+ * <br/>
+ * Values are split on their upper 16 bits into chunks of up to 65536 values. A sparse chunk is
+ * stored as a sorted array of its lower 16 bits and a dense chunk (more than 4096 values) as a
+ * fixed 8kB bitmap, so a set never takes more than about two bytes per member. {@link #and},
+ * {@link #or} and {@link #andNot} work chunk by chunk without boxing, and
+ * {@link #addAll(Collection)}, {@link #retainAll(Collection)} and
+ * {@link #removeAll(Collection)} use them whenever the argument is also an IntegerBitmap. <br/>
+ * <br/>
+ * Iteration is in ascending (unsigned) order. This class is not thread safe.
+ */
+public class IntegerBitmap extends AbstractSet<Integer> implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Chunks with more values than this are stored as bitmaps instead of arrays
+	 */
+	static final int MAX_ARRAY_CARDINALITY = 4096;
+	
+	/**
+	 * upper 16 bits of the values held in each chunk, in ascending order
+	 */
+	private char[] keys;
+	
+	/**
+	 * the chunk for each of the keys
+	 */
+	private Chunk[] chunks;
+	
+	/**
+	 * number of chunks in use
+	 */
+	private int chunkCount = 0;
+	
+	/**
+	 * Creates an empty set
+	 */
+	public IntegerBitmap() {
+		keys = new char[4];
+		chunks = new Chunk[4];
+	}
+	
+	/**
+	 * Creates a set holding the given integers
+	 * 
+	 * @param values
+	 */
+	public IntegerBitmap(Collection<? extends Integer> values) {
+		this();
+		addAll(values);
+	}
+	
+	/**
+	 * Returns a new set holding the values that are in both of the given sets
+	 * 
+	 * @param a
+	 * @param b
+	 * @return the intersection of a and b
+	 */
+	public static IntegerBitmap and(IntegerBitmap a, IntegerBitmap b) {
+		IntegerBitmap ret = new IntegerBitmap();
+		int i = 0, j = 0;
+		while (i < a.chunkCount && j < b.chunkCount) {
+			if (a.keys[i] < b.keys[j])
+				i++;
+			else if (a.keys[i] > b.keys[j])
+				j++;
+			else {
+				ret.append(a.keys[i], a.chunks[i].and(b.chunks[j]));
+				i++;
+				j++;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns a new set holding the values that are in either of the given sets
+	 * 
+	 * @param a
+	 * @param b
+	 * @return the union of a and b
+	 */
+	public static IntegerBitmap or(IntegerBitmap a, IntegerBitmap b) {
+		IntegerBitmap ret = new IntegerBitmap();
+		int i = 0, j = 0;
+		while (i < a.chunkCount || j < b.chunkCount) {
+			if (j >= b.chunkCount || (i < a.chunkCount && a.keys[i] < b.keys[j])) {
+				ret.append(a.keys[i], a.chunks[i].copy());
+				i++;
+			} else if (i >= a.chunkCount || a.keys[i] > b.keys[j]) {
+				ret.append(b.keys[j], b.chunks[j].copy());
+				j++;
+			} else {
+				ret.append(a.keys[i], a.chunks[i].or(b.chunks[j]));
+				i++;
+				j++;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns a new set holding the values of <code>a</code> that are not in <code>b</code>
+	 * 
+	 * @param a
+	 * @param b
+	 * @return a minus b
+	 */
+	public static IntegerBitmap andNot(IntegerBitmap a, IntegerBitmap b) {
+		IntegerBitmap ret = new IntegerBitmap();
+		int j = 0;
+		for (int i = 0; i < a.chunkCount; i++) {
+			while (j < b.chunkCount && b.keys[j] < a.keys[i])
+				j++;
+			if (j < b.chunkCount && b.keys[j] == a.keys[i])
+				ret.append(a.keys[i], a.chunks[i].andNot(b.chunks[j]));
+			else
+				ret.append(a.keys[i], a.chunks[i].copy());
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds a value to this set
+	 * 
+	 * @param value
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(int value) {
+		char key = (char) (value >>> 16);
+		int i = indexOfKey(key);
+		if (i < 0) {
+			insertChunk(-i - 1, key, new ArrayChunk().add((char) value));
+			return true;
+		}
+		int before = chunks[i].cardinality;
+		chunks[i] = chunks[i].add((char) value);
+		return chunks[i].cardinality > before;
+	}
+	
+	/**
+	 * @param value
+	 * @return true if the given value is in this set
+	 */
+	public boolean contains(int value) {
+		int i = indexOfKey((char) (value >>> 16));
+		return i >= 0 && chunks[i].contains((char) value);
+	}
+	
+	/**
+	 * Removes a value from this set
+	 * 
+	 * @param value
+	 * @return true if the value was in the set
+	 */
+	public boolean remove(int value) {
+		int i = indexOfKey((char) (value >>> 16));
+		if (i < 0)
+			return false;
+		int before = chunks[i].cardinality;
+		chunks[i] = chunks[i].remove((char) value);
+		boolean removed = chunks[i].cardinality < before;
+		if (chunks[i].cardinality == 0)
+			removeChunk(i);
+		return removed;
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(Integer value) {
+		return add(value.intValue());
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return (o instanceof Integer) && contains(((Integer) o).intValue());
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(Object o) {
+		return (o instanceof Integer) && remove(((Integer) o).intValue());
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#addAll(java.util.Collection)
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Integer> c) {
+		if (c instanceof IntegerBitmap) {
+			int before = size();
+			replaceWith(or(this, (IntegerBitmap) c));
+			return size() != before;
+		}
+		return super.addAll(c);
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#retainAll(java.util.Collection)
+	 */
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (c instanceof IntegerBitmap) {
+			int before = size();
+			replaceWith(and(this, (IntegerBitmap) c));
+			return size() != before;
+		}
+		return super.retainAll(c);
+	}
+	
+	/**
+	 * @see java.util.AbstractSet#removeAll(java.util.Collection)
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if (c instanceof IntegerBitmap) {
+			int before = size();
+			replaceWith(andNot(this, (IntegerBitmap) c));
+			return size() != before;
+		}
+		boolean changed = false;
+		for (Object o : c)
+			changed |= remove(o);
+		return changed;
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#clear()
+	 */
+	@Override
+	public void clear() {
+		keys = new char[4];
+		chunks = new Chunk[4];
+		chunkCount = 0;
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < chunkCount; i++)
+			size += chunks[i].cardinality;
+		return size;
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return chunkCount == 0;
+	}
+	
+	/**
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<Integer> iterator() {
+		return new BitmapIterator();
+	}
+	
+	/**
+	 * Finds the smallest value in this set that is greater than or equal to <code>from</code>,
+	 * comparing values as unsigned integers
+	 * 
+	 * @param from a value between 0 and 2^32 - 1
+	 * @return the value found (as an unsigned int), or -1 if there is none
+	 */
+	private long nextValue(long from) {
+		int i = indexOfKey((char) (from >>> 16));
+		int low = (int) (from & 0xFFFF);
+		if (i < 0) {
+			i = -i - 1;
+			low = 0;
+		}
+		for (; i < chunkCount; i++, low = 0) {
+			int v = chunks[i].nextValue(low);
+			if (v >= 0)
+				return (((long) keys[i]) << 16) | v;
+		}
+		return -1;
+	}
+	
+	private void replaceWith(IntegerBitmap other) {
+		this.keys = other.keys;
+		this.chunks = other.chunks;
+		this.chunkCount = other.chunkCount;
+	}
+	
+	/**
+	 * binary search of the keys in use
+	 * 
+	 * @return the index of the key, or (-(insertion point) - 1) if it's not there
+	 */
+	private int indexOfKey(char key) {
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key)
+				low = mid + 1;
+			else if (keys[mid] > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+	
+	/**
+	 * adds a chunk after all existing ones. Empty chunks (null) are skipped
+	 */
+	private void append(char key, Chunk chunk) {
+		if (chunk != null && chunk.cardinality > 0)
+			insertChunk(chunkCount, key, chunk);
+	}
+	
+	private void insertChunk(int index, char key, Chunk chunk) {
+		if (chunkCount == keys.length) {
+			int newLength = keys.length * 2;
+			char[] newKeys = new char[newLength];
+			Chunk[] newChunks = new Chunk[newLength];
+			System.arraycopy(keys, 0, newKeys, 0, chunkCount);
+			System.arraycopy(chunks, 0, newChunks, 0, chunkCount);
+			keys = newKeys;
+			chunks = newChunks;
+		}
+		System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+		System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+		keys[index] = key;
+		chunks[index] = chunk;
+		chunkCount++;
+	}
+	
+	private void removeChunk(int index) {
+		System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+		System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+		chunkCount--;
+		chunks[chunkCount] = null;
+	}
+	
+	/**
+	 * Iterates in ascending order by looking up the value following the last one returned, so that
+	 * removing values through the iterator (or the set) doesn't invalidate it
+	 */
+	private class BitmapIterator implements Iterator<Integer> {
+		
+		private long next;
+		
+		private long last = -1;
+		
+		BitmapIterator() {
+			next = nextValue(0);
+		}
+		
+		public boolean hasNext() {
+			return next >= 0;
+		}
+		
+		public Integer next() {
+			if (next < 0)
+				throw new NoSuchElementException();
+			last = next;
+			next = last < 0xFFFFFFFFL ? nextValue(last + 1) : -1;
+			return Integer.valueOf((int) last);
+		}
+		
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			IntegerBitmap.this.remove((int) last);
+			last = -1;
+		}
+	}
+	
+	/**
+	 * The values of this set sharing the same upper 16 bits. Operations that may change the
+	 * representation return the chunk to use from then on
+	 */
+	private static abstract class Chunk implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		int cardinality = 0;
+		
+		abstract boolean contains(char value);
+		
+		abstract Chunk add(char value);
+		
+		abstract Chunk remove(char value);
+		
+		/**
+		 * @return the smallest value >= from, or -1
+		 */
+		abstract int nextValue(int from);
+		
+		abstract Chunk copy();
+		
+		abstract Chunk and(Chunk other);
+		
+		abstract Chunk or(Chunk other);
+		
+		abstract Chunk andNot(Chunk other);
+	}
+	
+	/**
+	 * A sparse chunk: sorted array of values
+	 */
+	private static class ArrayChunk extends Chunk {
+		
+		private static final long serialVersionUID = 1L;
+		
+		char[] values;
+		
+		ArrayChunk() {
+			values = new char[4];
+		}
+		
+		ArrayChunk(int capacity) {
+			values = new char[capacity];
+		}
+		
+		/**
+		 * binary search
+		 * 
+		 * @return the index of the value, or (-(insertion point) - 1) if it's not there
+		 */
+		private int indexOf(char value) {
+			int low = 0;
+			int high = cardinality - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (values[mid] < value)
+					low = mid + 1;
+				else if (values[mid] > value)
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -(low + 1);
+		}
+		
+		boolean contains(char value) {
+			return indexOf(value) >= 0;
+		}
+		
+		Chunk add(char value) {
+			int i = indexOf(value);
+			if (i >= 0)
+				return this;
+			if (cardinality >= MAX_ARRAY_CARDINALITY)
+				return toBitmapChunk().add(value);
+			i = -i - 1;
+			if (cardinality == values.length) {
+				char[] newValues = new char[Math.min(Math.max(values.length * 2, 4), MAX_ARRAY_CARDINALITY)];
+				System.arraycopy(values, 0, newValues, 0, cardinality);
+				values = newValues;
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = value;
+			cardinality++;
+			return this;
+		}
+		
+		Chunk remove(char value) {
+			int i = indexOf(value);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+		
+		int nextValue(int from) {
+			int i = indexOf((char) from);
+			if (i < 0)
+				i = -i - 1;
+			return i < cardinality ? values[i] : -1;
+		}
+		
+		Chunk copy() {
+			ArrayChunk ret = new ArrayChunk(cardinality);
+			System.arraycopy(values, 0, ret.values, 0, cardinality);
+			ret.cardinality = cardinality;
+			return ret;
+		}
+		
+		BitmapChunk toBitmapChunk() {
+			BitmapChunk ret = new BitmapChunk();
+			for (int i = 0; i < cardinality; i++)
+				ret.words[values[i] >>> 6] |= 1L << values[i];
+			ret.cardinality = cardinality;
+			return ret;
+		}
+		
+		Chunk and(Chunk other) {
+			if (other instanceof BitmapChunk)
+				return other.and(this);
+			ArrayChunk b = (ArrayChunk) other;
+			ArrayChunk ret = new ArrayChunk(Math.max(1, Math.min(cardinality, b.cardinality)));
+			int i = 0, j = 0;
+			while (i < cardinality && j < b.cardinality) {
+				if (values[i] < b.values[j])
+					i++;
+				else if (values[i] > b.values[j])
+					j++;
+				else {
+					ret.values[ret.cardinality++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			return ret;
+		}
+		
+		Chunk or(Chunk other) {
+			if (other instanceof BitmapChunk)
+				return other.or(this);
+			ArrayChunk b = (ArrayChunk) other;
+			char[] merged = new char[cardinality + b.cardinality];
+			int n = 0, i = 0, j = 0;
+			while (i < cardinality || j < b.cardinality) {
+				if (j >= b.cardinality || (i < cardinality && values[i] < b.values[j]))
+					merged[n++] = values[i++];
+				else if (i >= cardinality || values[i] > b.values[j])
+					merged[n++] = b.values[j++];
+				else {
+					merged[n++] = values[i++];
+					j++;
+				}
+			}
+			ArrayChunk ret = new ArrayChunk(0);
+			ret.values = merged;
+			ret.cardinality = n;
+			return n > MAX_ARRAY_CARDINALITY ? ret.toBitmapChunk() : ret;
+		}
+		
+		Chunk andNot(Chunk other) {
+			ArrayChunk ret = new ArrayChunk(Math.max(1, cardinality));
+			for (int i = 0; i < cardinality; i++)
+				if (!other.contains(values[i]))
+					ret.values[ret.cardinality++] = values[i];
+			return ret;
+		}
+	}
+	
+	/**
+	 * A dense chunk: one bit for each of the 65536 possible values
+	 */
+	private static class BitmapChunk extends Chunk {
+		
+		private static final long serialVersionUID = 1L;
+		
+		long[] words = new long[1024];
+		
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+		
+		Chunk add(char value) {
+			long before = words[value >>> 6];
+			words[value >>> 6] = before | (1L << value);
+			if (before != words[value >>> 6])
+				cardinality++;
+			return this;
+		}
+		
+		Chunk remove(char value) {
+			long before = words[value >>> 6];
+			words[value >>> 6] = before & ~(1L << value);
+			if (before != words[value >>> 6])
+				cardinality--;
+			return cardinality <= MAX_ARRAY_CARDINALITY ? toArrayChunk() : this;
+		}
+		
+		int nextValue(int from) {
+			int w = from >>> 6;
+			if (w >= words.length)
+				return -1;
+			long word = words[w] & (-1L << from);
+			while (true) {
+				if (word != 0)
+					return (w << 6) + Long.numberOfTrailingZeros(word);
+				if (++w == words.length)
+					return -1;
+				word = words[w];
+			}
+		}
+		
+		Chunk copy() {
+			BitmapChunk ret = new BitmapChunk();
+			System.arraycopy(words, 0, ret.words, 0, words.length);
+			ret.cardinality = cardinality;
+			return ret;
+		}
+		
+		ArrayChunk toArrayChunk() {
+			ArrayChunk ret = new ArrayChunk(Math.max(1, cardinality));
+			for (int w = 0; w < words.length; w++) {
+				long word = words[w];
+				while (word != 0) {
+					ret.values[ret.cardinality++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return ret;
+		}
+		
+		/**
+		 * @return this chunk, or an array chunk if this one has become sparse
+		 */
+		private Chunk compact() {
+			return cardinality <= MAX_ARRAY_CARDINALITY ? toArrayChunk() : this;
+		}
+		
+		Chunk and(Chunk other) {
+			if (other instanceof ArrayChunk) {
+				ArrayChunk a = (ArrayChunk) other;
+				ArrayChunk ret = new ArrayChunk(Math.max(1, a.cardinality));
+				for (int i = 0; i < a.cardinality; i++)
+					if (contains(a.values[i]))
+						ret.values[ret.cardinality++] = a.values[i];
+				return ret;
+			}
+			BitmapChunk b = (BitmapChunk) other;
+			BitmapChunk ret = new BitmapChunk();
+			for (int w = 0; w < words.length; w++) {
+				ret.words[w] = words[w] & b.words[w];
+				ret.cardinality += Long.bitCount(ret.words[w]);
+			}
+			return ret.compact();
+		}
+		
+		Chunk or(Chunk other) {
+			BitmapChunk ret = (BitmapChunk) copy();
+			if (other instanceof ArrayChunk) {
+				ArrayChunk a = (ArrayChunk) other;
+				for (int i = 0; i < a.cardinality; i++)
+					ret.add(a.values[i]);
+				return ret;
+			}
+			BitmapChunk b = (BitmapChunk) other;
+			ret.cardinality = 0;
+			for (int w = 0; w < words.length; w++) {
+				ret.words[w] = words[w] | b.words[w];
+				ret.cardinality += Long.bitCount(ret.words[w]);
+			}
+			return ret;
+		}
+		
+		Chunk andNot(Chunk other) {
+			BitmapChunk ret = (BitmapChunk) copy();
+			if (other instanceof ArrayChunk) {
+				ArrayChunk a = (ArrayChunk) other;
+				for (int i = 0; i < a.cardinality; i++) {
+					char v = a.values[i];
+					if (ret.contains(v)) {
+						ret.words[v >>> 6] &= ~(1L << v);
+						ret.cardinality--;
+					}
+				}
+				return ret.compact();
+			}
+			BitmapChunk b = (BitmapChunk) other;
+			ret.cardinality = 0;
+			for (int w = 0; w < words.length; w++) {
+				ret.words[w] = words[w] & ~b.words[w];
+				ret.cardinality += Long.bitCount(ret.words[w]);
+			}
+			return ret.compact();
+		}
+	}
+}
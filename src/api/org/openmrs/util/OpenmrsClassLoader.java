@@ -30,6 +30,7 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.ModuleClassLoader;
+import org.openmrs.module.ModuleClassLoaderIndex;
 import org.openmrs.module.ModuleFactory;
 import org.openmrs.module.ModuleUtil;
 import org.openmrs.scheduler.SchedulerException;
@@ -93,12 +94,21 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	}
 	
 	/**
+	 * Only the module classloaders whose jars have something in the class's package are tried
+	 * before the parent. Names that none of them could load are remembered until the modules change
+	 * 
 	 * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
+	 * @see ModuleClassLoaderIndex
 	 */
 	public Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
-		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaders()) {
+		ModuleClassLoaderIndex index = ModuleFactory.getModuleClassLoaderIndex();
+		// read before the loaders, so a module started during the lookup is seen by one or the other
+		int generation = index.getGeneration();
+		if (index.isMissingClass(name))
+			throw new ClassNotFoundException(name);
+		
+		for (ModuleClassLoader classLoader : index.getClassLoadersForClass(name)) {
 			try {
-				//if (classLoader.isLoadingFromParent() == false)
 				return classLoader.loadClass(name);
 			}
 			catch (ClassNotFoundException e) {
@@ -106,7 +116,13 @@ public class OpenmrsClassLoader extends URLClassLoader {
 			}
 		}
 		
-		return getParent().loadClass(name);
+		try {
+			return getParent().loadClass(name);
+		}
+		catch (ClassNotFoundException e) {
+			index.addMissingClass(name, generation);
+			throw e;
+		}
 	}
 	
 	/**
@@ -117,7 +133,7 @@ public class OpenmrsClassLoader extends URLClassLoader {
 			log.trace("finding resource: " + name);
 		
 		URL result;
-		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaders()) {
+		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaderIndex().getClassLoadersForResource(name)) {
 			result = classLoader.findResource(name);
 			if (result != null)
 				return result;
@@ -139,7 +155,7 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 */
 	public Enumeration<URL> findResources(final String name) throws IOException {
 		Set<URL> results = new HashSet<URL>();
-		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaders()) {
+		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaderIndex().getClassLoadersForResource(name)) {
 			Enumeration<URL> urls = classLoader.findResources(name);
 			while (urls.hasMoreElements()) {
 				URL result = urls.nextElement();
@@ -649,14 +649,32 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS = "patient.searchMaxResults";
 	
+	public static final String GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE = "cohort.queryChunkSize";
+	
 	public static final String GLOBAL_PROPERTY_GZIP_ENABLED = "gzip.enabled";
 	
 	public static final String GLOBAL_PROPERTY_MEDICAL_RECORD_OBSERVATIONS = "concept.medicalRecordObservations";
 	
 	public static final String GLOBAL_PROPERTY_PROBLEM_LIST                = "concept.problemList";
 	
+	public static final String GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED = "concept.wordIndexEnabled";
+	
+	public static final String GLOBAL_PROPERTY_PATIENT_SEARCH_INDEX_ENABLED = "patient.searchIndexEnabled";
+	
 	public static final String GLOBAL_PROPERTY_REPORT_XML_MACROS = "report.xmlMacros";
 	
+	public static final String GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS = "report.evaluationThreads";
+	
+	public static final String GLOBAL_PROPERTY_DATA_EXPORT_PAGE_SIZE = "dataExport.pageSize";
+	
+	public static final String GLOBAL_PROPERTY_DATA_EXPORT_THREADS = "dataExport.threads";
+	
+	public static final String GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS = "hl7_processor.worker_threads";
+	
+	public static final String GLOBAL_PROPERTY_HL7_PROCESSOR_BATCH_SIZE = "hl7_processor.batch_size";
+	
+	public static final String GLOBAL_PROPERTY_HL7_PROCESSOR_TRANSACTION_SIZE = "hl7_processor.transaction_size";
+	
 	public static final String GLOBAL_PROPERTY_STANDARD_DRUG_REGIMENS = "dashboard.regimen.standardRegimens";
 	
 	public static final String GLOBAL_PROPERTY_DEFAULT_PATIENT_IDENTIFIER_VALIDATOR = "patient.defaultPatientIdentifierValidator";
@@ -852,6 +870,8 @@ public final class OpenmrsConstants {
 		                        + " is empty.  The string here is prepended to the sql indentifier search string.  The sql becomes \"... where identifier like '<PREFIX><QUERY STRING><SUFFIX>';\".  Typically this value is either a percent sign (%) or empty."));
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_PATIENT_SEARCH_MAX_RESULTS, "1000",
 		        "The maximum number of results returned by patient searches"));
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE, "1000",
+		        "The maximum number of patient ids put into one database query when fetching data for a cohort. Larger cohorts are queried in several pieces of this size."));
 		
 		props
 		        .add(new GlobalProperty(
@@ -861,6 +881,15 @@ public final class OpenmrsConstants {
 		props
 		        .add(new GlobalProperty(GLOBAL_PROPERTY_REPORT_XML_MACROS, "",
 		                "Macros that will be applied to Report Schema XMLs when they are interpreted. This should be java.util.properties format."));
+		props
+		        .add(new GlobalProperty(
+		                GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS,
+		                "1",
+		                "The number of threads used to evaluate the data sets of a report, and the cohorts of a cohort data set, at the same time. Set to 1 to evaluate them one after another"));
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_DATA_EXPORT_PAGE_SIZE, "1000",
+		        "The number of patients that a data export fetches data for and writes out at a time"));
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_DATA_EXPORT_THREADS, "1",
+		        "The number of pages of patients that a data export generates at the same time. Set to 1 to generate them one after another"));
 		
 		props
 		        .add(new GlobalProperty(
@@ -874,6 +903,25 @@ public final class OpenmrsConstants {
                 "1284",
                 "The concept id of the PROBLEM LIST concept.  This concept_id is presumed to be the generic grouping (obr) concept in hl7 messages.  An obs_group row is not created for this concept."));
 		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED, "false",
+		        "Set to 'true' to load the concept word table into memory at startup and answer concept searches from there "
+		                + "instead of the database. Uses more memory and takes effect after a restart."));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_PATIENT_SEARCH_INDEX_ENABLED, "false",
+		        "Set to 'true' to load the names and identifiers of all patients into memory at startup and answer the "
+		                + "find patient box from there, ranked by closeness of match. Takes effect after a restart."));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS, "1",
+		        "The number of threads used to process the HL7 inbound queue. Messages for the same patient are always "
+		                + "processed by the same thread, in the order they were received."));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_HL7_PROCESSOR_BATCH_SIZE, "100",
+		        "The number of HL7 inbound queue entries read at a time and shared out among the HL7 processor threads."));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_HL7_PROCESSOR_TRANSACTION_SIZE, "1",
+		        "The number of HL7 inbound queue entries processed in one database transaction. A message that fails is "
+		                + "rolled back on its own and does not affect the others in the transaction."));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_LOG_LEVEL,
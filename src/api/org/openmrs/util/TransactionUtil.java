@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs code once the current transaction is over, for the in-memory caches and indexes that must
+ * only change once the database has. If they changed before the commit, a concurrent reader could
+ * put the old data back in the cache before the commit, or a rollback could leave entries for data
+ * that was never saved. <br/>
+ * <br/>
+ * When no transaction is active the code runs straight away.
+ */
+public class TransactionUtil {
+	
+	private static Log log = LogFactory.getLog(TransactionUtil.class);
+	
+	/**
+	 * Runs the given code after the current transaction commits or rolls back. Use this to drop
+	 * cached copies of data that is being changed
+	 * 
+	 * @param runnable the code to run
+	 */
+	public static void afterCompletion(final Runnable runnable) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					run(runnable);
+				}
+			});
+		} else {
+			runnable.run();
+		}
+	}
+	
+	/**
+	 * Runs the given code after the current transaction commits, and not at all if it rolls back.
+	 * Use this to add changed data to an in-memory index
+	 * 
+	 * @param runnable the code to run
+	 */
+	public static void afterCommit(final Runnable runnable) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					if (status == TransactionSynchronization.STATUS_COMMITTED)
+						run(runnable);
+				}
+			});
+		} else {
+			runnable.run();
+		}
+	}
+	
+	/**
+	 * Exceptions thrown after completion are only logged by spring, so log them here with the
+	 * code that threw them
+	 */
+	private static void run(Runnable runnable) {
+		try {
+			runnable.run();
+		}
+		catch (RuntimeException e) {
+			log.error("Error while running " + runnable + " after the transaction", e);
+		}
+	}
+}
@@ -124,6 +124,8 @@ public class OpenmrsFilter implements Filter {
 		}
 		finally {
 			if (initialRequest == true) {
+				PatientSnapshot.logFetchCounts(httpRequest);
+				
 				// Clear the context so there's no user information left on the thread
 				Context.clearUserContext();
 				log.debug("This was considered an initial request");
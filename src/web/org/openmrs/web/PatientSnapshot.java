@@ -0,0 +1,441 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.DrugOrder;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
+import org.openmrs.Person;
+import org.openmrs.Relationship;
+import org.openmrs.RelationshipType;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+
+/**
+ * The data about one patient (or person) that the patient dashboard and its portlets show, fetched
+ * the first time something asks for it and kept for the rest of the request. However many portlets
+ * a page has for the same patient, their obs, encounters, orders, programs and relationships are
+ * each read from the database at most once. <br/>
+ * <br/>
+ * Get the snapshot for a request with {@link #getSnapshot(HttpServletRequest, Integer)}. Nothing
+ * here checks privileges; callers should check them before asking for data, as the services will
+ * refuse otherwise. This class is NOT thread-safe, just like the request it belongs to.
+ */
+public class PatientSnapshot {
+	
+	private static final Log log = LogFactory.getLog(PatientSnapshot.class);
+	
+	private static final String REQUEST_ATTRIBUTE = "__openmrs_patient_snapshots";
+	
+	private Integer patientId;
+	
+	private int fetchCount = 0;
+	
+	private Person person;
+	
+	private Patient patient;
+	
+	private boolean patientLoaded = false;
+	
+	private List<Encounter> encounters;
+	
+	private Set<Obs> obs;
+	
+	private Map<Concept, Set<Obs>> obsByConcept = new HashMap<Concept, Set<Obs>>();
+	
+	private boolean vitalsComputed = false;
+	
+	private Obs latestWeight;
+	
+	private Obs latestHeight;
+	
+	private Double bmi;
+	
+	private boolean reasonForExitComputed = false;
+	
+	private Obs reasonForExit;
+	
+	private List<DrugOrder> drugOrders;
+	
+	private List<PatientProgram> patientPrograms;
+	
+	private List<Relationship> relationships;
+	
+	/**
+	 * @param patientId the patient (or person) to hold data for
+	 */
+	public PatientSnapshot(Integer patientId) {
+		this.patientId = patientId;
+	}
+	
+	/**
+	 * Gets the snapshot of the given patient for the current request, creating it the first time.
+	 * Pages included into the request (e.g. portlets) share the snapshot with the page they are
+	 * included in.
+	 * 
+	 * @param request the request being handled
+	 * @param patientId the patient (or person) id
+	 * @return the snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public static PatientSnapshot getSnapshot(HttpServletRequest request, Integer patientId) {
+		Map<Integer, PatientSnapshot> snapshots = (Map<Integer, PatientSnapshot>) request
+		        .getAttribute(REQUEST_ATTRIBUTE);
+		if (snapshots == null) {
+			snapshots = new HashMap<Integer, PatientSnapshot>();
+			request.setAttribute(REQUEST_ATTRIBUTE, snapshots);
+		}
+		PatientSnapshot snapshot = snapshots.get(patientId);
+		if (snapshot == null) {
+			snapshot = new PatientSnapshot(patientId);
+			snapshots.put(patientId, snapshot);
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Logs, at debug level, how many times the snapshots of a request fetched data. Meant to be called
+	 * once the whole request, including every portlet, has been handled
+	 * 
+	 * @param request the request that was handled
+	 */
+	@SuppressWarnings("unchecked")
+	public static void logFetchCounts(HttpServletRequest request) {
+		if (!log.isDebugEnabled())
+			return;
+		Map<Integer, PatientSnapshot> snapshots = (Map<Integer, PatientSnapshot>) request
+		        .getAttribute(REQUEST_ATTRIBUTE);
+		if (snapshots == null)
+			return;
+		for (PatientSnapshot snapshot : snapshots.values())
+			log.debug(request.getRequestURI() + " made " + snapshot.getFetchCount()
+			        + " patient data fetches for patient " + snapshot.getPatientId());
+	}
+	
+	/**
+	 * @return the id of the patient (or person)
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * @return the number of times this snapshot has called a service to fetch data. Each fetch may
+	 *         run more than one SQL statement
+	 */
+	public int getFetchCount() {
+		return fetchCount;
+	}
+	
+	/**
+	 * @return the patient, or null if the id is not a patient's
+	 */
+	public Patient getPatient() {
+		if (!patientLoaded) {
+			fetchCount++;
+			patient = Context.getPatientService().getPatient(patientId);
+			patientLoaded = true;
+		}
+		return patient;
+	}
+	
+	/**
+	 * Sets the patient, for callers that already have it loaded
+	 * 
+	 * @param patient
+	 */
+	public void setPatient(Patient patient) {
+		this.patient = patient;
+		this.patientLoaded = true;
+	}
+	
+	/**
+	 * @return the patient if the id is a patient's, otherwise the person
+	 */
+	public Person getPerson() {
+		if (person == null) {
+			if (patientLoaded && patient != null) {
+				person = patient;
+			} else {
+				fetchCount++;
+				person = Context.getPersonService().getPerson(patientId);
+			}
+		}
+		return person;
+	}
+	
+	/**
+	 * @return the patient's encounters
+	 */
+	public List<Encounter> getEncounters() {
+		if (encounters == null) {
+			fetchCount++;
+			encounters = Context.getEncounterService().getEncounters(getPatient());
+		}
+		return encounters;
+	}
+	
+	/**
+	 * @return all of the patient's non-voided obs
+	 */
+	public Set<Obs> getObs() {
+		if (obs == null) {
+			fetchCount++;
+			obs = Context.getObsService().getObservations(getPatient(), false);
+		}
+		return obs;
+	}
+	
+	/**
+	 * Gets the patient's non-voided obs for one question. If all of the patient's obs have already
+	 * been fetched these are picked out of them rather than queried for
+	 * 
+	 * @param concept the question
+	 * @return the obs
+	 */
+	public Set<Obs> getObs(Concept concept) {
+		Set<Obs> conceptObs = obsByConcept.get(concept);
+		if (conceptObs == null) {
+			if (obs != null) {
+				conceptObs = new LinkedHashSet<Obs>();
+				for (Obs o : obs) {
+					if (concept.equals(o.getConcept()))
+						conceptObs.add(o);
+				}
+			} else {
+				fetchCount++;
+				conceptObs = Context.getObsService().getObservations(getPatient(), concept, false);
+			}
+			obsByConcept.put(concept, conceptObs);
+		}
+		return conceptObs;
+	}
+	
+	/**
+	 * @return the most recent obs of the concept in the 'concept.weight' global property, or null
+	 */
+	public Obs getLatestWeight() {
+		computeVitals();
+		return latestWeight;
+	}
+	
+	/**
+	 * @return the most recent obs of the concept in the 'concept.height' global property, or null
+	 */
+	public Obs getLatestHeight() {
+		computeVitals();
+		return latestHeight;
+	}
+	
+	/**
+	 * @return the BMI from the most recent weight and height, or null if either is missing
+	 */
+	public Double getBmi() {
+		computeVitals();
+		return bmi;
+	}
+	
+	/**
+	 * @return the BMI rounded to one decimal place, or "?" if it is not known
+	 */
+	public String getBmiAsString() {
+		Double bmi = getBmi();
+		if (bmi == null)
+			return "?";
+		String temp = "" + bmi;
+		return temp.substring(0, temp.indexOf('.') + 2);
+	}
+	
+	/**
+	 * Finds the latest weight and height and works out the BMI from them
+	 */
+	private void computeVitals() {
+		if (vitalsComputed)
+			return;
+		vitalsComputed = true;
+		
+		ConceptService cs = Context.getConceptService();
+		try {
+			ConceptNumeric weightConcept = cs.getConceptNumeric(cs.getConceptByIdOrName(
+			    Context.getAdministrationService().getGlobalProperty("concept.weight")).getConceptId());
+			ConceptNumeric heightConcept = cs.getConceptNumeric(cs.getConceptByIdOrName(
+			    Context.getAdministrationService().getGlobalProperty("concept.height")).getConceptId());
+			for (Obs o : getObs()) {
+				if (o.getConcept().equals(weightConcept)) {
+					if (latestWeight == null || o.getObsDatetime().compareTo(latestWeight.getObsDatetime()) > 0)
+						latestWeight = o;
+				} else if (o.getConcept().equals(heightConcept)) {
+					if (latestHeight == null || o.getObsDatetime().compareTo(latestHeight.getObsDatetime()) > 0)
+						latestHeight = o;
+				}
+			}
+			if (latestWeight != null && latestHeight != null) {
+				double weightInKg;
+				double heightInM;
+				if (weightConcept.getUnits().equals("kg"))
+					weightInKg = latestWeight.getValueNumeric();
+				else if (weightConcept.getUnits().equals("lb"))
+					weightInKg = latestWeight.getValueNumeric() * 0.45359237;
+				else
+					throw new IllegalArgumentException("Can't handle units of weight concept: " + weightConcept.getUnits());
+				if (heightConcept.getUnits().equals("cm"))
+					heightInM = latestHeight.getValueNumeric() / 100;
+				else if (heightConcept.getUnits().equals("m"))
+					heightInM = latestHeight.getValueNumeric();
+				else if (heightConcept.getUnits().equals("in"))
+					heightInM = latestHeight.getValueNumeric() * 0.0254;
+				else
+					throw new IllegalArgumentException("Can't handle units of height concept: " + heightConcept.getUnits());
+				bmi = weightInKg / (heightInM * heightInM);
+			}
+		}
+		catch (Exception ex) {
+			if (latestWeight != null && latestHeight != null)
+				log.error("Failed to calculate BMI even though a weight and height were found", ex);
+		}
+	}
+	
+	/**
+	 * @return the patient's only obs of the concept in the 'concept.reasonExitedCare' global
+	 *         property, or null if there are none or more than one
+	 */
+	public Obs getReasonForExit() {
+		if (!reasonForExitComputed) {
+			reasonForExitComputed = true;
+			Concept reasonForExitConcept = Context.getConceptService().getConceptByIdOrName(
+			    Context.getAdministrationService().getGlobalProperty("concept.reasonExitedCare"));
+			if (reasonForExitConcept != null) {
+				Set<Obs> patientExitObs = getObs(reasonForExitConcept);
+				log.debug("Exit obs is size " + patientExitObs.size());
+				if (patientExitObs.size() == 1)
+					reasonForExit = patientExitObs.iterator().next();
+				else if (patientExitObs.size() > 1)
+					log.error("Too many reasons for exit - not putting data into model");
+			}
+		}
+		return reasonForExit;
+	}
+	
+	/**
+	 * @return true if the patient has a reason for exit with a coded value and a date
+	 */
+	public boolean isExited() {
+		Obs exitObs = getReasonForExit();
+		return exitObs != null && exitObs.getValueCoded() != null && exitObs.getObsDatetime() != null;
+	}
+	
+	/**
+	 * @return all of the patient's drug orders
+	 */
+	public List<DrugOrder> getDrugOrders() {
+		if (drugOrders == null) {
+			fetchCount++;
+			drugOrders = Context.getOrderService().getDrugOrdersByPatient(getPatient());
+		}
+		return drugOrders;
+	}
+	
+	/**
+	 * @return the patient's drug orders that are current or have not started yet
+	 */
+	public List<DrugOrder> getCurrentDrugOrders() {
+		List<DrugOrder> currentDrugOrders = new ArrayList<DrugOrder>();
+		for (DrugOrder order : getDrugOrders()) {
+			if (order.isCurrent() || order.isFuture())
+				currentDrugOrders.add(order);
+		}
+		return currentDrugOrders;
+	}
+	
+	/**
+	 * @return the patient's discontinued drug orders
+	 */
+	public List<DrugOrder> getCompletedDrugOrders() {
+		List<DrugOrder> completedDrugOrders = new ArrayList<DrugOrder>();
+		for (DrugOrder order : getDrugOrders()) {
+			if (order.isDiscontinued())
+				completedDrugOrders.add(order);
+		}
+		return completedDrugOrders;
+	}
+	
+	/**
+	 * @return all of the patient's program enrollments
+	 */
+	public Collection<PatientProgram> getPatientPrograms() {
+		if (patientPrograms == null) {
+			fetchCount++;
+			patientPrograms = new ArrayList<PatientProgram>(Context.getProgramWorkflowService().getPatientPrograms(
+			    getPatient()));
+		}
+		return patientPrograms;
+	}
+	
+	/**
+	 * @return the patient's program enrollments that are active today
+	 */
+	public Collection<PatientProgram> getCurrentPrograms() {
+		Date now = new Date();
+		List<PatientProgram> currentPrograms = new ArrayList<PatientProgram>();
+		for (PatientProgram pp : getPatientPrograms()) {
+			if (pp.getActive(now))
+				currentPrograms.add(pp);
+		}
+		return currentPrograms;
+	}
+	
+	/**
+	 * @return the person's non-voided relationships
+	 */
+	public List<Relationship> getRelationships() {
+		if (relationships == null) {
+			fetchCount++;
+			relationships = new ArrayList<Relationship>(Context.getPersonService().getRelationships(getPerson(), false));
+		}
+		return relationships;
+	}
+	
+	/**
+	 * @return the person's non-voided relationships, grouped by type
+	 */
+	public Map<RelationshipType, List<Relationship>> getRelationshipsByType() {
+		Map<RelationshipType, List<Relationship>> relationshipsByType = new HashMap<RelationshipType, List<Relationship>>();
+		for (Relationship rel : getRelationships()) {
+			List<Relationship> list = relationshipsByType.get(rel.getRelationshipType());
+			if (list == null) {
+				list = new ArrayList<Relationship>();
+				relationshipsByType.put(rel.getRelationshipType(), list);
+			}
+			list.add(rel);
+		}
+		return relationshipsByType;
+	}
+}
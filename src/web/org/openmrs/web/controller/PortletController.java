@@ -14,14 +14,10 @@
 package org.openmrs.web.controller;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -32,20 +28,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
 import org.openmrs.Concept;
-import org.openmrs.ConceptNumeric;
-import org.openmrs.DrugOrder;
 import org.openmrs.Encounter;
-import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.Person;
-import org.openmrs.Relationship;
-import org.openmrs.RelationshipType;
 import org.openmrs.User;
-import org.openmrs.api.AdministrationService;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
 import org.openmrs.order.RegimenSuggestion;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.web.PatientSnapshot;
 import org.openmrs.web.WebConstants;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.Controller;
@@ -73,13 +64,16 @@ public class PortletController implements Controller {
 	 * patientIds attribute, which should be a (String) comma-separated list of patientIds)
 	 * (PatientSet) patientSet (String) patientIds (if the request has a conceptIds attribute, which
 	 * should be a (String) commas-separated list of conceptIds) (Map<Integer, Concept>) conceptMap
-	 * (Map<String, Concept>) conceptMapByStringIds
+	 * (Map<String, Concept>) conceptMapByStringIds <br/>
+	 * <br/>
+	 * The patient and person data is only loaded when the view first gets it from the model, and
+	 * all of the portlets (and the dashboard) for a patient in the same request share one
+	 * {@link PatientSnapshot}, so each thing is read from the database at most once per page.
 	 */
 	@SuppressWarnings("unchecked")
 	public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException,
 	                                                                                           IOException {
 		
-		AdministrationService as = Context.getAdministrationService();
 		ConceptService cs = Context.getConceptService();
 		
 		//HttpSession httpSession = request.getSession();
@@ -88,16 +82,16 @@ public class PortletController implements Controller {
 		// find the portlet that was identified in the openmrs:portlet taglib
 		Object uri = request.getAttribute("javax.servlet.include.servlet_path");
 		String portletPath = "";
-		Map<String, Object> model = null;
+		PortletModel model = null;
 		{
 			HttpSession session = request.getSession();
 			String uniqueRequestId = (String) request.getAttribute(WebConstants.INIT_REQ_UNIQUE_ID);
 			String lastRequestId = (String) session.getAttribute(WebConstants.OPENMRS_PORTLET_LAST_REQ_ID);
 			if (uniqueRequestId.equals(lastRequestId))
-				model = (Map<String, Object>) session.getAttribute(WebConstants.OPENMRS_PORTLET_CACHED_MODEL);
+				model = (PortletModel) session.getAttribute(WebConstants.OPENMRS_PORTLET_CACHED_MODEL);
 			if (model == null) {
 				log.debug("creating new portlet model");
-				model = new HashMap<String, Object>();
+				model = new PortletModel();
 				session.setAttribute(WebConstants.OPENMRS_PORTLET_LAST_REQ_ID, uniqueRequestId);
 				session.setAttribute(WebConstants.OPENMRS_PORTLET_CACHED_MODEL, model);
 			}
@@ -141,139 +135,27 @@ public class PortletController implements Controller {
 			// if a patient id is available, put patient data documented above in the model
 			Object o = request.getAttribute("org.openmrs.portlet.patientId");
 			if (o != null) {
-				String patientVariation = "";
 				Integer patientId = (Integer) o;
 				if (!model.containsKey("patient")) {
 					// we can't continue if the user can't view patients
 					if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_PATIENTS)) {
-						Patient p = Context.getPatientService().getPatient(patientId);
+						// the rest of the patient data is loaded from the snapshot when the view asks for it
+						PatientSnapshot snapshot = PatientSnapshot.getSnapshot(request, patientId);
+						Patient p = snapshot.getPatient();
 						model.put("patient", p);
-						
-						// add encounters if this user can view them
-						if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_ENCOUNTERS))
-							model.put("patientEncounters", Context.getEncounterService().getEncounters(p));
-						
-						if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS)) {
-							Set<Obs> patientObs = Context.getObsService().getObservations(p, false);
-							model.put("patientObs", patientObs);
-							Obs latestWeight = null;
-							Obs latestHeight = null;
-							String bmiAsString = "?";
-							try {
-								ConceptNumeric weightConcept = cs.getConceptNumeric(cs.getConceptByIdOrName(
-								    as.getGlobalProperty("concept.weight")).getConceptId());
-								ConceptNumeric heightConcept = cs.getConceptNumeric(cs.getConceptByIdOrName(
-								    as.getGlobalProperty("concept.height")).getConceptId());
-								for (Obs obs : patientObs) {
-									if (obs.getConcept().equals(weightConcept)) {
-										if (latestWeight == null
-										        || obs.getObsDatetime().compareTo(latestWeight.getObsDatetime()) > 0)
-											latestWeight = obs;
-									} else if (obs.getConcept().equals(heightConcept)) {
-										if (latestHeight == null
-										        || obs.getObsDatetime().compareTo(latestHeight.getObsDatetime()) > 0)
-											latestHeight = obs;
-									}
-								}
-								if (latestWeight != null)
-									model.put("patientWeight", latestWeight);
-								if (latestHeight != null)
-									model.put("patientHeight", latestHeight);
-								if (latestWeight != null && latestHeight != null) {
-									double weightInKg;
-									double heightInM;
-									if (weightConcept.getUnits().equals("kg"))
-										weightInKg = latestWeight.getValueNumeric();
-									else if (weightConcept.getUnits().equals("lb"))
-										weightInKg = latestWeight.getValueNumeric() * 0.45359237;
-									else
-										throw new IllegalArgumentException("Can't handle units of weight concept: "
-										        + weightConcept.getUnits());
-									if (heightConcept.getUnits().equals("cm"))
-										heightInM = latestHeight.getValueNumeric() / 100;
-									else if (heightConcept.getUnits().equals("m"))
-										heightInM = latestHeight.getValueNumeric();
-									else if (heightConcept.getUnits().equals("in"))
-										heightInM = latestHeight.getValueNumeric() * 0.0254;
-									else
-										throw new IllegalArgumentException("Can't handle units of height concept: "
-										        + heightConcept.getUnits());
-									double bmi = weightInKg / (heightInM * heightInM);
-									model.put("patientBmi", bmi);
-									String temp = "" + bmi;
-									bmiAsString = temp.substring(0, temp.indexOf('.') + 2);
-								}
-							}
-							catch (Exception ex) {
-								if (latestWeight != null && latestHeight != null)
-									log.error("Failed to calculate BMI even though a weight and height were found", ex);
-							}
-							model.put("patientBmiAsString", bmiAsString);
-						} else {
-							model.put("patientObs", new HashSet<Obs>());
-						}
-						
-						// information about whether or not the patient has exited care
-						Obs reasonForExitObs = null;
-						Concept reasonForExitConcept = cs.getConceptByIdOrName(as
-						        .getGlobalProperty("concept.reasonExitedCare"));
-						if (reasonForExitConcept != null) {
-							Set<Obs> patientExitObs = Context.getObsService()
-							        .getObservations(p, reasonForExitConcept, false);
-							if (patientExitObs != null) {
-								log.debug("Exit obs is size " + patientExitObs.size());
-								if (patientExitObs.size() == 1) {
-									reasonForExitObs = patientExitObs.iterator().next();
-									Concept exitReason = reasonForExitObs.getValueCoded();
-									Date exitDate = reasonForExitObs.getObsDatetime();
-									if (exitReason != null && exitDate != null) {
-										patientVariation = "Exited";
-									}
-								} else {
-									if (patientExitObs.size() == 0) {
-										log.debug("Patient has no reason for exit");
-									} else {
-										log.error("Too many reasons for exit - not putting data into model");
-									}
-								}
-							}
-						}
-						model.put("patientReasonForExit", reasonForExitObs);
+						model.setPatientSnapshot(snapshot);
 						
 						if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_ORDERS)) {
-							List<DrugOrder> drugOrderList = Context.getOrderService().getDrugOrdersByPatient(p);
-							model.put("patientDrugOrders", drugOrderList);
-							List<DrugOrder> currentDrugOrders = new ArrayList<DrugOrder>();
-							List<DrugOrder> discontinuedDrugOrders = new ArrayList<DrugOrder>();
-							for (Iterator<DrugOrder> iter = drugOrderList.iterator(); iter.hasNext();) {
-								DrugOrder next = iter.next();
-								if (next.isCurrent() || next.isFuture())
-									currentDrugOrders.add(next);
-								if (next.isDiscontinued())
-									discontinuedDrugOrders.add(next);
-							}
-							model.put("currentDrugOrders", currentDrugOrders);
-							model.put("completedDrugOrders", discontinuedDrugOrders);
-							
 							List<RegimenSuggestion> standardRegimens = Context.getOrderService().getStandardRegimens();
 							if (standardRegimens != null)
 								model.put("standardRegimens", standardRegimens);
 						}
 						
-						if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_PROGRAMS)
-						        && Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_PATIENT_PROGRAMS)) {
-							model.put("patientPrograms", Context.getProgramWorkflowService().getPatientPrograms(p));
-							model.put("patientCurrentPrograms", Context.getProgramWorkflowService().getCurrentPrograms(p,
-							    null));
-						}
-						
 						model.put("patientId", patientId);
 						if (p != null) {
 							personId = p.getPatientId();
 							model.put("personId", personId);
 						}
-						
-						model.put("patientVariation", patientVariation);
 					}
 				}
 			}
@@ -288,27 +170,14 @@ public class PortletController implements Controller {
 			}
 			if (personId != null) {
 				if (!model.containsKey("person")) {
+					PatientSnapshot snapshot = PatientSnapshot.getSnapshot(request, personId);
 					Person p = (Person) model.get("patient");
 					if (p == null)
-						p = Context.getPersonService().getPerson(personId);
+						p = snapshot.getPerson();
 					model.put("person", p);
 					
-					if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_RELATIONSHIPS)) {
-						List<Relationship> relationships = new ArrayList<Relationship>();
-						relationships.addAll(Context.getPersonService().getRelationships(p, false));
-						Map<RelationshipType, List<Relationship>> relationshipsByType = new HashMap<RelationshipType, List<Relationship>>();
-						for (Relationship rel : relationships) {
-							List<Relationship> list = relationshipsByType.get(rel.getRelationshipType());
-							if (list == null) {
-								list = new ArrayList<Relationship>();
-								relationshipsByType.put(rel.getRelationshipType(), list);
-							}
-							list.add(rel);
-						}
-						
-						model.put("personRelationships", relationships);
-						model.put("personRelationshipsByType", relationshipsByType);
-					}
+					// relationships are loaded from the snapshot when the view asks for them
+					model.setPersonSnapshot(snapshot);
 				}
 			}
 			
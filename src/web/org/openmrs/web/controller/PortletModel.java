@@ -0,0 +1,149 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.controller;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.web.PatientSnapshot;
+
+/**
+ * The model given to portlet views. The patient and person data described in
+ * {@link PortletController#handleRequest} is not put into it up front: it is taken from a
+ * {@link PatientSnapshot} the first time a view (or a subclass's populateModel) gets it, so a
+ * portlet only causes the queries for what it actually shows. Values the user does not have the
+ * privilege to see are left out, just as they were when they were put in up front.
+ */
+public class PortletModel extends HashMap<String, Object> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final Set<String> PATIENT_KEYS = new HashSet<String>(Arrays.asList("patientEncounters",
+	    "patientObs", "patientWeight", "patientHeight", "patientBmi", "patientBmiAsString", "patientReasonForExit",
+	    "patientVariation", "patientDrugOrders", "currentDrugOrders", "completedDrugOrders", "patientPrograms",
+	    "patientCurrentPrograms"));
+	
+	private static final Set<String> PERSON_KEYS = new HashSet<String>(Arrays.asList("personRelationships",
+	    "personRelationshipsByType"));
+	
+	private transient PatientSnapshot patientSnapshot;
+	
+	private transient PatientSnapshot personSnapshot;
+	
+	/**
+	 * @param patientSnapshot where to get the patient data from
+	 */
+	public void setPatientSnapshot(PatientSnapshot patientSnapshot) {
+		this.patientSnapshot = patientSnapshot;
+	}
+	
+	/**
+	 * @param personSnapshot where to get the person data from
+	 */
+	public void setPersonSnapshot(PatientSnapshot personSnapshot) {
+		this.personSnapshot = personSnapshot;
+	}
+	
+	/**
+	 * @see java.util.HashMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return super.containsKey(key) || isAvailable(key);
+	}
+	
+	/**
+	 * @see java.util.HashMap#get(java.lang.Object)
+	 */
+	@Override
+	public Object get(Object key) {
+		if (!super.containsKey(key) && isAvailable(key))
+			put((String) key, load((String) key));
+		return super.get(key);
+	}
+	
+	/**
+	 * @param key
+	 * @return true if the value for the key can be loaded from a snapshot
+	 */
+	private boolean isAvailable(Object key) {
+		if (patientSnapshot != null && PATIENT_KEYS.contains(key)) {
+			if ("patientEncounters".equals(key))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_ENCOUNTERS);
+			if ("patientWeight".equals(key))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS) && patientSnapshot.getLatestWeight() != null;
+			if ("patientHeight".equals(key))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS) && patientSnapshot.getLatestHeight() != null;
+			if ("patientBmi".equals(key))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS) && patientSnapshot.getBmi() != null;
+			if ("patientBmiAsString".equals(key))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS);
+			if (((String) key).endsWith("DrugOrders"))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_ORDERS);
+			if (((String) key).endsWith("Programs"))
+				return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_PROGRAMS)
+				        && Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_PATIENT_PROGRAMS);
+			return true;
+		}
+		if (personSnapshot != null && PERSON_KEYS.contains(key))
+			return Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_RELATIONSHIPS);
+		return false;
+	}
+	
+	/**
+	 * @param key one of the keys that {@link #isAvailable(Object)}
+	 * @return the value for the key
+	 */
+	private Object load(String key) {
+		if ("patientEncounters".equals(key))
+			return patientSnapshot.getEncounters();
+		if ("patientObs".equals(key)) {
+			if (Context.hasPrivilege(OpenmrsConstants.PRIV_VIEW_OBS))
+				return patientSnapshot.getObs();
+			return new HashSet<Obs>();
+		}
+		if ("patientWeight".equals(key))
+			return patientSnapshot.getLatestWeight();
+		if ("patientHeight".equals(key))
+			return patientSnapshot.getLatestHeight();
+		if ("patientBmi".equals(key))
+			return patientSnapshot.getBmi();
+		if ("patientBmiAsString".equals(key))
+			return patientSnapshot.getBmiAsString();
+		if ("patientReasonForExit".equals(key))
+			return patientSnapshot.getReasonForExit();
+		if ("patientVariation".equals(key))
+			return patientSnapshot.isExited() ? "Exited" : "";
+		if ("patientDrugOrders".equals(key))
+			return patientSnapshot.getDrugOrders();
+		if ("currentDrugOrders".equals(key))
+			return patientSnapshot.getCurrentDrugOrders();
+		if ("completedDrugOrders".equals(key))
+			return patientSnapshot.getCompletedDrugOrders();
+		if ("patientPrograms".equals(key))
+			return patientSnapshot.getPatientPrograms();
+		if ("patientCurrentPrograms".equals(key))
+			return patientSnapshot.getCurrentPrograms();
+		if ("personRelationships".equals(key))
+			return personSnapshot.getRelationships();
+		if ("personRelationshipsByType".equals(key))
+			return personSnapshot.getRelationshipsByType();
+		throw new IllegalArgumentException("Nothing to load for " + key);
+	}
+}
@@ -13,7 +13,6 @@
  */
 package org.openmrs.web.controller.patient;
 
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +35,7 @@ import org.openmrs.PersonName;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.web.PatientSnapshot;
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.validation.Errors;
 import org.springframework.web.servlet.mvc.SimpleFormController;
@@ -97,6 +97,10 @@ public class PatientDashboardController extends SimpleFormController {
 		
 		log.debug("patient: '" + patient + "'");
 		
+		// shared with the portlets on the dashboard, so they don't load any of this again
+		PatientSnapshot snapshot = PatientSnapshot.getSnapshot(request, patient.getPatientId());
+		snapshot.setPatient(patient);
+		
 		List<Form> forms = new Vector<Form>();
 		Map<String, Object> map = new HashMap<String, Object>();
 		List<Encounter> encounters = new Vector<Encounter>();
@@ -108,7 +112,7 @@ public class PatientDashboardController extends SimpleFormController {
 				onlyPublishedForms = false;
 			forms.addAll(Context.getFormService().getForms(onlyPublishedForms));
 			
-			List<Encounter> encs = Context.getEncounterService().getEncounters(patient);
+			List<Encounter> encs = snapshot.getEncounters();
 			if (encs != null && encs.size() > 0)
 				encounters.addAll(encs);
 			
@@ -116,7 +120,7 @@ public class PatientDashboardController extends SimpleFormController {
 			Concept conceptCause = Context.getConceptService().getConceptByIdOrName(propCause);
 			
 			if (conceptCause != null) {
-				Set<Obs> obssDeath = Context.getObsService().getObservations(patient, conceptCause, false);
+				Set<Obs> obssDeath = snapshot.getObs(conceptCause);
 				if (obssDeath.size() == 1) {
 					Obs obsDeath = obssDeath.iterator().next();
 					causeOfDeathOther = obsDeath.getValueText();
@@ -135,25 +139,8 @@ public class PatientDashboardController extends SimpleFormController {
 		}
 		
 		String patientVariation = "";
-		
-		Concept reasonForExitConcept = Context.getConceptService().getConceptByIdOrName(
-		    Context.getAdministrationService().getGlobalProperty("concept.reasonExitedCare"));
-		if (reasonForExitConcept != null) {
-			Set<Obs> patientExitObs = Context.getObsService().getObservations(patient, reasonForExitConcept, false);
-			if (patientExitObs != null) {
-				log.debug("Exit obs is size " + patientExitObs.size());
-				if (patientExitObs.size() == 1) {
-					Obs exitObs = patientExitObs.iterator().next();
-					Concept exitReason = exitObs.getValueCoded();
-					Date exitDate = exitObs.getObsDatetime();
-					if (exitReason != null && exitDate != null) {
-						patientVariation = "Exited";
-					}
-				} else if (patientExitObs.size() > 1) {
-					log.error("Too many reasons for exit - not putting data into model");
-				}
-			}
-		}
+		if (snapshot.isExited())
+			patientVariation = "Exited";
 		
 		map.put("patientVariation", patientVariation);
 		
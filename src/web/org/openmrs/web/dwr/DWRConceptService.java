@@ -165,6 +165,7 @@ public class DWRConceptService {
 				objectList = new Vector<Object>(words.size());
 				int maxCount = 500;
 				int curCount = 0;
+				fetchConceptsForListing(words, maxCount);
 				
 				// turn words into concept list items
 				// if user wants drug concepts included, append those
@@ -208,6 +209,11 @@ public class DWRConceptService {
 		ConceptService cs = Context.getConceptService();
 		
 		List<Concept> concepts = cs.findProposedConcepts(text);
+		List<Integer> conceptIds = new Vector<Integer>();
+		for (Concept c : concepts)
+			conceptIds.add(c.getConceptId());
+		cs.getConceptsForListing(conceptIds);
+		
 		List<ConceptListItem> cli = new Vector<ConceptListItem>();
 		for (Concept c : concepts) {
 			ConceptName cn = c.getName(locale);
@@ -231,6 +237,8 @@ public class DWRConceptService {
 				drugAnswers.add(conceptAnswer.getAnswerDrug());
 		}
 		
+		fetchConceptsForListing(words, words.size());
+		
 		List<Object> items = new Vector<Object>();
 		for (ConceptWord word : words) {
 			items.add(new ConceptListItem(word));
@@ -284,6 +292,10 @@ public class DWRConceptService {
 		Concept concept = cs.getConcept(conceptId);
 		
 		List<Concept> concepts = cs.getQuestionsForAnswer(concept);
+		List<Integer> conceptIds = new Vector<Integer>();
+		for (Concept c : concepts)
+			conceptIds.add(c.getConceptId());
+		cs.getConceptsForListing(conceptIds);
 		
 		List<ConceptListItem> items = new Vector<ConceptListItem>();
 		for (Concept c : concepts) {
@@ -369,6 +381,12 @@ public class DWRConceptService {
 		Collection<ConceptAnswer> answers = c.getAnswers();
 		// TODO: deal with concept answers (e.g. drug) whose answer concept is null. (Not sure if this actually ever happens)
 		Locale locale = Context.getLocale();
+		List<Integer> conceptIds = new Vector<Integer>();
+		for (ConceptAnswer ca : answers)
+			if (ca.getAnswerConcept() != null)
+				conceptIds.add(ca.getAnswerConcept().getConceptId());
+		Context.getConceptService().getConceptsForListing(conceptIds);
+		
 		for (ConceptAnswer ca : answers)
 			if (ca.getAnswerConcept() != null) {
 				ConceptName cn = ca.getAnswerConcept().getName(locale);
@@ -377,4 +395,22 @@ public class DWRConceptService {
 		return ret;
 	}
 	
+	/**
+	 * Fetches the concepts of the first <code>max</code> words, with their names and descriptions,
+	 * in a couple of queries, so that making a ConceptListItem of each word does not query the
+	 * database several times per concept
+	 * 
+	 * @param words
+	 * @param max
+	 */
+	static void fetchConceptsForListing(List<ConceptWord> words, int max) {
+		List<Integer> conceptIds = new Vector<Integer>();
+		for (ConceptWord word : words) {
+			if (conceptIds.size() >= max)
+				break;
+			conceptIds.add(word.getConcept().getConceptId());
+		}
+		Context.getConceptService().getConceptsForListing(conceptIds);
+	}
+	
 }
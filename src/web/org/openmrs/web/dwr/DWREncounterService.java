@@ -19,6 +19,7 @@ import java.util.Vector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.Location;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.context.Context;
@@ -35,7 +36,7 @@ public class DWREncounterService {
 		
 		try {
 			EncounterService es = Context.getEncounterService();
-			List<Encounter> encs = new Vector<Encounter>();
+			List<EncounterListItem> encs = new Vector<EncounterListItem>();
 			
 			if (phrase == null) {
 				objectList.add("Search phrase cannot be null");
@@ -47,23 +48,22 @@ public class DWREncounterService {
 				Encounter e = es.getEncounter(Integer.valueOf(phrase));
 				if (e != null) {
 					if (!e.isVoided() || includeVoided == true)
-						encs.add(e);
+						encs.add(new EncounterListItem(e));
 				}
 			}
 			
 			if (phrase == null || phrase.equals("")) {
 				//TODO get all concepts for testing purposes?
 			} else {
-				encs.addAll(es.getEncountersByPatientIdentifier(phrase, includeVoided));
+				// only the columns shown are fetched, rather than whole encounters and patients
+				for (EncounterSearchResult result : es.getEncountersForListing(phrase))
+					encs.add(new EncounterListItem(result));
 			}
 			
 			if (encs.size() == 0) {
 				objectList.add("No matches found for <b>" + phrase + "</b>");
 			} else {
-				objectList = new Vector<Object>(encs.size());
-				for (Encounter e : encs) {
-					objectList.add(new EncounterListItem(e));
-				}
+				objectList = new Vector<Object>(encs);
 			}
 		}
 		catch (Exception e) {
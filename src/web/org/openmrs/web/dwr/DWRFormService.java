@@ -139,6 +139,7 @@ public class DWRFormService {
 		}
 		
 		List<ConceptWord> conceptWords = Context.getConceptService().findConcepts(txt, locale, false);
+		DWRConceptService.fetchConceptsForListing(conceptWords, conceptWords.size());
 		for (ConceptWord word : conceptWords) {
 			concept = word.getConcept();
 			for (Field field : Context.getFormService().findFields(concept)) {
@@ -17,7 +17,6 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Set;
 import java.util.Vector;
 
 import javax.servlet.http.HttpServletRequest;
@@ -74,11 +73,8 @@ public class DWRObsService {
 		try {
 			Encounter encounter = Context.getEncounterService().getEncounter(encounterId);
 			
-			Set<Obs> observations = encounter.getAllObs();
-			if (observations != null)
-				for (Obs obs : observations) {
-					obsList.add(new ObsListItem(obs, request.getLocale()));
-				}
+			for (Obs obs : Context.getObsService().getObservationsForListing(null, null, encounter))
+				obsList.add(new ObsListItem(obs, request.getLocale()));
 			
 		}
 		catch (Exception e) {
@@ -272,13 +268,13 @@ public class DWRObsService {
 		
 		if (p != null && c != null) {
 			log.debug("Getting obss with patient and concept");
-			obss = Context.getObsService().getObservationsByPersonAndConcept(p, c);
+			obss = Context.getObsService().getObservationsForListing(p, c, null);
 		} else if (e != null) {
 			log.debug("Getting obss by encounter");
-			obss = e.getAllObs();
+			obss = Context.getObsService().getObservationsForListing(null, null, e);
 		} else if (p != null) {
 			log.debug("Getting obss with just patient");
-			obss = Context.getObsService().getObservationsByPerson(p);
+			obss = Context.getObsService().getObservationsForListing(p, null, null);
 		}
 		
 		if (obss != null) {
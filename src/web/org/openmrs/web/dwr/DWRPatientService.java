@@ -27,6 +27,7 @@ import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PatientSearchResult;
 import org.openmrs.PersonAddress;
 import org.openmrs.Tribe;
 import org.openmrs.api.APIAuthenticationException;
@@ -55,9 +56,9 @@ public class DWRPatientService {
 	
 	/**
 	 * Search on the <code>searchValue</code>. If a number is in the search string, do an identifier
-	 * search. Else, do a name search
+	 * search. Else, do a name search. Only close matches are listed after a note saying so.
 	 * 
-	 * @see PatientService#getPatients(String)
+	 * @see PatientService#getPatientSearchResults(String)
 	 * @param searchValue string to be looked for
 	 * @param includeVoided true/false whether or not to included voided patients
 	 * @return Collection<Object> of PatientListItem or String
@@ -74,46 +75,30 @@ public class DWRPatientService {
 		List<Object> patientList = new Vector<Object>();
 		
 		PatientService ps = Context.getPatientService();
-		Collection<Patient> patients;
+		List<PatientSearchResult> results;
 		
 		try {
-			patients = ps.getPatients(searchValue);
+			results = ps.getPatientSearchResults(searchValue);
 		}
 		catch (APIAuthenticationException e) {
 			patientList.add("Error while attempting to find patients - " + e.getMessage());
 			return patientList;
 		}
 		
-		patientList = new Vector<Object>(patients.size());
-		for (Patient p : patients)
-			patientList.add(new PatientListItem(p));
-		
-		// if only 2 results found and a number was not in the
-		// search, then do a decapitated search: trim each word
-		// down to the first three characters and search again
-		if (patientList.size() < 3 && !searchValue.matches(".*\\d+.*")) {
-			String[] names = searchValue.split(" ");
-			String newSearch = "";
-			for (String name : names) {
-				if (name.length() > 3)
-					name = name.substring(0, 4);
-				newSearch += " " + name;
-			}
-			
-			newSearch = newSearch.trim();
-			Collection<Patient> newPatients = ps.getPatients(newSearch);
-			newPatients.removeAll(patients); // remove the potential first two patients from these hits
-			if (newPatients.size() > 0) {
-				patientList.add("Minimal patients returned. Results for <b>" + newSearch + "</b>");
-				for (Patient p : newPatients) {
-					PatientListItem pi = new PatientListItem(p);
-					patientList.add(pi);
-				}
+		patientList = new Vector<Object>(results.size() + 1);
+		boolean closeMatches = false;
+		for (PatientSearchResult result : results) {
+			// the service puts the close matches after the rest
+			if (result.isCloseMatch() && !closeMatches) {
+				patientList.add("Minimal patients returned. Similar results for <b>" + searchValue + "</b>");
+				closeMatches = true;
 			}
+			patientList.add(new PatientListItem(result));
 		}
+		
 		//no results found and a number was in the search --
 		//should check whether the check digit is correct.
-		else if (patientList.size() == 0 && searchValue.matches(".*\\d+.*")) {
+		if (patientList.size() == 0 && searchValue.matches(".*\\d+.*")) {
 			
 			//Looks through all the patient identifier validators to see if this type of identifier
 			//is supported for any of them.  If it isn't, then no need to warn about a bad check
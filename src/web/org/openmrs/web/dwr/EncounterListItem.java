@@ -18,6 +18,7 @@ import java.util.Date;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.PersonName;
 import org.openmrs.util.Format;
 
@@ -52,16 +53,7 @@ public class EncounterListItem {
 			encounterId = encounter.getEncounterId();
 			encounterDateTime = encounter.getEncounterDatetime();
 			encounterDateString = Format.format(encounter.getEncounterDatetime());
-			PersonName pn = encounter.getPatient().getPersonName();
-			if (pn != null) {
-				PersonName = "";
-				if (pn.getGivenName() != null)
-					PersonName += pn.getGivenName();
-				if (pn.getMiddleName() != null)
-					PersonName += " " + pn.getMiddleName();
-				if (pn.getFamilyName() != null)
-					PersonName += " " + pn.getFamilyName();
-			}
+			PersonName = formatName(encounter.getPatient().getPersonName());
 			if (encounter.getProvider() != null)
 				providerName = encounter.getProvider().getPersonName().toString();
 			if (encounter.getLocation() != null)
@@ -74,6 +66,42 @@ public class EncounterListItem {
 		}
 	}
 	
+	/**
+	 * Creates a list item from the columns fetched for it, without needing the encounter to be
+	 * loaded
+	 * 
+	 * @param result one of the results of
+	 *            {@link org.openmrs.api.EncounterService#getEncountersForListing(String)}
+	 */
+	public EncounterListItem(EncounterSearchResult result) {
+		encounterId = result.getEncounterId();
+		encounterDateTime = result.getEncounterDatetime();
+		encounterDateString = Format.format(encounterDateTime);
+		encounterType = result.getEncounterType();
+		location = result.getLocation();
+		formName = result.getForm();
+		PersonName = formatName(result.getPatientName());
+		if (result.getProviderName() != null)
+			providerName = result.getProviderName().toString();
+	}
+	
+	/**
+	 * @param pn
+	 * @return the given, middle and family names, or null if there is no name
+	 */
+	private static String formatName(PersonName pn) {
+		if (pn == null)
+			return null;
+		String name = "";
+		if (pn.getGivenName() != null)
+			name += pn.getGivenName();
+		if (pn.getMiddleName() != null)
+			name += " " + pn.getMiddleName();
+		if (pn.getFamilyName() != null)
+			name += " " + pn.getFamilyName();
+		return name;
+	}
+	
 	public Integer getEncounterId() {
 		return encounterId;
 	}
@@ -17,6 +17,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientSearchResult;
 
 public class PatientListItem extends PersonListItem {
 	
@@ -61,6 +62,42 @@ public class PatientListItem extends PersonListItem {
 		}
 	}
 	
+	/**
+	 * Creates a list item from a search result without needing the patient to be loaded
+	 * 
+	 * @param result the patient found by a search
+	 */
+	public PatientListItem(PatientSearchResult result) {
+		super(result.getPatientId());
+		
+		patientId = result.getPatientId();
+		setGivenName(result.getGivenName());
+		setMiddleName(result.getMiddleName());
+		setFamilyName(result.getFamilyName());
+		String otherNames = "";
+		for (String name : result.getOtherNames()) {
+			if (otherNames != "")
+				otherNames += ",";
+			otherNames += " " + name;
+		}
+		setOtherNames(otherNames);
+		setGender(result.getGender());
+		setBirthdate(result.getBirthdate());
+		setBirthdateEstimated(result.getBirthdateEstimated());
+		getAttributes().putAll(result.getAttributes());
+		
+		if (result.getIdentifier() != null) {
+			identifier = result.getIdentifier();
+			identifierCheckDigit = result.getIdentifierCheckDigit();
+		}
+		for (String otherIdentifier : result.getOtherIdentifiers()) {
+			if (otherIdentifiers != "")
+				otherIdentifiers += ",";
+			otherIdentifiers += " " + otherIdentifier;
+		}
+		tribe = result.getTribe();
+	}
+	
 	public boolean equals(Object obj) {
 		if (obj instanceof PatientListItem) {
 			PatientListItem pi = (PatientListItem) obj;
@@ -80,8 +80,7 @@ public class GZIPFilter extends OncePerRequestFilter {
 	 * Returns global property gzip.enabled as boolean
 	 */
 	private boolean isGZIPEnabled() {
-		String gzipEnabled = Context.getAdministrationService().getGlobalProperty(
-		    OpenmrsConstants.GLOBAL_PROPERTY_GZIP_ENABLED, "");
-		return gzipEnabled.toLowerCase().equals("true");
+		return Context.getAdministrationService().getGlobalPropertyValue(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_ENABLED,
+		    Boolean.FALSE);
 	}
 }
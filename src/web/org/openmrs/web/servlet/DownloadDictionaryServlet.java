@@ -13,11 +13,12 @@
  */
 package org.openmrs.web.servlet;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Locale;
 
 import javax.servlet.ServletException;
@@ -65,16 +66,15 @@ public class DownloadDictionaryServlet extends HttpServlet {
 			response.setHeader("Content-Type", "text/csv;charset=UTF-8");
 			response.setHeader("Content-Disposition", "attachment; filename=conceptDictionary" + s + ".csv");
 			
-			String line = "Concept Id,Name,Description,Synonyms,Answers,Class,Datatype,Changed By,Creator\n";
-			response.getWriter().write(line);
+			// written straight through to the response as the concepts are read
+			Writer out = new BufferedWriter(response.getWriter());
+			out.write("Concept Id,Name,Description,Synonyms,Answers,Class,Datatype,Changed By,Creator\n");
 			
-			int listIndex = 0;
 			Iterator<Concept> conceptIterator = cs.conceptIterator();
 			while (conceptIterator.hasNext()) {
 				Concept c = conceptIterator.next();
 				if (c.isRetired() == false) {
 					
-					line = c.getConceptId() + ",";
 					String name, description;
 					ConceptName cn = c.getName(locale);
 					if (cn == null)
@@ -87,58 +87,58 @@ public class DownloadDictionaryServlet extends HttpServlet {
 						description = "";
 					else
 						description = cd.getDescription();
-					
-					line += '"' + name.replace("\"", "\"\"") + "\",";
-					
 					if (description == null)
 						description = "";
-					line = line + '"' + description.replace("\"", "\"\"") + "\",";
 					
-					String tmp = "";
+					out.write(c.getConceptId() + ",");
+					writeColumn(out, name.replace("\"", "\"\""), ",");
+					writeColumn(out, description.replace("\"", "\"\""), ",");
+					
+					StringBuilder tmp = new StringBuilder();
 					for (ConceptName syn : c.getNames()) {
-						tmp += syn + "\n";
+						tmp.append(syn).append("\n");
 					}
-					line += '"' + tmp.trim() + "\",";
+					writeColumn(out, tmp.toString().trim(), ",");
 					
-					tmp = "";
+					tmp = new StringBuilder();
 					for (ConceptAnswer answer : c.getAnswers()) {
 						if (answer.getAnswerConcept() != null)
-							tmp += answer.getAnswerConcept().getName() + "\n";
+							tmp.append(answer.getAnswerConcept().getName()).append("\n");
 						else if (answer.getAnswerDrug() != null)
-							tmp += answer.getAnswerDrug().getFullName(Context.getLocale()) + "\n";
+							tmp.append(answer.getAnswerDrug().getFullName(Context.getLocale())).append("\n");
 					}
-					line += '"' + tmp.trim() + "\",";
-					
-					line += '"';
-					if (c.getConceptClass() != null)
-						line += c.getConceptClass().getName();
-					line += "\",";
-					
-					line += '"';
-					if (c.getDatatype() != null)
-						line += c.getDatatype().getName();
-					line += "\",";
-					
-					line += '"';
-					if (c.getChangedBy() != null)
-						line += c.getChangedBy().getPersonName();
-					line += "\",";
+					writeColumn(out, tmp.toString().trim(), ",");
 					
-					line += '"';
-					if (c.getCreator() != null)
-						line += c.getCreator().getPersonName();
-					line += "\"\n";
-					
-					response.getWriter().write(line);
+					writeColumn(out, c.getConceptClass() == null ? null : c.getConceptClass().getName(), ",");
+					writeColumn(out, c.getDatatype() == null ? null : c.getDatatype().getName(), ",");
+					writeColumn(out, c.getChangedBy() == null ? null : c.getChangedBy().getPersonName(), ",");
+					writeColumn(out, c.getCreator() == null ? null : c.getCreator().getPersonName(), "\n");
 				}
 				
 			}
+			out.flush();
 		}
 		catch (Throwable t) {
 			log.error("Error while downloading concepts.", t);
 		}
 	}
 	
+	/**
+	 * Writes one quoted column of the csv file
+	 * 
+	 * @param out
+	 * @param value the value, already escaped, which may be null
+	 * @param delimiter what to write after the column
+	 * @throws IOException
+	 */
+	private void writeColumn(Writer out, Object value, String delimiter) throws IOException {
+		out.write('"');
+		if (value != null)
+			out.write(String.valueOf(value));
+		out.write('"');
+		out.write(delimiter);
+	}
+	
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		doGet(request, response);
 	}
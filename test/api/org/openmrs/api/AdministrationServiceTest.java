@@ -20,9 +20,11 @@ import static org.junit.Assert.fail;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.GlobalProperty;
 import org.openmrs.ImplementationId;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
 
 /**
  * TODO clean up and finish this test class. Should test all methods in the
@@ -187,4 +189,48 @@ public class AdministrationServiceTest extends BaseContextSensitiveTest {
 		Assert.assertEquals("default", value);
 	}
 	
+	/**
+	 * @see {@link AdministrationService#getGlobalPropertyValue(String,Object)}
+	 */
+	@Test
+	@Verifies(value = "should convert property value to the type of the default value", method = "getGlobalPropertyValue(String,Object)")
+	public void getGlobalPropertyValue_shouldConvertPropertyValueToTheTypeOfTheDefaultValue() throws Exception {
+		adminService.saveGlobalProperty(new GlobalProperty("test.integer", " 250 "));
+		adminService.saveGlobalProperty(new GlobalProperty("test.boolean", "TRUE"));
+		
+		Assert.assertEquals(Integer.valueOf(250), adminService.getGlobalPropertyValue("test.integer", 1000));
+		Assert.assertEquals(Double.valueOf(250), adminService.getGlobalPropertyValue("test.integer", 1.5));
+		Assert.assertEquals(Boolean.TRUE, adminService.getGlobalPropertyValue("test.boolean", false));
+		Assert.assertEquals("250", adminService.getGlobalPropertyValue("test.integer", ""));
+	}
+	
+	/**
+	 * @see {@link AdministrationService#getGlobalPropertyValue(String,Object)}
+	 */
+	@Test
+	@Verifies(value = "should return default value if property value cannot be converted", method = "getGlobalPropertyValue(String,Object)")
+	public void getGlobalPropertyValue_shouldReturnDefaultValueIfPropertyValueCannotBeConverted() throws Exception {
+		adminService.saveGlobalProperty(new GlobalProperty("test.integer", "many"));
+		Assert.assertEquals(Integer.valueOf(1000), adminService.getGlobalPropertyValue("test.integer", 1000));
+		Assert.assertEquals(Integer.valueOf(5), adminService.getGlobalPropertyValue("asdfasdf", 5));
+	}
+	
+	/**
+	 * @see {@link AdministrationService#saveGlobalProperty(GlobalProperty)}
+	 */
+	@Test
+	@Verifies(value = "should change the value returned by cached lookups", method = "saveGlobalProperty(GlobalProperty)")
+	public void saveGlobalProperty_shouldChangeTheValueReturnedByCachedLookups() throws Exception {
+		adminService.saveGlobalProperty(new GlobalProperty("test.integer", "1"));
+		Assert.assertEquals(Integer.valueOf(1), adminService.getGlobalPropertyValue("test.integer", 1000));
+		
+		adminService.saveGlobalProperty(new GlobalProperty("test.integer", "2"));
+		Assert.assertEquals("2", adminService.getGlobalProperty("test.integer"));
+		Assert.assertEquals(Integer.valueOf(2), adminService.getGlobalPropertyValue("test.integer", 1000));
+		
+		adminService.purgeGlobalProperty(adminService.getGlobalPropertyObject("test.integer"));
+		Assert.assertNull(adminService.getGlobalProperty("test.integer"));
+		Assert.assertEquals(Integer.valueOf(1000), adminService.getGlobalPropertyValue("test.integer", 1000));
+	}
+	
 }
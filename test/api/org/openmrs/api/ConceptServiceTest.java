@@ -297,4 +297,47 @@ public class ConceptServiceTest extends BaseContextSensitiveTest {
 		Assert.assertNull(concept);
 	}
 	
+	/**
+	 * @see {@link ConceptService#updateConceptWord(Concept)}
+	 */
+	@Test
+	@Verifies(value = "should replace the words of a renamed name", method = "updateConceptWord(Concept)")
+	public void updateConceptWord_shouldReplaceTheWordsOfARenamedName() throws Exception {
+		executeDataSet("org/openmrs/api/include/ConceptServiceTest-words.xml");
+		Concept concept = conceptService.getConcept(5497);
+		for (ConceptName name : concept.getNames()) {
+			if (name.getConceptNameId() == 1847)
+				name.setName("CD4 TALLY");
+		}
+		
+		conceptService.updateConceptWord(concept);
+		
+		Assert.assertEquals(1, countConceptWords(1847, "CD4"));
+		Assert.assertEquals(1, countConceptWords(1847, "TALLY"));
+		Assert.assertEquals(0, countConceptWords(1847, "COUNT"));
+		Assert.assertEquals(1, countConceptWords(2704, "ABS"));
+	}
+	
+	/**
+	 * @see {@link ConceptService#updateConceptWords(Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should update the words of the concepts in the range", method = "updateConceptWords(Integer,Integer)")
+	public void updateConceptWords_shouldUpdateTheWordsOfTheConceptsInTheRange() throws Exception {
+		executeDataSet("org/openmrs/api/include/ConceptServiceTest-words.xml");
+		Assert.assertEquals(0, countConceptWords(2458, "CD4"));
+		
+		conceptService.updateConceptWords(5497, 5497);
+		
+		Assert.assertEquals(1, countConceptWords(2458, "CD4"));
+		Assert.assertEquals(1, countConceptWords(2707, "CD4"));
+		Assert.assertEquals(1, countConceptWords(1847, "COUNT"));
+	}
+	
+	private int countConceptWords(int conceptNameId, String word) {
+		List<List<Object>> rows = Context.getAdministrationService().executeSQL(
+		    "select count(*) from concept_word where concept_name_id = " + conceptNameId + " and word = '" + word + "'",
+		    true);
+		return ((Number) rows.get(0).get(0)).intValue();
+	}
 }
@@ -31,6 +31,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
 import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
@@ -647,6 +648,31 @@ public class EncounterServiceTest extends BaseContextSensitiveTest {
 		Context.getEncounterService().getEncountersByPatientIdentifier(null);
 	}
 	
+	/**
+	 * Make sure {@link EncounterService#getEncountersForListing(String)} returns the same encounters
+	 * as {@link EncounterService#getEncountersByPatientIdentifier(String)}, newest first, with the
+	 * names filled in
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldGetListingRowsForEncountersByPatientIdentifier() throws Exception {
+		List<EncounterSearchResult> results = Context.getEncounterService().getEncountersForListing("6TS-4");
+		assertEquals(3, results.size());
+		assertEquals(5, results.get(0).getEncounterId().intValue());
+		assertEquals(4, results.get(1).getEncounterId().intValue());
+		assertEquals(3, results.get(2).getEncounterId().intValue());
+		
+		Encounter encounter = Context.getEncounterService().getEncounter(5);
+		EncounterSearchResult result = results.get(0);
+		assertEquals(encounter.getEncounterDatetime(), result.getEncounterDatetime());
+		assertEquals(encounter.getEncounterType().getName(), result.getEncounterType());
+		assertEquals(encounter.getLocation().getName(), result.getLocation());
+		assertEquals(encounter.getForm().getName(), result.getForm());
+		assertEquals(encounter.getPatient().getPersonName(), result.getPatientName());
+		assertEquals(encounter.getProvider().getPersonName(), result.getProviderName());
+	}
+	
 	/**
 	 * Make sure {@link EncounterService#voidEncounter(Encounter, String)} marks all the voided
 	 * stuff correctly
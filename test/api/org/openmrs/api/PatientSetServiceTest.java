@@ -27,7 +27,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Cohort;
 import org.openmrs.DrugOrder;
+import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Obs;
 import org.openmrs.Person;
@@ -36,6 +39,7 @@ import org.openmrs.api.PatientSetService.TimeModifier;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
 
 /**
  *
@@ -46,6 +50,8 @@ public class PatientSetServiceTest extends BaseContextSensitiveTest {
 
 	protected static final String EXTRA_DATA_XML = "org/openmrs/api/include/PatientSetServiceTest-extraData.xml";
 	
+	protected static final String ENCOUNTERS_BY_FORM_XML = "org/openmrs/api/include/PatientSetServiceTest-encountersByForm.xml";
+	
 	@Before
 	public void getService() {
 		service = Context.getPatientSetService();
@@ -124,5 +130,27 @@ public class PatientSetServiceTest extends BaseContextSensitiveTest {
     	Cohort withTwoTypes = service.getPatientsHavingEncounters(list, null, null, null, null, null, null);
     	Assert.assertEquals(2, withTwoTypes.size());
     }
+	
+	/**
+	 * @see {@link PatientSetService#getEncountersByForm(Cohort,List<QForm;>)}
+	 */
+	@Test
+	@Verifies(value = "should keep the order of the encounters across chunks of patients", method = "getEncountersByForm(Cohort,List<QForm;>)")
+	public void getEncountersByForm_shouldKeepTheOrderOfTheEncountersAcrossChunksOfPatients() throws Exception {
+		executeDataSet(ENCOUNTERS_BY_FORM_XML);
+		// one patient per query
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE, "1"));
+		
+		List<Form> forms = new ArrayList<Form>();
+		forms.add(new Form(1));
+		List<Encounter> encounters = service.getEncountersByForm(new Cohort("2,6,7,8"), forms);
+		
+		// highest patient id first, then latest encounter first
+		int[] expected = { 1004, 1002, 5, 4, 3, 1003, 1001 };
+		Assert.assertEquals(expected.length, encounters.size());
+		for (int i = 0; i < expected.length; i++)
+			Assert.assertEquals(expected[i], encounters.get(i).getEncounterId().intValue());
+	}
 
 }
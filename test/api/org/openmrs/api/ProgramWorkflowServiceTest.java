@@ -15,12 +15,15 @@ package org.openmrs.api;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import org.hibernate.SessionFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.PatientProgram;
@@ -31,6 +34,7 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.TestUtil;
+import org.openmrs.test.Verifies;
 
 /**
  * This class tests methods in the PatientService class TODO Add methods to test all methods in
@@ -168,6 +172,123 @@ public class ProgramWorkflowServiceTest extends BaseContextSensitiveTest {
 		TestUtil.assertCollectionContentsEquals(Arrays.asList(new String[] { "SINGLE", "MARRIED" }), names);
 	}
 	
+	/**
+	 * @see {@link ProgramWorkflowService#saveProgram(Program)}
+	 */
+	@Test
+	@Verifies(value = "should show a new workflow and state once read again", method = "saveProgram(Program)")
+	public void saveProgram_shouldShowANewWorkflowAndStateOnceReadAgain() throws Exception {
+		Program program = pws.getProgram(2);
+		int workflowsBefore = program.getAllWorkflows().size();
+		addWorkflow(program);
+		pws.saveProgram(program);
+		flushAndClearSession();
+		
+		program = pws.getProgram(2);
+		assertEquals(workflowsBefore + 1, program.getAllWorkflows().size());
+		ProgramWorkflow workflow = program.getWorkflowByName("CIVIL STATUS");
+		assertNotNull(workflow);
+		assertEquals(1, workflow.getStates().size());
+	}
+	
+	/**
+	 * @see {@link ProgramWorkflowService#saveProgram(Program)}
+	 */
+	@Test
+	@Verifies(value = "should show a retired state once read again", method = "saveProgram(Program)")
+	public void saveProgram_shouldShowARetiredStateOnceReadAgain() throws Exception {
+		Program program = pws.getProgram(1);
+		ProgramWorkflow workflow = getWorkflow(1);
+		workflow.retireState(workflow.getState(4));
+		pws.saveProgram(program);
+		flushAndClearSession();
+		
+		assertTrue(getWorkflow(1).getState(4).isRetired());
+	}
+	
+	/**
+	 * @see {@link ProgramWorkflowService#saveProgram(Program)}
+	 */
+	@Test
+	@Verifies(value = "should not show a removed state once read again", method = "saveProgram(Program)")
+	public void saveProgram_shouldNotShowARemovedStateOnceReadAgain() throws Exception {
+		Program program = pws.getProgram(2);
+		addWorkflow(program);
+		pws.saveProgram(program);
+		flushAndClearSession();
+		
+		program = pws.getProgram(2);
+		ProgramWorkflow workflow = program.getWorkflowByName("CIVIL STATUS");
+		workflow.removeState(workflow.getStates().iterator().next());
+		pws.saveProgram(program);
+		flushAndClearSession();
+		
+		assertTrue(pws.getProgram(2).getWorkflowByName("CIVIL STATUS").getStates().isEmpty());
+	}
+	
+	/**
+	 * @see {@link ProgramWorkflowService#purgeProgram(Program)}
+	 */
+	@Test
+	@Verifies(value = "should not find a purged program or its workflows once read again", method = "purgeProgram(Program)")
+	public void purgeProgram_shouldNotFindAPurgedProgramOrItsWorkflowsOnceReadAgain() throws Exception {
+		Program program = new Program();
+		program.setName("COUGH SYRUP");
+		program.setDescription("For testing");
+		program.setConcept(cs.getConcept(3));
+		ProgramWorkflow workflow = addWorkflow(program);
+		pws.saveProgram(program);
+		flushAndClearSession();
+		
+		Integer programId = program.getProgramId();
+		Integer workflowId = workflow.getProgramWorkflowId();
+		pws.purgeProgram(pws.getProgram(programId));
+		flushAndClearSession();
+		
+		assertNull(pws.getProgram(programId));
+		assertNull(getWorkflow(workflowId));
+	}
+	
+	/**
+	 * Adds a workflow with one state to the given program
+	 * 
+	 * @return the workflow
+	 */
+	private ProgramWorkflow addWorkflow(Program program) {
+		ProgramWorkflow workflow = new ProgramWorkflow();
+		workflow.setConcept(cs.getConcept(4));
+		program.addWorkflow(workflow);
+		
+		ProgramWorkflowState state = new ProgramWorkflowState();
+		state.setConcept(cs.getConcept(5));
+		state.setInitial(true);
+		state.setTerminal(false);
+		workflow.addState(state);
+		return workflow;
+	}
+	
+	/**
+	 * @param programWorkflowId
+	 * @return the workflow with the given id, from whichever program it belongs to
+	 */
+	private ProgramWorkflow getWorkflow(Integer programWorkflowId) {
+		for (Program program : pws.getAllPrograms())
+			for (ProgramWorkflow workflow : program.getAllWorkflows())
+				if (workflow.getProgramWorkflowId().equals(programWorkflowId))
+					return workflow;
+		return null;
+	}
+	
+	/**
+	 * Writes the changes made so far and empties the session, so that objects are read from the
+	 * second-level cache or the database again
+	 */
+	private void flushAndClearSession() {
+		SessionFactory sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+	}
+	
 	//	/**
 	//	 * This method should be uncommented when you want to examine the actual hibernate
 	//	 * sql calls being made.  The calls that should be limiting the number of returned
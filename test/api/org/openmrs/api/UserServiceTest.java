@@ -35,6 +35,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.SkipBaseSetup;
 import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
 import org.springframework.test.annotation.Rollback;
 
 /**
@@ -265,4 +266,30 @@ public class UserServiceTest extends BaseContextSensitiveTest {
 		Assert.assertTrue(users.contains(new Patient(5)));
 	}
 	
+	/**
+	 * @see {@link UserService#saveRole(Role)}
+	 */
+	@Test
+	@Verifies(value = "should give users the new privileges of the role straight away", method = "saveRole(Role)")
+	public void saveRole_shouldGiveUsersTheNewPrivilegesOfTheRoleStraightAway() throws Exception {
+		UserService us = Context.getUserService();
+		Privilege privilege = us.savePrivilege(new Privilege("Test privilege", "testing"));
+		
+		// work out the privileges of an anonymous user before the role changes
+		Context.getUserContext().logout();
+		Assert.assertFalse(Context.hasPrivilege("Test privilege"));
+		
+		Context.addProxyPrivilege(OpenmrsConstants.PRIV_MANAGE_ROLES);
+		try {
+			Role anonymous = us.getRole(OpenmrsConstants.ANONYMOUS_ROLE);
+			anonymous.addPrivilege(privilege);
+			us.saveRole(anonymous);
+		}
+		finally {
+			Context.removeProxyPrivilege(OpenmrsConstants.PRIV_MANAGE_ROLES);
+		}
+		
+		Assert.assertTrue(Context.hasPrivilege("Test privilege"));
+	}
+	
 }
@@ -0,0 +1,103 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times building concept_set_derived with {@link ConceptSetClosure} for a synthetic dictionary, both
+ * from scratch and after one member is added to a set. This is not run as part of the test suite.
+ * Run it with the api classes on the classpath:
+ * 
+ * <pre>
+ * java -Xmx512m -cp build org.openmrs.api.db.hibernate.ConceptSetClosureBenchmark [numberOfConcepts]
+ * </pre>
+ */
+public class ConceptSetClosureBenchmark {
+	
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) {
+		int concepts = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		
+		// one concept in twenty is a set of 2-30 members; about one member in twelve is a set with a
+		// higher id, so the hierarchy is many levels deep, and a few point anywhere to make cycles
+		Random random = new Random(1);
+		ConceptSetClosure closure = new ConceptSetClosure();
+		int sets = 0, rows = 0;
+		for (int setId = 1; setId <= concepts; setId += 20) {
+			sets++;
+			int size = 2 + random.nextInt(29);
+			for (int i = 0; i < size; i++) {
+				int memberId;
+				if (random.nextInt(5000) == 0)
+					memberId = 1 + 20 * random.nextInt(concepts / 20);
+				else if (random.nextInt(12) == 0)
+					memberId = setId + 20 * (1 + random.nextInt(10));
+				else
+					memberId = setId + 1 + random.nextInt(19);
+				closure.addMember(setId, memberId, (double) i);
+				rows++;
+			}
+		}
+		
+		// warm up
+		Map<Integer, Map<Integer, Double>> derived = null;
+		for (int i = 0; i < ROUNDS; i++)
+			derived = rebuild(closure);
+		
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++)
+			derived = rebuild(closure);
+		long fullTime = System.nanoTime() - start;
+		
+		int derivedRows = 0;
+		for (Map<Integer, Double> members : derived.values())
+			derivedRows += members.size();
+		
+		// add a new concept to a set deep in the hierarchy and update only the sets that contain it
+		int changedSet = 1 + 20 * (sets / 2);
+		while (closure.getAncestors(changedSet).isEmpty() && changedSet + 20 <= concepts)
+			changedSet += 20;
+		closure.addMember(changedSet, concepts + 1, 99.0);
+		start = System.nanoTime();
+		Set<Integer> affected = closure.getAncestors(changedSet);
+		affected.add(changedSet);
+		int changes = 0;
+		for (Integer setId : affected) {
+			ConceptSetClosure.Delta delta = closure.getDelta(setId, derived.get(setId));
+			changes += delta.getInserts().size() + delta.getUpdates().size() + delta.getDeletes().size();
+		}
+		long deltaTime = System.nanoTime() - start;
+		
+		System.out.println("Concepts: " + concepts + ", sets: " + sets + ", concept_set rows: " + rows
+		        + ", concept_set_derived rows: " + derivedRows + ", sets containing themselves: "
+		        + closure.getCyclicSets().size());
+		System.out.println("Full rebuild: " + (fullTime / ROUNDS / 1000000) + " ms");
+		System.out.println("Adding one member: " + affected.size() + " sets checked, " + changes + " rows changed, "
+		        + (deltaTime / 1000) + " us");
+	}
+	
+	private static Map<Integer, Map<Integer, Double>> rebuild(ConceptSetClosure closure) {
+		Map<Integer, Map<Integer, Double>> derived = new HashMap<Integer, Map<Integer, Double>>();
+		for (Integer setId : closure.getSetIds()) {
+			ConceptSetClosure.Delta delta = closure.getDelta(setId, new HashMap<Integer, Double>());
+			derived.put(setId, delta.getInserts());
+		}
+		return derived;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link ConceptSetClosure} class
+ */
+public class ConceptSetClosureTest {
+	
+	/**
+	 * @see {@link ConceptSetClosure#getDescendants(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should find members nested to any depth", method = "getDescendants(Integer)")
+	public void getDescendants_shouldFindMembersNestedToAnyDepth() throws Exception {
+		ConceptSetClosure closure = new ConceptSetClosure();
+		for (int i = 1; i < 10; i++)
+			closure.addMember(i, i + 1, (double) i);
+		
+		Map<Integer, Double> descendants = closure.getDescendants(1);
+		Assert.assertEquals(9, descendants.size());
+		Assert.assertEquals(9.0, descendants.get(10));
+		Assert.assertTrue(closure.getCyclicSets().isEmpty());
+	}
+	
+	/**
+	 * @see {@link ConceptSetClosure#getDescendants(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should use the sort weight of the nearest membership", method = "getDescendants(Integer)")
+	public void getDescendants_shouldUseTheSortWeightOfTheNearestMembership() throws Exception {
+		ConceptSetClosure closure = new ConceptSetClosure();
+		closure.addMember(1, 2, 1.0);
+		closure.addMember(1, 3, 2.0);
+		closure.addMember(2, 3, 5.0);
+		
+		Assert.assertEquals(2.0, closure.getDescendants(1).get(3));
+	}
+	
+	/**
+	 * @see {@link ConceptSetClosure#getDescendants(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should stop at and record sets that contain themselves", method = "getDescendants(Integer)")
+	public void getDescendants_shouldStopAtAndRecordSetsThatContainThemselves() throws Exception {
+		ConceptSetClosure closure = new ConceptSetClosure();
+		closure.addMember(1, 2, 1.0);
+		closure.addMember(2, 3, 1.0);
+		closure.addMember(3, 1, 1.0);
+		closure.addMember(3, 4, 2.0);
+		
+		Map<Integer, Double> descendants = closure.getDescendants(1);
+		Assert.assertEquals(3, descendants.size());
+		Assert.assertFalse(descendants.containsKey(1));
+		Assert.assertTrue(closure.getCyclicSets().contains(1));
+	}
+	
+	/**
+	 * @see {@link ConceptSetClosure#getAncestors(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should find every set containing the concept", method = "getAncestors(Integer)")
+	public void getAncestors_shouldFindEverySetContainingTheConcept() throws Exception {
+		ConceptSetClosure closure = new ConceptSetClosure();
+		closure.addMember(1, 2, null);
+		closure.addMember(2, 3, null);
+		closure.addMember(5, 3, null);
+		closure.addMember(3, 4, null);
+		closure.addMember(4, 3, null);
+		
+		Assert.assertEquals(4, closure.getAncestors(3).size());
+		Assert.assertFalse(closure.getAncestors(3).contains(3));
+	}
+	
+	/**
+	 * @see {@link ConceptSetClosure#getDelta(Integer,Map)}
+	 */
+	@Test
+	@Verifies(value = "should only return rows that need to change", method = "getDelta(Integer,Map)")
+	public void getDelta_shouldOnlyReturnRowsThatNeedToChange() throws Exception {
+		ConceptSetClosure closure = new ConceptSetClosure();
+		closure.addMember(1, 2, 1.0);
+		closure.addMember(1, 3, 2.0);
+		closure.addMember(3, 4, null);
+		
+		Map<Integer, Double> existing = new HashMap<Integer, Double>();
+		existing.put(2, 1.0);
+		existing.put(3, 7.0);
+		existing.put(9, 1.0);
+		
+		ConceptSetClosure.Delta delta = closure.getDelta(1, existing);
+		Assert.assertEquals(1, delta.getInserts().size());
+		Assert.assertTrue(delta.getInserts().containsKey(4));
+		Assert.assertNull(delta.getInserts().get(4));
+		Assert.assertEquals(1, delta.getUpdates().size());
+		Assert.assertEquals(2.0, delta.getUpdates().get(3));
+		Assert.assertEquals(1, delta.getDeletes().size());
+		Assert.assertEquals(9, delta.getDeletes().get(0).intValue());
+		
+		existing.remove(9);
+		existing.put(3, 2.0);
+		existing.put(4, null);
+		Assert.assertTrue(closure.getDelta(1, existing).isEmpty());
+	}
+}
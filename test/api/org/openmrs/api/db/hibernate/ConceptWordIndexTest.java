@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptWord;
+import org.openmrs.api.db.hibernate.ConceptWordIndex.IndexedWord;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link ConceptWordIndex} class
+ */
+public class ConceptWordIndexTest {
+	
+	private static final List<Locale> ENGLISH = Collections.singletonList(Locale.ENGLISH);
+	
+	private static int nextNameId = 1;
+	
+	private Concept concept(Integer conceptId, Integer conceptClassId, String... names) {
+		Concept concept = new Concept(conceptId);
+		concept.setConceptClass(new ConceptClass(conceptClassId));
+		concept.setDatatype(new ConceptDatatype(1));
+		concept.setRetired(false);
+		for (String name : names) {
+			ConceptName conceptName = new ConceptName(name, Locale.ENGLISH);
+			conceptName.setConceptNameId(nextNameId++);
+			concept.addName(conceptName);
+		}
+		return concept;
+	}
+	
+	private List<Integer> search(ConceptWordIndex index, String phrase, Integer start, Integer size) {
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		for (IndexedWord word : index.search(ConceptWord.getUniqueWords(phrase), ENGLISH, false, null, null, null, null,
+		    null, start, size))
+			conceptIds.add(word.getConceptId());
+		return conceptIds;
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,java.util.Collection,boolean,java.util.Collection,java.util.Collection,java.util.Collection,java.util.Collection,java.util.Collection,Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should require every word to prefix a word of the same concept", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection,Integer,Integer)")
+	public void search_shouldRequireEveryWordToPrefixAWordOfTheSameConcept() throws Exception {
+		List<Concept> concepts = new ArrayList<Concept>();
+		concepts.add(concept(1, 1, "CD4 COUNT"));
+		concepts.add(concept(2, 1, "CD4 PERCENT"));
+		concepts.add(concept(3, 1, "WEIGHT", "BODY WEIGHT COUNT"));
+		ConceptWordIndex index = new ConceptWordIndex(concepts.iterator());
+		
+		Assert.assertEquals("[1, 2]", search(index, "cd", null, null).toString());
+		Assert.assertEquals("[1]", search(index, "cd co", null, null).toString());
+		Assert.assertEquals("[3]", search(index, "coun wei", null, null).toString());
+		Assert.assertEquals("[]", search(index, "cd wei", null, null).toString());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,java.util.Collection,boolean,java.util.Collection,java.util.Collection,java.util.Collection,java.util.Collection,java.util.Collection,Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should filter on class and page through the matches", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection,Integer,Integer)")
+	public void search_shouldFilterOnClassAndPageThroughTheMatches() throws Exception {
+		List<Concept> concepts = new ArrayList<Concept>();
+		for (int i = 1; i <= 10; i++)
+			concepts.add(concept(i, i % 2, "MALARIA TEST " + i));
+		ConceptWordIndex index = new ConceptWordIndex(concepts.iterator());
+		
+		Assert.assertEquals("[4, 5, 6]", search(index, "mal", 3, 3).toString());
+		Assert.assertEquals("[9, 10]", search(index, "mal", 8, 5).toString());
+		
+		List<IndexedWord> odd = index.search(ConceptWord.getUniqueWords("mal"), ENGLISH, false, Collections
+		        .singletonList(new ConceptClass(1)), null, null, null, null, 1, 2);
+		Assert.assertEquals(2, odd.size());
+		Assert.assertEquals(3, odd.get(0).getConceptId().intValue());
+		Assert.assertEquals(5, odd.get(1).getConceptId().intValue());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#updateConcept(Concept)}
+	 */
+	@Test
+	@Verifies(value = "should replace the previously indexed words of the concept", method = "updateConcept(Concept)")
+	public void updateConcept_shouldReplaceThePreviouslyIndexedWordsOfTheConcept() throws Exception {
+		List<Concept> concepts = new ArrayList<Concept>();
+		concepts.add(concept(1, 1, "TEMPERATURE"));
+		concepts.add(concept(2, 1, "TEMPORAL"));
+		ConceptWordIndex index = new ConceptWordIndex(concepts.iterator());
+		
+		index.updateConcept(concept(1, 1, "FEVER"));
+		Assert.assertEquals("[2]", search(index, "temp", null, null).toString());
+		Assert.assertEquals("[1]", search(index, "fev", null, null).toString());
+		
+		Concept retired = concept(2, 1, "TEMPORAL");
+		retired.setRetired(true);
+		index.updateConcept(retired);
+		Assert.assertEquals("[]", search(index, "temp", null, null).toString());
+		
+		index.removeConcept(1);
+		Assert.assertEquals(1, index.size());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#apply(org.openmrs.api.db.hibernate.ConceptWordIndex.Change)}
+	 */
+	@Test
+	@Verifies(value = "should index the words the concept had when the change was made", method = "apply(Change)")
+	public void apply_shouldIndexTheWordsTheConceptHadWhenTheChangeWasMade() throws Exception {
+		ConceptWordIndex index = new ConceptWordIndex(new ArrayList<Concept>().iterator());
+		
+		Concept concept = concept(1, 1, "MALARIA");
+		ConceptWordIndex.Change change = ConceptWordIndex.changeOf(concept);
+		concept.addName(new ConceptName("FEVER", Locale.ENGLISH));
+		Assert.assertEquals(0, index.size());
+		
+		index.apply(change);
+		index.apply(change);
+		Assert.assertEquals("[1]", search(index, "mal", null, null).toString());
+		Assert.assertEquals("[]", search(index, "fev", null, null).toString());
+		Assert.assertEquals(1, index.size());
+		
+		index.apply(ConceptWordIndex.removalOf(1));
+		Assert.assertEquals(0, index.size());
+	}
+}
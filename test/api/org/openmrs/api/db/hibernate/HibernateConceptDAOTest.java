@@ -0,0 +1,163 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.Assert;
+
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptWord;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.SkipBaseSetup;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link HibernateConceptDAO} class
+ */
+public class HibernateConceptDAOTest extends BaseContextSensitiveTest {
+	
+	private HibernateConceptDAO getDAO() {
+		return (HibernateConceptDAO) applicationContext.getBean("conceptDAO");
+	}
+	
+	private List<ConceptWord> getConceptWords(String phrase, Integer start, Integer size) {
+		List<Locale> locales = new ArrayList<Locale>();
+		locales.add(Locale.ENGLISH);
+		return getDAO().getConceptWords(phrase, locales, false, new ArrayList<ConceptClass>(),
+		    new ArrayList<ConceptClass>(), new ArrayList<ConceptDatatype>(), new ArrayList<ConceptDatatype>(), null, start,
+		    size);
+	}
+	
+	/**
+	 * @see {@link HibernateConceptDAO#getConceptWords(String,List,boolean,List,List,List,List,Concept,Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should page through the words when only a start or size is given", method = "getConceptWords(String,List,boolean,List,List,List,List,Concept,Integer,Integer)")
+	public void getConceptWords_shouldPageThroughTheWordsWhenOnlyAStartOrSizeIsGiven() throws Exception {
+		executeDataSet("org/openmrs/api/include/ConceptServiceTest-words.xml");
+		List<ConceptWord> all = getConceptWords("cd4", null, null);
+		Assert.assertTrue(all.size() > 1);
+		
+		Assert.assertEquals(all.subList(1, all.size()), getConceptWords("cd4", 1, null));
+		Assert.assertEquals(all.subList(0, 1), getConceptWords("cd4", null, 1));
+		Assert.assertEquals(all.subList(1, all.size()), getConceptWords("cd4", 1, all.size() + 5));
+		Assert.assertTrue(getConceptWords("cd4", all.size() + 5, 1).isEmpty());
+	}
+	
+	/**
+	 * @see {@link HibernateConceptDAO#conceptIterator(int)}
+	 */
+	@Test
+	@Verifies(value = "should return every concept once in concept id order across pages", method = "conceptIterator(int)")
+	public void conceptIterator_shouldReturnEveryConceptOnceInConceptIdOrderAcrossPages() throws Exception {
+		List<Integer> expected = new ArrayList<Integer>();
+		for (Concept concept : Context.getConceptService().getAllConcepts())
+			expected.add(concept.getConceptId());
+		Collections.sort(expected);
+		
+		List<Integer> conceptIds = new ArrayList<Integer>();
+		for (Iterator<Concept> i = getDAO().conceptIterator(2); i.hasNext();)
+			conceptIds.add(i.next().getConceptId());
+		
+		Assert.assertTrue(expected.size() > 2);
+		Assert.assertEquals(expected, conceptIds);
+	}
+	
+	/**
+	 * @see {@link HibernateConceptDAO#conceptIterator(int)}
+	 */
+	@Test
+	@Verifies(value = "should evict the previous page when the next one is loaded", method = "conceptIterator(int)")
+	public void conceptIterator_shouldEvictThePreviousPageWhenTheNextOneIsLoaded() throws Exception {
+		SessionFactory sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+		Iterator<Concept> concepts = getDAO().conceptIterator(2);
+		Concept first = concepts.next();
+		Concept second = concepts.next();
+		Assert.assertTrue(sessionFactory.getCurrentSession().contains(first));
+		
+		Concept third = concepts.next();
+		Assert.assertFalse(sessionFactory.getCurrentSession().contains(first));
+		Assert.assertFalse(sessionFactory.getCurrentSession().contains(second));
+		Assert.assertTrue(sessionFactory.getCurrentSession().contains(third));
+	}
+	
+	/**
+	 * @see {@link HibernateConceptDAO#conceptIterator()}
+	 */
+	@Test
+	@SkipBaseSetup
+	@Verifies(value = "should return nothing for an empty dictionary", method = "conceptIterator()")
+	public void conceptIterator_shouldReturnNothingForAnEmptyDictionary() throws Exception {
+		initializeInMemoryDatabase();
+		authenticate();
+		
+		Iterator<Concept> concepts = getDAO().conceptIterator();
+		Assert.assertFalse(concepts.hasNext());
+		Assert.assertFalse(concepts.hasNext());
+	}
+	
+	/**
+	 * @see {@link HibernateConceptDAO#updateConceptWord(Concept)}
+	 */
+	@Test
+	@Verifies(value = "should delete the words of a name removed from the concept", method = "updateConceptWord(Concept)")
+	public void updateConceptWord_shouldDeleteTheWordsOfANameRemovedFromTheConcept() throws Exception {
+		ConceptService cs = Context.getConceptService();
+		Concept concept = cs.getConcept(5497);
+		cs.updateConceptWord(concept);
+		Assert.assertTrue(countConceptWords(2474) > 0);
+		
+		ConceptName removed = null;
+		for (ConceptName name : concept.getNames()) {
+			if (name.getConceptNameId().equals(2474))
+				removed = name;
+		}
+		Assert.assertTrue(concept.removeName(removed));
+		cs.saveConcept(concept);
+		
+		Assert.assertEquals(0, countConceptWords(2474));
+		Assert.assertTrue(countConceptWords(1847) > 0);
+	}
+	
+	/**
+	 * @return the number of concept_word rows for the given concept name
+	 */
+	private int countConceptWords(Integer conceptNameId) throws Exception {
+		SessionFactory sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+		sessionFactory.getCurrentSession().flush();
+		PreparedStatement ps = sessionFactory.getCurrentSession().connection().prepareStatement(
+		    "select count(*) from concept_word where concept_name_id = ?");
+		ps.setInt(1, conceptNameId);
+		ResultSet rs = ps.executeQuery();
+		rs.next();
+		int count = rs.getInt(1);
+		rs.close();
+		ps.close();
+		return count;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.PatientSearchResult;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.TransactionUtil;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the patient search index methods on the {@link HibernatePatientDAO} class. Each test uses
+ * its own dao, so that the index it builds isn't seen by other tests.
+ */
+public class HibernatePatientDAOTest extends BaseContextSensitiveTest {
+	
+	private HibernatePatientDAO dao;
+	
+	@Before
+	public void createDAO() throws Exception {
+		dao = new HibernatePatientDAO();
+		dao.setSessionFactory((SessionFactory) applicationContext.getBean("sessionFactory"));
+	}
+	
+	private List<Integer> search(String query) {
+		List<Integer> patientIds = new ArrayList<Integer>();
+		for (PatientSearchResult result : dao.getPatientSearchResults(query, null, 100))
+			patientIds.add(result.getPatientId());
+		Collections.sort(patientIds);
+		return patientIds;
+	}
+	
+	/**
+	 * Runs the code registered with {@link TransactionUtil#afterCommit(Runnable)}, as if the test
+	 * transaction had committed. The transaction is still rolled back at the end of the test
+	 */
+	private void runAfterCommit() {
+		for (Object o : TransactionSynchronizationManager.getSynchronizations()) {
+			if (o.getClass().getName().startsWith(TransactionUtil.class.getName()))
+				((TransactionSynchronization) o).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		}
+	}
+	
+	/**
+	 * @see {@link HibernatePatientDAO#rebuildPatientSearchIndex()}
+	 */
+	@Test
+	@Verifies(value = "should index the names and identifiers of every patient", method = "rebuildPatientSearchIndex()")
+	public void rebuildPatientSearchIndex_shouldIndexTheNamesAndIdentifiersOfEveryPatient() throws Exception {
+		Assert.assertFalse(dao.isPatientSearchIndexBuilt());
+		dao.rebuildPatientSearchIndex();
+		Assert.assertTrue(dao.isPatientSearchIndexBuilt());
+		
+		Assert.assertEquals(Collections.singletonList(2), search("hornblower"));
+		Assert.assertEquals(Collections.singletonList(2), search("101-6"));
+		Assert.assertEquals(Collections.singletonList(7), search("6ts4"));
+		Assert.assertEquals(Arrays.asList(2, 6, 7, 8), search("test"));
+	}
+	
+	/**
+	 * @see {@link HibernatePatientDAO#rebuildPatientSearchIndex()}
+	 */
+	@Test
+	@Verifies(value = "should not index people who are not patients", method = "rebuildPatientSearchIndex()")
+	public void rebuildPatientSearchIndex_shouldNotIndexPeopleWhoAreNotPatients() throws Exception {
+		dao.rebuildPatientSearchIndex();
+		Assert.assertTrue(search("chemalit").isEmpty());
+	}
+	
+	/**
+	 * @see {@link HibernatePatientDAO#savePatient(Patient)}
+	 */
+	@Test
+	@Verifies(value = "should only change the search index once the transaction commits", method = "savePatient(Patient)")
+	public void savePatient_shouldOnlyChangeTheSearchIndexOnceTheTransactionCommits() throws Exception {
+		dao.rebuildPatientSearchIndex();
+		Patient patient = Context.getPatientService().getPatient(7);
+		patient.addName(new PersonName("Zzyzx", null, "Quimby"));
+		dao.savePatient(patient);
+		
+		Assert.assertTrue(search("zzyzx").isEmpty());
+		
+		runAfterCommit();
+		Assert.assertEquals(Collections.singletonList(7), search("zzyzx quimby"));
+		Assert.assertEquals(Collections.singletonList(7), search("chebaskwony"));
+		Assert.assertEquals(Collections.singletonList(7), search("6TS-4"));
+	}
+	
+	/**
+	 * @see {@link HibernatePersonDAO#savePerson(Person)}
+	 */
+	@Test
+	@Verifies(value = "should update the names of a patient in the search index", method = "savePerson(Person)")
+	public void savePerson_shouldUpdateTheNamesOfAPatientInTheSearchIndex() throws Exception {
+		HibernatePersonDAO personDAO = new HibernatePersonDAO();
+		personDAO.setSessionFactory((SessionFactory) applicationContext.getBean("sessionFactory"));
+		personDAO.setPatientDAO(dao);
+		dao.rebuildPatientSearchIndex();
+		
+		Person person = Context.getPersonService().getPerson(8);
+		person.getPersonName().setFamilyName("Zzyzx");
+		personDAO.savePerson(person);
+		runAfterCommit();
+		
+		Assert.assertTrue(search("oloo").isEmpty());
+		Assert.assertEquals(Collections.singletonList(8), search("anet zzyzx"));
+		Assert.assertEquals(Collections.singletonList(8), search("7TU-8"));
+	}
+	
+	/**
+	 * @see {@link HibernatePersonDAO#savePerson(Person)}
+	 */
+	@Test
+	@Verifies(value = "should drop a voided patient from the search index", method = "savePerson(Person)")
+	public void savePerson_shouldDropAVoidedPatientFromTheSearchIndex() throws Exception {
+		HibernatePersonDAO personDAO = new HibernatePersonDAO();
+		personDAO.setSessionFactory((SessionFactory) applicationContext.getBean("sessionFactory"));
+		personDAO.setPatientDAO(dao);
+		dao.rebuildPatientSearchIndex();
+		
+		Person person = Context.getPersonService().getPerson(8);
+		person.setPersonVoided(true);
+		personDAO.savePerson(person);
+		runAfterCommit();
+		
+		Assert.assertTrue(search("oloo").isEmpty());
+		Assert.assertTrue(search("7TU-8").isEmpty());
+	}
+}
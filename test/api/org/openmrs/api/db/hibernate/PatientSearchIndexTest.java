@@ -0,0 +1,141 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.PatientSearchResult;
+import org.openmrs.api.db.hibernate.PatientSearchIndex.IndexedPatient;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link PatientSearchIndex} class
+ */
+public class PatientSearchIndexTest {
+	
+	private IndexedPatient patient(Integer patientId, String givenName, String familyName, String identifier) {
+		IndexedPatient patient = new IndexedPatient(patientId, "F", null, false, null);
+		patient.addName(givenName, null, familyName, null);
+		if (identifier != null)
+			patient.addIdentifier(identifier, false);
+		return patient;
+	}
+	
+	private List<Integer> search(PatientSearchIndex index, String query) {
+		List<Integer> patientIds = new ArrayList<Integer>();
+		for (PatientSearchResult result : index.search(query, 100))
+			patientIds.add(result.getPatientId());
+		return patientIds;
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#search(String,int)}
+	 */
+	@Test
+	@Verifies(value = "should rank whole names above prefixes above names that sound alike", method = "search(String,int)")
+	public void search_shouldRankWholeNamesAbovePrefixesAboveNamesThatSoundAlike() throws Exception {
+		PatientSearchIndex index = new PatientSearchIndex();
+		index.add(patient(1, "Mary", "Smythe", null));
+		index.add(patient(2, "John", "Smithson", null));
+		index.add(patient(3, "Anna", "Smith", null));
+		
+		Assert.assertEquals("[3, 2, 1]", search(index, "smith").toString());
+		
+		List<PatientSearchResult> results = index.search("smith", 100);
+		Assert.assertFalse(results.get(0).isCloseMatch());
+		Assert.assertFalse(results.get(1).isCloseMatch());
+		Assert.assertTrue(results.get(2).isCloseMatch());
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#search(String,int)}
+	 */
+	@Test
+	@Verifies(value = "should require every word to match", method = "search(String,int)")
+	public void search_shouldRequireEveryWordToMatch() throws Exception {
+		PatientSearchIndex index = new PatientSearchIndex();
+		index.add(patient(1, "Mary", "Smith", null));
+		index.add(patient(2, "John", "Smith", null));
+		
+		Assert.assertEquals("[2]", search(index, "smith, jo").toString());
+		Assert.assertEquals("[]", search(index, "smith peter").toString());
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#search(String,int)}
+	 */
+	@Test
+	@Verifies(value = "should match identifiers ignoring punctuation and case", method = "search(String,int)")
+	public void search_shouldMatchIdentifiersIgnoringPunctuationAndCase() throws Exception {
+		PatientSearchIndex index = new PatientSearchIndex();
+		index.add(patient(1, "Mary", "Smith", "101-6"));
+		index.add(patient(2, "John", "Smith", "1016-2"));
+		index.add(patient(3, "Anna", "O'Brien", "abc-9"));
+		
+		Assert.assertEquals("[1, 2]", search(index, "1016").toString());
+		Assert.assertEquals("[2]", search(index, "10162").toString());
+		Assert.assertEquals("[3]", search(index, "ABC9").toString());
+		Assert.assertEquals("[3]", search(index, "obrien").toString());
+		Assert.assertEquals("101-6", index.search("101-6", 1).get(0).getIdentifier());
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#remove(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should stop finding the patient", method = "remove(Integer)")
+	public void remove_shouldStopFindingThePatient() throws Exception {
+		PatientSearchIndex index = new PatientSearchIndex();
+		index.add(patient(1, "Mary", "Smith", "101-6"));
+		index.add(patient(2, "John", "Smith", null));
+		
+		index.remove(1);
+		
+		Assert.assertEquals(1, index.size());
+		Assert.assertEquals("[2]", search(index, "smith").toString());
+		Assert.assertEquals("[]", search(index, "1016").toString());
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#add(IndexedPatient)}
+	 */
+	@Test
+	@Verifies(value = "should replace what was indexed for the patient before", method = "add(IndexedPatient)")
+	public void add_shouldReplaceWhatWasIndexedForThePatientBefore() throws Exception {
+		PatientSearchIndex index = new PatientSearchIndex();
+		index.add(patient(1, "Mary", "Smith", null));
+		index.add(patient(1, "Mary", "Jones", null));
+		
+		Assert.assertEquals(1, index.size());
+		Assert.assertEquals("[]", search(index, "smith").toString());
+		Assert.assertEquals("[1]", search(index, "jones").toString());
+	}
+	
+	/**
+	 * @see {@link PatientSearchIndex#soundex(String)}
+	 */
+	@Test
+	@Verifies(value = "should give the american soundex code", method = "soundex(String)")
+	public void soundex_shouldGiveTheAmericanSoundexCode() throws Exception {
+		Assert.assertEquals("R163", PatientSearchIndex.soundex("ROBERT"));
+		Assert.assertEquals("R163", PatientSearchIndex.soundex("RUPERT"));
+		Assert.assertEquals("A261", PatientSearchIndex.soundex("ASHCRAFT"));
+		Assert.assertEquals("T522", PatientSearchIndex.soundex("TYMCZAK"));
+		Assert.assertEquals("P236", PatientSearchIndex.soundex("PFISTER"));
+	}
+}
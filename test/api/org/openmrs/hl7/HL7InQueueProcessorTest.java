@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests methods on the {@link HL7InQueueProcessor} class
+ */
+public class HL7InQueueProcessorTest extends BaseContextSensitiveTest {
+	
+	protected static final String QUEUE_XML = "org/openmrs/hl7/include/HL7InQueueProcessorTest.xml";
+	
+	/**
+	 * @see {@link HL7InQueueProcessor#getPatientKey(String)}
+	 */
+	@Test
+	@Verifies(value = "should return the first identifier in PID-3", method = "getPatientKey(String)")
+	public void getPatientKey_shouldReturnTheFirstIdentifierInPID3() throws Exception {
+		String hl7 = "MSH|^~\\&|FORMENTRY|AMRS.ELD|HL7LISTENER|AMRS.ELD|20080226102656||ORU^R01|JqnfhKKtouEz8kzTk6Zo|P|2.5|1\r"
+		        + "PID|||3^^^^~7TU-4^^^^||John3^Doe^||\rPV1||O|1^Unknown Location";
+		Assert.assertEquals("3", HL7InQueueProcessor.getPatientKey(hl7));
+	}
+	
+	/**
+	 * @see {@link HL7InQueueProcessor#getPatientKey(String)}
+	 */
+	@Test
+	@Verifies(value = "should return an empty string if there is no PID segment", method = "getPatientKey(String)")
+	public void getPatientKey_shouldReturnAnEmptyStringIfThereIsNoPIDSegment() throws Exception {
+		Assert.assertEquals("", HL7InQueueProcessor.getPatientKey("MSH|^~\\&|FORMENTRY|AMRS.ELD\rPV1||O"));
+		Assert.assertEquals("", HL7InQueueProcessor.getPatientKey(null));
+	}
+	
+	/**
+	 * @see {@link HL7InQueueProcessor#processHL7InQueue()}
+	 */
+	@Test
+	@Verifies(value = "should process every queue entry when split among worker threads", method = "processHL7InQueue()")
+	public void processHL7InQueue_shouldProcessEveryQueueEntryWhenSplitAmongWorkerThreads() throws Exception {
+		executeDataSet(QUEUE_XML);
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS, "2"));
+		
+		// none of the entries can be parsed, so the workers (each acting as the authenticated
+		// user) move all of them to the error table
+		new HL7InQueueProcessor().processHL7InQueue();
+		
+		Context.clearSession();
+		Assert.assertEquals(0, Context.getHL7Service().getAllHL7InQueues().size());
+		Assert.assertEquals(4, Context.getHL7Service().getAllHL7InErrors().size());
+		Assert.assertTrue(Context.isAuthenticated());
+	}
+}
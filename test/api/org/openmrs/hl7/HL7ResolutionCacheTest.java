@@ -0,0 +1,67 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.ConceptSource;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link HL7ResolutionCache} class
+ */
+public class HL7ResolutionCacheTest {
+	
+	/**
+	 * @see {@link HL7ResolutionCache.Region#put(String,Object)}
+	 */
+	@Test
+	@Verifies(value = "should evict the least recently used entry when full", method = "put(String,Object)")
+	public void put_shouldEvictTheLeastRecentlyUsedEntryWhenFull() throws Exception {
+		HL7ResolutionCache cache = new HL7ResolutionCache();
+		cache.setMaxEntries(2);
+		HL7ResolutionCache.Region concepts = cache.getConcepts();
+		concepts.put(HL7ResolutionCache.getKey("WGT234", "SSTRM"), 5089);
+		concepts.put(HL7ResolutionCache.getKey("CD4", "LOINC"), 5497);
+		
+		// touch the first so that the second becomes the least recently used
+		Assert.assertEquals(5089, concepts.get("WGT234^SSTRM"));
+		concepts.put(HL7ResolutionCache.getKey("HGT", "SSTRM"), 5090);
+		
+		Assert.assertEquals(2, concepts.getSize());
+		Assert.assertEquals(1, concepts.getEvictions());
+		Assert.assertNull(concepts.get("CD4^LOINC"));
+		Assert.assertEquals(1, concepts.getHits());
+		Assert.assertEquals(1, concepts.getMisses());
+		Assert.assertEquals(50.0, concepts.getHitRatio());
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCache#objectsChanged(Class)}
+	 */
+	@Test
+	@Verifies(value = "should clear only the region for the changed type", method = "objectsChanged(Class)")
+	public void objectsChanged_shouldClearOnlyTheRegionForTheChangedType() throws Exception {
+		HL7ResolutionCache cache = new HL7ResolutionCache();
+		cache.getConcepts().put(HL7ResolutionCache.getKey("WGT234", "SSTRM"), 5089);
+		cache.getUsers().put(HL7ResolutionCache.getKey("1", "Doe", "John"), 1);
+		
+		Assert.assertTrue(cache.supportsType(ConceptSource.class));
+		cache.objectsChanged(ConceptSource.class);
+		
+		Assert.assertEquals(0, cache.getConcepts().getSize());
+		Assert.assertEquals(1, cache.getUsers().getSize());
+	}
+}
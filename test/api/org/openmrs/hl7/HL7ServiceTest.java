@@ -0,0 +1,92 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link HL7Service} class
+ */
+public class HL7ServiceTest extends BaseContextSensitiveTest {
+	
+	protected static final String ORU_INITIAL_DATA_XML = "org/openmrs/hl7/include/ORUTest-initialData.xml";
+	
+	protected static final String BATCH_XML = "org/openmrs/hl7/include/HL7ServiceTest-batch.xml";
+	
+	/**
+	 * Loads the hl7 specific data and a queue with a good entry (1), an entry that can't be parsed
+	 * (2) and an entry about an unknown patient from a remote source (3)
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void runBeforeEachTest() throws Exception {
+		executeDataSet(ORU_INITIAL_DATA_XML);
+		executeDataSet(BATCH_XML);
+	}
+	
+	/**
+	 * @see {@link HL7Service#processHL7InQueueBatch(List)}
+	 */
+	@Test
+	@Verifies(value = "should move a failing entry to the error table and archive the others", method = "processHL7InQueueBatch(List)")
+	public void processHL7InQueueBatch_shouldMoveAFailingEntryToTheErrorTableAndArchiveTheOthers() throws Exception {
+		HL7Service hl7Service = Context.getHL7Service();
+		int obsBefore = Context.getObsService().getObservationsByPerson(new Patient(3)).size();
+		
+		List<Integer> archived = hl7Service.processHL7InQueueBatch(Arrays.asList(2, 1));
+		
+		Assert.assertEquals(Arrays.asList(1), archived);
+		Context.clearSession();
+		Assert.assertNull(hl7Service.getHL7InQueue(1));
+		Assert.assertNull(hl7Service.getHL7InQueue(2));
+		Assert.assertEquals(1, hl7Service.getAllHL7InArchives().size());
+		Assert.assertEquals(1, hl7Service.getAllHL7InErrors().size());
+		Assert.assertEquals("bad", hl7Service.getAllHL7InErrors().get(0).getHL7SourceKey());
+		
+		// the good entry's obs were kept, even though it was processed after the failing one
+		Assert.assertEquals(obsBefore + 1, Context.getObsService().getObservationsByPerson(new Patient(3)).size());
+	}
+	
+	/**
+	 * @see {@link HL7Service#processHL7InQueueBatch(List)}
+	 */
+	@Test
+	@Verifies(value = "should leave a skippable entry in the queue", method = "processHL7InQueueBatch(List)")
+	public void processHL7InQueueBatch_shouldLeaveASkippableEntryInTheQueue() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty("hl7_processor.ignore_missing_patient_non_local", "true"));
+		HL7Service hl7Service = Context.getHL7Service();
+		hl7Service.getResolutionCache().clear();
+		
+		List<Integer> archived = hl7Service.processHL7InQueueBatch(Arrays.asList(3, 1));
+		
+		Assert.assertEquals(Arrays.asList(1), archived);
+		Context.clearSession();
+		Assert.assertNotNull(hl7Service.getHL7InQueue(3));
+		Assert.assertEquals(0, hl7Service.getAllHL7InErrors().size());
+		Assert.assertEquals(1, hl7Service.getAllHL7InArchives().size());
+	}
+}
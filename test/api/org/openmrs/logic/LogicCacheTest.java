@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.logic.result.Result;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link LogicCache} class
+ */
+public class LogicCacheTest {
+	
+	private Map<Integer, Result> resultsFor(Cohort cohort) {
+		Map<Integer, Result> results = new HashMap<Integer, Result>();
+		for (Integer pid : cohort.getMemberIds())
+			results.put(pid, new Result(pid));
+		return results;
+	}
+	
+	/**
+	 * @see {@link LogicCache#get(Integer,LogicCriteria,Map,Date)}
+	 */
+	@Test
+	@Verifies(value = "should return cached results only for patients in the evaluated cohort", method = "get(Integer,LogicCriteria,Map,Date)")
+	public void get_shouldReturnCachedResultsOnlyForPatientsInTheEvaluatedCohort() throws Exception {
+		LogicCache cache = new LogicCache();
+		Cohort cohort = new Cohort("1,2,3");
+		cache.put(new LogicCriteria("CD4 COUNT"), null, null, 60, cohort, resultsFor(cohort));
+		
+		Assert.assertEquals(2, cache.get(2, new LogicCriteria("CD4 COUNT"), null, null).toNumber().intValue());
+		Assert.assertNull(cache.get(4, new LogicCriteria("CD4 COUNT"), null, null));
+		Assert.assertNull(cache.get(2, new LogicCriteria("CD4 COUNT"), null, new Date(0)));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+	}
+	
+	/**
+	 * @see {@link LogicCache#get(Integer,LogicCriteria,Map,Date)}
+	 */
+	@Test
+	@Verifies(value = "should return a new copy of the cached result each time", method = "get(Integer,LogicCriteria,Map,Date)")
+	public void get_shouldReturnANewCopyOfTheCachedResultEachTime() throws Exception {
+		LogicCache cache = new LogicCache();
+		Cohort cohort = new Cohort("1");
+		Map<Integer, Result> results = resultsFor(cohort);
+		cache.put(new LogicCriteria("CD4 COUNT"), null, null, 60, cohort, results);
+		results.get(1).setValueNumeric(7);
+		
+		Result first = cache.get(1, new LogicCriteria("CD4 COUNT"), null, null);
+		first.add(new Result(5));
+		Result second = cache.get(1, new LogicCriteria("CD4 COUNT"), null, null);
+		
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(0, second.size());
+		Assert.assertEquals(1, second.toNumber().intValue());
+	}
+	
+	/**
+	 * @see {@link LogicCache#invalidatePatientAfterTransaction(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should invalidate straight away outside a transaction", method = "invalidatePatientAfterTransaction(Integer)")
+	public void invalidatePatientAfterTransaction_shouldInvalidateStraightAwayOutsideATransaction() throws Exception {
+		LogicCache cache = new LogicCache();
+		Cohort cohort = new Cohort("1");
+		cache.put(new LogicCriteria("A"), null, null, 60, cohort, resultsFor(cohort));
+		
+		cache.invalidatePatientAfterTransaction(1);
+		
+		Assert.assertEquals(0, cache.getSize());
+	}
+	
+	/**
+	 * @see {@link LogicCache#put(LogicCriteria,Map,Date,int,Cohort,Map)}
+	 */
+	@Test
+	@Verifies(value = "should not cache results with a ttl of zero", method = "put(LogicCriteria,Map,Date,int,Cohort,Map)")
+	public void put_shouldNotCacheResultsWithATtlOfZero() throws Exception {
+		LogicCache cache = new LogicCache();
+		Cohort cohort = new Cohort("1");
+		cache.put(new LogicCriteria("CD4 COUNT"), null, null, 0, cohort, resultsFor(cohort));
+		
+		Assert.assertEquals(0, cache.getSize());
+		Assert.assertNull(cache.get(1, new LogicCriteria("CD4 COUNT"), null, null));
+	}
+	
+	/**
+	 * @see {@link LogicCache#put(LogicCriteria,Map,Date,int,Cohort,Map)}
+	 */
+	@Test
+	@Verifies(value = "should evict the least recently used entry when full", method = "put(LogicCriteria,Map,Date,int,Cohort,Map)")
+	public void put_shouldEvictTheLeastRecentlyUsedEntryWhenFull() throws Exception {
+		LogicCache cache = new LogicCache();
+		cache.setMaxEntries(2);
+		Cohort cohort = new Cohort("1");
+		cache.put(new LogicCriteria("A"), null, null, 60, cohort, resultsFor(cohort));
+		cache.put(new LogicCriteria("B"), null, null, 60, cohort, resultsFor(cohort));
+		
+		// touch A so that B becomes the least recently used
+		Assert.assertNotNull(cache.get(1, new LogicCriteria("A"), null, null));
+		cache.put(new LogicCriteria("C"), null, null, 60, cohort, resultsFor(cohort));
+		
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertNotNull(cache.get(1, new LogicCriteria("A"), null, null));
+		Assert.assertNull(cache.get(1, new LogicCriteria("B"), null, null));
+		Assert.assertNotNull(cache.get(1, new LogicCriteria("C"), null, null));
+	}
+	
+	/**
+	 * @see {@link LogicCache#invalidatePatient(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should remove only entries containing the given patient", method = "invalidatePatient(Integer)")
+	public void invalidatePatient_shouldRemoveOnlyEntriesContainingTheGivenPatient() throws Exception {
+		LogicCache cache = new LogicCache();
+		Cohort first = new Cohort("1,2");
+		Cohort second = new Cohort("3");
+		cache.put(new LogicCriteria("A"), null, null, 60, first, resultsFor(first));
+		cache.put(new LogicCriteria("B"), null, null, 60, second, resultsFor(second));
+		
+		cache.invalidatePatient(2);
+		
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertEquals(1, cache.getInvalidations());
+		Assert.assertNull(cache.get(1, new LogicCriteria("A"), null, null));
+		Assert.assertNotNull(cache.get(3, new LogicCriteria("B"), null, null));
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.logic.db.LogicObsDAO;
+import org.openmrs.logic.op.Operator;
+import org.openmrs.logic.result.Result;
+import org.openmrs.logic.util.Util;
+
+/**
+ * Times reading LAST, COUNT, AVERAGE and all values of an obs concept for a cohort of 50,000
+ * patients with 10 obs each, and measures the heap the results hold on to. It compares the way
+ * {@link org.openmrs.logic.datasource.ObsDataSource} used to work (loading every matching obs and
+ * grouping, trimming and aggregating them in java) with
+ * {@link LogicObsDAO#getResults(Cohort, LogicCriteria)}. This is not run as part of the test suite.
+ * Run it with the test classes on the classpath:
+ * 
+ * <pre>
+ * java -Xmx1024m -cp build:build-test:lib/... org.junit.runner.JUnitCore org.openmrs.logic.ObsDataSourceBenchmark
+ * </pre>
+ */
+public class ObsDataSourceBenchmark extends LogicBaseContextSensitiveTest {
+	
+	private static final int PATIENTS = 50000;
+	
+	private static final int OBS_PER_PATIENT = 10;
+	
+	private static final int ROUNDS = 3;
+	
+	@Test
+	public void compareReadingObsResults() throws Exception {
+		initializeInMemoryDatabase();
+		executeDataSet("org/openmrs/logic/include/ObsDataSourceTest.xml");
+		authenticate();
+		
+		Cohort cohort = createPatients();
+		LogicObsDAO dao = (LogicObsDAO) applicationContext.getBean("logicObsDAO");
+		
+		time("last, hydrated", dao, cohort, new LogicCriteria("CD4 COUNT").last(), true);
+		time("last, in sql", dao, cohort, new LogicCriteria("CD4 COUNT").last(), false);
+		time("count, hydrated", dao, cohort, new LogicCriteria("CD4 COUNT").count(), true);
+		time("count, in sql", dao, cohort, new LogicCriteria("CD4 COUNT").count(), false);
+		time("average, hydrated", dao, cohort, new LogicCriteria("CD4 COUNT").average(), true);
+		time("average, in sql", dao, cohort, new LogicCriteria("CD4 COUNT").average(), false);
+		time("all obs, hydrated", dao, cohort, new LogicCriteria("CD4 COUNT").distinct(), true);
+		time("all obs, by column", dao, cohort, new LogicCriteria("CD4 COUNT").distinct(), false);
+	}
+	
+	/**
+	 * Inserts the patients and their obs with jdbc, since going through the api would take far
+	 * longer than the reads being timed
+	 */
+	private Cohort createPatients() throws Exception {
+		Connection connection = getConnection();
+		PreparedStatement person = connection
+		        .prepareStatement("insert into person (person_id, gender, dead, creator, date_created, voided) values (?, 'F', 0, 1, ?, 0)");
+		PreparedStatement patient = connection
+		        .prepareStatement("insert into patient (patient_id, creator, date_created, voided) values (?, 1, ?, 0)");
+		PreparedStatement obs = connection
+		        .prepareStatement("insert into obs (obs_id, person_id, concept_id, obs_datetime, location_id, value_numeric, creator, date_created, voided) values (?, ?, 1, ?, 1, ?, 1, ?, 0)");
+		
+		Cohort cohort = new Cohort();
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		int obsId = 1000;
+		for (int patientId = 1000; patientId < 1000 + PATIENTS; patientId++) {
+			person.setInt(1, patientId);
+			person.setTimestamp(2, now);
+			person.addBatch();
+			patient.setInt(1, patientId);
+			patient.setTimestamp(2, now);
+			patient.addBatch();
+			for (int i = 0; i < OBS_PER_PATIENT; i++) {
+				obs.setInt(1, obsId++);
+				obs.setInt(2, patientId);
+				obs.setTimestamp(3, new Timestamp(now.getTime() - i * 86400000L));
+				obs.setDouble(4, (patientId + i) % 1000);
+				obs.setTimestamp(5, now);
+				obs.addBatch();
+			}
+			if (patientId % 1000 == 0) {
+				person.executeBatch();
+				patient.executeBatch();
+				obs.executeBatch();
+			}
+			cohort.addMember(patientId);
+		}
+		person.executeBatch();
+		patient.executeBatch();
+		obs.executeBatch();
+		return cohort;
+	}
+	
+	private void time(String name, LogicObsDAO dao, Cohort cohort, LogicCriteria criteria, boolean hydrated)
+	    throws Exception {
+		long nanos = 0;
+		long heap = 0;
+		int patients = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			Context.clearSession();
+			long before = usedHeap();
+			long start = System.nanoTime();
+			Map<Integer, Result> results = hydrated ? readHydrated(dao, cohort, criteria) : dao.getResults(cohort, criteria);
+			nanos += System.nanoTime() - start;
+			// what the logic cache would be holding on to
+			Context.clearSession();
+			heap += usedHeap() - before;
+			patients = results.size();
+		}
+		System.out.println(name + ": " + patients + " patients, " + (nanos / ROUNDS / 1000000) + " ms, "
+		        + (heap / ROUNDS / 1024) + " kB retained");
+	}
+	
+	private long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	/**
+	 * What ObsDataSource.read used to do: every matching obs is loaded, then grouped by patient,
+	 * trimmed to the first/last n and aggregated in java
+	 */
+	private Map<Integer, Result> readHydrated(LogicObsDAO dao, Cohort cohort, LogicCriteria criteria) throws Exception {
+		List<Obs> obs = dao.getObservations(cohort, new LogicCriteria("CD4 COUNT"));
+		
+		Map<Integer, Result> results = new HashMap<Integer, Result>();
+		for (Obs ob : obs) {
+			Result result = results.get(ob.getPersonId());
+			if (result == null) {
+				result = new Result();
+				results.put(ob.getPersonId(), result);
+			}
+			
+			// the old criteria ordered by obs datetime descending for LAST
+			if (criteria.getExpression().getTransform().getTransformOperator() == Operator.LAST) {
+				if (result.isEmpty() || ob.getObsDatetime().after(result.get(0).getResultDate()))
+					result.add(0, new Result(ob));
+				if (result.size() > 1)
+					result.remove(1);
+			} else {
+				result.add(new Result(ob));
+			}
+		}
+		
+		Util.applyAggregators(results, criteria, cohort);
+		return results;
+	}
+}
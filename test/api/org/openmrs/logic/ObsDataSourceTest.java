@@ -15,6 +15,7 @@ package org.openmrs.logic;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 
 import java.util.Map;
 
@@ -23,9 +24,12 @@ import org.apache.commons.logging.LogFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Cohort;
+import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.logic.datasource.LogicDataSource;
+import org.openmrs.logic.datasource.ObsDataSource;
 import org.openmrs.logic.result.Result;
+import org.openmrs.test.Verifies;
 
 /**
  * Tests the ObsDataSource functionality
@@ -65,4 +69,82 @@ public class ObsDataSourceTest extends LogicBaseContextSensitiveTest {
 			}
 		}
 	}
+	
+	private Map<Integer, Result> read(LogicCriteria criteria, Integer... patientIds) throws Exception {
+		LogicDataSource lds = Context.getLogicService().getLogicDataSource("obs");
+		Cohort patients = new Cohort();
+		for (Integer patientId : patientIds)
+			patients.addMember(patientId);
+		return lds.read(new LogicContext(patients), patients, criteria);
+	}
+	
+	/**
+	 * @see {@link ObsDataSource#read(LogicContext,Cohort,LogicCriteria)}
+	 */
+	@Test
+	@Verifies(value = "should get each patient's last non voided obs", method = "read(LogicContext,Cohort,LogicCriteria)")
+	public void read_shouldGetEachPatientsLastNonVoidedObs() throws Exception {
+		Map<Integer, Result> result = read(new LogicCriteria("CD4 COUNT").last(), 2, 3);
+		
+		assertEquals(2, result.size());
+		assertEquals(1, result.get(2).size());
+		assertEquals(150.0, result.get(2).toNumber(), 0);
+		assertEquals(3, ((Obs) result.get(2).get(0).getResultObject()).getObsId().intValue());
+		assertEquals(200.0, result.get(3).toNumber(), 0);
+	}
+	
+	/**
+	 * @see {@link ObsDataSource#read(LogicContext,Cohort,LogicCriteria)}
+	 */
+	@Test
+	@Verifies(value = "should get each patient's first n obs in order", method = "read(LogicContext,Cohort,LogicCriteria)")
+	public void read_shouldGetEachPatientsFirstNObsInOrder() throws Exception {
+		Map<Integer, Result> result = read(new LogicCriteria("CD4 COUNT").first(2), 2, 3);
+		
+		assertEquals(2, result.get(2).size());
+		assertEquals(100.0, result.get(2).get(0).toNumber(), 0);
+		assertEquals(150.0, result.get(2).get(1).toNumber(), 0);
+		assertEquals(1, result.get(3).size());
+	}
+	
+	/**
+	 * @see {@link ObsDataSource#read(LogicContext,Cohort,LogicCriteria)}
+	 */
+	@Test
+	@Verifies(value = "should count obs for every patient in the cohort", method = "read(LogicContext,Cohort,LogicCriteria)")
+	public void read_shouldCountObsForEveryPatientInTheCohort() throws Exception {
+		Map<Integer, Result> result = read(new LogicCriteria("CD4 COUNT").count(), 2, 3, 4);
+		
+		assertEquals(2, result.get(2).toNumber(), 0);
+		assertEquals(1, result.get(3).toNumber(), 0);
+		assertEquals(0, result.get(4).toNumber(), 0);
+	}
+	
+	/**
+	 * @see {@link ObsDataSource#read(LogicContext,Cohort,LogicCriteria)}
+	 */
+	@Test
+	@Verifies(value = "should average numeric obs for each patient", method = "read(LogicContext,Cohort,LogicCriteria)")
+	public void read_shouldAverageNumericObsForEachPatient() throws Exception {
+		Map<Integer, Result> result = read(new LogicCriteria("CD4 COUNT").average(), 2, 3);
+		
+		assertEquals(125.0, result.get(2).toNumber(), 0);
+		assertEquals(200.0, result.get(3).toNumber(), 0);
+	}
+	
+	/**
+	 * @see {@link ObsDataSource#read(LogicContext,Cohort,LogicCriteria)}
+	 */
+	@Test
+	@Verifies(value = "should refer to obs by id rather than hold them", method = "read(LogicContext,Cohort,LogicCriteria)")
+	public void read_shouldReferToObsByIdRatherThanHoldThem() throws Exception {
+		Result result = read(new LogicCriteria("CD4 COUNT").last(), 2).get(2).get(0);
+		Obs obs = (Obs) result.getResultObject();
+		assertEquals(3, obs.getObsId().intValue());
+		
+		Context.clearSession();
+		Obs reloaded = (Obs) result.getResultObject();
+		assertNotSame(obs, reloaded);
+		assertEquals(obs.getObsId(), reloaded.getObsId());
+	}
 }
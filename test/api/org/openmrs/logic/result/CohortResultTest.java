@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.result;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.logic.result.Result.Datatype;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link CohortResult} class
+ */
+public class CohortResultTest {
+	
+	private void addNumeric(CohortResult results, int patientId, double value) {
+		results.add(patientId, new Date((long) value), Datatype.NUMERIC, value != 0, null, null, value, null, null);
+	}
+	
+	/**
+	 * @see {@link CohortResult#get(Object)}
+	 */
+	@Test
+	@Verifies(value = "should keep each patient's values in the order they were added", method = "get(Object)")
+	public void get_shouldKeepEachPatientsValuesInTheOrderTheyWereAdded() throws Exception {
+		CohortResult results = new CohortResult(false);
+		addNumeric(results, 7, 3);
+		addNumeric(results, 2, 10);
+		addNumeric(results, 7, 1);
+		addNumeric(results, 2, 20);
+		
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(4, results.getRowCount());
+		Assert.assertEquals("[2, 7]", results.keySet().toString());
+		
+		Result result = results.get(7);
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(3.0, result.get(0).toNumber());
+		Assert.assertEquals(1.0, result.get(1).toNumber());
+		Assert.assertEquals(Datatype.NUMERIC, result.get(0).getDatatype());
+		Assert.assertEquals(new Date(3), result.get(0).getResultDate());
+		Assert.assertNull(results.get(3));
+		Assert.assertFalse(results.containsKey(3));
+	}
+	
+	/**
+	 * @see {@link CohortResult#get(Object)}
+	 */
+	@Test
+	@Verifies(value = "should give single valued results without a list around them", method = "get(Object)")
+	public void get_shouldGiveSingleValuedResultsWithoutAListAroundThem() throws Exception {
+		CohortResult results = new CohortResult(true);
+		results.add(1, new Date(5), Datatype.BOOLEAN, Boolean.TRUE, null, null, null, null, null);
+		
+		Result result = results.get(1);
+		Assert.assertTrue(result.isEmpty());
+		Assert.assertTrue(result.toBoolean());
+		Assert.assertEquals(new Date(5), result.getResultDate());
+	}
+	
+	/**
+	 * @see {@link CohortResult#count(java.util.Collection)}
+	 */
+	@Test
+	@Verifies(value = "should count zero for patients without values", method = "count(Collection)")
+	public void count_shouldCountZeroForPatientsWithoutValues() throws Exception {
+		CohortResult results = new CohortResult(false);
+		addNumeric(results, 1, 5);
+		addNumeric(results, 1, 6);
+		addNumeric(results, 2, 7);
+		
+		CohortResult counts = results.count(Arrays.asList(1, 2, 3));
+		Assert.assertTrue(counts.isSingleValued());
+		Assert.assertEquals(2.0, counts.get(1).toNumber());
+		Assert.assertEquals(1.0, counts.get(2).toNumber());
+		Assert.assertEquals(0.0, counts.get(3).toNumber());
+	}
+	
+	/**
+	 * @see {@link CohortResult#average(java.util.Collection)}
+	 */
+	@Test
+	@Verifies(value = "should average values as numbers", method = "average(Collection)")
+	public void average_shouldAverageValuesAsNumbers() throws Exception {
+		CohortResult results = new CohortResult(false);
+		addNumeric(results, 1, 5);
+		addNumeric(results, 1, 10);
+		results.add(1, null, Datatype.TEXT, null, null, null, null, "15", null);
+		addNumeric(results, 2, -4);
+		
+		CohortResult averages = results.average(Arrays.asList(1, 2, 3));
+		Assert.assertEquals(10.0, averages.get(1).toNumber());
+		Assert.assertEquals(0.0, averages.get(2).toNumber());
+		Assert.assertEquals(0.0, averages.get(3).toNumber());
+	}
+	
+	/**
+	 * @see {@link CohortResult#addMissing(java.util.Collection,double)}
+	 */
+	@Test
+	@Verifies(value = "should only add values for patients without any", method = "addMissing(Collection,double)")
+	public void addMissing_shouldOnlyAddValuesForPatientsWithoutAny() throws Exception {
+		CohortResult results = new CohortResult(true);
+		results.add(2, null, null, null, null, null, 4.0, null, null);
+		results.addMissing(Arrays.asList(1, 2, 3), 0);
+		
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(0.0, results.get(1).toNumber());
+		Assert.assertEquals(4.0, results.get(2).toNumber());
+		Assert.assertEquals(0.0, results.get(3).toNumber());
+	}
+	
+	/**
+	 * @see {@link CohortResult#freeze()}
+	 */
+	@Test
+	@Verifies(value = "should index the rows and stop any more being added", method = "freeze()")
+	public void freeze_shouldIndexTheRowsAndStopAnyMoreBeingAdded() throws Exception {
+		CohortResult results = new CohortResult(false);
+		addNumeric(results, 7, 3);
+		addNumeric(results, 2, 10);
+		Assert.assertSame(results, results.freeze());
+		Assert.assertTrue(results.isFrozen());
+		Assert.assertEquals("[2, 7]", results.keySet().toString());
+		
+		try {
+			addNumeric(results, 5, 1);
+			Assert.fail("a row was added to a frozen result");
+		}
+		catch (UnsupportedOperationException e) {}
+		Assert.assertEquals(2, results.getRowCount());
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.SkipBaseSetup;
+import org.openmrs.util.OpenmrsClassLoader;
+
+/**
+ * Times starting the atd and dss test modules, and then resolving core, module and missing class
+ * names through the {@link OpenmrsClassLoader} the way it used to (asking every module classloader
+ * in turn) and with the {@link ModuleClassLoaderIndex}. Run it on this revision and the one before
+ * it to compare module startup times. This is not run as part of the test suite. Run it with the
+ * test classes on the classpath:
+ * 
+ * <pre>
+ * java -cp build:build-test:lib/... org.junit.runner.JUnitCore org.openmrs.module.ModuleClassLoaderBenchmark
+ * </pre>
+ */
+@SkipBaseSetup
+public class ModuleClassLoaderBenchmark extends BaseContextSensitiveTest {
+	
+	private static final int ROUNDS = 10000;
+	
+	private static final String[] CLASS_NAMES = { "org.openmrs.Patient", "org.openmrs.api.PatientService",
+	        "org.springframework.beans.factory.BeanFactory", "org.openmrs.module.atdproducer.service.ATDService",
+	        "org.openmrs.module.dssmodule.DssService", "org.openmrs.PatientBeanInfo", "org.openmrs.PatientEditor",
+	        "org.openmrs.module.dssmodule.DssServiceCustomizer" };
+	
+	@Test
+	public void compareClassLookups() throws Exception {
+		initializeInMemoryDatabase();
+		
+		long start = System.nanoTime();
+		ModuleUtil.startup(getRuntimeProperties());
+		System.out.println("module startup: " + ((System.nanoTime() - start) / 1000000) + " ms");
+		
+		try {
+			authenticate();
+			
+			OpenmrsClassLoader loader = OpenmrsClassLoader.getInstance();
+			for (String name : CLASS_NAMES) {
+				time(name + ", every module", loader, name, false);
+				time(name + ", indexed", loader, name, true);
+			}
+		}
+		finally {
+			ModuleUtil.shutdown();
+		}
+	}
+	
+	/**
+	 * @see ModuleInteroperabilityTest#getRuntimeProperties()
+	 */
+	public Properties getRuntimeProperties() {
+		Properties props = super.getRuntimeProperties();
+		props.setProperty(ModuleConstants.RUNTIMEPROPERTY_MODULE_LIST_TO_LOAD, "org/openmrs/module/include/atd-0.51.omod "
+		        + "org/openmrs/module/include/dssmodule-1.44.omod");
+		return props;
+	}
+	
+	private void time(String name, OpenmrsClassLoader loader, String className, boolean indexed) {
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			try {
+				if (indexed)
+					loader.loadClass(className);
+				else
+					loadFromEveryModule(loader, className);
+			}
+			catch (ClassNotFoundException e) {
+				// the missing names are part of what is being timed
+			}
+		}
+		System.out.println(name + ": " + ((System.nanoTime() - start) / ROUNDS) + " ns");
+	}
+	
+	/**
+	 * What OpenmrsClassLoader.loadClass used to do
+	 */
+	private Class<?> loadFromEveryModule(OpenmrsClassLoader loader, String className) throws ClassNotFoundException {
+		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaders()) {
+			try {
+				return classLoader.loadClass(className);
+			}
+			catch (ClassNotFoundException e) {
+				// try the next one
+			}
+		}
+		
+		return loader.getParent().loadClass(className);
+	}
+}
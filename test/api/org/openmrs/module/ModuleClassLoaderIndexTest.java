@@ -0,0 +1,150 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link ModuleClassLoaderIndex} class
+ */
+public class ModuleClassLoaderIndexTest {
+	
+	/**
+	 * Makes a loader for a module whose only jar has the given (empty) entries
+	 */
+	private ModuleClassLoader classLoader(String moduleId, String... entries) throws Exception {
+		File jar = File.createTempFile(moduleId, ".jar");
+		jar.deleteOnExit();
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+		for (String entry : entries) {
+			out.putNextEntry(new ZipEntry(entry));
+			out.closeEntry();
+		}
+		out.close();
+		
+		return classLoader(moduleId, ModuleUtil.file2url(jar));
+	}
+	
+	private ModuleClassLoader classLoader(String moduleId, URL url) {
+		Module module = new Module(moduleId, moduleId, "org.openmrs.module." + moduleId, null, null, "1.0");
+		module.setRequiredModules(new ArrayList<String>());
+		return new ModuleClassLoader(module, Arrays.asList(url), getClass().getClassLoader());
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoaderIndex#getClassLoadersForClass(String)}
+	 */
+	@Test
+	@Verifies(value = "should only give the loaders whose jars have the package", method = "getClassLoadersForClass(String)")
+	public void getClassLoadersForClass_shouldOnlyGiveTheLoadersWhoseJarsHaveThePackage() throws Exception {
+		ModuleClassLoader foo = classLoader("foo", "org/openmrs/module/foo/Foo.class", "config.xml");
+		ModuleClassLoader bar = classLoader("bar", "org/openmrs/module/bar/Bar.class", "org/openmrs/module/foo/Shared.class");
+		
+		ModuleClassLoaderIndex index = new ModuleClassLoaderIndex();
+		index.add(foo);
+		index.add(bar);
+		
+		Assert.assertEquals(Arrays.asList(foo, bar), index.getClassLoadersForClass("org.openmrs.module.foo.Anything"));
+		Assert.assertEquals(Collections.singletonList(bar), index.getClassLoadersForClass("org.openmrs.module.bar.Bar"));
+		Assert.assertTrue(index.getClassLoadersForClass("org.openmrs.Patient").isEmpty());
+		Assert.assertTrue(index.getClassLoadersForClass("org.openmrs.module.Foo").isEmpty());
+		
+		index.remove(foo);
+		Assert.assertEquals(Collections.singletonList(bar), index.getClassLoadersForClass("org.openmrs.module.foo.Anything"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoaderIndex#getClassLoadersForResource(String)}
+	 */
+	@Test
+	@Verifies(value = "should give every loader for directories", method = "getClassLoadersForResource(String)")
+	public void getClassLoadersForResource_shouldGiveEveryLoaderForDirectories() throws Exception {
+		ModuleClassLoader foo = classLoader("foo", "org/openmrs/module/foo/Foo.class", "config.xml");
+		ModuleClassLoader bar = classLoader("bar", "org/openmrs/module/bar/Bar.class");
+		
+		ModuleClassLoaderIndex index = new ModuleClassLoaderIndex();
+		index.add(foo);
+		index.add(bar);
+		
+		Assert.assertEquals(Collections.singletonList(foo), index.getClassLoadersForResource("config.xml"));
+		Assert.assertEquals(Arrays.asList(foo, bar), index.getClassLoadersForResource("org/openmrs/"));
+		Assert.assertTrue(index.getClassLoadersForResource("org/openmrs/module/bar/Bar.hbm.xml").contains(bar));
+		Assert.assertTrue(index.getClassLoadersForResource("messages.properties").contains(foo));
+		Assert.assertFalse(index.getClassLoadersForResource("messages.properties").contains(bar));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoaderIndex#getClassLoadersForClass(String)}
+	 */
+	@Test
+	@Verifies(value = "should always give the loaders whose jars could not be scanned", method = "getClassLoadersForClass(String)")
+	public void getClassLoadersForClass_shouldAlwaysGiveTheLoadersWhoseJarsCouldNotBeScanned() throws Exception {
+		File folder = File.createTempFile("classes", "");
+		folder.delete();
+		folder.mkdir();
+		folder.deleteOnExit();
+		ModuleClassLoader classes = classLoader("classes", ModuleUtil.file2url(folder));
+		ModuleClassLoader bar = classLoader("bar", "org/openmrs/module/bar/Bar.class");
+		Assert.assertNull(classes.getPackageNames());
+		
+		ModuleClassLoaderIndex index = new ModuleClassLoaderIndex();
+		index.add(classes);
+		index.add(bar);
+		
+		Assert.assertEquals(Collections.singletonList(classes), index.getClassLoadersForClass("org.openmrs.Patient"));
+		Assert.assertEquals(Arrays.asList(classes, bar), index.getClassLoadersForClass("org.openmrs.module.bar.Bar"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoaderIndex#isMissingClass(String)}
+	 */
+	@Test
+	@Verifies(value = "should forget missing classes when the modules change", method = "isMissingClass(String)")
+	public void isMissingClass_shouldForgetMissingClassesWhenTheModulesChange() throws Exception {
+		ModuleClassLoaderIndex index = new ModuleClassLoaderIndex();
+		index.addMissingClass("org.openmrs.module.foo.Foo", index.getGeneration());
+		Assert.assertTrue(index.isMissingClass("org.openmrs.module.foo.Foo"));
+		Assert.assertFalse(index.isMissingClass("org.openmrs.module.foo.Bar"));
+		
+		index.add(classLoader("foo", "org/openmrs/module/foo/Foo.class"));
+		Assert.assertFalse(index.isMissingClass("org.openmrs.module.foo.Foo"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoaderIndex#addMissingClass(String,int)}
+	 */
+	@Test
+	@Verifies(value = "should not remember a class looked for before the modules changed", method = "addMissingClass(String,int)")
+	public void addMissingClass_shouldNotRememberAClassLookedForBeforeTheModulesChanged() throws Exception {
+		ModuleClassLoaderIndex index = new ModuleClassLoaderIndex();
+		int generation = index.getGeneration();
+		index.add(classLoader("foo", "org/openmrs/module/foo/Foo.class"));
+		Assert.assertTrue(generation != index.getGeneration());
+		
+		index.addMissingClass("org.openmrs.module.foo.Foo", generation);
+		Assert.assertFalse(index.isMissingClass("org.openmrs.module.foo.Foo"));
+	}
+}
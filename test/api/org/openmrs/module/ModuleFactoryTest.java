@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openmrs.module.Extension.MEDIA_TYPE;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the extension methods on the {@link ModuleFactory} class
+ */
+public class ModuleFactoryTest {
+	
+	private List<Module> modules = new ArrayList<Module>();
+	
+	@After
+	public void removeExtensions() throws Exception {
+		for (Module module : modules)
+			ModuleFactory.removeExtensions(module);
+	}
+	
+	/**
+	 * Makes an extension of the given point with the given media type (or none)
+	 */
+	private Extension extension(String pointId, final MEDIA_TYPE mediaType) {
+		Extension extension = new Extension() {
+			
+			@Override
+			public MEDIA_TYPE getMediaType() {
+				return mediaType;
+			}
+		};
+		extension.setPointId(pointId);
+		return extension;
+	}
+	
+	/**
+	 * Makes a module with the given extensions, as if they had been read from its config file
+	 */
+	private Module module(String moduleId, Extension... extensions) {
+		Module module = new Module(moduleId, moduleId, "org.openmrs.module." + moduleId, null, null, "1.0");
+		IdentityHashMap<String, String> extensionNames = new IdentityHashMap<String, String>();
+		for (Extension extension : extensions)
+			extensionNames.put(new String(extension.getPointId()), extension.getClass().getName());
+		module.setExtensionNames(extensionNames);
+		module.setExtensions(new ArrayList<Extension>(Arrays.asList(extensions)));
+		module.setRequiredModules(new ArrayList<String>());
+		modules.add(module);
+		return module;
+	}
+	
+	/**
+	 * @see {@link ModuleFactory#getExtensions(String)}
+	 */
+	@Test
+	@Verifies(value = "should give the extensions of the point with any media type", method = "getExtensions(String)")
+	public void getExtensions_shouldGiveTheExtensionsOfThePointWithAnyMediaType() throws Exception {
+		Extension plain = extension("test.point", null);
+		Extension html = extension("test.point", MEDIA_TYPE.html);
+		ModuleFactory.addExtensions(module("foo", plain, html, extension("test.other", null)));
+		
+		Assert.assertEquals(Arrays.asList(plain, html), ModuleFactory.getExtensions("test.point"));
+		Assert.assertEquals(Arrays.asList(html), ModuleFactory.getExtensions("test.point|html"));
+		Assert.assertTrue(ModuleFactory.getExtensions("test.missing").isEmpty());
+	}
+	
+	/**
+	 * @see {@link ModuleFactory#getExtensions(String,MEDIA_TYPE)}
+	 */
+	@Test
+	@Verifies(value = "should only give the extensions of the media type if there are any", method = "getExtensions(String,MEDIA_TYPE)")
+	public void getExtensions_shouldOnlyGiveTheExtensionsOfTheMediaTypeIfThereAreAny() throws Exception {
+		Extension plain = extension("test.point", null);
+		Extension html = extension("test.point", MEDIA_TYPE.html);
+		ModuleFactory.addExtensions(module("foo", plain, html));
+		ModuleFactory.addExtensions(module("bar", extension("test.untyped", null)));
+		
+		Assert.assertEquals(Arrays.asList(html), ModuleFactory.getExtensions("test.point", MEDIA_TYPE.html));
+		Assert.assertEquals(ModuleFactory.getExtensions("test.untyped"), ModuleFactory.getExtensions("test.untyped",
+		    MEDIA_TYPE.html));
+		Assert.assertEquals(1, ModuleFactory.getExtensions("test.untyped", MEDIA_TYPE.html).size());
+	}
+	
+	/**
+	 * @see {@link ModuleFactory#getExtensions(String)}
+	 */
+	@Test
+	@Verifies(value = "should list each extension once", method = "getExtensions(String)")
+	public void getExtensions_shouldListEachExtensionOnce() throws Exception {
+		Extension shared = extension("test.point", null);
+		ModuleFactory.addExtensions(module("foo", shared));
+		ModuleFactory.addExtensions(module("bar", shared, extension("test.point", MEDIA_TYPE.html)));
+		
+		Assert.assertEquals(2, ModuleFactory.getExtensions("test.point").size());
+		Assert.assertEquals(shared, ModuleFactory.getExtensions("test.point").get(0));
+	}
+	
+	/**
+	 * @see {@link ModuleFactory#getExtensions(String)}
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	@Verifies(value = "should not let the returned list be changed", method = "getExtensions(String)")
+	public void getExtensions_shouldNotLetTheReturnedListBeChanged() throws Exception {
+		ModuleFactory.addExtensions(module("foo", extension("test.point", null)));
+		
+		ModuleFactory.getExtensions("test.point").add(extension("test.point", null));
+	}
+	
+	/**
+	 * @see {@link ModuleFactory#stopModule(Module,boolean)}
+	 */
+	@Test
+	@Verifies(value = "should remove the module's extensions", method = "stopModule(Module,boolean)")
+	public void stopModule_shouldRemoveTheModulesExtensions() throws Exception {
+		Extension kept = extension("test.point", null);
+		Extension html = extension("test.point", MEDIA_TYPE.html);
+		ModuleFactory.addExtensions(module("foo", kept));
+		Module bar = module("bar", extension("test.point", null), html);
+		ModuleFactory.addExtensions(bar);
+		ModuleFactory.getModuleClassLoaderMap().put(bar,
+		    new ModuleClassLoader(bar, new ArrayList<URL>(), getClass().getClassLoader()));
+		Assert.assertEquals(3, ModuleFactory.getExtensions("test.point").size());
+		
+		ModuleFactory.stopModule(bar, true);
+		
+		Assert.assertEquals(Arrays.asList(kept), ModuleFactory.getExtensions("test.point"));
+		// nothing is left for the media type, so it falls back to the point's extensions
+		Assert.assertEquals(Arrays.asList(kept), ModuleFactory.getExtensions("test.point", MEDIA_TYPE.html));
+		Assert.assertFalse(ModuleFactory.getExtensionMap().containsKey("test.point|html"));
+	}
+}
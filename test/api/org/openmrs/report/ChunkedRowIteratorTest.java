@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests methods on the {@link ChunkedRowIterator} class
+ */
+public class ChunkedRowIteratorTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * Makes one object per patient, and remembers what was fetched and evicted
+	 */
+	private class TestIterator extends ChunkedRowIterator<Integer> {
+		
+		private List<List<Integer>> fetched = new ArrayList<List<Integer>>();
+		
+		private List<Integer> evicted = new ArrayList<Integer>();
+		
+		public TestIterator(Cohort patients) {
+			super(patients);
+		}
+		
+		protected List<Integer> fetch(Cohort patients) {
+			List<Integer> ids = new ArrayList<Integer>(patients.getMemberIds());
+			Collections.sort(ids);
+			fetched.add(ids);
+			return ids;
+		}
+		
+		protected Map<String, Object> toRow(Integer patientId) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("patientId", patientId);
+			return row;
+		}
+		
+		protected void evict(Integer patientId) {
+			evicted.add(patientId);
+		}
+	}
+	
+	/**
+	 * @see {@link ChunkedRowIterator#next()}
+	 */
+	@Test
+	@Verifies(value = "should produce the rows of every chunk in patient order", method = "next()")
+	public void next_shouldProduceTheRowsOfEveryChunkInPatientOrder() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE, "2"));
+		
+		TestIterator iterator = new TestIterator(new Cohort(Arrays.asList(7, 2, 5, 3, 9)));
+		List<Object> patientIds = new ArrayList<Object>();
+		while (iterator.hasNext())
+			patientIds.add(iterator.next().get("patientId"));
+		
+		Assert.assertEquals(Arrays.asList(2, 3, 5, 7, 9), patientIds);
+		Assert.assertEquals(3, iterator.fetched.size());
+		Assert.assertEquals(Arrays.asList(2, 3), iterator.fetched.get(0));
+		Assert.assertEquals(Arrays.asList(9), iterator.fetched.get(2));
+	}
+	
+	/**
+	 * @see {@link ChunkedRowIterator#hasNext()}
+	 */
+	@Test
+	@Verifies(value = "should evict the objects of a chunk only once all its rows have been read", method = "hasNext()")
+	public void hasNext_shouldEvictTheObjectsOfAChunkOnlyOnceAllItsRowsHaveBeenRead() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COHORT_QUERY_CHUNK_SIZE, "2"));
+		
+		TestIterator iterator = new TestIterator(new Cohort(Arrays.asList(1, 2, 3)));
+		iterator.next();
+		iterator.next();
+		Assert.assertTrue(iterator.evicted.isEmpty());
+		
+		iterator.next();
+		Assert.assertEquals(Arrays.asList(1, 2), iterator.evicted);
+		
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals(Arrays.asList(1, 2, 3), iterator.evicted);
+	}
+	
+	/**
+	 * @see {@link ChunkedRowIterator#hasNext()}
+	 */
+	@Test
+	@Verifies(value = "should not produce any rows for an empty cohort", method = "hasNext()")
+	public void hasNext_shouldNotProduceAnyRowsForAnEmptyCohort() throws Exception {
+		TestIterator iterator = new TestIterator(new Cohort());
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertTrue(iterator.fetched.isEmpty());
+	}
+	
+	/**
+	 * @see {@link RowPerObsDataSet#iterator()}
+	 */
+	@Test
+	@Verifies(value = "should produce a row for each observation of the patients", method = "iterator()")
+	public void iterator_shouldProduceARowForEachObservationOfThePatients() throws Exception {
+		Cohort patients = new Cohort(Arrays.asList(2, 7));
+		RowPerObsDataSetDefinition definition = new RowPerObsDataSetDefinition();
+		definition.getQuestions().add(Context.getConceptService().getConcept(5089));
+		RowPerObsDataSet dataSet = new RowPerObsDataSet();
+		dataSet.setDefinition(definition);
+		dataSet.setPatients(patients);
+		
+		List<Obs> expected = Context.getObsService().getObservations(patients,
+		    new ArrayList<Concept>(definition.getQuestions()), null, null);
+		
+		int rows = 0;
+		for (Iterator<Map<String, Object>> i = dataSet.iterator(); i.hasNext();) {
+			Assert.assertEquals(5089, i.next().get("questionConceptId"));
+			rows++;
+		}
+		Assert.assertTrue(rows > 0);
+		Assert.assertEquals(expected.size(), rows);
+	}
+}
@@ -19,9 +19,17 @@ import static org.junit.Assert.fail;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.openmrs.test.Verifies;
 
 /**
  *
@@ -76,4 +84,43 @@ public class EvaluationContextTest {
 		    "This report is from 2007-01-10 10:30:17 to 2007-01-31 10:30:17 for male patients");
 	}
 	
+	/**
+	 * @see {@link EvaluationContext#getFromCache(String,Callable)}
+	 */
+	@Test
+	@Verifies(value = "should compute a key only once when asked for it from several threads", method = "getFromCache(String,Callable)")
+	public void getFromCache_shouldComputeAKeyOnlyOnceWhenAskedForItFromSeveralThreads() throws Exception {
+		final EvaluationContext context = new EvaluationContext();
+		final AtomicInteger computations = new AtomicInteger();
+		final Callable<String> computation = new Callable<String>() {
+			
+			public String call() throws Exception {
+				computations.incrementAndGet();
+				Thread.sleep(200);
+				return "cohort";
+			}
+		};
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					
+					public String call() throws Exception {
+						return context.getFromCache("filter", computation);
+					}
+				}));
+			}
+			for (Future<String> result : results)
+				assertEquals("cohort", result.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		assertEquals(1, computations.get());
+		assertEquals("cohort", context.getFromCache("filter"));
+	}
+	
 }
@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.report;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.hibernate.Hibernate;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.reporting.ObsPatientFilter;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests methods on the {@link EvaluationExecutor} class
+ */
+public class EvaluationExecutorTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * @see {@link EvaluationExecutor#evaluateAll(Map, Object...)}
+	 */
+	@Test
+	@Verifies(value = "should give each worker its own user context for the same user", method = "evaluateAll(Map,Object...)")
+	public void evaluateAll_shouldGiveEachWorkerItsOwnUserContextForTheSameUser() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS, "2"));
+		
+		Callable<UserContext> getUserContext = new Callable<UserContext>() {
+			
+			public UserContext call() throws Exception {
+				return Context.getUserContext();
+			}
+		};
+		Map<String, Callable<UserContext>> tasks = new LinkedHashMap<String, Callable<UserContext>>();
+		tasks.put("first", getUserContext);
+		tasks.put("second", getUserContext);
+		
+		Map<String, UserContext> results = EvaluationExecutor.evaluateAll(tasks);
+		
+		UserContext first = results.get("first");
+		UserContext second = results.get("second");
+		Assert.assertNotSame(first, second);
+		Assert.assertNotSame(Context.getUserContext(), first);
+		Assert.assertNotSame(Context.getUserContext(), second);
+		Assert.assertEquals(Context.getAuthenticatedUser(), first.getAuthenticatedUser());
+		Assert.assertEquals(Context.getAuthenticatedUser(), second.getAuthenticatedUser());
+	}
+	
+	/**
+	 * @see {@link EvaluationExecutor#evaluateAll(Map, Object...)}
+	 */
+	@Test
+	@Verifies(value = "should load what the inputs hold lazily before the workers start", method = "evaluateAll(Map,Object...)")
+	public void evaluateAll_shouldLoadWhatTheInputsHoldLazilyBeforeTheWorkersStart() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_REPORT_EVALUATION_THREADS, "2"));
+		Context.clearSession();
+		
+		Concept question = Context.getConceptService().getConcept(5089);
+		ObsPatientFilter filter = new ObsPatientFilter();
+		filter.setQuestion(question);
+		Assert.assertFalse(Hibernate.isInitialized(question.getDescriptions()));
+		
+		Callable<Integer> getQuestionId = new Callable<Integer>() {
+			
+			public Integer call() throws Exception {
+				return 5089;
+			}
+		};
+		Map<String, Callable<Integer>> tasks = new LinkedHashMap<String, Callable<Integer>>();
+		tasks.put("first", getQuestionId);
+		tasks.put("second", getQuestionId);
+		
+		EvaluationExecutor.evaluateAll(tasks, filter);
+		
+		Assert.assertTrue(Hibernate.isInitialized(question.getDescriptions()));
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.reporting;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link ReportObjectService}
+ */
+public class ReportObjectServiceTest extends BaseContextSensitiveTest {
+	
+	private PatientSearchReportObject saveSearch(String name, String gender) {
+		PatientSearch search = PatientSearch.createFilterSearch(PatientCharacteristicFilter.class);
+		search.addArgument("gender", gender, String.class);
+		PatientSearchReportObject reportObject = new PatientSearchReportObject(name, search);
+		Context.getReportObjectService().saveReportObject(reportObject);
+		return reportObject;
+	}
+	
+	/**
+	 * @see {@link ReportObjectService#getPatientSearch(String)}
+	 */
+	@Test
+	@Verifies(value = "should get the search with the given name", method = "getPatientSearch(String)")
+	public void getPatientSearch_shouldGetTheSearchWithTheGivenName() throws Exception {
+		saveSearch("Male", "m");
+		saveSearch("Female", "f");
+		
+		ReportObjectService service = Context.getReportObjectService();
+		Assert.assertEquals("f", service.getPatientSearch("Female").getArgumentValue("gender"));
+		Assert.assertEquals("m", service.getPatientSearch("Male").getArgumentValue("gender"));
+		Assert.assertNull(service.getPatientSearch("Unknown"));
+	}
+	
+	/**
+	 * @see {@link ReportObjectService#getReportObject(Integer)}
+	 */
+	@Test
+	@Verifies(value = "should give a copy that can be changed without changing later results", method = "getReportObject(Integer)")
+	public void getReportObject_shouldGiveACopyThatCanBeChangedWithoutChangingLaterResults() throws Exception {
+		Integer reportObjectId = saveSearch("Male", "m").getReportObjectId();
+		
+		ReportObjectService service = Context.getReportObjectService();
+		PatientSearchReportObject first = (PatientSearchReportObject) service.getReportObject(reportObjectId);
+		first.setName("Changed");
+		first.getPatientSearch().getArguments().clear();
+		
+		PatientSearchReportObject second = (PatientSearchReportObject) service.getReportObject(reportObjectId);
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals("Male", second.getName());
+		Assert.assertEquals(reportObjectId, second.getReportObjectId());
+		Assert.assertEquals("m", second.getPatientSearch().getArgumentValue("gender"));
+	}
+	
+	/**
+	 * @see {@link ReportObjectService#saveReportObject(AbstractReportObject)}
+	 */
+	@Test
+	@Verifies(value = "should replace what was cached for the object", method = "saveReportObject(AbstractReportObject)")
+	public void saveReportObject_shouldReplaceWhatWasCachedForTheObject() throws Exception {
+		Integer reportObjectId = saveSearch("Male", "m").getReportObjectId();
+		
+		ReportObjectService service = Context.getReportObjectService();
+		PatientSearchReportObject reportObject = (PatientSearchReportObject) service.getReportObject(reportObjectId);
+		reportObject.setName("Men");
+		service.saveReportObject(reportObject);
+		
+		Assert.assertEquals("Men", service.getReportObject(reportObjectId).getName());
+		Assert.assertNotNull(service.getPatientSearch("Men"));
+		Assert.assertNull(service.getPatientSearch("Male"));
+	}
+	
+	/**
+	 * @see {@link ReportObjectService#getPatientFilterByName(String)}
+	 */
+	@Test
+	@Verifies(value = "should get the filter with the given name", method = "getPatientFilterByName(String)")
+	public void getPatientFilterByName_shouldGetTheFilterWithTheGivenName() throws Exception {
+		PatientCharacteristicFilter filter = new PatientCharacteristicFilter("F", null, null);
+		filter.setName("Women");
+		Context.getReportObjectService().saveReportObject(filter);
+		
+		PatientFilter found = Context.getReportObjectService().getPatientFilterByName("Women");
+		Assert.assertEquals("F", ((PatientCharacteristicFilter) found).getGender());
+		Assert.assertNull(Context.getReportObjectService().getPatientFilterByName("Men"));
+	}
+}
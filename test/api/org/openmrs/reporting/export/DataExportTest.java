@@ -17,13 +17,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.text.DateFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.Locale;
 
 import org.junit.Test;
 import org.openmrs.Cohort;
+import org.openmrs.GlobalProperty;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -601,4 +605,53 @@ public class DataExportTest extends BaseContextSensitiveTest {
 		//System.out.println("exportFile: \n" + output);
 		assertEquals("The output is not right.", expectedOutput, output);
 	}
+	
+	/**
+	 * Makes sure that generating the pages of an export on several threads gives the same file as
+	 * generating them one after the other, including the settings of the functions passed in
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldGenerateTheSameExportInParallelAsOnePageAtATime() throws Exception {
+		DataExportReportObject export = new DataExportReportObject();
+		export.setName("Parallel pages");
+		export.addSimpleColumn("PATIENT_ID", "$!{fn.patientId}");
+		export.addSimpleColumn("GENDER", "$!{fn.getPatientAttr('Person', 'gender')}");
+		export.addSimpleColumn("BIRTHDATE", "$!{fn.formatDate('long', $fn.getPatientAttr('Person', 'birthdate'))}");
+		export.addSimpleColumn("SEPARATOR", "$!{fn.separator}");
+		
+		Cohort patients = new Cohort();
+		patients.addMember(2);
+		patients.addMember(6);
+		patients.addMember(7);
+		patients.addMember(8);
+		
+		String serial = generateExport(export, patients);
+		
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_DATA_EXPORT_PAGE_SIZE, "1"));
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_DATA_EXPORT_THREADS, "2"));
+		String parallel = generateExport(export, patients);
+		
+		assertEquals(serial, parallel);
+		assertEquals(5, serial.split("\n").length);
+	}
+	
+	/**
+	 * Generates the export with functions set up for a locale other than the user's
+	 */
+	private String generateExport(DataExportReportObject export, Cohort patients) throws Exception {
+		DataExportFunctions functions = new DataExportFunctions();
+		functions.setSeparator(",");
+		functions.locale = Locale.FRENCH;
+		functions.dateFormatLong = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG, Locale.FRENCH);
+		
+		DataExportUtil.generateExport(export, patients, functions, null);
+		File exportFile = DataExportUtil.getGeneratedFile(export);
+		String output = OpenmrsUtil.getFileAsString(exportFile);
+		exportFile.delete();
+		return output;
+	}
 }
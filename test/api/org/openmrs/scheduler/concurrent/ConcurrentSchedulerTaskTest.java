@@ -0,0 +1,211 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.concurrent;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.scheduler.tasks.AbstractTask;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link ConcurrentSchedulerTask} class
+ */
+public class ConcurrentSchedulerTaskTest {
+	
+	private ScheduledThreadPoolExecutor executor;
+	
+	/**
+	 * A task whose runs wait until they are released, and that counts how many of its runs were
+	 * going at once
+	 */
+	private static class BlockingTask extends AbstractTask {
+		
+		private CountDownLatch started = new CountDownLatch(1);
+		
+		private CountDownLatch released = new CountDownLatch(1);
+		
+		private AtomicInteger running = new AtomicInteger();
+		
+		private AtomicInteger maxRunning = new AtomicInteger();
+		
+		public void execute() {
+			int now = running.incrementAndGet();
+			if (now > maxRunning.get())
+				maxRunning.set(now);
+			started.countDown();
+			try {
+				released.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				// let the run end
+			}
+			finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+	
+	@Before
+	public void createExecutor() throws Exception {
+		executor = new ScheduledThreadPoolExecutor(3);
+	}
+	
+	@After
+	public void shutdownExecutor() throws Exception {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Waits for the task to have run the given number of times
+	 */
+	private void waitForRuns(ConcurrentSchedulerTask scheduled, int runs) throws Exception {
+		for (int i = 0; i < 500 && (scheduled.getRunCount() < runs || scheduled.getRunningCount() > 0); i++)
+			Thread.sleep(10);
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#start(Date)}
+	 */
+	@Test
+	@Verifies(value = "should skip firings while the task is running as often as it may", method = "start(Date)")
+	public void start_shouldSkipFiringsWhileTheTaskIsRunningAsOftenAsItMay() throws Exception {
+		BlockingTask task = new BlockingTask();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "blocking", executor, 20, 1,
+		        ConcurrentSchedulerTask.MISFIRE_SKIP, 60000);
+		scheduled.start(new Date());
+		
+		Assert.assertTrue(task.started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		Assert.assertEquals(1, scheduled.getRunningCount());
+		Assert.assertTrue(scheduled.getMisfireCount() > 0);
+		
+		scheduled.shutdown();
+		task.released.countDown();
+		waitForRuns(scheduled, 1);
+		
+		Assert.assertEquals(1, scheduled.getRunCount());
+		Assert.assertEquals(1, task.maxRunning.get());
+		Assert.assertTrue(scheduled.getLastRunTime() >= 150);
+		Assert.assertNull(scheduled.getNextExecutionTime());
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#start(Date)}
+	 */
+	@Test
+	@Verifies(value = "should run a misfired task once the running one finishes", method = "start(Date)")
+	public void start_shouldRunAMisfiredTaskOnceTheRunningOneFinishes() throws Exception {
+		BlockingTask task = new BlockingTask();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "blocking", executor, 20, 1,
+		        ConcurrentSchedulerTask.MISFIRE_FIRE_NOW, 60000);
+		scheduled.start(new Date());
+		
+		Assert.assertTrue(task.started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		task.released.countDown();
+		waitForRuns(scheduled, 2);
+		scheduled.shutdown();
+		
+		Assert.assertTrue(scheduled.getRunCount() >= 2);
+		Assert.assertEquals(1, task.maxRunning.get());
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#start(Date)}
+	 */
+	@Test
+	@Verifies(value = "should let the task run as often at once as it may", method = "start(Date)")
+	public void start_shouldLetTheTaskRunAsOftenAtOnceAsItMay() throws Exception {
+		BlockingTask task = new BlockingTask();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "blocking", executor, 20, 2,
+		        ConcurrentSchedulerTask.MISFIRE_SKIP, 60000);
+		scheduled.start(new Date());
+		
+		Assert.assertTrue(task.started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		Assert.assertEquals(2, scheduled.getRunningCount());
+		
+		scheduled.shutdown();
+		task.released.countDown();
+		waitForRuns(scheduled, 2);
+		
+		Assert.assertEquals(2, scheduled.getRunCount());
+		Assert.assertEquals(2, task.maxRunning.get());
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#start(Date)}
+	 */
+	@Test
+	@Verifies(value = "should count a late start as a misfire but still run it when firing now", method = "start(Date)")
+	public void start_shouldCountALateStartAsAMisfireButStillRunItWhenFiringNow() throws Exception {
+		BlockingTask task = new BlockingTask();
+		task.released.countDown();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "late", executor, 0, 1,
+		        ConcurrentSchedulerTask.MISFIRE_FIRE_NOW, 100);
+		scheduled.start(new Date(System.currentTimeMillis() - 500));
+		waitForRuns(scheduled, 1);
+		
+		Assert.assertEquals(1, scheduled.getRunCount());
+		Assert.assertEquals(1, scheduled.getMisfireCount());
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#start(Date)}
+	 */
+	@Test
+	@Verifies(value = "should drop a late start when skipping", method = "start(Date)")
+	public void start_shouldDropALateStartWhenSkipping() throws Exception {
+		BlockingTask task = new BlockingTask();
+		task.released.countDown();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "late", executor, 0, 1,
+		        ConcurrentSchedulerTask.MISFIRE_SKIP, 100);
+		scheduled.start(new Date(System.currentTimeMillis() - 500));
+		for (int i = 0; i < 500 && scheduled.getMisfireCount() == 0; i++)
+			Thread.sleep(10);
+		
+		Assert.assertEquals(1, scheduled.getMisfireCount());
+		Assert.assertEquals(0, scheduled.getRunCount());
+	}
+	
+	/**
+	 * @see {@link ConcurrentSchedulerTask#getStatus()}
+	 */
+	@Test
+	@Verifies(value = "should report how long the runs took and how late they started", method = "getStatus()")
+	public void getStatus_shouldReportHowLongTheRunsTookAndHowLateTheyStarted() throws Exception {
+		BlockingTask task = new BlockingTask();
+		task.released.countDown();
+		ConcurrentSchedulerTask scheduled = new ConcurrentSchedulerTask(task, "quick", executor, 0, 1,
+		        ConcurrentSchedulerTask.MISFIRE_FIRE_NOW, 60000);
+		scheduled.start(new Date(System.currentTimeMillis() - 500));
+		waitForRuns(scheduled, 1);
+		
+		Assert.assertEquals(1, scheduled.getRunCount());
+		Assert.assertTrue(scheduled.getLastLag() >= 500);
+		Assert.assertEquals(scheduled.getLastLag(), scheduled.getMaxLag());
+		String status = scheduled.getStatus();
+		Assert.assertTrue(status, status.startsWith("Not Running. Ran 1 time(s) (0 failed, 0 misfired)"));
+		Assert.assertTrue(status, status.contains("ms late"));
+	}
+}
@@ -524,6 +524,10 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		// insert new rows, update existing rows, and leave others alone
 		DatabaseOperation.REFRESH.execute(dbUnitConn, dataset);
 		
+		// the dataset may have global properties and cached metadata in it
+		Context.getAdministrationService().refreshGlobalPropertyCache();
+		clearSecondLevelCache();
+		
 		//turn foreign key checks back on
 		if (useInMemoryDatabase()) {
 			// for the hsql database
@@ -581,9 +585,24 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		
 		// clear the (hibernate) session to make sure nothing is cached, etc
 		Context.clearSession();
+		Context.getAdministrationService().refreshGlobalPropertyCache();
+		clearSecondLevelCache();
 		
 	}
 	
+	/**
+	 * Empties the hibernate second-level and query caches. DBUnit writes straight to the database,
+	 * so anything cached before a dataset was loaded or deleted would otherwise be stale.
+	 */
+	public void clearSecondLevelCache() {
+		SessionFactory sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+		for (Object entityName : sessionFactory.getAllClassMetadata().keySet())
+			sessionFactory.evictEntity((String) entityName);
+		for (Object roleName : sessionFactory.getAllCollectionMetadata().keySet())
+			sessionFactory.evictCollection((String) roleName);
+		sessionFactory.evictQueries();
+	}
+	
 	/**
 	 * This method is run before all test methods that extend this {@link BaseContextSensitiveTest}
 	 * unless you annotate your method with the "@SkipBaseSetup" annotation After running this
@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares cohort-sized {@link IntegerBitmap}s with the HashSets that Cohort used before. This is
+ * not run as part of the test suite. Run it with the api classes on the classpath:
+ * 
+ * <pre>
+ * java -Xmx512m -cp build org.openmrs.util.IntegerBitmapBenchmark [numberOfPatients]
+ * </pre>
+ */
+public class IntegerBitmapBenchmark {
+	
+	private static final int ROUNDS = 20;
+	
+	public static void main(String[] args) {
+		int patients = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		Random random = new Random(1);
+		
+		// two overlapping cohorts: e.g. "all females" and "enrolled in a program"
+		Set<Integer> hashA = new HashSet<Integer>();
+		Set<Integer> hashB = new HashSet<Integer>();
+		IntegerBitmap bitmapA = new IntegerBitmap();
+		IntegerBitmap bitmapB = new IntegerBitmap();
+		for (int id = 1; id <= patients; id++) {
+			if (random.nextInt(2) == 0) {
+				hashA.add(id);
+				bitmapA.add(id);
+			}
+			if (random.nextInt(5) == 0) {
+				hashB.add(id);
+				bitmapB.add(id);
+			}
+		}
+		
+		System.out.println("Patients: " + patients + ", cohort sizes: " + hashA.size() + " and " + hashB.size());
+		System.out.println("Retained heap, HashSet: " + (measure(new HashSetFactory(hashA)) / 1024) + " kB, IntegerBitmap: "
+		        + (measure(new BitmapFactory(bitmapA)) / 1024) + " kB");
+		
+		// warm up both implementations before timing them
+		for (int i = 0; i < ROUNDS; i++) {
+			hashSetAlgebra(hashA, hashB);
+			bitmapAlgebra(bitmapA, bitmapB);
+		}
+		
+		long start = System.nanoTime();
+		int check = 0;
+		for (int i = 0; i < ROUNDS; i++)
+			check += hashSetAlgebra(hashA, hashB);
+		long hashTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++)
+			check -= bitmapAlgebra(bitmapA, bitmapB);
+		long bitmapTime = System.nanoTime() - start;
+		
+		if (check != 0)
+			throw new IllegalStateException("HashSet and IntegerBitmap results differ");
+		
+		System.out.println("union + intersect + subtract, per round: HashSet " + (hashTime / ROUNDS / 1000)
+		        + " us, IntegerBitmap " + (bitmapTime / ROUNDS / 1000) + " us");
+	}
+	
+	/**
+	 * The way Cohort.union/intersect/subtract used to work
+	 */
+	private static int hashSetAlgebra(Set<Integer> a, Set<Integer> b) {
+		Set<Integer> union = new HashSet<Integer>(a);
+		union.addAll(b);
+		Set<Integer> intersection = new HashSet<Integer>(a);
+		intersection.retainAll(b);
+		Set<Integer> difference = new HashSet<Integer>(a);
+		difference.removeAll(b);
+		return union.size() + intersection.size() + difference.size();
+	}
+	
+	private static int bitmapAlgebra(IntegerBitmap a, IntegerBitmap b) {
+		return IntegerBitmap.or(a, b).size() + IntegerBitmap.and(a, b).size() + IntegerBitmap.andNot(a, b).size();
+	}
+	
+	/**
+	 * Roughly measures the heap retained by ten copies of a set
+	 */
+	private static long measure(SetFactory factory) {
+		Object[] keep = new Object[10];
+		long before = usedMemory();
+		for (int i = 0; i < keep.length; i++)
+			keep[i] = factory.copy();
+		long after = usedMemory();
+		if (keep[keep.length - 1] == null)
+			throw new IllegalStateException();
+		return (after - before) / keep.length;
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private interface SetFactory {
+		
+		public Set<Integer> copy();
+	}
+	
+	private static class HashSetFactory implements SetFactory {
+		
+		private Set<Integer> source;
+		
+		public HashSetFactory(Set<Integer> source) {
+			this.source = source;
+		}
+		
+		public Set<Integer> copy() {
+			return new HashSet<Integer>(source);
+		}
+	}
+	
+	private static class BitmapFactory implements SetFactory {
+		
+		private IntegerBitmap source;
+		
+		public BitmapFactory(IntegerBitmap source) {
+			this.source = source;
+		}
+		
+		public Set<Integer> copy() {
+			return IntegerBitmap.or(source, new IntegerBitmap());
+		}
+	}
+}
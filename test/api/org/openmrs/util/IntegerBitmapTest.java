@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods on the {@link IntegerBitmap} class
+ */
+public class IntegerBitmapTest {
+	
+	/**
+	 * Fills a bitmap and a HashSet with the same random values
+	 */
+	private IntegerBitmap randomBitmap(Random random, int count, int range, Set<Integer> expected) {
+		IntegerBitmap ret = new IntegerBitmap();
+		for (int i = 0; i < count; i++) {
+			int value = random.nextInt(range);
+			ret.add(value);
+			expected.add(value);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @see {@link IntegerBitmap#add(int)}
+	 */
+	@Test
+	@Verifies(value = "should hold the same values as a HashSet for sparse and dense ranges", method = "add(int)")
+	public void add_shouldHoldTheSameValuesAsAHashSetForSparseAndDenseRanges() throws Exception {
+		Random random = new Random(42);
+		for (int range : new int[] { 1000, 100000, 10000000 }) {
+			Set<Integer> expected = new HashSet<Integer>();
+			IntegerBitmap bitmap = randomBitmap(random, 20000, range, expected);
+			Assert.assertEquals(expected.size(), bitmap.size());
+			Assert.assertEquals(expected, bitmap);
+		}
+	}
+	
+	/**
+	 * @see {@link IntegerBitmap#iterator()}
+	 */
+	@Test
+	@Verifies(value = "should iterate in ascending order and support remove", method = "iterator()")
+	public void iterator_shouldIterateInAscendingOrderAndSupportRemove() throws Exception {
+		IntegerBitmap bitmap = new IntegerBitmap();
+		for (int i = 0; i < 10000; i++)
+			bitmap.add(i * 7);
+		
+		int previous = -1;
+		for (Iterator<Integer> i = bitmap.iterator(); i.hasNext();) {
+			int value = i.next();
+			Assert.assertTrue(value > previous);
+			previous = value;
+			if (value % 2 == 0)
+				i.remove();
+		}
+		
+		Assert.assertEquals(5000, bitmap.size());
+		Assert.assertFalse(bitmap.contains(14));
+		Assert.assertTrue(bitmap.contains(7));
+	}
+	
+	/**
+	 * @see {@link IntegerBitmap#and(IntegerBitmap,IntegerBitmap)}
+	 */
+	@Test
+	@Verifies(value = "should match HashSet set algebra", method = "and(IntegerBitmap,IntegerBitmap)")
+	public void and_shouldMatchHashSetSetAlgebra() throws Exception {
+		Random random = new Random(7);
+		Set<Integer> a = new HashSet<Integer>();
+		Set<Integer> b = new HashSet<Integer>();
+		IntegerBitmap bitmapA = randomBitmap(random, 50000, 200000, a);
+		IntegerBitmap bitmapB = randomBitmap(random, 3000, 200000, b);
+		
+		Set<Integer> union = new HashSet<Integer>(a);
+		union.addAll(b);
+		Set<Integer> intersection = new HashSet<Integer>(a);
+		intersection.retainAll(b);
+		Set<Integer> difference = new HashSet<Integer>(a);
+		difference.removeAll(b);
+		
+		Assert.assertEquals(union, IntegerBitmap.or(bitmapA, bitmapB));
+		Assert.assertEquals(intersection, IntegerBitmap.and(bitmapA, bitmapB));
+		Assert.assertEquals(difference, IntegerBitmap.andNot(bitmapA, bitmapB));
+		
+		// the operands must not change
+		Assert.assertEquals(a, bitmapA);
+		Assert.assertEquals(b, bitmapB);
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.Verifies;
+import org.openmrs.web.test.BaseWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Tests the {@link PatientSnapshot} class
+ */
+public class PatientSnapshotTest extends BaseWebContextSensitiveTest {
+	
+	private Statistics statistics;
+	
+	private boolean statisticsWereEnabled;
+	
+	/**
+	 * Counts the SQL statements hibernate runs, so that the tests do not just trust the snapshot's
+	 * own fetch count
+	 */
+	@Before
+	public void enableStatistics() throws Exception {
+		statistics = ((SessionFactory) applicationContext.getBean("sessionFactory")).getStatistics();
+		statisticsWereEnabled = statistics.isStatisticsEnabled();
+		statistics.setStatisticsEnabled(true);
+	}
+	
+	@After
+	public void restoreStatistics() throws Exception {
+		statistics.setStatisticsEnabled(statisticsWereEnabled);
+	}
+	
+	/**
+	 * @see {@link PatientSnapshot#getSnapshot(javax.servlet.http.HttpServletRequest,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should return the same snapshot for a patient for the whole request", method = "getSnapshot(HttpServletRequest,Integer)")
+	public void getSnapshot_shouldReturnTheSameSnapshotForAPatientForTheWholeRequest() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		PatientSnapshot snapshot = PatientSnapshot.getSnapshot(request, 7);
+		assertSame(snapshot, PatientSnapshot.getSnapshot(request, 7));
+		assertNotSame(snapshot, PatientSnapshot.getSnapshot(request, 8));
+		assertNotSame(snapshot, PatientSnapshot.getSnapshot(new MockHttpServletRequest(), 7));
+	}
+	
+	/**
+	 * @see {@link PatientSnapshot#getObs(Concept)}
+	 */
+	@Test
+	@Verifies(value = "should pick obs out of all the patient's obs once those have been fetched", method = "getObs(Concept)")
+	public void getObs_shouldPickObsOutOfAllThePatientsObsOnceThoseHaveBeenFetched() throws Exception {
+		Concept weight = Context.getConceptService().getConcept(5089);
+		PatientSnapshot snapshot = new PatientSnapshot(7);
+		snapshot.getObs();
+		int fetches = snapshot.getFetchCount();
+		long statements = statistics.getPrepareStatementCount();
+		
+		assertEquals(3, snapshot.getObs(weight).size());
+		assertEquals(fetches, snapshot.getFetchCount());
+		assertEquals(statements, statistics.getPrepareStatementCount());
+	}
+	
+	/**
+	 * @see {@link PatientSnapshot#getEncounters()}
+	 */
+	@Test
+	@Verifies(value = "should only query for the encounters once", method = "getEncounters()")
+	public void getEncounters_shouldOnlyQueryForTheEncountersOnce() throws Exception {
+		PatientSnapshot snapshot = new PatientSnapshot(7);
+		long statements = statistics.getPrepareStatementCount();
+		snapshot.getEncounters();
+		assertTrue(statistics.getPrepareStatementCount() > statements);
+		int fetches = snapshot.getFetchCount();
+		statements = statistics.getPrepareStatementCount();
+		
+		assertSame(snapshot.getEncounters(), snapshot.getEncounters());
+		assertEquals(fetches, snapshot.getFetchCount());
+		assertEquals(statements, statistics.getPrepareStatementCount());
+	}
+	
+}
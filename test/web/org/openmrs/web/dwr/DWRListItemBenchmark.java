@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.dwr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.openmrs.ConceptWord;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterSearchResult;
+import org.openmrs.Obs;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseWebContextSensitiveTest;
+
+/**
+ * Counts the queries and times building the dwr encounter, obs and concept list items the way they
+ * were built before (one object graph at a time, with lazy loading) and with the listing queries on
+ * the services. This is not run as part of the test suite. Run it against the standard test dataset
+ * with the test classes on the classpath:
+ * 
+ * <pre>
+ * java -cp build:build-test:lib/... org.junit.runner.JUnitCore org.openmrs.web.dwr.DWRListItemBenchmark
+ * </pre>
+ */
+public class DWRListItemBenchmark extends BaseWebContextSensitiveTest {
+	
+	private static final int ROUNDS = 20;
+	
+	private Statistics statistics;
+	
+	@Test
+	public void compareListItemQueries() throws Exception {
+		statistics = ((SessionFactory) applicationContext.getBean("sessionFactory")).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		
+		final EncounterService es = Context.getEncounterService();
+		final ConceptService cs = Context.getConceptService();
+		
+		run("encounters by identifier, entities", new Runnable() {
+			
+			public void run() {
+				for (Encounter e : es.getEncountersByPatientIdentifier("6TS-4"))
+					new EncounterListItem(e);
+			}
+		});
+		run("encounters by identifier, listing", new Runnable() {
+			
+			public void run() {
+				for (EncounterSearchResult result : es.getEncountersForListing("6TS-4"))
+					new EncounterListItem(result);
+			}
+		});
+		
+		run("obs by encounter, entities", new Runnable() {
+			
+			public void run() {
+				for (Obs obs : es.getEncounter(3).getAllObs())
+					new ObsListItem(obs, Locale.ENGLISH);
+			}
+		});
+		run("obs by encounter, listing", new Runnable() {
+			
+			public void run() {
+				Encounter encounter = es.getEncounter(3);
+				for (Obs obs : Context.getObsService().getObservationsForListing(null, null, encounter))
+					new ObsListItem(obs, Locale.ENGLISH);
+			}
+		});
+		
+		run("concept search, entities", new Runnable() {
+			
+			public void run() {
+				for (ConceptWord word : cs.findConcepts("a", Locale.ENGLISH, false))
+					new ConceptListItem(word);
+			}
+		});
+		run("concept search, listing", new Runnable() {
+			
+			public void run() {
+				List<ConceptWord> words = new ArrayList<ConceptWord>(cs.findConcepts("a", Locale.ENGLISH, false));
+				DWRConceptService.fetchConceptsForListing(words, words.size());
+				for (ConceptWord word : words)
+					new ConceptListItem(word);
+			}
+		});
+	}
+	
+	/**
+	 * Runs the task with an empty session (and second-level cache) each round and prints the
+	 * statements it prepared and the time it took
+	 */
+	private void run(String name, Runnable task) {
+		long queries = 0;
+		long nanos = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			Context.clearSession();
+			clearSecondLevelCache();
+			statistics.clear();
+			long start = System.nanoTime();
+			task.run();
+			nanos += System.nanoTime() - start;
+			queries += statistics.getPrepareStatementCount();
+		}
+		System.out.println(name + ": " + (queries / ROUNDS) + " queries, " + (nanos / ROUNDS / 1000) + " us");
+	}
+}
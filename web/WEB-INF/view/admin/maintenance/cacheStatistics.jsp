@@ -0,0 +1,72 @@
+<%@ include file="/WEB-INF/template/include.jsp" %>
+
+<openmrs:require privilege="View Administration Functions" otherwise="/login.htm" redirect="/admin/maintenance/cacheStatistics.htm"/>
+
+<%@ include file="/WEB-INF/template/header.jsp" %>
+<%@ include file="localHeader.jsp" %>
+
+<%@ page import="org.openmrs.api.AdministrationService" %>
+<%@ page import="org.openmrs.api.context.Context" %>
+<%
+	AdministrationService as = Context.getAdministrationService();
+	if ("POST".equals(request.getMethod())) {
+		String action = request.getParameter("action");
+		if ("enable".equals(action))
+			as.setCacheStatisticsEnabled(true);
+		else if ("disable".equals(action))
+			as.setCacheStatisticsEnabled(false);
+		else if ("clear".equals(action))
+			as.clearCache();
+	}
+	pageContext.setAttribute("enabled", as.isCacheStatisticsEnabled());
+	pageContext.setAttribute("statistics", as.getCacheStatistics());
+%>
+
+<br />
+<h2><spring:message code="CacheStatistics.title"/></h2>
+<br />
+
+<form method="post">
+	<c:choose>
+		<c:when test="${enabled}">
+			<button type="submit" name="action" value="disable"><spring:message code="CacheStatistics.disable"/></button>
+		</c:when>
+		<c:otherwise>
+			<button type="submit" name="action" value="enable"><spring:message code="CacheStatistics.enable"/></button>
+		</c:otherwise>
+	</c:choose>
+	<button type="submit" name="action" value="clear"><spring:message code="CacheStatistics.clear"/></button>
+</form>
+<br/>
+
+<c:if test="${not enabled}">
+	<spring:message code="CacheStatistics.disabled"/>
+	<br/><br/>
+</c:if>
+
+<table cellpadding="4" cellspacing="0">
+	<tr>
+		<th><spring:message code="CacheStatistics.region"/></th>
+		<th><spring:message code="CacheStatistics.elements"/></th>
+		<th><spring:message code="CacheStatistics.hits"/></th>
+		<th><spring:message code="CacheStatistics.misses"/></th>
+		<th><spring:message code="CacheStatistics.hitRatio"/></th>
+		<th><spring:message code="CacheStatistics.puts"/></th>
+	</tr>
+	<c:forEach items="${statistics}" var="statistic" varStatus="status">
+		<tr class="<c:choose><c:when test="${status.index % 2 == 0}">evenRow</c:when><c:otherwise>oddRow</c:otherwise></c:choose>">
+			<td>${statistic.region}</td>
+			<td>${statistic.elementCount}</td>
+			<td>${statistic.hitCount}</td>
+			<td>${statistic.missCount}</td>
+			<td>${statistic.hitRatio}</td>
+			<td>${statistic.putCount}</td>
+		</tr>
+	</c:forEach>
+	<c:if test="${empty statistics}">
+		<tr><td colspan="6"><spring:message code="CacheStatistics.none"/></td></tr>
+	</c:if>
+</table>
+
+<br/><br/>
+<%@ include file="/WEB-INF/template/footer.jsp" %>
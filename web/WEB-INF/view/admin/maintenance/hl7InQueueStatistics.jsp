@@ -0,0 +1,97 @@
+<%@ include file="/WEB-INF/template/include.jsp" %>
+
+<openmrs:require privilege="View HL7 Inbound Queue" otherwise="/login.htm" redirect="/admin/maintenance/hl7InQueueStatistics.htm"/>
+
+<%@ include file="/WEB-INF/template/header.jsp" %>
+<%@ include file="localHeader.jsp" %>
+
+<%@ page import="java.util.LinkedHashMap" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="org.openmrs.api.context.Context" %>
+<%@ page import="org.openmrs.hl7.HL7InQueueProcessor" %>
+<%@ page import="org.openmrs.hl7.HL7ResolutionCache" %>
+<%
+	pageContext.setAttribute("backlog", Context.getHL7Service().getHL7InQueueSizeBySource());
+	pageContext.setAttribute("throughput", HL7InQueueProcessor.getStatistics());
+	
+	HL7ResolutionCache cache = Context.getHL7Service().getResolutionCache();
+	Map<String, HL7ResolutionCache.Region> regions = new LinkedHashMap<String, HL7ResolutionCache.Region>();
+	regions.put("HL7InQueue.statistics.concepts", cache.getConcepts());
+	regions.put("HL7InQueue.statistics.users", cache.getUsers());
+	regions.put("HL7InQueue.statistics.locations", cache.getLocations());
+	pageContext.setAttribute("regions", regions);
+	pageContext.setAttribute("maxEntries", cache.getMaxEntries());
+%>
+
+<br />
+<h2><spring:message code="HL7InQueue.statistics.title"/></h2>
+<br />
+
+<h3><spring:message code="HL7InQueue.statistics.backlog"/></h3>
+<table cellpadding="4" cellspacing="0">
+	<tr>
+		<th><spring:message code="HL7InQueue.statistics.source"/></th>
+		<th><spring:message code="HL7InQueue.statistics.waiting"/></th>
+	</tr>
+	<c:forEach items="${backlog}" var="entry" varStatus="status">
+		<tr class="<c:choose><c:when test="${status.index % 2 == 0}">evenRow</c:when><c:otherwise>oddRow</c:otherwise></c:choose>">
+			<td>${entry.key.name}</td>
+			<td>${entry.value}</td>
+		</tr>
+	</c:forEach>
+	<c:if test="${empty backlog}">
+		<tr><td colspan="2"><spring:message code="HL7InQueue.statistics.none"/></td></tr>
+	</c:if>
+</table>
+
+<br/><br/>
+<h3><spring:message code="HL7InQueue.statistics.throughput"/></h3>
+<table cellpadding="4" cellspacing="0">
+	<tr>
+		<th><spring:message code="HL7InQueue.statistics.source"/></th>
+		<th><spring:message code="HL7InQueue.statistics.processed"/></th>
+		<th><spring:message code="HL7InQueue.statistics.errors"/></th>
+		<th><spring:message code="HL7InQueue.statistics.skipped"/></th>
+		<th><spring:message code="HL7InQueue.statistics.messagesPerSecond"/></th>
+	</tr>
+	<c:forEach items="${throughput}" var="entry" varStatus="status">
+		<tr class="<c:choose><c:when test="${status.index % 2 == 0}">evenRow</c:when><c:otherwise>oddRow</c:otherwise></c:choose>">
+			<td>${entry.key}</td>
+			<td>${entry.value.processed}</td>
+			<td>${entry.value.errors}</td>
+			<td>${entry.value.skipped}</td>
+			<td>${entry.value.messagesPerSecond}</td>
+		</tr>
+	</c:forEach>
+	<c:if test="${empty throughput}">
+		<tr><td colspan="5"><spring:message code="HL7InQueue.statistics.none"/></td></tr>
+	</c:if>
+</table>
+
+<br/><br/>
+<h3><spring:message code="HL7InQueue.statistics.resolutionCache"/> (${maxEntries})</h3>
+<table cellpadding="4" cellspacing="0">
+	<tr>
+		<th><spring:message code="HL7InQueue.statistics.region"/></th>
+		<th><spring:message code="HL7InQueue.statistics.size"/></th>
+		<th><spring:message code="HL7InQueue.statistics.hits"/></th>
+		<th><spring:message code="HL7InQueue.statistics.misses"/></th>
+		<th><spring:message code="HL7InQueue.statistics.hitRatio"/></th>
+		<th><spring:message code="HL7InQueue.statistics.evictions"/></th>
+		<th><spring:message code="HL7InQueue.statistics.invalidations"/></th>
+	</tr>
+	<c:forEach items="${regions}" var="entry" varStatus="status">
+		<tr class="<c:choose><c:when test="${status.index % 2 == 0}">evenRow</c:when><c:otherwise>oddRow</c:otherwise></c:choose>">
+			<td><spring:message code="${entry.key}"/></td>
+			<td>${entry.value.size}</td>
+			<td>${entry.value.hits}</td>
+			<td>${entry.value.misses}</td>
+			<td>${entry.value.hitRatio}</td>
+			<td>${entry.value.evictions}</td>
+			<td>${entry.value.invalidations}</td>
+		</tr>
+	</c:forEach>
+</table>
+
+<br/><br/>
+<%@ include file="/WEB-INF/template/footer.jsp" %>
@@ -44,6 +44,20 @@
 			</a>
 		</li>
 	</openmrs:hasPrivilege>
+	<openmrs:hasPrivilege privilege="View HL7 Inbound Queue">
+		<li <c:if test='<%= request.getRequestURI().contains("hl7InQueueStatistics") %>'>class="active"</c:if>>
+			<a href="${pageContext.request.contextPath}/admin/maintenance/hl7InQueueStatistics.htm">
+				<spring:message code="HL7InQueue.statistics.title"/>
+			</a>
+		</li>
+	</openmrs:hasPrivilege>
+	<openmrs:hasPrivilege privilege="View Administration Functions">
+		<li <c:if test='<%= request.getRequestURI().contains("cacheStatistics") %>'>class="active"</c:if>>
+			<a href="${pageContext.request.contextPath}/admin/maintenance/cacheStatistics.htm">
+				<spring:message code="CacheStatistics.title"/>
+			</a>
+		</li>
+	</openmrs:hasPrivilege>
 	<openmrs:hasPrivilege privilege="View Data Entry Statistics">
 		<li <c:if test='<%= request.getRequestURI().contains("dataEntryStat") %>'>class="active"</c:if>>
 			<a href="${pageContext.request.contextPath}/admin/maintenance/dataEntryStats.list">